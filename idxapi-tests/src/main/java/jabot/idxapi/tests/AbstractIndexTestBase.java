@@ -1,7 +1,12 @@
 package jabot.idxapi.tests;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.After;
@@ -11,6 +16,7 @@ import org.junit.Test;
 
 import jabot.idxapi.DelayedIndexingException;
 import jabot.idxapi.Document;
+import jabot.idxapi.Facet;
 import jabot.idxapi.FieldValue;
 import jabot.idxapi.Index;
 import jabot.idxapi.SearchResults;
@@ -123,6 +129,36 @@ public abstract class AbstractIndexTestBase {
 		assertDocumentsFound("*:*", sample2);
 	}
 	
+	@Test
+	public void test_negative_query() throws DelayedIndexingException, IOException {
+		fixture.store(sample1);
+		fixture.store(sample2);
+		fixture.commit();
+		
+		assertDocumentsFound("-pk:"+sample1.getPk().getText(), sample2);
+		Assert.assertEquals(1, fixture.count("-pk:"+sample1.getPk().getText(), 
+				Collections.singletonList("txt_str:token")));
+	}
+	
+	@Test
+	public void test_facets() throws DelayedIndexingException {
+		fixture.store(sample1);
+		fixture.store(sample2);
+		fixture.commit();
+		
+		final List<Map<String, Long>> facets = fixture.facets("txt_str:token", 
+				Collections.singletonList("-pk:"+sample2.getPk().getText()), 
+				Arrays.asList(Facet.terms("str_unt", 10), Facet.terms("integer_int", 10), 
+						Facet.range("integer_int", 0, 4, 2)));
+		
+		Assert.assertEquals(Collections.singletonMap("string1", 1L), facets.get(0));
+		Assert.assertEquals(Collections.singletonMap("1", 1L), facets.get(1));
+		final Map<String, Long> ranges = new HashMap<>();
+		ranges.put("0", 1L);
+		ranges.put("2", 0L);
+		Assert.assertEquals(ranges, facets.get(2));
+	}
+	
 	private void assertDocumentsFound(
 			final String search, 
 			final Document ... documents
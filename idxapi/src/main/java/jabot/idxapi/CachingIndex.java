@@ -0,0 +1,549 @@
+package jabot.idxapi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.lucene.search.Query;
+
+/**
+ * Caches search results in front of another index.
+ * 
+ * Cache is keyed by (search, filters, returnFields, offset) and keeps up to {@link #getMaxDocsPerEntry()} first documents of
+ * each result, anything beyond that is fetched from the delegate. Documents are cached as callers read them, not 
+ * ahead, so a caller that needs one document doesn't wait for a hundred. Cache is LRU, bounded both by number of 
+ * entries and (estimated) total size of the documents. All entries are dropped when {@link #commit()} or 
+ * {@link #softCommit()} is called, so
+ * results are as fresh as uncached ones would be for indexes where documents become visible on commit.
+ * 
+ * Concurrent identical searches are coalesced into single call to delegate, and read its results together.
+ * 
+ * {@link #scan(String, Collection)} is never cached
+ * 
+ * @threadsafe
+ */
+public class CachingIndex extends ForwardingIndex {
+	private static final int DEFAULT_MAXDOCSPERENTRY=100;
+	private final int maxEntries;
+	private final long maxBytes;
+	private int maxDocsPerEntry = DEFAULT_MAXDOCSPERENTRY;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	/** @guardedby entries, access-ordered for LRU */
+	private final LinkedHashMap<Key, CompletableFuture<Entry>> entries = new LinkedHashMap<>(16, 0.75f, true);
+	
+	/** @guardedby entries */
+	private long bytes;
+	
+	/** @guardedby entries */
+	private long generation;
+
+	/**
+	 * @param @notnull delegate
+	 * @param maxEntries max number of cached results
+	 * @param maxBytes max estimated size of all cached documents
+	 */
+	public CachingIndex(final Index delegate, final int maxEntries, final long maxBytes) {
+		super(delegate);
+		Validate.isTrue(maxEntries > 0, "maxEntries must be positive");
+		Validate.isTrue(maxBytes > 0, "maxBytes must be positive");
+		
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	public int getMaxDocsPerEntry() {
+		return maxDocsPerEntry;
+	}
+
+	/** @param maxDocsPerEntry how many first documents of each result to cache */
+	public void setMaxDocsPerEntry(final int maxDocsPerEntry) {
+		Validate.isTrue(maxDocsPerEntry > 0, "maxDocsPerEntry must be positive");
+		
+		this.maxDocsPerEntry = maxDocsPerEntry;
+	}
+	
+	public long getHits() {
+		return hits.get();
+	}
+	
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/** @return number of cached results */
+	public int getSize() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+	
+	/** @return estimated size of all cached documents */
+	public long getBytes() {
+		synchronized(entries) {
+			return bytes;
+		}
+	}
+
+	@Override
+	public void commit() throws DelayedIndexingException {
+		try {
+			super.commit();
+		} finally {
+			invalidate();
+		}
+	}
+	
+	@Override
+	public void softCommit() throws DelayedIndexingException {
+		try {
+			super.softCommit();
+		} finally {
+			invalidate();
+		}
+	}
+	
+	/** Drop all cached results */
+	public void invalidate() {
+		synchronized(entries) {
+			generation++;
+			entries.clear();
+			bytes = 0;
+		}
+	}
+	
+	@Override
+	public void invalidateCaches() {
+		invalidate();
+		super.invalidateCaches();
+	}
+
+	@Override
+	public SearchResults search(final String search, final Collection<Field> returnFields, final int offset) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		
+		return cachedSearch(search, Collections.emptyList(), returnFields, offset);
+	}
+	
+	/** String and {@link Query} searches are cached separately, even if they are the same */
+	@Override
+	public SearchResults search(final Query search, final Collection<Field> returnFields, final int offset) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		
+		return cachedSearch(search, Collections.emptyList(), returnFields, offset);
+	}
+	
+	@Override
+	public SearchResults search(
+			final String search, 
+			final Collection<String> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		
+		return cachedSearch(search, filters, returnFields, offset);
+	}
+	
+	@Override
+	public SearchResults search(
+			final Query search, 
+			final Collection<Query> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		
+		return cachedSearch(search, filters, returnFields, offset);
+	}
+	
+	private SearchResults cachedSearch(
+			final Object search, 
+			final Collection<?> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		final Key key = new Key(search, filters, returnFields, offset);
+		final CompletableFuture<Entry> future;
+		final long gen;
+		boolean load = false;
+		synchronized(entries) {
+			gen = generation;
+			final CompletableFuture<Entry> existing = entries.get(key);
+			if (existing != null) {
+				future = existing;
+			} else {
+				future = new CompletableFuture<>();
+				entries.put(key, future);
+				load = true;
+			}
+		}
+		
+		if (load) {
+			misses.incrementAndGet();
+			return load(key, future, gen);
+		} else {
+			hits.incrementAndGet();
+			return new CachedResults(key, await(future));
+		}
+	}
+	
+	private SearchResults load(final Key key, final CompletableFuture<Entry> future, final long gen) {
+		final Entry entry;
+		try {
+			final SearchResults source = delegateSearch(key, key.offset);
+			entry = new Entry(source, gen);
+		} catch (final RuntimeException ex) {
+			synchronized(entries) {
+				entries.remove(key, future);
+			}
+			future.completeExceptionally(ex);
+			throw ex;
+		}
+		
+		synchronized(entries) {
+			future.complete(entry);
+			if (gen == generation && entries.get(key) == future) {
+				evictIfNeeded();
+			}
+		}
+		return new CachedResults(key, entry);
+	}
+	
+	/** Count document just added to the entry, unless entry is no longer cached */
+	private void account(final Entry entry, final long docBytes) {
+		synchronized(entries) {
+			if (entry.gen == generation && !entry.evicted) {
+				entry.bytes += docBytes;
+				bytes += docBytes;
+				evictIfNeeded();
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private SearchResults delegateSearch(final Key key, final int offset) {
+		if (key.search instanceof Query) {
+			if (key.filters.isEmpty()) {
+				return super.search((Query)key.search, key.returnFields, offset);
+			}
+			return super.search((Query)key.search, (List<Query>)key.filters, key.returnFields, offset);
+		} else {
+			if (key.filters.isEmpty()) {
+				return super.search((String)key.search, key.returnFields, offset);
+			}
+			return super.search((String)key.search, (List<String>)key.filters, key.returnFields, offset);
+		}
+	}
+	
+	/** @guardedby entries */
+	private void evictIfNeeded() {
+		final Iterator<CompletableFuture<Entry>> it = entries.values().iterator();
+		while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+			final CompletableFuture<Entry> eldest = it.next();
+			if (eldest.isDone()) {
+				final Entry entry = eldest.join();
+				bytes -= entry.bytes;
+				entry.evicted = true;
+				it.remove();
+			}
+		}
+	}
+
+	private static Entry await(final CompletableFuture<Entry> future) {
+		try {
+			return future.get();
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SearchException(ex);
+		} catch (final ExecutionException ex) {
+			final Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new SearchException(cause);
+		}
+	}
+	
+	private static long estimateBytes(final Document doc) {
+		long ret = doc.getPk().getText().length()*2;
+		for (final FieldValue fv : doc.getFields()) {
+			ret += fv.getField().getName().length()*2 + estimateBytes(fv.getValue());
+		}
+		return ret;
+	}
+	
+	private static long estimateBytes(final Object value) {
+		if (value instanceof String) {
+			return ((String)value).length()*2;
+		} else if (value instanceof Untokenized) {
+			return ((Untokenized)value).getText().length()*2;
+		} else if (value instanceof Binary) {
+			return ((Binary)value).getData().length;
+		} else if (value instanceof Collection) {
+			long ret = 0;
+			for (final Object item : (Collection<?>)value) {
+				ret += estimateBytes(item);
+			}
+			return ret;
+		} else {
+			return 16;
+		}
+	}
+	
+	private static final class Key {
+		/** String or {@link Query}, both have proper equals() */
+		private final Object search;
+		
+		/** Strings or {@link Query}s, same as search */
+		private final List<?> filters;
+		private final List<Field> returnFields;
+		private final int offset;
+		
+		public Key(
+				final Object search, 
+				final Collection<?> filters, 
+				final Collection<Field> returnFields, 
+				final int offset
+		) {
+			this.search = search;
+			this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+			this.returnFields = Collections.unmodifiableList(new ArrayList<>(returnFields));
+			this.offset = offset;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(search, filters, returnFields, offset);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (obj == this) {
+				return true;
+			} else if (obj instanceof Key) {
+				final Key other = (Key) obj;
+				return offset == other.offset 
+						&& search.equals(other.search) 
+						&& filters.equals(other.filters)
+						&& returnFields.equals(other.returnFields);
+			} else {
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * First documents of a result. Documents are read from the delegate (the source) only as readers ask for them, 
+	 * so that nobody waits for documents it does not need, and only documents somebody consumed are cached. All 
+	 * readers of the entry share the source until it is exhausted, maxDocsPerEntry documents are in or all readers 
+	 * are closed.
+	 */
+	private final class Entry {
+		private final long gen;
+		
+		/** @guardedby this, taken from the source once it fetched its first page, so that it costs nothing */
+		private Long totalResults;
+		
+		/** @guardedby this */
+		private final List<Document> docs = new ArrayList<>();
+		
+		/** @guardedby this, scores of the docs, same order */
+		private float [] scores = new float[Math.min(maxDocsPerEntry, 16)];
+		
+		/** @guardedby this, true if docs hold whole result */
+		private boolean complete;
+		
+		/** @guardedby this, null once filling stopped */
+		private SearchResults source;
+		
+		/** @guardedby this */
+		private int readers;
+		
+		/** @guardedby entries, estimated size of the docs */
+		private long bytes;
+		
+		/** @guardedby entries */
+		private boolean evicted;
+
+		public Entry(final SearchResults source, final long gen) {
+			this.source = source;
+			this.gen = gen;
+		}
+		
+		/** @return estimate of the source, counted by another delegate search if filling stopped before reading */
+		public long getTotalResults(final Key key) throws IOException {
+			synchronized(this) {
+				if (totalResults == null && source != null) {
+					totalResults = source.estimateTotalResults();
+				}
+				if (totalResults != null) {
+					return totalResults;
+				}
+			}
+			final long counted;
+			try (final SearchResults counting = delegateSearch(key, key.offset)) {
+				counted = counting.estimateTotalResults();
+			}
+			synchronized(this) {
+				if (totalResults == null) {
+					totalResults = counted;
+				}
+				return totalResults;
+			}
+		}
+		
+		public synchronized void attach() {
+			readers++;
+		}
+		
+		public synchronized void detach() throws IOException {
+			if (--readers == 0) {
+				stopFilling();
+			}
+		}
+		
+		/** 
+		 * @guardedby this
+		 * @return document at given position, reading it from the source if needed, null if it is not cached 
+		 *         (check {@link #complete} to see if there is such document at all)
+		 */
+		private Document get(final int position) {
+			if (position < docs.size()) {
+				return docs.get(position);
+			} else if (source == null || position > docs.size()) {
+				return null;
+			}
+			try {
+				final Document doc = source.next();
+				if (totalResults == null) {
+					totalResults = source.estimateTotalResults();
+				}
+				if (doc == null) {
+					complete = true;
+					stopFilling();
+					return null;
+				}
+				doc.freeze();
+				if (docs.size() == scores.length) {
+					scores = Arrays.copyOf(scores, Math.min(maxDocsPerEntry, scores.length*2));
+				}
+				scores[docs.size()] = source.score();
+				docs.add(doc);
+				if (docs.size() >= maxDocsPerEntry) {
+					stopFilling();
+				}
+				account(this, estimateBytes(doc));
+				return doc;
+			} catch (final IOException ex) {
+				throw new SearchException(ex);
+			} catch (final RuntimeException ex) {
+				try {
+					stopFilling();
+				} catch (final IOException suppressed) {
+					ex.addSuppressed(suppressed);
+				}
+				throw ex;
+			}
+		}
+		
+		/** @guardedby this */
+		private void stopFilling() throws IOException {
+			if (source != null) {
+				final SearchResults closing = source;
+				source = null;
+				closing.close();
+			}
+		}
+	}
+	
+	private final class CachedResults implements SearchResults {
+		private final Key key;
+		private final Entry entry;
+		private int position;
+		
+		/** results of delegate past cached documents */
+		private SearchResults rest;
+		private boolean closed;
+		
+		public CachedResults(final Key key, final Entry entry) {
+			this.key = key;
+			this.entry = entry;
+			entry.attach();
+		}
+
+		@Override
+		public Document next() {
+			if (closed) {
+				return null;
+			}
+			if (rest == null) {
+				synchronized(entry) {
+					final Document doc = entry.get(position);
+					if (doc != null) {
+						position++;
+						return doc;
+					} else if (entry.complete) {
+						return null;
+					}
+				}
+				rest = delegateSearch(key, key.offset + position);
+			}
+			return rest.next();
+		}
+
+		@Override
+		public long estimateTotalResults() {
+			try {
+				return entry.getTotalResults(key);
+			} catch (final IOException ex) {
+				throw new SearchException(ex);
+			}
+		}
+
+		@Override
+		public float score() {
+			if (rest != null) {
+				return rest.score();
+			} else if (position == 0) {
+				return Float.NaN;
+			}
+			synchronized(entry) {
+				return entry.scores[position-1];
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				entry.detach();
+			} finally {
+				if (rest != null) {
+					rest.close();
+				}
+			}
+		}
+	}
+}
@@ -1,41 +1,69 @@
 package jabot.idxapi;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 
 import org.apache.commons.lang3.Validate;
 
 import jabot.frozen.Freeze;
 import jabot.frozen.Freezing;
 
+/**
+ * Fields are kept in a flat array in order of addition. Lookup by name is served by an index that is built on first
+ * {@link #getValue(String)}, so documents that are only iterated (the usual case) never pay for it.
+ */
 public class Document implements Freezing<Document> {
+	private static final int DEFAULT_CAPACITY = 8;
+
 	/** @notnull primary key */
 	private final Untokenized pk;
-	
-	private final List<FieldValue> fields = new LinkedList<>();
-	private final List<FieldValue> fieldsRO = Collections.unmodifiableList(fields);
-	
+
+	/** only modified until frozen */
+	private FieldValue [] fields;
+	private int size;
+	private final List<FieldValue> fieldsRO = new FieldsView();
+
+	/** @lazyinit field full name to position of first value of that field, reset on each add */
+	private volatile Map<String, Integer> byName;
+
 	private volatile boolean frozen;
 
 	public Document(final Untokenized pk) {
+		this(pk, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param @notnull pk
+	 * @param expectedFields number of fields the document is going to have, avoids growing
+	 */
+	public Document(final Untokenized pk, final int expectedFields) {
 		Validate.notNull(pk, "pk cannot be null");
-		
+		Validate.isTrue(expectedFields >= 0, "expectedFields cannot be negative");
+
 		this.pk = pk;
+		this.fields = new FieldValue[expectedFields];
 	}
-	
+
 	public Untokenized getPk() {
 		return pk;
 	}
 
 	public void add(final FieldValue value) {
 		Freeze.ensureNotFrozen(this);
-		
+
 		// It is an error to add two values for the same field, but it will not be detected for perfomance reasons here
 		// and should be don by the implementation of the search API
-		fields.add(value);
+		if (size == fields.length) {
+			fields = Arrays.copyOf(fields, Math.max(DEFAULT_CAPACITY, size*2));
+		}
+		fields[size++] = value;
+		byName = null;
 	}
-	
+
 	public List<FieldValue> getFields() {
 		return fieldsRO;
 	}
@@ -52,22 +80,40 @@ public class Document implements Freezing<Document> {
 
 	@Override
 	public Document defrost() {
-		final Document ret = new Document(pk);
-		for (final FieldValue v : fields) {
-			ret.add(v);
-		}
+		final Document ret = new Document(pk, size);
+		System.arraycopy(fields, 0, ret.fields, 0, size);
+		ret.size = size;
 		return ret;
 	}
-	
+
 	public FieldValue getValue(final String fieldFullName) {
 		Validate.notNull(fieldFullName, "fieldFullName cannot be null");
-		
-		for(final FieldValue fv : fields) {
-			if (fieldFullName.equals(fv.getField().getName())) {
-				return fv;
+
+		Map<String, Integer> index = byName;
+		if (index == null) {
+			index = new HashMap<>(size*2);
+			for (int i=0; i<size; i++) {
+				index.putIfAbsent(fields[i].getField().getName(), i);
+			}
+			byName = index;
+		}
+
+		final Integer pos = index.get(fieldFullName);
+		return pos == null ? null : fields[pos];
+	}
+
+	private final class FieldsView extends AbstractList<FieldValue> implements RandomAccess {
+		@Override
+		public FieldValue get(final int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
 			}
+			return fields[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
 		}
-		
-		return null;
 	}
 }
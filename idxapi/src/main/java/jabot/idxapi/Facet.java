@@ -0,0 +1,189 @@
+package jabot.idxapi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Aggregation over one field of the documents matching a search, see {@link Index#facets(String, Collection,
+ * List)}. Either counts of the most frequent terms (up to limit), or counts of documents falling into numeric
+ * ranges [start, start+gap), [start+gap, start+2*gap), ... up to end.
+ *
+ * Field must be indexed. Counts are keyed by term text for terms facets and by range start for range facets.
+ *
+ * @threadsafe
+ */
+public final class Facet {
+	public enum Kind { TERMS, RANGE }
+
+	private final Kind kind;
+	private final String field;
+	private final int limit;
+	private final long start;
+	private final long end;
+	private final long gap;
+
+	private Facet(final Kind kind, final String field, final int limit, final long start, final long end, final long gap) {
+		Validate.notNull(field, "field cannot be null");
+
+		this.kind = kind;
+		this.field = field;
+		this.limit = limit;
+		this.start = start;
+		this.end = end;
+		this.gap = gap;
+	}
+
+	/**
+	 * @param @notnull field
+	 * @param limit number of most frequent terms to count
+	 */
+	public static Facet terms(final String field, final int limit) {
+		Validate.isTrue(limit > 0, "limit must be positive");
+
+		return new Facet(Kind.TERMS, field, limit, 0, 0, 0);
+	}
+
+	/**
+	 * @param @notnull field numeric field
+	 * @param start inclusive start of the first range
+	 * @param end exclusive end of the last range
+	 * @param gap width of each range
+	 */
+	public static Facet range(final String field, final long start, final long end, final long gap) {
+		Validate.isTrue(start < end, "start must be less than end");
+		Validate.isTrue(gap > 0, "gap must be positive");
+
+		return new Facet(Kind.RANGE, field, 0, start, end, gap);
+	}
+
+	/** @return @notnull same facet over another field, for ex. model field translated to index field name */
+	public Facet withField(final String otherField) {
+		return new Facet(kind, otherField, limit, start, end, gap);
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long getGap() {
+		return gap;
+	}
+
+	/**
+	 * Combines counts computed over disjoint sets of documents (shards, components): counts of the same key are
+	 * summed. Terms are then ordered by count and cut to the limit, so terms that are frequent overall but did not
+	 * make it into the top of any part are missed, same as with any distributed top-N.
+	 *
+	 * @param @notnull facets
+	 * @param @notnull parts results of {@link Index#facets(String, Collection, List)} for the same facets
+	 * @return @notnull merged results
+	 */
+	public static List<Map<String, Long>> merge(final List<Facet> facets, final List<List<Map<String, Long>>> parts) {
+		final List<Map<String, Long>> ret = new ArrayList<>(facets.size());
+		for (int i=0; i<facets.size(); i++) {
+			final Facet facet = facets.get(i);
+			final Map<String, Long> sum = new LinkedHashMap<>();
+			for (final List<Map<String, Long>> part : parts) {
+				for (final Map.Entry<String, Long> count : part.get(i).entrySet()) {
+					sum.merge(count.getKey(), count.getValue(), Long::sum);
+				}
+			}
+			ret.add(facet.getKind() == Kind.TERMS ? top(sum, facet.getLimit()) : sum);
+		}
+		return ret;
+	}
+
+	/** @return @notnull counts ordered by count descending, at most limit of them */
+	public static Map<String, Long> top(final Map<String, Long> counts, final int limit) {
+		final List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+		Collections.sort(entries, Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+		final Map<String, Long> ret = new LinkedHashMap<>();
+		for (final Map.Entry<String, Long> entry : entries) {
+			if (ret.size() >= limit) {
+				break;
+			}
+			ret.put(entry.getKey(), entry.getValue());
+		}
+		return ret;
+	}
+
+	/** Terms facet of the default {@link Index#facets(String, Collection, List)} */
+	static Map<String, Long> countTerms(final Index index, final String search, final Collection<String> filters, 
+			final Facet facet) 
+	{
+		final Field field = Field.forName(facet.getField());
+		final Map<String, Long> counts = new HashMap<>();
+		final String filtered = filters.isEmpty() ? search : QuerySerializer.filtered(search, filters);
+		try (final SearchResults results = index.scan(filtered, Collections.singletonList(field))) {
+			Document doc = results.next();
+			while (doc != null) {
+				final FieldValue value = doc.getValue(field.getName());
+				if (value != null) {
+					if (value.getValue() instanceof Collection) {
+						for (final Object term : (Collection<?>)value.getValue()) {
+							counts.merge(String.valueOf(term), 1L, Long::sum);
+						}
+					} else {
+						counts.merge(String.valueOf(value.getValue()), 1L, Long::sum);
+					}
+				}
+				doc = results.next();
+			}
+		} catch (final IOException ex) {
+			throw new SearchException(ex);
+		}
+		return top(counts, facet.getLimit());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(kind, field, limit, start, end, gap);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj instanceof Facet) {
+			final Facet other = (Facet)obj;
+			return kind == other.kind && field.equals(other.field) && limit == other.limit
+					&& start == other.start && end == other.end && gap == other.gap;
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		if (kind == Kind.TERMS) {
+			return "terms("+field+", "+limit+")";
+		}
+		return "range("+field+", "+start+".."+end+" by "+gap+")";
+	}
+}
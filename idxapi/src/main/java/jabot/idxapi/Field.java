@@ -1,6 +1,8 @@
 package jabot.idxapi;
 
 import java.time.OffsetDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.Validate;
@@ -95,6 +97,10 @@ public final class Field {
 	}
 	
 	private static final Texter FIELDNAME_TXT = new Texter();
+	private static final int MAX_INTERNED = 10000;
+	
+	/** full name to parsed field, see {@link #forName(String)} */
+	private static final ConcurrentMap<String, Field> INTERNED = new ConcurrentHashMap<>();
 	
 	/** @lazyinit field type. Only a selected set of types is permitted, see {@link FieldValue} **/
 	private Type type;
@@ -135,6 +141,33 @@ public final class Field {
 		}
 	}
 
+	/**
+	 * Same as {@link #Field(String)}, but returns shared instance for each name, already parsed, so that documents 
+	 * coming from the index don't parse same field names over and over again. Up to {@value #MAX_INTERNED} names 
+	 * are shared, fields beyond that are simply created.
+	 * 
+	 * @param @notnull name
+	 * @return @notnull
+	 * @throws FieldFormatException if field name format invalid
+	 */
+	public static Field forName(final String name) {
+		Validate.notNull(name, "name cannot be null");
+		
+		Field ret = INTERNED.get(name);
+		if (ret == null) {
+			ret = new Field(name);
+			// shared instances MUST NOT lazily initialize anything, since they are not synchronized
+			ret.parseName();
+			if (INTERNED.size() < MAX_INTERNED) {
+				final Field existing = INTERNED.putIfAbsent(name, ret);
+				if (existing != null) {
+					ret = existing;
+				}
+			}
+		}
+		return ret;
+	}
+
 	/** Initialize any lazy-init variable and check correctness
 	 * @throws FieldFormatException if field name format invalid
 	 */
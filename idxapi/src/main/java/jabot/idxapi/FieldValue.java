@@ -20,7 +20,7 @@ public final class FieldValue {
 	private final Object value;
 	
 	public FieldValue(final String field, final Object value) {
-		this(new Field(field), value);
+		this(Field.forName(field), value);
 	}
 
 	public FieldValue(final Field field, final Object value) {
@@ -36,7 +36,7 @@ public final class FieldValue {
 	}
 	
 	public FieldValue(final String field, final Collection<?> values) {
-		this(new Field(field), values);
+		this(Field.forName(field), values);
 	}
 	
 	public FieldValue(final Field field, final Collection<?> values) {
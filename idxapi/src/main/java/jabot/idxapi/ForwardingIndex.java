@@ -0,0 +1,149 @@
+package jabot.idxapi;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.lucene.search.Query;
+
+/**
+ * Base class for {@link Index} decorators, forwards all calls to the delegate
+ */
+public abstract class ForwardingIndex implements Index {
+	private final Index delegate;
+
+	public ForwardingIndex(final Index delegate) {
+		Validate.notNull(delegate, "delegate cannot be null");
+		
+		this.delegate = delegate;
+	}
+
+	/** For subclasses that resolve the delegate on each call by overriding {@link #getDelegate()} */
+	protected ForwardingIndex() {
+		this.delegate = null;
+	}
+
+	public Index getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void store(final Document document) {
+		getDelegate().store(document);
+	}
+
+	@Override
+	public void removeByKey(final Untokenized pk) {
+		getDelegate().removeByKey(pk);
+	}
+
+	@Override
+	public void removeByQuery(final String search) {
+		getDelegate().removeByQuery(search);
+	}
+
+	@Override
+	public void removeByQuery(final Query search) {
+		getDelegate().removeByQuery(search);
+	}
+
+	@Override
+	public void commit() throws DelayedIndexingException {
+		getDelegate().commit();
+	}
+
+	@Override
+	public void softCommit() throws DelayedIndexingException {
+		getDelegate().softCommit();
+	}
+
+	@Override
+	public SearchResults search(final String search, final Collection<Field> returnFields, final int offset) {
+		return getDelegate().search(search, returnFields, offset);
+	}
+
+	@Override
+	public SearchResults search(final Query search, final Collection<Field> returnFields, final int offset) {
+		return getDelegate().search(search, returnFields, offset);
+	}
+
+	@Override
+	public SearchResults search(
+			final String search, 
+			final Collection<String> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		return getDelegate().search(search, filters, returnFields, offset);
+	}
+
+	@Override
+	public SearchResults search(
+			final Query search, 
+			final Collection<Query> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		return getDelegate().search(search, filters, returnFields, offset);
+	}
+
+	@Override
+	public SearchResults scan(final String search, final Collection<Field> returnFields) {
+		return getDelegate().scan(search, returnFields);
+	}
+
+	@Override
+	public long count(final String search) {
+		return getDelegate().count(search);
+	}
+
+	@Override
+	public long count(final Query search) {
+		return getDelegate().count(search);
+	}
+
+	@Override
+	public long count(final String search, final Collection<String> filters) {
+		return getDelegate().count(search, filters);
+	}
+
+	@Override
+	public long count(final Query search, final Collection<Query> filters) {
+		return getDelegate().count(search, filters);
+	}
+
+	@Override
+	public List<Map<String, Long>> facets(final String search, final Collection<String> filters, 
+			final List<Facet> facets) 
+	{
+		return getDelegate().facets(search, filters, facets);
+	}
+
+	@Override
+	public List<Map<String, Long>> facets(final Query search, final Collection<Query> filters, 
+			final List<Facet> facets) 
+	{
+		return getDelegate().facets(search, filters, facets);
+	}
+
+	@Override
+	public IndexStats stats() {
+		return getDelegate().stats();
+	}
+
+	@Override
+	public void optimize(final int maxSegments, final double maxMBPerSec) throws DelayedIndexingException {
+		getDelegate().optimize(maxSegments, maxMBPerSec);
+	}
+
+	@Override
+	public boolean hasPendingUpdates() {
+		return getDelegate().hasPendingUpdates();
+	}
+
+	@Override
+	public void invalidateCaches() {
+		getDelegate().invalidateCaches();
+	}
+}
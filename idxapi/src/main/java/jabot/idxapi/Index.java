@@ -1,7 +1,14 @@
 package jabot.idxapi;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.search.Query;
 
 /** 
  * An index can store an efficiently search for records. 
@@ -35,6 +42,17 @@ public interface Index {
 	 * @param @notnull search lucene-compliant search
 	 */
 	void removeByQuery(String search);
+	
+	/**
+	 * Same as {@link #removeByQuery(String)}, for queries that are already parsed. 
+	 * 
+	 * Default implementation serializes the query with {@link QuerySerializer}
+	 * 
+	 * @param @notnull search
+	 */
+	default void removeByQuery(Query search) {
+		removeByQuery(QuerySerializer.serialize(search));
+	}
 
 	
 	/**
@@ -48,6 +66,19 @@ public interface Index {
 	 */
 	void commit() throws DelayedIndexingException;
 	
+	/**
+	 * Make all stored documents and requested removals visible to the search methods, without guaranteeing they 
+	 * survive a crash. Much cheaper than {@link #commit()}, so it can be called often. Documents become durable on next 
+	 * {@link #commit()}.
+	 * 
+	 * Default implementation simply calls {@link #commit()}
+	 * 
+	 * @throws DelayedIndexingException if documents that supposed to be stored can't really be applied for some reason
+	 */
+	default void softCommit() throws DelayedIndexingException {
+		commit();
+	}
+	
 	
 	/** 
 	 * Perform a search
@@ -68,4 +99,191 @@ public interface Index {
 	 */
 	SearchResults search(String search, Collection<Field> returnFields, int offset);
 	
+	/** 
+	 * Same as {@link #search(String, Collection, int)}, for queries that are already parsed. Implementations able to
+	 * execute lucene queries directly skip parsing altogether. 
+	 * 
+	 * Default implementation serializes the query with {@link QuerySerializer}
+	 * 
+	 * @param @notnull search
+	 * @param @notnull returnFields return these stored fields with the document (MUST be stored fields)
+	 * @param @offset return results at given offset (for paging)
+	 * @throws throws SearchException when query is incorrect or IOException happened (user should analyse getCause())
+	 */
+	default SearchResults search(Query search, Collection<Field> returnFields, int offset) {
+		return search(QuerySerializer.serialize(search), returnFields, offset);
+	}
+	
+	/** 
+	 * Perform a search restricted by filters. Filters do not affect scoring, only which documents match, and 
+	 * implementations are free to cache them independently of the search (solr fq, lucene query cache). Therefore
+	 * constraints that repeat from search to search (model class, content type, etc) should go to filters, leaving 
+	 * only the user's free text in search.
+	 * 
+	 * Default implementation simply adds filters as required clauses to the search.
+	 * 
+	 * @param @notnull search lucene-compliant search
+	 * @param @notnull filters lucene-compliant searches, ALL of them must match 
+	 * @param @notnull returnFields return these stored fields with the document (MUST be stored fields)
+	 * @param @offset return results at given offset (for paging)
+	 * @throws throws SearchException when query is incorrect or IOException happened (user should analyse getCause())
+	 */
+	default SearchResults search(String search, Collection<String> filters, Collection<Field> returnFields, int offset) {
+		if (filters.isEmpty()) {
+			return search(search, returnFields, offset);
+		}
+		return search(QuerySerializer.filtered(search, filters), returnFields, offset);
+	}
+	
+	/** 
+	 * Same as {@link #search(String, Collection, Collection, int)}, for queries that are already parsed.
+	 * 
+	 * Default implementation serializes the queries with {@link QuerySerializer}
+	 */
+	default SearchResults search(Query search, Collection<Query> filters, Collection<Field> returnFields, int offset) {
+		if (filters.isEmpty()) {
+			return search(search, returnFields, offset);
+		}
+		return search(QuerySerializer.serialize(search), QuerySerializer.serializeAll(filters), returnFields, offset);
+	}
+	
+	/** 
+	 * Walk through all documents matching the search, in no particular order. Unlike 
+	 * {@link #search(String, Collection, int)}, cost of fetching next page does not depend on how far the walk went,
+	 * so this is the method to use for full scans of the index (export, reindex, statistics)
+	 * @param @notnull search lucene-compliant search
+	 * @param @notnull returnFields return these stored fields with the document (MUST be stored fields)
+	 * @throws throws SearchException when query is incorrect or IOException happened (user should analyse getCause())
+	 */
+	default SearchResults scan(String search, Collection<Field> returnFields) {
+		return search(search, returnFields, 0);
+	}
+	
+	/** 
+	 * Walk through all documents matching the search, see {@link #scan(String, Collection)}
+	 */
+	default SearchResults scan(String search, Field ... returnFields) {
+		return scan(search, Arrays.asList(returnFields));
+	}
+	
+	/**
+	 * Count documents matching the search without fetching any of them
+	 * @param @notnull search lucene-compliant search
+	 * @throws throws SearchException when query is incorrect or IOException happened (user should analyse getCause())
+	 */
+	default long count(String search) {
+		try (final SearchResults results = search(search, 0)) {
+			return results.estimateTotalResults();
+		} catch (final IOException ex) {
+			throw new SearchException(ex);
+		}
+	}
+	
+	/**
+	 * Same as {@link #count(String)}, for queries that are already parsed
+	 * @param @notnull search
+	 */
+	default long count(Query search) {
+		return count(QuerySerializer.serialize(search));
+	}
+	
+	/**
+	 * Count documents matching the search and all the filters, see {@link #search(String, Collection, Collection, int)}
+	 * @param @notnull search lucene-compliant search
+	 * @param @notnull filters lucene-compliant searches
+	 */
+	default long count(String search, Collection<String> filters) {
+		if (filters.isEmpty()) {
+			return count(search);
+		}
+		return count(QuerySerializer.filtered(search, filters));
+	}
+	
+	/**
+	 * Same as {@link #count(String, Collection)}, for queries that are already parsed
+	 */
+	default long count(Query search, Collection<Query> filters) {
+		if (filters.isEmpty()) {
+			return count(search);
+		}
+		return count(QuerySerializer.serialize(search), QuerySerializer.serializeAll(filters));
+	}
+	
+	/**
+	 * Aggregate documents matching the search and all the filters, see {@link Facet}. Only counts are returned, none 
+	 * of the documents.
+	 * 
+	 * Default implementation counts each range with {@link #count(String, Collection)} and counts terms by scanning 
+	 * the matching documents, so terms facets only work on stored fields there and cost as much as a full scan. 
+	 * Implementations are expected to do it in a single request.
+	 * 
+	 * @param @notnull search lucene-compliant search
+	 * @param @notnull filters lucene-compliant searches, ALL of them must match
+	 * @param @notnull facets fields to aggregate, by full index field name
+	 * @return @notnull counts for each facet, in order of facets. Terms are ordered by count descending, ranges by
+	 *                  range start
+	 * @throws throws SearchException when query is incorrect or IOException happened (user should analyse getCause())
+	 */
+	default List<Map<String, Long>> facets(String search, Collection<String> filters, List<Facet> facets) {
+		final List<Map<String, Long>> ret = new ArrayList<>(facets.size());
+		for (final Facet facet : facets) {
+			if (facet.getKind() == Facet.Kind.RANGE) {
+				final Map<String, Long> counts = new LinkedHashMap<>();
+				for (long start = facet.getStart(); start < facet.getEnd(); start += facet.getGap()) {
+					final long end = Math.min(start + facet.getGap(), facet.getEnd());
+					final List<String> rangeFilters = new ArrayList<>(filters);
+					rangeFilters.add(facet.getField()+":["+start+" TO "+end+"}");
+					counts.put(String.valueOf(start), count(search, rangeFilters));
+				}
+				ret.add(counts);
+			} else {
+				ret.add(Facet.countTerms(this, search, filters, facet));
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Same as {@link #facets(String, Collection, List)}, for queries that are already parsed
+	 */
+	default List<Map<String, Long>> facets(Query search, Collection<Query> filters, List<Facet> facets) {
+		return facets(QuerySerializer.serialize(search), QuerySerializer.serializeAll(filters), facets);
+	}
+	
+	/**
+	 * @return @notnull index statistics as of last {@link #commit()}
+	 * @throws throws SearchException when IOException happened (user should analyse getCause())
+	 */
+	default IndexStats stats() {
+		final long numDocs = count("*:*");
+		return new IndexStats(numDocs, IndexStats.UNKNOWN, IndexStats.UNKNOWN, IndexStats.UNKNOWN);
+	}
+	
+	/**
+	 * Reclaims space of deleted documents and merges index down to at most maxSegments segments, then commits.
+	 * Blocks until done, which can take long on large indexes. Default implementation does nothing, for backends
+	 * that don't need it. Backends may skip optimization while {@link #hasPendingUpdates()}
+	 * 
+	 * @param maxSegments maximum number of segments to leave, at least 1
+	 * @param maxMBPerSec merge write rate limit, 0 for unlimited. Backends that can't throttle ignore it
+	 */
+	default void optimize(int maxSegments, double maxMBPerSec) throws DelayedIndexingException {
+	}
+	
+	/**
+	 * @return true if there are updates that are not hard-committed yet (soft commits don't count), which means index 
+	 *         is being written to right now
+	 */
+	default boolean hasPendingUpdates() {
+		return false;
+	}
+	
+	/**
+	 * Drops results, counts and such cached by the index and its decorators, when contents changed other way than 
+	 * through commits of this very index (optimized or replaced by maintenance, pulled by a replica). Unlike 
+	 * {@link #softCommit()}, sends nothing to the backend. Default implementation does nothing, for indexes that 
+	 * cache nothing
+	 */
+	default void invalidateCaches() {
+	}
 }
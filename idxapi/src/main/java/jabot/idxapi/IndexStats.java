@@ -0,0 +1,58 @@
+package jabot.idxapi;
+
+/** 
+ * Physical statistics of an index. Values that backend can't provide are reported as {@link #UNKNOWN} 
+ */
+public final class IndexStats {
+	public static final long UNKNOWN = -1;
+	
+	private final long numDocs;
+	private final long maxDoc;
+	private final long deletedDocs;
+	private final long segmentCount;
+
+	/**
+	 * @param numDocs number of live (searchable) documents
+	 * @param maxDoc number of documents including deleted ones not yet merged away
+	 * @param deletedDocs number of deleted documents still occupying space
+	 * @param segmentCount number of index segments
+	 */
+	public IndexStats(final long numDocs, final long maxDoc, final long deletedDocs, final long segmentCount) {
+		this.numDocs = numDocs;
+		this.maxDoc = maxDoc;
+		this.deletedDocs = deletedDocs;
+		this.segmentCount = segmentCount;
+	}
+
+	public long getNumDocs() {
+		return numDocs;
+	}
+
+	public long getMaxDoc() {
+		return maxDoc;
+	}
+
+	public long getDeletedDocs() {
+		return deletedDocs;
+	}
+
+	public long getSegmentCount() {
+		return segmentCount;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder b = new StringBuilder();
+		b.append(numDocs).append(" docs");
+		if (maxDoc != UNKNOWN) {
+			b.append(", maxDoc=").append(maxDoc);
+		}
+		if (deletedDocs != UNKNOWN) {
+			b.append(", deleted=").append(deletedDocs);
+		}
+		if (segmentCount != UNKNOWN) {
+			b.append(", segments=").append(segmentCount);
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,181 @@
+package jabot.idxapi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Writes lucene queries in the classic query parser syntax (the one solr and {@link Index#search(String, int, Field...)}
+ * understand), escaping terms so that parsing the result gives back the same query. Unlike {@link Query#toString()},
+ * terms with spaces, colons, quotes and other syntax characters survive the round trip.
+ *
+ * Query types that have no classic syntax are written with {@link Query#toString()}.
+ *
+ * @threadsafe
+ */
+public final class QuerySerializer {
+	private static final String SPECIAL_CHARS = "\\+-!():^[]\"{}~*?|&/";
+	private static final String WILDCARD_CHARS = "*?\\";
+
+	private QuerySerializer() {}
+
+	/** @return @notnull */
+	public static String serialize(final Query query) {
+		final StringBuilder b = new StringBuilder();
+		write(b, query);
+		return b.toString();
+	}
+
+	/** @return @notnull */
+	public static List<String> serializeAll(final Collection<Query> queries) {
+		final List<String> ret = new ArrayList<>(queries.size());
+		for (final Query query : queries) {
+			ret.add(serialize(query));
+		}
+		return ret;
+	}
+
+	/**
+	 * @param @notnull search
+	 * @param @notnull filters
+	 * @return @notnull search with all filters added as required clauses
+	 */
+	public static String filtered(final String search, final Collection<String> filters) {
+		final StringBuilder b = new StringBuilder();
+		b.append("+(").append(search).append(')');
+		for (final String filter : filters) {
+			b.append(" +(").append(filter).append(')');
+		}
+		return b.toString();
+	}
+
+	private static void write(final StringBuilder b, final Query query) {
+		if (query instanceof TermQuery) {
+			final Term term = ((TermQuery)query).getTerm();
+			writeField(b, term.field());
+			escape(b, term.text(), "");
+		} else if (query instanceof PhraseQuery) {
+			writePhrase(b, (PhraseQuery)query);
+		} else if (query instanceof BooleanQuery) {
+			writeBoolean(b, (BooleanQuery)query);
+		} else if (query instanceof BoostQuery) {
+			final BoostQuery boost = (BoostQuery)query;
+			b.append('(');
+			write(b, boost.getQuery());
+			b.append(")^").append(boost.getBoost());
+		} else if (query instanceof MatchAllDocsQuery) {
+			b.append("*:*");
+		} else if (query instanceof PrefixQuery) {
+			final Term prefix = ((PrefixQuery)query).getPrefix();
+			writeField(b, prefix.field());
+			escape(b, prefix.text(), "");
+			b.append('*');
+		} else if (query instanceof WildcardQuery) {
+			final Term term = ((WildcardQuery)query).getTerm();
+			writeField(b, term.field());
+			escape(b, term.text(), WILDCARD_CHARS);
+		} else if (query instanceof FuzzyQuery) {
+			final FuzzyQuery fuzzy = (FuzzyQuery)query;
+			writeField(b, fuzzy.getField());
+			escape(b, fuzzy.getTerm().text(), "");
+			b.append('~').append(fuzzy.getMaxEdits());
+		} else if (query instanceof TermRangeQuery) {
+			writeRange(b, (TermRangeQuery)query);
+		} else {
+			b.append(query.toString());
+		}
+	}
+
+	private static void writePhrase(final StringBuilder b, final PhraseQuery phrase) {
+		final Term [] terms = phrase.getTerms();
+		if (terms.length == 0) {
+			b.append("-*:*"); // matches nothing, same as empty phrase
+			return;
+		}
+		writeField(b, terms[0].field());
+		b.append('"');
+		for (int i=0; i<terms.length; i++) {
+			if (i > 0) {
+				b.append(' ');
+			}
+			escape(b, terms[i].text(), "");
+		}
+		b.append('"');
+		if (phrase.getSlop() != 0) {
+			b.append('~').append(phrase.getSlop());
+		}
+	}
+
+	private static void writeBoolean(final StringBuilder b, final BooleanQuery bool) {
+		b.append('(');
+		boolean first = true;
+		for (final BooleanClause clause : bool.clauses()) {
+			if (!first) {
+				b.append(' ');
+			}
+			first = false;
+			switch (clause.getOccur()) {
+			case MUST:
+			case FILTER:
+				b.append('+');
+				break;
+			case MUST_NOT:
+				b.append('-');
+				break;
+			default:
+				break;
+			}
+			write(b, clause.getQuery());
+		}
+		b.append(')');
+		if (bool.getMinimumNumberShouldMatch() > 0) {
+			b.append('~').append(bool.getMinimumNumberShouldMatch());
+		}
+	}
+
+	private static void writeRange(final StringBuilder b, final TermRangeQuery range) {
+		writeField(b, range.getField());
+		b.append(range.includesLower() ? '[' : '{');
+		writeBound(b, range.getLowerTerm());
+		b.append(" TO ");
+		writeBound(b, range.getUpperTerm());
+		b.append(range.includesUpper() ? ']' : '}');
+	}
+
+	private static void writeBound(final StringBuilder b, final BytesRef bound) {
+		if (bound == null) {
+			b.append('*');
+		} else {
+			escape(b, bound.utf8ToString(), "");
+		}
+	}
+
+	private static void writeField(final StringBuilder b, final String field) {
+		escape(b, field, "");
+		b.append(':');
+	}
+
+	private static void escape(final StringBuilder b, final String text, final String keep) {
+		for (int i=0; i<text.length(); i++) {
+			final char c = text.charAt(i);
+			if (keep.indexOf(c) < 0 && (SPECIAL_CHARS.indexOf(c) >= 0 || Character.isWhitespace(c))) {
+				b.append('\\');
+			}
+			b.append(c);
+		}
+	}
+}
@@ -12,4 +12,14 @@ public interface SearchResults extends Surge<Document> {
 	 * Estimate total number of documents in the result. Typically, more results = less precise count
 	 */
 	long estimateTotalResults();
+	
+	/**
+	 * Relevance score of the document last returned by {@link #next()}. Scores are only roughly comparable between 
+	 * indexes, and only if they share the schema.
+	 * 
+	 * @return score, higher is more relevant, NaN if unknown (nothing returned yet, index does not score)
+	 */
+	default float score() {
+		return Float.NaN;
+	}
 }
@@ -0,0 +1,484 @@
+package jabot.idxapi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.lucene.search.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads documents over several shard indexes by the hash of their pk. {@link #store(Document)} and
+ * {@link #removeByKey(Untokenized)} go to the single shard owning the pk, everything else is sent to all shards in
+ * parallel using given executor.
+ *
+ * Searches are scattered to all shards at once, each shard fetching its first page in the executor, and results 
+ * are merged best score first. Scores of different shards are comparable as long as term statistics of the shards 
+ * are similar, which hash distribution of pks ensures for any sizeable shards. Global offset can't be translated to 
+ * shard offsets without knowing the scores, so each shard is searched from the start and merged results skip offset 
+ * documents, meaning every shard may read up to offset documents more than needed.
+ *
+ * Shard order must not change between runs, otherwise documents will not be found by their pks.
+ *
+ * @threadsafe
+ */
+public class ShardedIndex implements Index {
+	private static final Logger LOG = LoggerFactory.getLogger(ShardedIndex.class);
+	private final List<Index> shards;
+	private final ExecutorService executor;
+
+	/**
+	 * @param @notnull shards at least one
+	 * @param @notnull executor to broadcast requests with, not owned by the index
+	 */
+	public ShardedIndex(final List<? extends Index> shards, final ExecutorService executor) {
+		Validate.notEmpty(shards, "shards cannot be empty");
+		Validate.noNullElements(shards, "shards cannot contain nulls");
+		Validate.notNull(executor, "executor cannot be null");
+
+		this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+		this.executor = executor;
+	}
+
+	public List<Index> getShards() {
+		return shards;
+	}
+
+	/** @return shard number the document with given pk belongs to */
+	public int shardOf(final Untokenized pk) {
+		return Math.floorMod(pk.getText().hashCode(), shards.size());
+	}
+
+	@Override
+	public void store(final Document document) {
+		Validate.notNull(document, "document cannot be null");
+
+		shards.get(shardOf(document.getPk())).store(document);
+	}
+
+	@Override
+	public void removeByKey(final Untokenized pk) {
+		Validate.notNull(pk, "pk cannot be null");
+
+		shards.get(shardOf(pk)).removeByKey(pk);
+	}
+
+	@Override
+	public void removeByQuery(final String search) {
+		Validate.notNull(search, "search cannot be null");
+
+		getAll(submitAll((shard, i) -> {
+			shard.removeByQuery(search);
+			return null;
+		}));
+	}
+
+	@Override
+	public void removeByQuery(final Query search) {
+		Validate.notNull(search, "search cannot be null");
+
+		getAll(submitAll((shard, i) -> {
+			shard.removeByQuery(search);
+			return null;
+		}));
+	}
+
+	@Override
+	public void commit() throws DelayedIndexingException {
+		commit(false);
+	}
+
+	@Override
+	public void softCommit() throws DelayedIndexingException {
+		commit(true);
+	}
+
+	private void commit(final boolean soft) throws DelayedIndexingException {
+		final List<Future<Object>> futures = submitAll((shard, i) -> {
+			if (soft) {
+				shard.softCommit();
+			} else {
+				shard.commit();
+			}
+			return null;
+		});
+		final StringBuilder errors = new StringBuilder();
+		for (int i=0; i<futures.size(); i++) {
+			try {
+				futures.get(i).get();
+			} catch (final ExecutionException ex) {
+				errors.append("shard ").append(i).append(": ").append(ex.getCause()).append("\n");
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new DelayedIndexingException(ex);
+			}
+		}
+		if (errors.length() > 0) {
+			throw new DelayedIndexingException(errors.toString());
+		}
+	}
+
+	@Override
+	public SearchResults search(final String search, final Collection<Field> returnFields, final int offset) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		Validate.isTrue(offset >= 0, "offset cannot be negative");
+
+		return search(offset, shard -> shard.search(search, returnFields, 0));
+	}
+
+	@Override
+	public SearchResults search(final Query search, final Collection<Field> returnFields, final int offset) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		Validate.isTrue(offset >= 0, "offset cannot be negative");
+
+		return search(offset, shard -> shard.search(search, returnFields, 0));
+	}
+
+	@Override
+	public SearchResults search(
+			final String search, 
+			final Collection<String> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		Validate.isTrue(offset >= 0, "offset cannot be negative");
+
+		return search(offset, shard -> shard.search(search, filters, returnFields, 0));
+	}
+
+	@Override
+	public SearchResults search(
+			final Query search, 
+			final Collection<Query> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		Validate.isTrue(offset >= 0, "offset cannot be negative");
+
+		return search(offset, shard -> shard.search(search, filters, returnFields, 0));
+	}
+
+	/**
+	 * @param offset number of merged results to skip
+	 * @param searcher searches a shard from the start
+	 */
+	private SearchResults search(final int offset, final ShardSearch searcher) {
+		return new MergedResults(getAllHeads(submitAll((shard, i) -> new Head(i, searcher.search(shard)))), offset);
+	}
+
+	@Override
+	public SearchResults scan(final String search, final Collection<Field> returnFields) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+
+		return new MergedResults(getAllHeads(submitAll((shard, i) -> new Head(i, shard.scan(search, returnFields)))), 0);
+	}
+
+	@Override
+	public long count(final String search) {
+		Validate.notNull(search, "search cannot be null");
+
+		return sum(getAll(submitAll((shard, i) -> shard.count(search))));
+	}
+
+	@Override
+	public long count(final Query search) {
+		Validate.notNull(search, "search cannot be null");
+
+		return sum(getAll(submitAll((shard, i) -> shard.count(search))));
+	}
+
+	@Override
+	public long count(final String search, final Collection<String> filters) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+
+		return sum(getAll(submitAll((shard, i) -> shard.count(search, filters))));
+	}
+
+	@Override
+	public long count(final Query search, final Collection<Query> filters) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+
+		return sum(getAll(submitAll((shard, i) -> shard.count(search, filters))));
+	}
+
+	/** Facets of the shards are summed up, see {@link Facet#merge(List, List)} */
+	@Override
+	public List<Map<String, Long>> facets(final String search, final Collection<String> filters, 
+			final List<Facet> facets) 
+	{
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(facets, "facets cannot be null");
+
+		return Facet.merge(facets, getAll(submitAll((shard, i) -> shard.facets(search, filters, facets))));
+	}
+
+	@Override
+	public List<Map<String, Long>> facets(final Query search, final Collection<Query> filters, 
+			final List<Facet> facets) 
+	{
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(facets, "facets cannot be null");
+
+		return Facet.merge(facets, getAll(submitAll((shard, i) -> shard.facets(search, filters, facets))));
+	}
+
+	@Override
+	public IndexStats stats() {
+		long numDocs = 0, maxDoc = 0, deletedDocs = 0, segmentCount = 0;
+		for (final IndexStats stats : getAll(submitAll((shard, i) -> shard.stats()))) {
+			numDocs += stats.getNumDocs();
+			maxDoc = sum(maxDoc, stats.getMaxDoc());
+			deletedDocs = sum(deletedDocs, stats.getDeletedDocs());
+			segmentCount = sum(segmentCount, stats.getSegmentCount());
+		}
+		return new IndexStats(numDocs, maxDoc, deletedDocs, segmentCount);
+	}
+
+	/** Shards are optimized one after another, so that merges of different shards don't compete for disk */
+	@Override
+	public void optimize(final int maxSegments, final double maxMBPerSec) throws DelayedIndexingException {
+		for (final Index shard : shards) {
+			shard.optimize(maxSegments, maxMBPerSec);
+		}
+	}
+
+	@Override
+	public void invalidateCaches() {
+		for (final Index shard : shards) {
+			shard.invalidateCaches();
+		}
+	}
+
+	@Override
+	public boolean hasPendingUpdates() {
+		for (final Index shard : shards) {
+			if (shard.hasPendingUpdates()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long sum(final List<Long> counts) {
+		long ret = 0;
+		for (final Long count : counts) {
+			ret += count;
+		}
+		return ret;
+	}
+
+	private static long sum(final long a, final long b) {
+		if (a == IndexStats.UNKNOWN || b == IndexStats.UNKNOWN) {
+			return IndexStats.UNKNOWN;
+		}
+		return a + b;
+	}
+
+	private <T> List<Future<T>> submitAll(final ShardCall<T> call) {
+		final List<Future<T>> ret = new ArrayList<>(shards.size());
+		for (int i=0; i<shards.size(); i++) {
+			final Index shard = shards.get(i);
+			final int shardNo = i;
+			ret.add(executor.submit(() -> call.call(shard, shardNo)));
+		}
+		return ret;
+	}
+
+	/** Waits for all the futures, first error is rethrown once all of them are done */
+	private static <T> List<T> getAll(final List<Future<T>> futures) {
+		final List<T> ret = new ArrayList<>(futures.size());
+		RuntimeException error = null;
+		for (final Future<T> future : futures) {
+			try {
+				ret.add(future.get());
+			} catch (final ExecutionException ex) {
+				ret.add(null);
+				if (error == null) {
+					error = ex.getCause() instanceof RuntimeException
+							? (RuntimeException)ex.getCause()
+							: new IllegalStateException(ex.getCause());
+				}
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				ret.add(null);
+				if (error == null) {
+					error = new IllegalStateException(ex);
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+		return ret;
+	}
+
+	/** Same as {@link #getAll(List)}, but closes results already opened if any of the shards failed */
+	private static List<Head> getAllHeads(final List<Future<Head>> futures) {
+		try {
+			return getAll(futures);
+		} catch (final RuntimeException ex) {
+			for (final Future<Head> future : futures) {
+				try {
+					final Head head = future.get();
+					if (head != null) {
+						head.results.close();
+					}
+				} catch (final Exception closeEx) {
+					LOG.debug("Shard failed or could not be closed {}", closeEx);
+				}
+			}
+			throw ex;
+		}
+	}
+
+	@FunctionalInterface
+	private static interface ShardCall<T> {
+		T call(Index shard, int shardNo) throws Exception;
+	}
+
+	@FunctionalInterface
+	private static interface ShardSearch {
+		SearchResults search(Index shard);
+	}
+
+	/** 
+	 * Results of a shard along with the document to be returned next. Created in the executor, so that first pages
+	 * of all shards are fetched in parallel
+	 */
+	private static final class Head implements Comparable<Head> {
+		private final int shardNo;
+		private final SearchResults results;
+		private final long total;
+		private Document doc;
+		private float score;
+
+		public Head(final int shardNo, final SearchResults results) {
+			this.shardNo = shardNo;
+			this.results = results;
+			try {
+				advance();
+				this.total = results.estimateTotalResults();
+			} catch (final RuntimeException ex) {
+				closeQuietly(results);
+				throw ex;
+			}
+		}
+
+		/** @return false once the shard has no more results */
+		public boolean advance() {
+			doc = results.next();
+			score = results.score();
+			return doc != null;
+		}
+
+		/** Best score first, shards with equal scores (or no scores at all) in shard order */
+		@Override
+		public int compareTo(final Head other) {
+			final int ret = Float.compare(other.score, score);
+			return ret != 0 ? ret : Integer.compare(shardNo, other.shardNo);
+		}
+
+		private static void closeQuietly(final SearchResults results) {
+			try {
+				results.close();
+			} catch (final IOException ex) {
+				LOG.debug("Shard results could not be closed {}", ex);
+			}
+		}
+	}
+
+	private static final class MergedResults implements SearchResults {
+		private final List<Head> heads;
+
+		/** Shards that still have results, best next document on top */
+		private final PriorityQueue<Head> active;
+		private int toSkip;
+		private float lastScore = Float.NaN;
+
+		public MergedResults(final List<Head> heads, final int offset) {
+			this.heads = heads;
+			this.active = new PriorityQueue<>(Math.max(1, heads.size()));
+			this.toSkip = offset;
+			for (final Head head : heads) {
+				if (head.doc != null) {
+					active.add(head);
+				}
+			}
+		}
+
+		@Override
+		public Document next() {
+			while (toSkip > 0 && poll() != null) {
+				toSkip--;
+			}
+			return poll();
+		}
+
+		private Document poll() {
+			final Head head = active.poll();
+			if (head == null) {
+				return null;
+			}
+			final Document ret = head.doc;
+			lastScore = head.score;
+			if (head.advance()) {
+				active.add(head);
+			}
+			return ret;
+		}
+
+		@Override
+		public float score() {
+			return lastScore;
+		}
+
+		@Override
+		public long estimateTotalResults() {
+			long ret = 0;
+			for (final Head head : heads) {
+				ret += head.total;
+			}
+			return ret;
+		}
+
+		@Override
+		public void close() throws IOException {
+			IOException error = null;
+			for (final Head head : heads) {
+				try {
+					head.results.close();
+				} catch (final IOException ex) {
+					if (error == null) {
+						error = ex;
+					}
+				}
+			}
+			active.clear();
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+}
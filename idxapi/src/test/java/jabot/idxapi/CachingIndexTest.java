@@ -0,0 +1,290 @@
+package jabot.idxapi;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class CachingIndexTest {
+	@Mock Index delegate;
+	private CachingIndex fixture;
+	
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		fixture = new CachingIndex(delegate, 10, 1024*1024);
+	}
+	
+	@Test
+	public void test_cached_until_commit() throws IOException, DelayedIndexingException {
+		when(delegate.search(eq("q"), any(), eq(0))).thenReturn(results("pk1", "pk2"), results("pk3"));
+		
+		assertResults(fixture.search("q", 0), "pk1", "pk2");
+		assertResults(fixture.search("q", 0), "pk1", "pk2");
+		Assert.assertEquals(1, fixture.getMisses());
+		Assert.assertEquals(1, fixture.getHits());
+		
+		fixture.commit();
+		verify(delegate).commit();
+		
+		assertResults(fixture.search("q", 0), "pk3");
+		Assert.assertEquals(2, fixture.getMisses());
+		verify(delegate, times(2)).search(eq("q"), any(), eq(0));
+	}
+	
+	@Test
+	public void test_invalidate_caches_does_not_commit() throws IOException, DelayedIndexingException {
+		when(delegate.search(eq("q"), any(), eq(0))).thenReturn(results("pk1"), results("pk2"));
+		
+		assertResults(fixture.search("q", 0), "pk1");
+		fixture.invalidateCaches();
+		verify(delegate).invalidateCaches();
+		verify(delegate, never()).softCommit();
+		verify(delegate, never()).commit();
+		
+		assertResults(fixture.search("q", 0), "pk2");
+		Assert.assertEquals(2, fixture.getMisses());
+	}
+	
+	@Test
+	public void test_key_includes_fields_and_offset() throws IOException {
+		when(delegate.search(anyString(), any(), anyInt())).thenReturn(results("pk1"), results("pk2"), results("pk3"));
+		
+		assertResults(fixture.search("q", 0), "pk1");
+		assertResults(fixture.search("q", 1), "pk2");
+		assertResults(fixture.search("q", 0, new Field("name_str")), "pk3");
+		Assert.assertEquals(3, fixture.getMisses());
+		Assert.assertEquals(0, fixture.getHits());
+	}
+
+	@Test
+	public void test_key_includes_filters() throws IOException {
+		final List<String> filters = Arrays.asList("f");
+		when(delegate.search(eq("q"), any(), eq(0))).thenReturn(results("pk1"));
+		when(delegate.search(eq("q"), eq(filters), any(), eq(0))).thenReturn(results("pk2"));
+
+		assertResults(fixture.search("q", 0), "pk1");
+		assertResults(fixture.search("q", filters, Collections.emptyList(), 0), "pk2");
+		assertResults(fixture.search("q", filters, Collections.emptyList(), 0), "pk2");
+		Assert.assertEquals(2, fixture.getMisses());
+		Assert.assertEquals(1, fixture.getHits());
+		verify(delegate, times(1)).search(eq("q"), eq(filters), any(), eq(0));
+	}
+
+	@Test
+	public void test_lru_eviction() throws IOException {
+		fixture = new CachingIndex(delegate, 2, 1024*1024);
+		when(delegate.search(eq("q1"), any(), anyInt())).thenReturn(results("pk1"), results("pk1"));
+		when(delegate.search(eq("q2"), any(), anyInt())).thenReturn(results("pk2"));
+		when(delegate.search(eq("q3"), any(), anyInt())).thenReturn(results("pk3"));
+		
+		fixture.search("q1", 0).close();
+		fixture.search("q2", 0).close();
+		fixture.search("q1", 0).close();
+		fixture.search("q3", 0).close(); // evicts q2
+		Assert.assertEquals(2, fixture.getSize());
+		
+		fixture.search("q1", 0).close();
+		Assert.assertEquals(2, fixture.getHits());
+		verify(delegate, times(1)).search(eq("q1"), any(), anyInt());
+	}
+	
+	@Test
+	public void test_bytes_limit() throws IOException {
+		fixture = new CachingIndex(delegate, 10, 20);
+		when(delegate.search(eq("q1"), any(), anyInt())).thenReturn(results("0123456789"));
+		when(delegate.search(eq("q2"), any(), anyInt())).thenReturn(results("9876543210"));
+		
+		assertResults(fixture.search("q1", 0), "0123456789");
+		assertResults(fixture.search("q2", 0), "9876543210");
+		Assert.assertEquals(1, fixture.getSize());
+		Assert.assertEquals(20, fixture.getBytes());
+	}
+	
+	@Test
+	public void test_caches_only_what_was_read() throws IOException {
+		when(delegate.search(eq("q"), any(), eq(0))).thenReturn(results("pk1", "pk2", "pk3"));
+		when(delegate.search(eq("q"), any(), eq(1))).thenReturn(results("pk2", "pk3"));
+		
+		try (final SearchResults first = fixture.search("q", 0)) {
+			Assert.assertEquals(new Untokenized("pk1"), first.next().getPk());
+		}
+		Assert.assertEquals(6, fixture.getBytes());
+		
+		assertResults(fixture.search("q", 0), "pk1", "pk2", "pk3");
+		verify(delegate).search(eq("q"), any(), eq(1));
+	}
+	
+	@Test
+	public void test_readers_share_delegate_results() throws IOException {
+		when(delegate.search(eq("q"), any(), eq(0))).thenReturn(results("pk1", "pk2"));
+		
+		final SearchResults first = fixture.search("q", 0);
+		final SearchResults second = fixture.search("q", 0);
+		Assert.assertEquals(new Untokenized("pk1"), second.next().getPk());
+		assertResults(first, "pk1", "pk2");
+		Assert.assertEquals(new Untokenized("pk2"), second.next().getPk());
+		Assert.assertNull(second.next());
+		second.close();
+		
+		verify(delegate, times(1)).search(eq("q"), any(), anyInt());
+	}
+	
+	@Test
+	public void test_total_taken_after_first_page() throws IOException {
+		final SearchResults delegated = results("pk1", "pk2");
+		final SearchResults firstPageFirst = new SearchResults() {
+			private boolean fetched;
+			
+			@Override
+			public Document next() {
+				fetched = true;
+				return delegated.next();
+			}
+
+			@Override
+			public long estimateTotalResults() {
+				Assert.assertTrue("total asked before first page was fetched", fetched);
+				return delegated.estimateTotalResults();
+			}
+
+			@Override
+			public void close() {}
+		};
+		when(delegate.search(eq("q"), any(), eq(0))).thenReturn(firstPageFirst);
+		
+		try (final SearchResults results = fixture.search("q", 0)) {
+			Assert.assertEquals(new Untokenized("pk1"), results.next().getPk());
+			Assert.assertEquals(2, results.estimateTotalResults());
+		}
+		try (final SearchResults cached = fixture.search("q", 0)) {
+			Assert.assertEquals(2, cached.estimateTotalResults());
+		}
+	}
+	
+	@Test
+	public void test_reads_past_cached_documents_from_delegate() throws IOException {
+		fixture.setMaxDocsPerEntry(2);
+		when(delegate.search(eq("q"), any(), eq(0))).thenReturn(results("pk1", "pk2", "pk3"));
+		when(delegate.search(eq("q"), any(), eq(2))).thenReturn(results("pk3"));
+		
+		assertResults(fixture.search("q", 0), "pk1", "pk2", "pk3");
+		verify(delegate).search(eq("q"), any(), eq(2));
+	}
+	
+	@Test
+	public void test_concurrent_searches_coalesced() throws Exception {
+		final CountDownLatch searching = new CountDownLatch(1);
+		final CountDownLatch respond = new CountDownLatch(1);
+		when(delegate.search(eq("q"), any(), eq(0))).then(inv -> {
+			searching.countDown();
+			respond.await();
+			return results("pk1");
+		});
+		
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<?> first = executor.submit(() -> assertResults(fixture.search("q", 0), "pk1"));
+			Assert.assertTrue(searching.await(1, TimeUnit.MINUTES));
+			final Future<?> second = executor.submit(() -> assertResults(fixture.search("q", 0), "pk1"));
+			respond.countDown();
+			first.get(1, TimeUnit.MINUTES);
+			second.get(1, TimeUnit.MINUTES);
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		verify(delegate, times(1)).search(eq("q"), any(), eq(0));
+		Assert.assertEquals(1, fixture.getHits());
+		Assert.assertEquals(1, fixture.getMisses());
+	}
+	
+	@Test(expected=SearchException.class)
+	public void test_errors_not_cached() throws IOException {
+		when(delegate.search(eq("q"), any(), eq(0))).thenThrow(new SearchException("bad query"));
+		try {
+			fixture.search("q", 0);
+		} finally {
+			Assert.assertEquals(0, fixture.getSize());
+		}
+	}
+	
+	@Test
+	public void test_scores_cached() throws IOException {
+		when(delegate.search(eq("q"), any(), eq(0))).thenReturn(results("pk1", "pk2"));
+		assertResults(fixture.search("q", 0), "pk1", "pk2");
+		
+		try (final SearchResults cached = fixture.search("q", 0)) {
+			Assert.assertTrue(Float.isNaN(cached.score()));
+			cached.next();
+			Assert.assertEquals(2.0f, cached.score(), 0.0f);
+			cached.next();
+			Assert.assertEquals(1.0f, cached.score(), 0.0f);
+		}
+		Assert.assertEquals(1, fixture.getHits());
+	}
+	
+	private static void assertResults(final SearchResults results, final String ... pks) {
+		try {
+			for (final String pk : pks) {
+				Assert.assertEquals(new Untokenized(pk), results.next().getPk());
+			}
+			Assert.assertNull(results.next());
+			results.close();
+		} catch (final IOException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+	
+	private static SearchResults results(final String ... pks) {
+		final List<String> list = Collections.unmodifiableList(Arrays.asList(pks));
+		final Iterator<String> it = list.iterator();
+		return new SearchResults() {
+			private int returned;
+			
+			@Override
+			public Document next() {
+				if (it.hasNext()) {
+					returned++;
+					return new Document(new Untokenized(it.next()));
+				}
+				return null;
+			}
+
+			/** first document scores highest */
+			@Override
+			public float score() {
+				return returned == 0 ? Float.NaN : list.size()-returned+1;
+			}
+
+			@Override
+			public long estimateTotalResults() {
+				return list.size();
+			}
+
+			@Override
+			public void close() {}
+		};
+	}
+}
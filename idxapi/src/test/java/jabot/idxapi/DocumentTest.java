@@ -0,0 +1,71 @@
+package jabot.idxapi;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import jabot.frozen.FrozenException;
+
+public class DocumentTest {
+	private Document fixture;
+	
+	@Before
+	public void setUp() {
+		fixture = new Document(new Untokenized("pk"), 1);
+	}
+	
+	@Test
+	public void test_add_grows() {
+		for (int i=0; i<20; i++) {
+			fixture.add(new FieldValue("f"+i+"_int", i));
+		}
+		final List<FieldValue> fields = fixture.getFields();
+		Assert.assertEquals(20, fields.size());
+		for (int i=0; i<20; i++) {
+			Assert.assertEquals(i, fields.get(i).getValue());
+		}
+	}
+	
+	@Test
+	public void test_getValue() {
+		fixture.add(new FieldValue("a_int", 1));
+		Assert.assertEquals(1, fixture.getValue("a_int").getValue());
+		Assert.assertNull(fixture.getValue("b_int"));
+		
+		// index is rebuilt after add
+		fixture.add(new FieldValue("b_int", 2));
+		Assert.assertEquals(2, fixture.getValue("b_int").getValue());
+	}
+	
+	@Test
+	public void test_getValue_returns_first() {
+		fixture.add(new FieldValue("a_int", 1));
+		fixture.add(new FieldValue("a_int", 2));
+		Assert.assertEquals(1, fixture.getValue("a_int").getValue());
+	}
+	
+	@Test(expected=FrozenException.class)
+	public void test_frozen() {
+		fixture.freeze();
+		fixture.add(new FieldValue("a_int", 1));
+	}
+	
+	@Test
+	public void test_defrost() {
+		fixture.add(new FieldValue("a_int", 1));
+		fixture.freeze();
+		
+		final Document defrosted = fixture.defrost();
+		defrosted.add(new FieldValue("b_int", 2));
+		Assert.assertEquals(1, fixture.getFields().size());
+		Assert.assertEquals(2, defrosted.getFields().size());
+		Assert.assertEquals(1, defrosted.getValue("a_int").getValue());
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void test_fields_readonly() {
+		fixture.getFields().add(new FieldValue("a_int", 1));
+	}
+}
@@ -0,0 +1,56 @@
+package jabot.idxapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FacetTest {
+	@Test
+	public void test_merge_terms() {
+		final List<Facet> facets = Arrays.asList(Facet.terms("tag_str_f", 2));
+		final List<Map<String, Long>> merged = Facet.merge(facets, Arrays.asList(
+				Arrays.asList(counts("a", 5, "b", 4)),
+				Arrays.asList(counts("c", 6, "b", 3))
+		));
+		Assert.assertEquals(1, merged.size());
+		Assert.assertEquals(Arrays.asList("b", "c"), new ArrayList<>(merged.get(0).keySet()));
+		Assert.assertEquals(Long.valueOf(7), merged.get(0).get("b"));
+	}
+
+	@Test
+	public void test_merge_ranges() {
+		final List<Facet> facets = Arrays.asList(Facet.range("size_long", 0, 20, 10), Facet.terms("tag_str_f", 10));
+		final List<Map<String, Long>> merged = Facet.merge(facets, Arrays.asList(
+				Arrays.asList(counts("0", 1, "10", 2), counts()),
+				Arrays.asList(counts("0", 3, "10", 0), counts("a", 1))
+		));
+		Assert.assertEquals(counts("0", 4, "10", 2), merged.get(0));
+		Assert.assertEquals(Arrays.asList("0", "10"), new ArrayList<>(merged.get(0).keySet()));
+		Assert.assertEquals(counts("a", 1), merged.get(1));
+	}
+
+	@Test
+	public void test_withField() {
+		final Facet facet = Facet.range("size", 0, 20, 10);
+		Assert.assertEquals(Facet.range("size_long", 0, 20, 10), facet.withField("size_long"));
+		Assert.assertEquals("range(size, 0..20 by 10)", facet.toString());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_range_validated() {
+		Facet.range("size", 0, 20, 0);
+	}
+
+	private static Map<String, Long> counts(final Object ... keysAndCounts) {
+		final Map<String, Long> ret = new LinkedHashMap<>();
+		for (int i=0; i<keysAndCounts.length; i+=2) {
+			ret.put((String)keysAndCounts[i], ((Integer)keysAndCounts[i+1]).longValue());
+		}
+		return ret;
+	}
+}
@@ -13,6 +13,19 @@ public class FieldTest {
 		ModuleAssertions.enable(true);
 	}
 	
+	@Test
+	public void test_forName_interned() {
+		final Field field = Field.forName("basic_str_f_mv");
+		Assert.assertSame(field, Field.forName("basic_str_f_mv"));
+		Assert.assertEquals(new Field("basic", Type.STRING, Storage.STORED_INDEXED, true), field);
+		Assert.assertEquals("basic", field.getBasicName());
+	}
+	
+	@Test(expected=FieldFormatException.class)
+	public void test_forName_invalid() {
+		Field.forName("basic_!");
+	}
+	
 	@Test(expected=FieldFormatException.class)
 	public void testInvalidStorage() {
 		new Field("basic_binary_!_mv").validate();
@@ -0,0 +1,63 @@
+package jabot.idxapi;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuerySerializerTest {
+
+	@Test
+	public void test_term() {
+		Assert.assertEquals("f:abc", QuerySerializer.serialize(term("f", "abc")));
+	}
+
+	@Test
+	public void test_term_escaped() {
+		Assert.assertEquals("f:a\\ b\\:c\\\"\\(d\\)", QuerySerializer.serialize(term("f", "a b:c\"(d)")));
+	}
+
+	@Test
+	public void test_phrase() {
+		Assert.assertEquals("f:\"a b\\:c\"~2", QuerySerializer.serialize(new PhraseQuery(2, "f", "a", "b:c")));
+	}
+
+	@Test
+	public void test_boolean() {
+		final BooleanQuery inner = new BooleanQuery.Builder()
+				.add(term("f", "a"), Occur.SHOULD)
+				.add(term("f", "b"), Occur.SHOULD)
+				.setMinimumNumberShouldMatch(1)
+				.build();
+		final BooleanQuery query = new BooleanQuery.Builder()
+				.add(inner, Occur.MUST)
+				.add(new BoostQuery(term("g", "c"), 2f), Occur.FILTER)
+				.add(new MatchAllDocsQuery(), Occur.SHOULD)
+				.add(term("h", "d"), Occur.MUST_NOT)
+				.build();
+		Assert.assertEquals("(+(f:a f:b)~1 +(g:c)^2.0 *:* -h:d)", QuerySerializer.serialize(query));
+	}
+
+	@Test
+	public void test_wildcard_keeps_wildcards() {
+		Assert.assertEquals("f:a\\ b*c?", QuerySerializer.serialize(new WildcardQuery(new Term("f", "a b*c?"))));
+	}
+
+	@Test
+	public void test_range() {
+		final TermRangeQuery range = new TermRangeQuery("f", new BytesRef("a"), null, true, false);
+		Assert.assertEquals("f:[a TO *}", QuerySerializer.serialize(range));
+	}
+
+	private static TermQuery term(final String field, final String text) {
+		return new TermQuery(new Term(field, text));
+	}
+}
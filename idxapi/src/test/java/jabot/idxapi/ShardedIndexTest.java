@@ -0,0 +1,224 @@
+package jabot.idxapi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedIndexTest {
+	private ExecutorService executor;
+	private List<ListIndex> shards;
+	private ShardedIndex fixture;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(3);
+		shards = Arrays.asList(new ListIndex(), new ListIndex(), new ListIndex());
+		fixture = new ShardedIndex(shards, executor);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void test_store_routes_by_pk() {
+		for (int i=0; i<30; i++) {
+			fixture.store(new Document(new Untokenized("pk"+i)));
+		}
+		int total = 0;
+		for (int shard=0; shard<shards.size(); shard++) {
+			for (final String pk : shards.get(shard).docs.keySet()) {
+				Assert.assertEquals(shard, fixture.shardOf(new Untokenized(pk)));
+			}
+			Assert.assertFalse(shards.get(shard).docs.isEmpty());
+			total += shards.get(shard).docs.size();
+		}
+		Assert.assertEquals(30, total);
+
+		fixture.removeByKey(new Untokenized("pk0"));
+		Assert.assertEquals(29, fixture.count("*:*"));
+	}
+
+	@Test
+	public void test_commit_broadcast() throws DelayedIndexingException {
+		fixture.commit();
+		fixture.softCommit();
+		for (final ListIndex shard : shards) {
+			Assert.assertEquals(1, shard.commits);
+			Assert.assertEquals(1, shard.softCommits);
+		}
+	}
+
+	@Test
+	public void test_search_merged_by_score() throws IOException {
+		shards.get(0).add("a9", 9f).add("a5", 5f).add("a1", 1f);
+		shards.get(1).add("b8", 8f);
+		shards.get(2).add("c7", 7f).add("c6", 6f).add("c2", 2f);
+
+		try (final SearchResults results = fixture.search("*:*", 0)) {
+			Assert.assertEquals(new Untokenized("a9"), results.next().getPk());
+			Assert.assertEquals(9f, results.score(), 0f);
+			Assert.assertEquals(Arrays.asList("b8", "c7", "c6", "a5", "c2", "a1"), readAll(results));
+		}
+	}
+
+	@Test
+	public void test_first_pages_fetched_in_parallel() throws IOException {
+		shards.get(0).add("a1", 1f);
+		shards.get(1).add("b1", 1f);
+
+		fixture.search("*:*", 0).close();
+		for (final ListIndex shard : shards) {
+			Assert.assertNotNull(shard.fetchedBy);
+			Assert.assertNotSame(Thread.currentThread(), shard.fetchedBy);
+		}
+	}
+
+	@Test
+	public void test_search_offset_is_global() throws IOException {
+		shards.get(0).add("a1", 1f).add("a2", 2f).add("a3", 3f).add("a4", 4f).add("a5", 5f);
+		shards.get(1).add("b1", 1.5f);
+		shards.get(2).add("c1", 1.1f).add("c2", 2.1f).add("c3", 3.1f);
+
+		final List<String> all = readAll(fixture.search("*:*", 0));
+		Assert.assertEquals(Arrays.asList("a5", "a4", "c3", "a3", "c2", "a2", "b1", "c1", "a1"), all);
+
+		for (int offset=0; offset<=all.size()+1; offset++) {
+			try (final SearchResults results = fixture.search("*:*", offset)) {
+				Assert.assertEquals(all.size(), results.estimateTotalResults());
+				Assert.assertEquals(
+						"offset="+offset,
+						all.subList(Math.min(offset, all.size()), all.size()),
+						readAll(results)
+				);
+			}
+		}
+	}
+
+	@Test
+	public void test_facets_summed_over_shards() {
+		for (int i=0; i<30; i++) {
+			final Document doc = new Document(new Untokenized("pk"+i));
+			doc.add(new FieldValue("tag_str_f", i%3 == 0 ? "often" : i%10 == 1 ? "rare" : "sometimes"));
+			fixture.store(doc);
+		}
+
+		final List<Map<String, Long>> facets = fixture.facets(
+				"*:*", Collections.emptyList(), Arrays.asList(Facet.terms("tag_str_f", 2)));
+		Assert.assertEquals(1, facets.size());
+		Assert.assertEquals(Arrays.asList("sometimes", "often"), new ArrayList<>(facets.get(0).keySet()));
+		Assert.assertEquals(Long.valueOf(18), facets.get(0).get("sometimes"));
+		Assert.assertEquals(Long.valueOf(10), facets.get(0).get("often"));
+	}
+
+	private static List<String> readAll(final SearchResults results) throws IOException {
+		final List<String> ret = new ArrayList<>();
+		try {
+			Document doc = results.next();
+			while (doc != null) {
+				ret.add(doc.getPk().getText());
+				doc = results.next();
+			}
+		} finally {
+			results.close();
+		}
+		return ret;
+	}
+
+	/** Matches every document for any search, best score first */
+	private static final class ListIndex implements Index {
+		private final Map<String, Document> docs = new LinkedHashMap<>();
+		private final Map<String, Float> scores = new HashMap<>();
+		private int commits;
+		private int softCommits;
+		private volatile Thread fetchedBy;
+
+		public synchronized ListIndex add(final String pk, final float score) {
+			store(new Document(new Untokenized(pk)));
+			scores.put(pk, score);
+			return this;
+		}
+
+		@Override
+		public synchronized void store(final Document document) {
+			docs.put(document.getPk().getText(), document);
+		}
+
+		@Override
+		public synchronized void removeByKey(final Untokenized pk) {
+			docs.remove(pk.getText());
+		}
+
+		@Override
+		public synchronized void removeByQuery(final String search) {
+			docs.clear();
+		}
+
+		@Override
+		public synchronized void commit() {
+			commits++;
+		}
+
+		@Override
+		public synchronized void softCommit() {
+			softCommits++;
+		}
+
+		@Override
+		public synchronized SearchResults search(
+				final String search,
+				final Collection<Field> returnFields,
+				final int offset
+		) {
+			final List<Document> list = new ArrayList<>(docs.values());
+			final Map<String, Float> scored = new HashMap<>(scores);
+			list.sort(Comparator.comparing((Document doc) -> scoreOf(scored, doc)).reversed());
+			final List<Document> page = list.subList(Math.min(offset, list.size()), list.size());
+			final Iterator<Document> it = page.iterator();
+			return new SearchResults() {
+				private float score = Float.NaN;
+
+				@Override
+				public Document next() {
+					fetchedBy = Thread.currentThread();
+					final Document ret = it.hasNext() ? it.next() : null;
+					score = ret == null ? Float.NaN : scoreOf(scored, ret);
+					return ret;
+				}
+
+				@Override
+				public float score() {
+					return score;
+				}
+
+				@Override
+				public long estimateTotalResults() {
+					return list.size();
+				}
+
+				@Override
+				public void close() {}
+			};
+		}
+
+		private static float scoreOf(final Map<String, Float> scores, final Document doc) {
+			return scores.getOrDefault(doc.getPk().getText(), 0f);
+		}
+	}
+}
@@ -0,0 +1,882 @@
+package jabot.idxlucene;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jabot.idxapi.DelayedIndexingException;
+import jabot.idxapi.Document;
+import jabot.idxapi.Facet;
+import jabot.idxapi.Field;
+import jabot.idxapi.Field.Type;
+import jabot.idxapi.Index;
+import jabot.idxapi.IndexStats;
+import jabot.idxapi.IndexingException;
+import jabot.idxapi.SearchException;
+import jabot.idxapi.SearchResults;
+import jabot.idxapi.Untokenized;
+
+/**
+ * {@link Index} implemented directly on top of lucene, without solr. Uses same field naming conventions as idxsolr
+ * schema.xml, see {@link LuceneSchema}.
+ *
+ * Updates go straight to the {@link IndexWriter} which is tuned for bulk adds (large RAM buffer, no compound files).
+ * Searches are served by near-real-time searchers that are reopened by {@link #commit()} and {@link #softCommit()},
+ * the latter does not fsync the index.
+ *
+ * Whole contents of the index can be atomically replaced by indexes built offline, see 
+ * {@link #replaceWith(Collection)}. Searches keep seeing old documents until the replacement is committed.
+ *
+ * Facets are counted on a single searcher, without going through the search results. Range facets are a count 
+ * per range. Terms facets over untokenized, numeric and date fields count docvalues of the matching documents, 
+ * stored fields are never loaded. Terms facets over text fields count the tokens: they walk the postings of the field,
+ * which costs as much as the number of documents having the field, not the number of matches.
+ *
+ * @threadsafe
+ */
+public class LuceneIndex implements Index, Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(LuceneIndex.class);
+	static final double DEFAULT_RAMBUFFERMB=256;
+	private static final int DEFAULT_PAGESIZE=50;
+	private final LuceneSchema schema = new LuceneSchema();
+	private final Directory directory;
+	private final double ramBufferMB;
+	
+	/** read lock for all the regular operations, write lock for reopening the writer */
+	private final ReadWriteLock writerLock = new ReentrantReadWriteLock();
+	
+	/** @guardedby writerLock */
+	private IndexWriter writer;
+	
+	/** @guardedby writerLock */
+	private SearcherManager searchers;
+	private volatile int pageSize = DEFAULT_PAGESIZE;
+	
+	/** number of updates sent to the writer so far, tells optimization whether ingest raced it */
+	private final AtomicLong updates = new AtomicLong();
+
+	public LuceneIndex(final Path path) throws IOException {
+		this(path, DEFAULT_RAMBUFFERMB);
+	}
+
+	public LuceneIndex(final Path path, final double ramBufferMB) throws IOException {
+		Validate.notNull(path, "path cannot be null");
+
+		this.directory = new MMapDirectory(path);
+		this.ramBufferMB = ramBufferMB;
+		try {
+			openWriter();
+		} catch (final IOException | RuntimeException ex) {
+			directory.close();
+			throw ex;
+		}
+	}
+	
+	private void openWriter() throws IOException {
+		final IndexWriterConfig config = new IndexWriterConfig(schema.getIndexAnalyzer());
+		config.setOpenMode(OpenMode.CREATE_OR_APPEND);
+		config.setRAMBufferSizeMB(ramBufferMB);
+		config.setUseCompoundFile(false);
+		writer = new IndexWriter(directory, config);
+		try {
+			searchers = new SearcherManager(writer, null);
+		} catch (final IOException | RuntimeException ex) {
+			writer.close();
+			throw ex;
+		}
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public void setPageSize(final int pageSize) {
+		Validate.isTrue(pageSize > 0, "pageSize must be positive");
+
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public void store(final Document document) {
+		Validate.notNull(document, "document cannot be null");
+
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			updates.incrementAndGet();
+			writer.updateDocument(pkTerm(document.getPk()), schema.toLuceneDocument(document));
+		} catch (final IOException ex) {
+			throw new IndexingException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void removeByKey(final Untokenized pk) {
+		Validate.notNull(pk, "pk cannot be null");
+
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			updates.incrementAndGet();
+			writer.deleteDocuments(pkTerm(pk));
+		} catch (final IOException ex) {
+			throw new IndexingException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void removeByQuery(final String search) {
+		Validate.notNull(search, "search cannot be null");
+
+		try {
+			delete(parse(search));
+		} catch (final SearchException ex) {
+			throw new IndexingException(ex);
+		}
+	}
+
+	@Override
+	public void removeByQuery(final Query search) {
+		Validate.notNull(search, "search cannot be null");
+
+		try {
+			delete(analyze(search));
+		} catch (final SearchException ex) {
+			throw new IndexingException(ex);
+		}
+	}
+
+	private void delete(final Query query) {
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			updates.incrementAndGet();
+			writer.deleteDocuments(query);
+		} catch (final IOException ex) {
+			throw new IndexingException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void commit() throws DelayedIndexingException {
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			writer.commit();
+			searchers.maybeRefreshBlocking();
+		} catch (final IOException ex) {
+			throw new DelayedIndexingException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void softCommit() throws DelayedIndexingException {
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			searchers.maybeRefreshBlocking();
+		} catch (final IOException ex) {
+			throw new DelayedIndexingException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public SearchResults search(final String search, final Collection<Field> returnFields, final int offset) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		Validate.isTrue(offset >= 0, "offset cannot be negative");
+
+		return execute(positive(parse(search)), returnFields, offset);
+	}
+
+	@Override
+	public SearchResults search(final Query search, final Collection<Field> returnFields, final int offset) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		Validate.isTrue(offset >= 0, "offset cannot be negative");
+
+		return execute(positive(analyze(search)), returnFields, offset);
+	}
+
+	/** Filters become non-scoring clauses, which lucene caches in the query cache of the searcher */
+	@Override
+	public SearchResults search(
+			final String search, 
+			final Collection<String> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		Validate.isTrue(offset >= 0, "offset cannot be negative");
+
+		return execute(filtered(parse(search), parseAll(filters)), returnFields, offset);
+	}
+
+	@Override
+	public SearchResults search(
+			final Query search, 
+			final Collection<Query> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		Validate.isTrue(offset >= 0, "offset cannot be negative");
+
+		return execute(filtered(analyze(search), analyzeAll(filters)), returnFields, offset);
+	}
+
+	private SearchResults execute(final Query query, final Collection<Field> returnFields, final int offset) {
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			return new SearchResultsImpl(
+					query, LuceneSchema.fieldsToLoad(returnFields), offset, searchers, searchers.acquire());
+		} catch (final IOException ex) {
+			throw new SearchException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long count(final String search) {
+		Validate.notNull(search, "search cannot be null");
+
+		return countAnalyzed(positive(parse(search)));
+	}
+
+	@Override
+	public long count(final Query search) {
+		Validate.notNull(search, "search cannot be null");
+
+		return countAnalyzed(positive(analyze(search)));
+	}
+
+	@Override
+	public long count(final String search, final Collection<String> filters) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+
+		return countAnalyzed(filtered(parse(search), parseAll(filters)));
+	}
+
+	@Override
+	public long count(final Query search, final Collection<Query> filters) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+
+		return countAnalyzed(filtered(analyze(search), analyzeAll(filters)));
+	}
+
+	private long countAnalyzed(final Query query) {
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			final IndexSearcher searcher = searchers.acquire();
+			try {
+				return searcher.count(query);
+			} finally {
+				searchers.release(searcher);
+			}
+		} catch (final IOException ex) {
+			throw new SearchException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<Map<String, Long>> facets(final String search, final Collection<String> filters, 
+			final List<Facet> facets) 
+	{
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(facets, "facets cannot be null");
+
+		return facetsAnalyzed(filtered(parse(search), parseAll(filters)), facets);
+	}
+
+	@Override
+	public List<Map<String, Long>> facets(final Query search, final Collection<Query> filters, 
+			final List<Facet> facets) 
+	{
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(facets, "facets cannot be null");
+
+		return facetsAnalyzed(filtered(analyze(search), analyzeAll(filters)), facets);
+	}
+
+	private List<Map<String, Long>> facetsAnalyzed(final Query query, final List<Facet> facets) {
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			final IndexSearcher searcher = searchers.acquire();
+			try {
+				final List<Map<String, Long>> ret = new ArrayList<>(facets.size());
+				FixedBitSet [] matches = null;
+				for (final Facet facet : facets) {
+					if (facet.getKind() == Facet.Kind.RANGE) {
+						ret.add(countRanges(searcher, query, facet));
+					} else {
+						if (matches == null) {
+							matches = collectMatches(searcher, query);
+						}
+						ret.add(Facet.top(countTerms(searcher, matches, facet.getField()), facet.getLimit()));
+					}
+				}
+				return ret;
+			} finally {
+				searchers.release(searcher);
+			}
+		} catch (final IOException ex) {
+			throw new SearchException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Map<String, Long> countRanges(final IndexSearcher searcher, final Query query, final Facet facet) 
+			throws IOException 
+	{
+		final Map<String, Long> ret = new LinkedHashMap<>();
+		for (long start = facet.getStart(); start < facet.getEnd(); start += facet.getGap()) {
+			final long end = Math.min(start + facet.getGap(), facet.getEnd());
+			final Query range = parse(facet.getField()+":["+start+" TO "+end+"}");
+			ret.put(String.valueOf(start), (long)searcher.count(filtered(query, Collections.singletonList(range))));
+		}
+		return ret;
+	}
+
+	/** @return @notnull matching documents of each leaf of the searcher, by leaf ord */
+	private static FixedBitSet [] collectMatches(final IndexSearcher searcher, final Query query) throws IOException {
+		final FixedBitSet [] ret = new FixedBitSet[searcher.getIndexReader().leaves().size()];
+		searcher.search(query, new SimpleCollector() {
+			private FixedBitSet leaf;
+
+			@Override
+			protected void doSetNextReader(final LeafReaderContext context) {
+				leaf = new FixedBitSet(context.reader().maxDoc());
+				ret[context.ord] = leaf;
+			}
+
+			@Override
+			public void collect(final int doc) {
+				leaf.set(doc);
+			}
+
+			@Override
+			public boolean needsScores() {
+				return false;
+			}
+		});
+		return ret;
+	}
+
+	private static Map<String, Long> countTerms(final IndexSearcher searcher, final FixedBitSet [] matches, 
+			final String field) throws IOException 
+	{
+		final Type type = LuceneSchema.typeOf(field);
+		Validate.isTrue(type != Type.BINARY, "Binary fields cannot be faceted: %s", field);
+		final Map<String, Long> ret = new HashMap<>();
+		for (final LeafReaderContext context : searcher.getIndexReader().leaves()) {
+			final FixedBitSet leafMatches = matches[context.ord];
+			if (leafMatches == null || leafMatches.cardinality() == 0) {
+				continue;
+			}
+			if (LuceneSchema.isNumeric(type)) {
+				countNumeric(context.reader(), leafMatches, field, type, ret);
+			} else if (LuceneSchema.isFacetedByDocValues(type)) {
+				countSorted(context.reader(), leafMatches, field, ret);
+			} else {
+				countPostings(context.reader(), leafMatches, field, ret);
+			}
+		}
+		return ret;
+	}
+
+	private static void countPostings(final LeafReader reader, final FixedBitSet matches, final String field, 
+			final Map<String, Long> counts) throws IOException 
+	{
+		final Terms terms = reader.terms(field);
+		if (terms == null) {
+			return;
+		}
+		final TermsEnum it = terms.iterator();
+		PostingsEnum postings = null;
+		BytesRef term = it.next();
+		while (term != null) {
+			postings = it.postings(postings, PostingsEnum.NONE);
+			long count = 0;
+			for (int doc = postings.nextDoc(); doc != PostingsEnum.NO_MORE_DOCS; doc = postings.nextDoc()) {
+				if (matches.get(doc)) {
+					count++;
+				}
+			}
+			if (count > 0) {
+				counts.merge(term.utf8ToString(), count, Long::sum);
+			}
+			term = it.next();
+		}
+	}
+
+	/** Counts each value once per document, even if document has it several times */
+	private static void countSorted(final LeafReader reader, final FixedBitSet matches, final String field, 
+			final Map<String, Long> counts) throws IOException 
+	{
+		final SortedSetDocValues values = DocValues.getSortedSet(reader, field);
+		final long [] ordCounts = new long[(int)values.getValueCount()];
+		for (int doc = nextMatch(matches, 0); doc != DocIdSetIterator.NO_MORE_DOCS; doc = nextMatch(matches, doc+1)) {
+			if (values.advanceExact(doc)) {
+				for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+					ordCounts[(int)ord]++;
+				}
+			}
+		}
+		for (int ord=0; ord<ordCounts.length; ord++) {
+			if (ordCounts[ord] > 0) {
+				counts.merge(values.lookupOrd(ord).utf8ToString(), ordCounts[ord], Long::sum);
+			}
+		}
+	}
+
+	/** Counts each value once per document, values of a document come sorted */
+	private static void countNumeric(final LeafReader reader, final FixedBitSet matches, final String field, 
+			final Type type, final Map<String, Long> counts) throws IOException 
+	{
+		final SortedNumericDocValues values = DocValues.getSortedNumeric(reader, field);
+		final Map<Long, Long> valueCounts = new HashMap<>();
+		for (int doc = nextMatch(matches, 0); doc != DocIdSetIterator.NO_MORE_DOCS; doc = nextMatch(matches, doc+1)) {
+			if (values.advanceExact(doc)) {
+				long previous = 0;
+				for (int i=0; i<values.docValueCount(); i++) {
+					final long value = values.nextValue();
+					if (i == 0 || value != previous) {
+						valueCounts.merge(value, 1L, Long::sum);
+					}
+					previous = value;
+				}
+			}
+		}
+		for (final Map.Entry<Long, Long> count : valueCounts.entrySet()) {
+			counts.merge(String.valueOf(LuceneSchema.fromDocValue(type, count.getKey())), count.getValue(), Long::sum);
+		}
+	}
+
+	private static int nextMatch(final FixedBitSet matches, final int from) {
+		return from < matches.length() ? matches.nextSetBit(from) : DocIdSetIterator.NO_MORE_DOCS;
+	}
+
+	/**
+	 * Expunges deletes and force-merges the index while searches and updates go on. Forced merges are throttled by 
+	 * the merge scheduler to maxMBPerSec. Same as solr backend, does nothing while there are updates not committed 
+	 * yet, and does not commit the merged index if updates came while merging: that would commit ingest half-way. 
+	 * Merged segments are then committed by the next commit of the ingest
+	 */
+	@Override
+	public void optimize(final int maxSegments, final double maxMBPerSec) throws DelayedIndexingException {
+		Validate.isTrue(maxSegments > 0, "maxSegments must be positive");
+		Validate.isTrue(maxMBPerSec >= 0, "maxMBPerSec cannot be negative");
+
+		final long updatesBefore;
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			if (writer.hasUncommittedChanges()) {
+				LOG.info("Index has pending updates, not optimizing");
+				return;
+			}
+			updatesBefore = updates.get();
+			final MergeScheduler scheduler = writer.getConfig().getMergeScheduler();
+			final ConcurrentMergeScheduler cms = scheduler instanceof ConcurrentMergeScheduler 
+					? (ConcurrentMergeScheduler)scheduler 
+					: null;
+			if (cms != null) {
+				cms.setForceMergeMBPerSec(maxMBPerSec == 0 ? Double.POSITIVE_INFINITY : maxMBPerSec);
+			}
+			try {
+				writer.forceMergeDeletes(true);
+				writer.forceMerge(maxSegments, true);
+			} finally {
+				if (cms != null) {
+					cms.setForceMergeMBPerSec(Double.POSITIVE_INFINITY);
+				}
+			}
+		} catch (final IOException ex) {
+			throw new DelayedIndexingException(ex);
+		} finally {
+			lock.unlock();
+		}
+		commitOptimized(updatesBefore);
+	}
+
+	/** Updates take the read lock, so none can slip in between the check and the commit */
+	private void commitOptimized(final long updatesBefore) throws DelayedIndexingException {
+		final Lock lock = writerLock.writeLock();
+		lock.lock();
+		try {
+			if (updates.get() == updatesBefore) {
+				writer.commit();
+				searchers.maybeRefreshBlocking();
+			} else {
+				LOG.info("Index was updated while optimizing, optimized segments are left for the next commit");
+			}
+		} catch (final IOException ex) {
+			throw new DelayedIndexingException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean hasPendingUpdates() {
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			return writer.hasUncommittedChanges();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public IndexStats stats() {
+		final Lock lock = writerLock.readLock();
+		lock.lock();
+		try {
+			final IndexSearcher searcher = searchers.acquire();
+			try {
+				final IndexReader reader = searcher.getIndexReader();
+				return new IndexStats(
+						reader.numDocs(),
+						reader.maxDoc(),
+						reader.numDeletedDocs(),
+						reader.leaves().size()
+				);
+			} finally {
+				searchers.release(searcher);
+			}
+		} catch (final IOException ex) {
+			throw new SearchException(ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Atomically replaces all documents of this index with documents of given indexes: deletes everything and adds 
+	 * the segments of the given indexes in a single commit. Until then searches see the old documents. 
+	 * 
+	 * Updates made concurrently with the replacement are lost. If the replacement fails, index is rolled back 
+	 * to the last commit.
+	 * 
+	 * @param @notnull built folders of closed lucene indexes with same schema, for ex. built by 
+	 * {@link LuceneIndexBuilder}
+	 * @throws IndexingException if index could not be replaced
+	 */
+	public void replaceWith(final Collection<Path> built) {
+		Validate.notNull(built, "built cannot be null");
+		
+		final Directory [] dirs = new Directory[built.size()];
+		final Lock lock = writerLock.writeLock();
+		lock.lock();
+		try {
+			int i = 0;
+			for (final Path path : built) {
+				dirs[i++] = FSDirectory.open(path);
+			}
+			writer.deleteAll();
+			writer.addIndexes(dirs);
+			writer.commit();
+			searchers.maybeRefreshBlocking();
+		} catch (final IOException | RuntimeException ex) {
+			rollback();
+			throw new IndexingException("Cannot replace index with "+built, ex);
+		} finally {
+			lock.unlock();
+			for (final Directory dir : dirs) {
+				closeQuietly(dir);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		final Lock lock = writerLock.writeLock();
+		lock.lock();
+		try {
+			searchers.close();
+		} finally {
+			try {
+				writer.close();
+			} finally {
+				lock.unlock();
+				directory.close();
+			}
+		}
+	}
+	
+	/** Discards uncommitted changes by reopening the writer, the only way to undo {@link IndexWriter#deleteAll()} */
+	private void rollback() {
+		try {
+			searchers.close();
+		} catch (final IOException ex) {
+			LOG.warn("Error closing searchers {}", ex);
+		}
+		try {
+			writer.rollback();
+			openWriter();
+		} catch (final IOException ex) {
+			throw new IndexingException("Cannot reopen index after failed replacement, restart required", ex);
+		}
+	}
+	
+	private static void closeQuietly(final Directory dir) {
+		if (dir != null) {
+			try {
+				dir.close();
+			} catch (final IOException ex) {
+				LOG.warn("Error closing {} {}", dir, ex);
+			}
+		}
+	}
+
+	private Query parse(final String search) {
+		try {
+			return new LuceneQueryParser(schema).parse(search);
+		} catch (final ParseException ex) {
+			throw new SearchException(ex);
+		}
+	}
+
+	/** Query objects skip the parsing, but their terms still have to go through the analyzers */
+	private Query analyze(final Query search) {
+		try {
+			return new LuceneQueryParser(schema).analyze(search);
+		} catch (final ParseException ex) {
+			throw new SearchException(ex);
+		}
+	}
+
+	private List<Query> parseAll(final Collection<String> filters) {
+		final List<Query> ret = new ArrayList<>(filters.size());
+		for (final String filter : filters) {
+			ret.add(parse(filter));
+		}
+		return ret;
+	}
+
+	private List<Query> analyzeAll(final Collection<Query> filters) {
+		final List<Query> ret = new ArrayList<>(filters.size());
+		for (final Query filter : filters) {
+			ret.add(analyze(filter));
+		}
+		return ret;
+	}
+
+	private static Query filtered(final Query query, final List<Query> filters) {
+		if (filters.isEmpty()) {
+			return positive(query);
+		}
+		final BooleanQuery.Builder b = new BooleanQuery.Builder();
+		b.add(positive(query), Occur.MUST);
+		for (final Query filter : filters) {
+			b.add(filter, Occur.FILTER);
+		}
+		return b.build();
+	}
+
+	/** 
+	 * Lucene boolean query with no required and no optional clauses matches nothing, while solr (and users) expect 
+	 * "-x" to match everything but x
+	 */
+	private static Query positive(final Query query) {
+		if (query instanceof BooleanQuery) {
+			final BooleanQuery bq = (BooleanQuery)query;
+			for (final BooleanClause clause : bq.clauses()) {
+				if (!clause.isProhibited()) {
+					return query;
+				}
+			}
+			if (!bq.clauses().isEmpty()) {
+				final BooleanQuery.Builder b = new BooleanQuery.Builder();
+				for (final BooleanClause clause : bq.clauses()) {
+					b.add(clause);
+				}
+				b.add(new MatchAllDocsQuery(), Occur.MUST);
+				return b.build();
+			}
+		}
+		return query;
+	}
+
+	private static Term pkTerm(final Untokenized pk) {
+		return new Term(LuceneSchema.PK, pk.getText());
+	}
+
+	private final class SearchResultsImpl implements SearchResults {
+		private final Query query;
+		private final Set<String> fieldsToLoad;
+		
+		/** searcher must be released to the manager it came from, even if the writer was reopened since */
+		private final SearcherManager manager;
+
+		/** released and set to null once exhausted or closed */
+		private IndexSearcher searcher;
+		private int toSkip;
+		private TopDocs page;
+		private int pos;
+		private ScoreDoc last;
+		private long totalHits = -1;
+
+		public SearchResultsImpl(
+				final Query query,
+				final Set<String> fieldsToLoad,
+				final int offset,
+				final SearcherManager manager,
+				final IndexSearcher searcher
+		) {
+			this.query = query;
+			this.fieldsToLoad = fieldsToLoad;
+			this.manager = manager;
+			this.toSkip = offset;
+			this.searcher = searcher;
+		}
+
+		@Override
+		public Document next() {
+			try {
+				while (searcher != null) {
+					if (page == null || pos >= page.scoreDocs.length) {
+						if (!fetch()) {
+							release();
+							return null;
+						}
+					}
+					final ScoreDoc scoreDoc = page.scoreDocs[pos++];
+					last = scoreDoc;
+					if (toSkip > 0) {
+						toSkip--;
+					} else {
+						return schema.toApiDocument(searcher.doc(scoreDoc.doc, fieldsToLoad));
+					}
+				}
+				return null;
+			} catch (final IOException ex) {
+				throw new SearchException(ex);
+			}
+		}
+
+		@Override
+		public long estimateTotalResults() {
+			if (totalHits < 0) {
+				if (searcher == null) {
+					return 0;
+				}
+				try {
+					totalHits = searcher.count(query);
+				} catch (final IOException ex) {
+					throw new SearchException(ex);
+				}
+			}
+			return totalHits;
+		}
+
+		@Override
+		public float score() {
+			return last == null || toSkip > 0 ? Float.NaN : last.score;
+		}
+
+		@Override
+		public void close() throws IOException {
+			release();
+		}
+
+		private boolean fetch() throws IOException {
+			if (page != null && page.scoreDocs.length == 0) {
+				return false;
+			}
+			if (last == null) {
+				page = searcher.search(query, toSkip+pageSize);
+			} else {
+				page = searcher.searchAfter(last, query, pageSize);
+			}
+			totalHits = page.totalHits;
+			pos = 0;
+			return page.scoreDocs.length > 0;
+		}
+
+		private void release() {
+			if (searcher != null) {
+				try {
+					manager.release(searcher);
+				} catch (final IOException ex) {
+					LOG.warn("Error releasing searcher {}", ex);
+				}
+				searcher = null;
+			}
+		}
+	}
+}
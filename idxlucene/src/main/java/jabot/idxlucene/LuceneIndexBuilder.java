@@ -0,0 +1,120 @@
+package jabot.idxlucene;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jabot.idxapi.DelayedIndexingException;
+import jabot.idxapi.Index;
+
+/**
+ * Builds a lucene index offline in several independent partitions, so that documents can be added to them from
+ * different threads without contention, then swaps the result into the live index at once:
+ *
+ * <pre>
+ * try (final LuceneIndexBuilder builder = new LuceneIndexBuilder(workDir, 4)) {
+ *   // feed builder.getPartition(0..3) from 4 threads
+ *   builder.swapInto(live);
+ * }
+ * </pre>
+ *
+ * Partitions live in workDir/part-N folders, which are deleted when the builder is closed.
+ *
+ * @threadsafe as long as each partition is used by a single thread
+ */
+public class LuceneIndexBuilder implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(LuceneIndexBuilder.class);
+	private final Path workDir;
+	private final List<Path> paths;
+	private final List<LuceneIndex> partitions;
+	private boolean closed;
+
+	public LuceneIndexBuilder(final Path workDir, final int partitions) throws IOException {
+		this(workDir, partitions, LuceneIndex.DEFAULT_RAMBUFFERMB);
+	}
+
+	/**
+	 * @param @notnull workDir folder for the partitions, must not contain anything else
+	 * @param partitions number of partitions, typically number of threads building the index
+	 * @param ramBufferMB RAM buffer of EACH partition
+	 */
+	public LuceneIndexBuilder(final Path workDir, final int partitions, final double ramBufferMB) throws IOException {
+		Validate.notNull(workDir, "workDir cannot be null");
+		Validate.isTrue(partitions > 0, "partitions must be positive");
+
+		this.workDir = workDir;
+		this.paths = new ArrayList<>(partitions);
+		final List<LuceneIndex> created = new ArrayList<>(partitions);
+		try {
+			for (int i=0; i<partitions; i++) {
+				final Path path = workDir.resolve("part-"+i);
+				Files.createDirectories(path);
+				paths.add(path);
+				created.add(new LuceneIndex(path, ramBufferMB));
+			}
+		} catch (final IOException | RuntimeException ex) {
+			closeAll(created);
+			throw ex;
+		}
+		this.partitions = Collections.unmodifiableList(created);
+	}
+
+	public int getPartitionCount() {
+		return partitions.size();
+	}
+
+	public Index getPartition(final int partition) {
+		return partitions.get(partition);
+	}
+
+	/**
+	 * Commits and closes all the partitions, then replaces contents of the live index with them, see
+	 * {@link LuceneIndex#replaceWith(java.util.Collection)}. Builder can only be closed after that.
+	 *
+	 * @throws DelayedIndexingException if partitions could not be committed, live index is not touched then
+	 */
+	public synchronized void swapInto(final LuceneIndex live) throws DelayedIndexingException, IOException {
+		Validate.notNull(live, "live cannot be null");
+		Validate.isTrue(!closed, "builder is closed");
+
+		for (final LuceneIndex partition : partitions) {
+			partition.commit();
+		}
+		closed = true;
+		closeAll(partitions);
+		live.replaceWith(paths);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			closeAll(partitions);
+		}
+		if (Files.exists(workDir)) {
+			try (final Stream<Path> files = Files.walk(workDir)) {
+				files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+			}
+		}
+	}
+
+	private static void closeAll(final List<LuceneIndex> indexes) {
+		for (final LuceneIndex index : indexes) {
+			try {
+				index.close();
+			} catch (final IOException | RuntimeException ex) {
+				LOG.warn("Error closing partition", ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package jabot.idxlucene;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.util.BytesRef;
+
+import jabot.idxapi.Field.Type;
+
+/**
+ * Lucene classic query parser that understands field types encoded in field names, so that
+ * <code>integer_int:1</code> or <code>lng_long:[100 TO *]</code> search point fields same way solr would.
+ *
+ * Not threadsafe, create one per query
+ */
+class LuceneQueryParser extends QueryParser {
+
+	public LuceneQueryParser(final LuceneSchema schema) {
+		super(LuceneSchema.TEXT, schema.getQueryAnalyzer());
+	}
+
+	/**
+	 * Analyzes terms of an already parsed query according to their field types, exactly as parsing the string form
+	 * of the query would, but without the string round trip. Term and phrase queries are analyzed, term ranges on 
+	 * numeric fields become point ranges, anything else is taken as is.
+	 *
+	 * @param @notnull query
+	 * @return @notnull
+	 */
+	public Query analyze(final Query query) throws ParseException {
+		final Query ret = analyzeOrNull(query);
+		return ret == null ? new MatchNoDocsQuery() : ret;
+	}
+
+	/** @return null if nothing is left after analysis (for ex. only stopwords), same as classic parser */
+	private Query analyzeOrNull(final Query query) throws ParseException {
+		if (query instanceof TermQuery) {
+			final Term term = ((TermQuery)query).getTerm();
+			return getFieldQuery(term.field(), term.text(), false);
+		} else if (query instanceof PhraseQuery) {
+			final PhraseQuery phrase = (PhraseQuery)query;
+			final Term [] terms = phrase.getTerms();
+			if (terms.length == 0) {
+				return query;
+			}
+			final StringBuilder text = new StringBuilder();
+			for (final Term term : terms) {
+				if (text.length() > 0) {
+					text.append(' ');
+				}
+				text.append(term.text());
+			}
+			return getFieldQuery(terms[0].field(), text.toString(), phrase.getSlop());
+		} else if (query instanceof BooleanQuery) {
+			final BooleanQuery bool = (BooleanQuery)query;
+			final BooleanQuery.Builder b = new BooleanQuery.Builder();
+			b.setMinimumNumberShouldMatch(bool.getMinimumNumberShouldMatch());
+			boolean empty = true;
+			for (final BooleanClause clause : bool.clauses()) {
+				final Query analyzed = analyzeOrNull(clause.getQuery());
+				if (analyzed != null) {
+					b.add(analyzed, clause.getOccur());
+					empty = false;
+				}
+			}
+			return empty ? null : b.build();
+		} else if (query instanceof TermRangeQuery) {
+			final TermRangeQuery range = (TermRangeQuery)query;
+			return getRangeQuery(
+					range.getField(), 
+					range.getLowerTerm() == null ? null : range.getLowerTerm().utf8ToString(),
+					range.getUpperTerm() == null ? null : range.getUpperTerm().utf8ToString(),
+					range.includesLower(), 
+					range.includesUpper()
+			);
+		} else if (query instanceof BoostQuery) {
+			final BoostQuery boost = (BoostQuery)query;
+			final Query analyzed = analyzeOrNull(boost.getQuery());
+			return analyzed == null ? null : new BoostQuery(analyzed, boost.getBoost());
+		} else {
+			return query;
+		}
+	}
+
+	@Override
+	protected Query getFieldQuery(final String field, final String queryText, final boolean quoted)
+			throws ParseException
+	{
+		try {
+			switch(LuceneSchema.typeOf(field)) {
+			case UNTOKENIZED: return new TermQuery(new Term(field, queryText));
+			case BINARY: return new TermQuery(new Term(field, new BytesRef(queryText)));
+			case INT: return IntPoint.newExactQuery(field, Integer.parseInt(queryText));
+			case LONG: return LongPoint.newExactQuery(field, Long.parseLong(queryText));
+			case FLOAT: return FloatPoint.newExactQuery(field, Float.parseFloat(queryText));
+			case DOUBLE: return DoublePoint.newExactQuery(field, Double.parseDouble(queryText));
+			case DATETIME: return LongPoint.newExactQuery(field, parseDate(queryText));
+			default: return super.getFieldQuery(field, queryText, quoted);
+			}
+		} catch (final NumberFormatException | DateTimeParseException ex) {
+			throw new ParseException("Invalid value for "+field+": "+queryText);
+		}
+	}
+
+	@Override
+	protected Query getRangeQuery(
+			final String field,
+			final String part1,
+			final String part2,
+			final boolean startInclusive,
+			final boolean endInclusive
+	) throws ParseException {
+		final boolean openStart = part1 == null || "*".equals(part1);
+		final boolean openEnd = part2 == null || "*".equals(part2);
+		try {
+			switch(LuceneSchema.typeOf(field)) {
+			case INT: {
+				int lower = openStart ? Integer.MIN_VALUE : Integer.parseInt(part1);
+				int upper = openEnd ? Integer.MAX_VALUE : Integer.parseInt(part2);
+				if (!openStart && !startInclusive) {
+					lower = Math.addExact(lower, 1);
+				}
+				if (!openEnd && !endInclusive) {
+					upper = Math.addExact(upper, -1);
+				}
+				return IntPoint.newRangeQuery(field, lower, upper);
+			}
+			case LONG:
+			case DATETIME: {
+				final boolean date = LuceneSchema.typeOf(field) == Type.DATETIME;
+				long lower = openStart ? Long.MIN_VALUE : date ? parseDate(part1) : Long.parseLong(part1);
+				long upper = openEnd ? Long.MAX_VALUE : date ? parseDate(part2) : Long.parseLong(part2);
+				if (!openStart && !startInclusive) {
+					lower = Math.addExact(lower, 1);
+				}
+				if (!openEnd && !endInclusive) {
+					upper = Math.addExact(upper, -1);
+				}
+				return LongPoint.newRangeQuery(field, lower, upper);
+			}
+			case FLOAT: {
+				float lower = openStart ? Float.NEGATIVE_INFINITY : Float.parseFloat(part1);
+				float upper = openEnd ? Float.POSITIVE_INFINITY : Float.parseFloat(part2);
+				if (!openStart && !startInclusive) {
+					lower = FloatPoint.nextUp(lower);
+				}
+				if (!openEnd && !endInclusive) {
+					upper = FloatPoint.nextDown(upper);
+				}
+				return FloatPoint.newRangeQuery(field, lower, upper);
+			}
+			case DOUBLE: {
+				double lower = openStart ? Double.NEGATIVE_INFINITY : Double.parseDouble(part1);
+				double upper = openEnd ? Double.POSITIVE_INFINITY : Double.parseDouble(part2);
+				if (!openStart && !startInclusive) {
+					lower = DoublePoint.nextUp(lower);
+				}
+				if (!openEnd && !endInclusive) {
+					upper = DoublePoint.nextDown(upper);
+				}
+				return DoublePoint.newRangeQuery(field, lower, upper);
+			}
+			default:
+				return super.getRangeQuery(
+						field,
+						openStart ? null : part1,
+						openEnd ? null : part2,
+						startInclusive,
+						endInclusive
+				);
+			}
+		} catch (final NumberFormatException | DateTimeParseException | ArithmeticException ex) {
+			throw new ParseException("Invalid range for "+field+": "+part1+" TO "+part2);
+		}
+	}
+
+	private static long parseDate(final String text) {
+		return Instant.parse(text).toEpochMilli();
+	}
+}
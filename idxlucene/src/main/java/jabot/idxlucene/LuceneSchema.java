@@ -0,0 +1,450 @@
+package jabot.idxlucene;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.core.StopFilterFactory;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.icu.ICUFoldingFilterFactory;
+import org.apache.lucene.analysis.icu.ICUTransformFilterFactory;
+import org.apache.lucene.analysis.icu.segmentation.ICUTokenizerFactory;
+import org.apache.lucene.analysis.miscellaneous.WordDelimiterFilterFactory;
+import org.apache.lucene.analysis.ru.RussianAnalyzer;
+import org.apache.lucene.analysis.synonym.SynonymFilterFactory;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jabot.idxapi.Binary;
+import jabot.idxapi.Document;
+import jabot.idxapi.Field;
+import jabot.idxapi.Field.Storage;
+import jabot.idxapi.Field.Type;
+import jabot.idxapi.FieldFormatException;
+import jabot.idxapi.FieldValue;
+import jabot.idxapi.FieldValueInvalidException;
+import jabot.idxapi.IndexingException;
+import jabot.idxapi.Untokenized;
+
+/**
+ * Maps {@link Document}s to lucene documents the same way idxsolr schema.xml does: field type and storage are
+ * derived from the {@link Field} name, field values are copied into catch-all <code>text</code>,
+ * <code>metadata</code> and <code>metadataRu</code> fields, analyzers mirror the solr field types.
+ *
+ * Indexed untokenized, numeric and date values also get docvalues, so that terms facets over them are counted 
+ * without loading documents, see {@link #isFacetedByDocValues(Type)}.
+ *
+ * @threadsafe
+ */
+final class LuceneSchema {
+	private static final Logger LOG = LoggerFactory.getLogger(LuceneSchema.class);
+	public static final String PK = "pk";
+	public static final String TEXT = "text";
+	public static final String METADATA = "metadata";
+	public static final String METADATA_RU = "metadataRu";
+	private static final int TEXT_MAXCHARS = 800;
+	private static final String STOPWORDS = "/idxlucene/stopwords.txt";
+	private static final String SYNONYMS = "/idxlucene/synonyms.txt";
+
+	private static final Map<String, Type> SPECIAL_FIELDS = new HashMap<>();
+	static {
+		SPECIAL_FIELDS.put(PK, Type.UNTOKENIZED);
+		SPECIAL_FIELDS.put(TEXT, Type.STRING);
+		SPECIAL_FIELDS.put(METADATA, Type.STRING);
+		SPECIAL_FIELDS.put(METADATA_RU, Type.STRING_RU);
+	}
+
+	/** Same as copyFields in schema.xml */
+	private static final Map<String, List<CopyField>> COPY_FIELDS = new HashMap<>();
+	static {
+		copyField("filename_str_f", METADATA, 256);
+		copyField("location_str", METADATA, 4096);
+		copyField("isbn_str_f", METADATA, 256);
+		copyField("title_str_f", METADATA, 4096);
+		copyField("annotation_str", METADATA, 4096);
+		copyField("autors_str_f", METADATA, 4096);
+
+		copyField("filename_str_f", METADATA_RU, 256);
+		copyField("filenameRu_strru", METADATA_RU, 256);
+		copyField("location_str", METADATA_RU, 4096);
+		copyField("isbn_str_f", METADATA_RU, 256);
+		copyField("title_str_f", METADATA_RU, 4096);
+		copyField("titleRu_strru", METADATA_RU, 4096);
+		copyField("annotation_str", METADATA_RU, 4096);
+		copyField("annotationRu_strru", METADATA_RU, 4096);
+		copyField("autors_str_f", METADATA_RU, 4096);
+		copyField("autorsRu_str", METADATA_RU, 4096);
+	}
+
+	private final Analyzer indexAnalyzer;
+	private final Analyzer queryAnalyzer;
+
+	public LuceneSchema() {
+		try {
+			final Analyzer russian = new RussianAnalyzer();
+			final Analyzer keyword = new KeywordAnalyzer();
+			this.indexAnalyzer = new FieldTypeAnalyzer(strIndexAnalyzer(), russian, keyword);
+			this.queryAnalyzer = new FieldTypeAnalyzer(strQueryAnalyzer(), russian, keyword);
+		} catch (final IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	public Analyzer getIndexAnalyzer() {
+		return indexAnalyzer;
+	}
+
+	public Analyzer getQueryAnalyzer() {
+		return queryAnalyzer;
+	}
+
+	/**
+	 * @param @notnull fieldName
+	 * @return @notnull type of the field, fields not following naming convention are strings (as in schema.xml)
+	 */
+	public static Type typeOf(final String fieldName) {
+		final Type special = SPECIAL_FIELDS.get(fieldName);
+		if (special != null) {
+			return special;
+		}
+		try {
+			return Field.forName(fieldName).getType();
+		} catch (final FieldFormatException ex) {
+			return Type.STRING;
+		}
+	}
+
+	/** @return @notnull names of the lucene stored fields to load */
+	public static Set<String> fieldsToLoad(final Collection<Field> returnFields) {
+		final Set<String> ret = new HashSet<>(returnFields.size()+1);
+		ret.add(PK);
+		for (final Field field : returnFields) {
+			ret.add(field.getName());
+		}
+		return ret;
+	}
+
+	/**
+	 * @param @notnull document this document will be FROZEN
+	 * @throws IndexingException if document has same field specified twice
+	 */
+	public org.apache.lucene.document.Document toLuceneDocument(final Document document) {
+		document.freeze();
+
+		final org.apache.lucene.document.Document ret = new org.apache.lucene.document.Document();
+		ret.add(new StringField(PK, document.getPk().getText(), Store.YES));
+
+		final Set<String> seen = new HashSet<>();
+		for (final FieldValue fv : document.getFields()) {
+			final Field field = fv.getField();
+			if (!seen.add(field.getName())) {
+				throw new IndexingException("Cannot add same field twice: "+field.getName());
+			}
+			final Object value = fv.getValue();
+			if (value instanceof Collection) {
+				for (final Object item : (Collection<?>)value) {
+					add(ret, field, item);
+				}
+			} else {
+				add(ret, field, value);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Values that do not match their field type are skipped with a warning
+	 */
+	public Document toApiDocument(final org.apache.lucene.document.Document doc) {
+		final Map<String, List<Object>> values = new LinkedHashMap<>();
+		for (final IndexableField stored : doc.getFields()) {
+			final String name = stored.name();
+			if (!PK.equals(name)) {
+				List<Object> list = values.get(name);
+				if (list == null) {
+					list = new ArrayList<>(1);
+					values.put(name, list);
+				}
+				list.add(stored);
+			}
+		}
+
+		final Document ret = new Document(new Untokenized(doc.get(PK)), values.size());
+		for (final Map.Entry<String, List<Object>> entry : values.entrySet()) {
+			final Field field = Field.forName(entry.getKey());
+			final List<Object> converted = new ArrayList<>(entry.getValue().size());
+			for (final Object stored : entry.getValue()) {
+				converted.add(fromStored(field.getType(), (IndexableField)stored));
+			}
+			FieldValue fv;
+			try {
+				fv = field.isMultivalued() ? new FieldValue(field, converted) : new FieldValue(field, converted.get(0));
+				fv.validate();
+			} catch (final FieldValueInvalidException ex) {
+				LOG.warn("Can't create FieldValue from {}={}", field, converted, ex);
+				fv = null;
+			}
+			if (fv != null) {
+				ret.add(fv);
+			}
+		}
+		return ret;
+	}
+
+	private static void add(final org.apache.lucene.document.Document doc, final Field field, final Object value) {
+		final String name = field.getName();
+		final boolean indexed = field.getStorage() != Storage.STORED;
+		final boolean stored = field.getStorage() != Storage.INDEXED;
+
+		switch(field.getType()) {
+		case STRING:
+		case STRING_RU:
+			final String str = (String)value;
+			if (indexed) {
+				doc.add(new TextField(name, str, Store.NO));
+			}
+			if (stored) {
+				doc.add(new StoredField(name, str));
+			}
+			break;
+		case UNTOKENIZED:
+			final String text = ((Untokenized)value).getText();
+			if (indexed) {
+				doc.add(new StringField(name, text, Store.NO));
+				doc.add(new SortedSetDocValuesField(name, new BytesRef(text)));
+			}
+			if (stored) {
+				doc.add(new StoredField(name, text));
+			}
+			break;
+		case INT:
+			final int i = (Integer)value;
+			if (indexed) {
+				doc.add(new IntPoint(name, i));
+				doc.add(new SortedNumericDocValuesField(name, i));
+			}
+			if (stored) {
+				doc.add(new StoredField(name, i));
+			}
+			break;
+		case LONG:
+			final long l = (Long)value;
+			if (indexed) {
+				doc.add(new LongPoint(name, l));
+				doc.add(new SortedNumericDocValuesField(name, l));
+			}
+			if (stored) {
+				doc.add(new StoredField(name, l));
+			}
+			break;
+		case FLOAT:
+			final float f = (Float)value;
+			if (indexed) {
+				doc.add(new FloatPoint(name, f));
+				doc.add(new SortedNumericDocValuesField(name, NumericUtils.floatToSortableInt(f)));
+			}
+			if (stored) {
+				doc.add(new StoredField(name, f));
+			}
+			break;
+		case DOUBLE:
+			final double d = (Double)value;
+			if (indexed) {
+				doc.add(new DoublePoint(name, d));
+				doc.add(new SortedNumericDocValuesField(name, NumericUtils.doubleToSortableLong(d)));
+			}
+			if (stored) {
+				doc.add(new StoredField(name, d));
+			}
+			break;
+		case DATETIME:
+			final long millis = ((OffsetDateTime)value).toInstant().toEpochMilli();
+			if (indexed) {
+				doc.add(new LongPoint(name, millis));
+				doc.add(new SortedNumericDocValuesField(name, millis));
+			}
+			if (stored) {
+				doc.add(new StoredField(name, millis));
+			}
+			break;
+		case BINARY:
+			final byte [] data = ((Binary)value).getData();
+			if (indexed) {
+				doc.add(new StringField(name, new BytesRef(data), Store.NO));
+			}
+			if (stored) {
+				doc.add(new StoredField(name, data));
+			}
+			return; // binary values are not copied into text fields
+		}
+
+		copy(doc, TEXT, value, TEXT_MAXCHARS);
+		final List<CopyField> copyFields = COPY_FIELDS.get(name);
+		if (copyFields != null) {
+			for (final CopyField copyField : copyFields) {
+				copy(doc, copyField.dest, value, copyField.maxChars);
+			}
+		}
+	}
+
+	private static void copy(
+			final org.apache.lucene.document.Document doc,
+			final String dest,
+			final Object value,
+			final int maxChars
+	) {
+		String str = value instanceof Untokenized ? ((Untokenized)value).getText() : value.toString();
+		if (str.length() > maxChars) {
+			str = str.substring(0, maxChars);
+		}
+		doc.add(new TextField(dest, str, Store.NO));
+	}
+
+	/** 
+	 * @return true if indexed fields of the type have {@link SortedNumericDocValuesField}s, false if 
+	 *         {@link SortedSetDocValuesField}s (UNTOKENIZED) or no docvalues at all (text and binary fields)
+	 */
+	static boolean isNumeric(final Type type) {
+		switch(type) {
+		case INT:
+		case LONG:
+		case FLOAT:
+		case DOUBLE:
+		case DATETIME:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/** @return true if indexed fields of the type have docvalues */
+	static boolean isFacetedByDocValues(final Type type) {
+		return type == Type.UNTOKENIZED || isNumeric(type);
+	}
+	
+	/** @return @notnull api value of the numeric docvalue, see {@link #isNumeric(Type)} */
+	static Object fromDocValue(final Type type, final long value) {
+		switch(type) {
+		case INT: return (int)value;
+		case FLOAT: return NumericUtils.sortableIntToFloat((int)value);
+		case DOUBLE: return NumericUtils.sortableLongToDouble(value);
+		case DATETIME: return OffsetDateTime.ofInstant(Instant.ofEpochMilli(value), ZoneOffset.UTC);
+		default: return value;
+		}
+	}
+
+	private static Object fromStored(final Type type, final IndexableField stored) {
+		switch(type) {
+		case UNTOKENIZED: return new Untokenized(stored.stringValue());
+		case INT: return stored.numericValue().intValue();
+		case LONG: return stored.numericValue().longValue();
+		case FLOAT: return stored.numericValue().floatValue();
+		case DOUBLE: return stored.numericValue().doubleValue();
+		case DATETIME:
+			return OffsetDateTime.ofInstant(Instant.ofEpochMilli(stored.numericValue().longValue()), ZoneOffset.UTC);
+		case BINARY:
+			final BytesRef bytes = stored.binaryValue();
+			return new Binary(Arrays.copyOfRange(bytes.bytes, bytes.offset, bytes.offset+bytes.length));
+		default: return stored.stringValue();
+		}
+	}
+
+	private static Analyzer strIndexAnalyzer() throws IOException {
+		return CustomAnalyzer.builder(new ClasspathResourceLoader(LuceneSchema.class))
+				.withTokenizer(ICUTokenizerFactory.class)
+				.addTokenFilter(WordDelimiterFilterFactory.class,
+						"catenateWords", "1",
+						"catenateNumbers", "1",
+						"generateWordParts", "1",
+						"generateNumberParts", "1",
+						"stemEnglishPossessive", "1")
+				.addTokenFilter(ICUFoldingFilterFactory.class)
+				.addTokenFilter(ICUTransformFilterFactory.class, "id", "Traditional-Simplified")
+				.addTokenFilter(StopFilterFactory.class, "ignoreCase", "true", "words", STOPWORDS)
+				.build();
+	}
+
+	private static Analyzer strQueryAnalyzer() throws IOException {
+		return CustomAnalyzer.builder(new ClasspathResourceLoader(LuceneSchema.class))
+				.withTokenizer(ICUTokenizerFactory.class)
+				.addTokenFilter(WordDelimiterFilterFactory.class,
+						"generateWordParts", "1",
+						"generateNumberParts", "1",
+						"stemEnglishPossessive", "1")
+				.addTokenFilter(ICUFoldingFilterFactory.class)
+				.addTokenFilter(ICUTransformFilterFactory.class, "id", "Traditional-Simplified")
+				.addTokenFilter(StopFilterFactory.class, "ignoreCase", "true", "words", STOPWORDS)
+				.addTokenFilter(SynonymFilterFactory.class, "synonyms", SYNONYMS, "ignoreCase", "true", "expand", "true")
+				.build();
+	}
+
+	private static void copyField(final String source, final String dest, final int maxChars) {
+		List<CopyField> list = COPY_FIELDS.get(source);
+		if (list == null) {
+			list = new ArrayList<>(2);
+			COPY_FIELDS.put(source, list);
+		}
+		list.add(new CopyField(dest, maxChars));
+	}
+
+	private static final class CopyField {
+		private final String dest;
+		private final int maxChars;
+
+		public CopyField(final String dest, final int maxChars) {
+			this.dest = dest;
+			this.maxChars = maxChars;
+		}
+	}
+
+	/** Chooses analyzer by the type encoded in the field name */
+	private static final class FieldTypeAnalyzer extends DelegatingAnalyzerWrapper {
+		private final Analyzer str;
+		private final Analyzer strru;
+		private final Analyzer keyword;
+
+		public FieldTypeAnalyzer(final Analyzer str, final Analyzer strru, final Analyzer keyword) {
+			super(PER_FIELD_REUSE_STRATEGY);
+			this.str = str;
+			this.strru = strru;
+			this.keyword = keyword;
+		}
+
+		@Override
+		protected Analyzer getWrappedAnalyzer(final String fieldName) {
+			switch(typeOf(fieldName)) {
+			case STRING: return str;
+			case STRING_RU: return strru;
+			default: return keyword;
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package jabot.idxlucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import jabot.idxapi.Index;
+import jabot.idxapi.tests.AbstractIndexTestBase;
+
+public class LuceneIndexAcceptanceTest extends AbstractIndexTestBase {
+	private Path tmp;
+
+	@Override
+	protected Index create() throws IOException {
+		tmp = Files.createTempDirectory("idxlucene");
+		return new LuceneIndex(tmp);
+	}
+
+	@Override
+	protected void destroy(final Index idx) throws Exception {
+		((LuceneIndex)idx).close();
+		try (final Stream<Path> files = Files.walk(tmp)) {
+			files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+		}
+	}
+
+}
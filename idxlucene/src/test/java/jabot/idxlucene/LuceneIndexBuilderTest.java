@@ -0,0 +1,86 @@
+package jabot.idxlucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import jabot.idxapi.DelayedIndexingException;
+import jabot.idxapi.Document;
+import jabot.idxapi.FieldValue;
+import jabot.idxapi.Untokenized;
+
+public class LuceneIndexBuilderTest {
+	private Path tmp;
+	private LuceneIndex live;
+
+	@Before
+	public void setUp() throws IOException {
+		tmp = Files.createTempDirectory("idxlucene");
+		live = new LuceneIndex(tmp.resolve("live"));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		live.close();
+		try (final Stream<Path> files = Files.walk(tmp)) {
+			files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+		}
+	}
+
+	@Test
+	public void test_swap_replaces_live_documents() throws IOException, DelayedIndexingException {
+		live.store(doc("old", 1));
+		live.commit();
+
+		final Path workDir = tmp.resolve("build");
+		try (final LuceneIndexBuilder builder = new LuceneIndexBuilder(workDir, 2, 16)) {
+			builder.getPartition(0).store(doc("new1", 1));
+			builder.getPartition(1).store(doc("new2", 2));
+			builder.getPartition(1).store(doc("new3", 1));
+
+			Assert.assertEquals(1, live.count("*:*"));
+			builder.swapInto(live);
+		}
+
+		Assert.assertFalse(Files.exists(workDir));
+		Assert.assertEquals(3, live.count("*:*"));
+		Assert.assertEquals(0, live.count("pk:old"));
+		Assert.assertEquals(2, live.count("integer_int:1"));
+
+		live.store(doc("new4", 1));
+		live.commit();
+		Assert.assertEquals(4, live.count("*:*"));
+	}
+
+	@Test
+	public void test_failed_swap_keeps_live_documents() throws IOException, DelayedIndexingException {
+		live.store(doc("old", 1));
+		live.commit();
+
+		try {
+			live.replaceWith(Arrays.asList(tmp.resolve("no-such-index")));
+			Assert.fail("Replacement must fail");
+		} catch (final RuntimeException ex) {
+			// expected
+		}
+
+		Assert.assertEquals(1, live.count("pk:old"));
+		live.store(doc("new", 1));
+		live.commit();
+		Assert.assertEquals(2, live.count("*:*"));
+	}
+
+	private static Document doc(final String pk, final int value) {
+		final Document ret = new Document(new Untokenized(pk));
+		ret.add(new FieldValue("integer_int", value));
+		return ret;
+	}
+}
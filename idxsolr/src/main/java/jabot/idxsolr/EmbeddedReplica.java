@@ -0,0 +1,266 @@
+package jabot.idxsolr;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang.Validate;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.IndexDeletionPolicyWrapper;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jabot.common.types.Interval;
+
+/**
+ * Read-only copy of an embedded core, served by a second embedded solr in the same process. Every interval the
+ * latest commit of the primary is pulled into a new index.&lt;generation&gt; folder of the replica by hard-linking
+ * the segment files (lucene never modifies files once written, so linking is safe and takes no space), and the
+ * replica switches to it the same way solr replication does. Files are copied if they can't be linked.
+ *
+ * Searches of the replica keep their caches (and autowarm them on switch) no matter how often the primary commits.
+ * They see updates up to one interval later than the primary. Anything caching search results (counts, pages) must
+ * therefore be invalidated by the switch rather than by the primary commit, see {@link #addSwitchListener(Runnable)}.
+ *
+ * Only searches and read-only requests are served, see {@link ReplicatedSolrClient} for routing updates to
+ * the primary.
+ *
+ * @threadsafe
+ */
+public class EmbeddedReplica implements SolrClient, Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(EmbeddedReplica.class);
+	private static final String INDEX_PREFIX = "index.";
+	private static final String INDEX_PROPERTIES = "index.properties";
+	private static final String INDEX_DIR_PATTERN = "index\\.[0-9]+";
+	private final EmbeddedSolrClient primary;
+	private final EmbeddedSolrClient replica;
+	private final Interval interval;
+	private ScheduledExecutorService puller;
+	private final List<Runnable> switchListeners = new CopyOnWriteArrayList<>();
+
+	/** @guardedby this */
+	private long pulledGeneration = -1;
+
+	/** @guardedby this */
+	private String previousDir;
+
+	/**
+	 * @param @notnull primary started embedded client to pull from
+	 * @param @notnull replicaHome solr home of the replica, bootstrapped if empty
+	 * @param @notnull interval how often to pull
+	 */
+	public EmbeddedReplica(final EmbeddedSolrClient primary, final File replicaHome, final Interval interval) {
+		Validate.notNull(primary, "primary cannot be null");
+		Validate.notNull(replicaHome, "replicaHome cannot be null");
+		Validate.notNull(interval, "interval cannot be null");
+		Validate.isTrue(interval.asMillis() > 0, "interval must be positive");
+
+		this.primary = primary;
+		this.replica = new EmbeddedSolrClient(replicaHome);
+		this.interval = interval;
+	}
+
+	public void start() throws IOException {
+		Validate.isTrue(puller == null, "already started");
+
+		replica.start();
+		pull();
+		puller = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread ret = new Thread(r, "EmbeddedReplica-puller");
+			ret.setDaemon(true);
+			return ret;
+		});
+		final long millis = interval.asMillis();
+		puller.scheduleWithFixedDelay(this::pullQuietly, millis, millis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (puller != null) {
+			puller.shutdownNow();
+			try {
+				puller.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			puller = null;
+		}
+		replica.close();
+	}
+
+	/**
+	 * @param @notnull listener called by the puller thread every time the replica switched to a new commit
+	 */
+	public void addSwitchListener(final Runnable listener) {
+		Validate.notNull(listener, "listener cannot be null");
+		
+		switchListeners.add(listener);
+	}
+
+	@Override
+	public QueryResponse search(final SolrQuery query) throws SolrServerException, IOException {
+		return replica.search(query);
+	}
+
+	@Override
+	public NamedList<Object> update(final UpdateRequest req) {
+		throw new UnsupportedOperationException("Replica is read-only");
+	}
+
+	@Override
+	public NamedList<Object> request(final SolrRequest<?> req) throws SolrServerException, IOException {
+		return replica.request(req);
+	}
+
+	/**
+	 * Pulls latest commit of the primary unless already pulled
+	 * @return true if replica switched to a new commit
+	 */
+	public synchronized boolean pull() throws IOException {
+		final long generation;
+		final Path target;
+		try (final SolrCore primaryCore = primary.openCore(); final SolrCore replicaCore = replica.openCore()) {
+			if (pulledGeneration < 0) {
+				pulledGeneration = generationOf(Paths.get(replicaCore.getIndexDir()));
+			}
+			final IndexDeletionPolicyWrapper policy = primaryCore.getDeletionPolicy();
+			final IndexCommit commit = policy.getLatestCommit();
+			if (commit == null || commit.getGeneration() == pulledGeneration) {
+				return false;
+			}
+			generation = commit.getGeneration();
+			final Path dataDir = Paths.get(replicaCore.getDataDir());
+			target = dataDir.resolve(INDEX_PREFIX+generation);
+
+			// keep primary from deleting the files while they are linked
+			policy.saveCommitPoint(generation);
+			try {
+				link(Paths.get(primaryCore.getIndexDir()), commit, target);
+			} finally {
+				policy.releaseCommitPoint(generation);
+			}
+
+			switchTo(replicaCore, dataDir, target.getFileName().toString());
+		}
+
+		// previous folder may still be used by searches that started before the switch
+		previousDir = pulledGeneration < 0 ? null : INDEX_PREFIX+pulledGeneration;
+		pulledGeneration = generation;
+		deleteObsolete(target);
+		LOG.debug("Replica switched to generation {}", generation);
+		for (final Runnable listener : switchListeners) {
+			try {
+				listener.run();
+			} catch (final RuntimeException ex) {
+				LOG.warn("Error notifying replica switch {}", ex);
+			}
+		}
+		return true;
+	}
+
+	/** @return generation the replica folder was pulled at, -1 if it was never pulled (after restart for ex.) */
+	private static long generationOf(final Path indexDir) {
+		final String name = indexDir.getFileName().toString();
+		if (name.matches(INDEX_DIR_PATTERN)) {
+			return Long.parseLong(name.substring(INDEX_PREFIX.length()));
+		}
+		return -1;
+	}
+
+	private void pullQuietly() {
+		try {
+			pull();
+		} catch (final IOException | RuntimeException ex) {
+			LOG.warn("Error pulling replica {}", ex);
+		}
+	}
+
+	private static void link(final Path source, final IndexCommit commit, final Path target) throws IOException {
+		if (Files.exists(target)) {
+			delete(target); // leftover of a failed pull
+		}
+		Files.createDirectories(target);
+		for (final String file : commit.getFileNames()) {
+			try {
+				Files.createLink(target.resolve(file), source.resolve(file));
+			} catch (final UnsupportedOperationException | IOException ex) {
+				Files.copy(source.resolve(file), target.resolve(file));
+			}
+		}
+	}
+
+	/** Same as solr replication does once index is downloaded */
+	private static void switchTo(final SolrCore core, final Path dataDir, final String indexDir) throws IOException {
+		final Properties props = new Properties();
+		props.setProperty("index", indexDir);
+		final Path tmp = dataDir.resolve(INDEX_PROPERTIES+".tmp");
+		try (final OutputStream out = Files.newOutputStream(tmp)) {
+			props.store(out, null);
+		}
+		Files.move(tmp, dataDir.resolve(INDEX_PROPERTIES), StandardCopyOption.ATOMIC_MOVE);
+
+		core.getUpdateHandler().newIndexWriter(true);
+		@SuppressWarnings("rawtypes")
+		final Future [] waitSearcher = new Future[1];
+		final RefCounted<SolrIndexSearcher> searcher = core.getSearcher(true, true, waitSearcher, true);
+		try {
+			if (waitSearcher[0] != null) {
+				waitSearcher[0].get();
+			}
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		} catch (final ExecutionException ex) {
+			throw new IOException(ex.getCause());
+		} finally {
+			searcher.decref();
+		}
+	}
+
+	private void deleteObsolete(final Path current) throws IOException {
+		try (final Stream<Path> dirs = Files.list(current.getParent())) {
+			dirs.filter(dir -> Files.isDirectory(dir) && dir.getFileName().toString().matches(INDEX_DIR_PATTERN))
+				.filter(dir -> !dir.equals(current) && !dir.getFileName().toString().equals(previousDir))
+				.forEach(dir -> {
+					try {
+						delete(dir);
+					} catch (final IOException ex) {
+						LOG.warn("Error deleting {} {}", dir, ex);
+					}
+				});
+		}
+	}
+
+	private static void delete(final Path dir) throws IOException {
+		if (!Files.exists(dir)) {
+			return;
+		}
+		try (final Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+		}
+	}
+}
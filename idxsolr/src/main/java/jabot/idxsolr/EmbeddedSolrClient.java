@@ -11,17 +11,20 @@ import java.util.List;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
 import org.apache.solr.client.solrj.request.AbstractUpdateRequest.ACTION;
 import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrCore;
 
 import com.google.common.io.Files;
 
 public class EmbeddedSolrClient implements SolrClient, Closeable {
 	private static final String EMBEDDED_CLASSPATH_ROOT="/idxsolr/embedded/";
+	static final String CORE_NAME="core0";
 	private final File solrHome;
 	private EmbeddedSolrServer server;
 	
@@ -43,7 +46,7 @@ public class EmbeddedSolrClient implements SolrClient, Closeable {
 
 	public void start() throws IOException {
 		bootstrapIfEmpty();
-		server = new EmbeddedSolrServer(Paths.get(solrHome.toURI()), "core0");
+		server = new EmbeddedSolrServer(Paths.get(solrHome.toURI()), CORE_NAME);
 	}
 
 	@Override
@@ -54,6 +57,17 @@ public class EmbeddedSolrClient implements SolrClient, Closeable {
 		}
 	}
 
+	public File getSolrHome() {
+		return solrHome;
+	}
+
+	/** @return @notnull the core, caller must close it */
+	SolrCore openCore() {
+		Validate.notNull(server, "Not initialized, you forgot to call start()");
+
+		return server.getCoreContainer().getCore(CORE_NAME);
+	}
+
 	@Override
 	public QueryResponse search(final SolrQuery query) throws SolrServerException, IOException {
 		Validate.notNull(server, "Not initialized, you forgot to call start()");
@@ -68,6 +82,13 @@ public class EmbeddedSolrClient implements SolrClient, Closeable {
 		return server.request(req);
 	}
 
+	@Override
+	public NamedList<Object> request(final SolrRequest<?> req) throws SolrServerException, IOException {
+		Validate.notNull(server, "Not initialized, you forgot to call start()");
+
+		return server.request(req);
+	}
+
 	private void bootstrapIfEmpty() throws IOException {
 		if (!solrHome.exists()) {
 			mkdirs(solrHome);
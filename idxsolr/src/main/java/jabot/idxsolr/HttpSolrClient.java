@@ -6,7 +6,9 @@ import java.net.URI;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
 import org.apache.solr.client.solrj.request.AbstractUpdateRequest.ACTION;
 import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -16,11 +18,20 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 
+/**
+ * Requests are sent as javabin. By default updates are sent one at a time by the calling thread, with 
+ * {@link #setUpdateThreads(int)} above 1 they are pipelined over several connections by {@link PipelinedUpdater}
+ */
 public class HttpSolrClient implements SolrClient, Closeable {
 	private static final Logger LOG = LoggerFactory.getLogger(HttpSolrClient.class);
+	public static final int DEFAULT_UPDATE_QUEUE = 4;
+	public static final long DEFAULT_UPDATE_RETRY_MILLIS = 1000;
 	private final URI uri;
+	private int updateThreads = 1;
+	private int updateQueue = DEFAULT_UPDATE_QUEUE;
 	
 	private org.apache.solr.client.solrj.SolrClient server;
+	private PipelinedUpdater updater;
 	
 	public static void main(String [] args) throws IOException, SolrServerException {
 		HttpSolrClient client = new HttpSolrClient(URI.create("http://127.0.0.1:8983/solr/core0"));
@@ -38,18 +49,52 @@ public class HttpSolrClient implements SolrClient, Closeable {
 		this.uri = uri;
 	}
 
+	public int getUpdateThreads() {
+		return updateThreads;
+	}
+
+	/** @param updateThreads number of connections updates are sent over concurrently, must be set before start() */
+	public void setUpdateThreads(final int updateThreads) {
+		Validate.isTrue(updateThreads > 0, "updateThreads must be positive");
+		Validate.isTrue(server == null, "already started");
+
+		this.updateThreads = updateThreads;
+	}
+
+	public int getUpdateQueue() {
+		return updateQueue;
+	}
+
+	/** @param updateQueue number of update requests queued per connection, must be set before start() */
+	public void setUpdateQueue(final int updateQueue) {
+		Validate.isTrue(updateQueue > 0, "updateQueue must be positive");
+		Validate.isTrue(server == null, "already started");
+
+		this.updateQueue = updateQueue;
+	}
+
 	public void start() throws JsonProcessingException, IOException {
 		Validate.isTrue(server == null, "already started");
 	
-		server = new org.apache.solr.client.solrj.impl.HttpSolrClient.Builder(uri.toString())
+		final org.apache.solr.client.solrj.impl.HttpSolrClient created = 
+				new org.apache.solr.client.solrj.impl.HttpSolrClient.Builder(uri.toString())
 				.allowCompression(true)
 				.build();
+		created.setRequestWriter(new BinaryRequestWriter());
+		server = created;
+		if (updateThreads > 1) {
+			updater = new PipelinedUpdater(server::request, updateThreads, updateQueue, DEFAULT_UPDATE_RETRY_MILLIS);
+		}
 		
 		LOG.trace("Started");
 	}
 
 	@Override
 	public void close() throws IOException {
+		if (updater != null) {
+			updater.close();
+			updater = null;
+		}
 		if (server != null) {
 			server.close();
 			LOG.trace("Closed");
@@ -72,6 +117,15 @@ public class HttpSolrClient implements SolrClient, Closeable {
 
 		LOG.trace("update={}", req);
 
+		return updater == null ? server.request(req) : updater.update(req);
+	}
+
+	@Override
+	public NamedList<Object> request(final SolrRequest<?> req) throws SolrServerException, IOException {
+		Validate.notNull(server, "Not initialized, you forgot to call start()");
+
+		LOG.trace("request={}", req);
+
 		return server.request(req);
 	}
 }
@@ -0,0 +1,300 @@
+package jabot.idxsolr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends updates over several connections at once. Each update request is split into lanes by pk hash and the lanes
+ * are sent concurrently, each lane by its own thread, so updates of the same pk are always applied in the order
+ * they were issued while unrelated documents do not wait for each other.
+ *
+ * {@link #update(UpdateRequest)} returns as soon as the request is queued. Every lane queues at most queueSize
+ * requests, callers block when it is full. A request that failed because solr is unreachable or broken (see
+ * {@link SolrErrors#isTransient(Throwable)}) stays at the head of its lane and is retried every retryMillis, so 
+ * nothing queued after it for the same lane overtakes it. While any lane is failing, {@link #update(UpdateRequest)} 
+ * throws without queueing anything, which lets {@link SolrIndex} keep the update in its own backlog or spool. 
+ * A request solr rejected is dropped instead, and the rejection is thrown by the next {@link #drain()} (and so by the 
+ * next commit).
+ *
+ * Requests that are not about individual pks (commits, optimizes, delete by query, anything with request params) are
+ * barriers: they wait for all lanes to drain and are then sent directly. That way commit still makes everything
+ * queued before it visible, and reports errors of any update queued before it.
+ *
+ * Ordering holds for requests issued by one thread, which is how {@link SolrIndex} calls it
+ *
+ * @threadsafe
+ */
+class PipelinedUpdater implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(PipelinedUpdater.class);
+	private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+	/** Actual transport */
+	@FunctionalInterface
+	interface Sender {
+		NamedList<Object> send(UpdateRequest req) throws SolrServerException, IOException;
+	}
+
+	private final Sender sender;
+	private final Lane [] lanes;
+	private final long retryMillis;
+	
+	/** requests solr rejected since last {@link #drain()} */
+	private final Queue<Exception> rejections = new ConcurrentLinkedQueue<>();
+	private volatile boolean closing;
+
+	/**
+	 * @param @notnull sender
+	 * @param threads number of lanes (and connections)
+	 * @param queueSize maximum number of requests queued per lane
+	 * @param retryMillis delay between retries of a failed request
+	 */
+	public PipelinedUpdater(final Sender sender, final int threads, final int queueSize, final long retryMillis) {
+		Validate.notNull(sender, "sender cannot be null");
+		Validate.isTrue(threads > 0, "threads must be positive");
+		Validate.isTrue(queueSize > 0, "queueSize must be positive");
+		Validate.isTrue(retryMillis > 0, "retryMillis must be positive");
+
+		this.sender = sender;
+		this.retryMillis = retryMillis;
+		this.lanes = new Lane[threads];
+		for (int i=0; i<threads; i++) {
+			lanes[i] = new Lane(i, queueSize);
+		}
+	}
+
+	/** @return empty response for queued updates, solr response for barriers */
+	public synchronized NamedList<Object> update(final UpdateRequest req) throws SolrServerException, IOException {
+		Validate.notNull(req, "req cannot be null");
+		Validate.isTrue(!closing, "closed");
+
+		if (isBarrier(req)) {
+			drain();
+			return sender.send(req);
+		}
+
+		checkFailures();
+		final UpdateRequest [] split = split(req);
+		for (int i=0; i<lanes.length; i++) {
+			if (split[i] != null) {
+				lanes[i].submit(split[i]);
+			}
+		}
+		return new NamedList<>();
+	}
+
+	/** 
+	 * Wait until everything queued so far is sent
+	 * 
+	 * @throws IOException if any lane is failing
+	 * @throws SolrServerException if solr rejected some of the requests since last drain, solr may as well reject them
+	 *         with {@link org.apache.solr.common.SolrException}. Rejections of other requests are attached as 
+	 *         suppressed
+	 */
+	public synchronized void drain() throws SolrServerException, IOException {
+		for (final Lane lane : lanes) {
+			lane.drain();
+		}
+		reportRejections();
+	}
+
+	@Override
+	public void close() {
+		closing = true;
+		for (final Lane lane : lanes) {
+			lane.executor.shutdown();
+		}
+		for (final Lane lane : lanes) {
+			lane.close();
+		}
+	}
+
+	private void reportRejections() throws SolrServerException, IOException {
+		final Exception first = rejections.poll();
+		if (first == null) {
+			return;
+		}
+		Exception next = rejections.poll();
+		while (next != null) {
+			first.addSuppressed(next);
+			next = rejections.poll();
+		}
+		if (first instanceof SolrServerException) {
+			throw (SolrServerException)first;
+		} else if (first instanceof IOException) {
+			throw (IOException)first;
+		}
+		throw (RuntimeException)first;
+	}
+
+	private void checkFailures() throws IOException {
+		for (final Lane lane : lanes) {
+			final Exception failure = lane.failure;
+			if (failure != null) {
+				throw new IOException("Update lane "+lane.id+" is failing", failure);
+			}
+		}
+	}
+
+	private static boolean isBarrier(final UpdateRequest req) {
+		final List<String> deleteQuery = req.getDeleteQuery();
+		if (deleteQuery != null && !deleteQuery.isEmpty()) {
+			return true;
+		}
+		final ModifiableSolrParams params = req.getParams();
+		return params != null && !params.getParameterNames().isEmpty();
+	}
+
+	private UpdateRequest [] split(final UpdateRequest req) {
+		final UpdateRequest [] ret = new UpdateRequest[lanes.length];
+		final List<SolrInputDocument> docs = req.getDocuments();
+		if (docs != null) {
+			for (final SolrInputDocument doc : docs) {
+				laneRequest(ret, String.valueOf(doc.getFieldValue("pk")), req).add(doc);
+			}
+		}
+		final List<String> ids = req.getDeleteById();
+		if (ids != null) {
+			for (final String id : ids) {
+				laneRequest(ret, id, req).deleteById(id);
+			}
+		}
+		return ret;
+	}
+
+	private UpdateRequest laneRequest(final UpdateRequest [] split, final String pk, final UpdateRequest orig) {
+		final int lane = Math.floorMod(pk.hashCode(), lanes.length);
+		UpdateRequest ret = split[lane];
+		if (ret == null) {
+			ret = new UpdateRequest();
+			ret.setCommitWithin(orig.getCommitWithin());
+			split[lane] = ret;
+		}
+		return ret;
+	}
+
+	private final class Lane {
+		private final int id;
+		private final ExecutorService executor;
+		private final Semaphore permits;
+
+		/** last exception sent by the request at the head of the lane, null once it went through */
+		private volatile Exception failure;
+
+		/** @guardedby PipelinedUpdater.this */
+		private Future<?> last;
+
+		public Lane(final int id, final int queueSize) {
+			this.id = id;
+			this.permits = new Semaphore(queueSize);
+			this.executor = Executors.newSingleThreadExecutor(r -> {
+				final Thread ret = new Thread(r, "HttpSolrClient-update-"+id);
+				ret.setDaemon(true);
+				return ret;
+			});
+		}
+
+		public void submit(final UpdateRequest req) throws IOException {
+			try {
+				permits.acquire();
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException(ex);
+			}
+			try {
+				last = executor.submit(() -> {
+					try {
+						send(req);
+					} finally {
+						permits.release();
+					}
+				});
+			} catch (final RuntimeException ex) {
+				permits.release();
+				throw ex;
+			}
+		}
+
+		private void send(final UpdateRequest req) {
+			while (true) {
+				try {
+					sender.send(req);
+					failure = null;
+					return;
+				} catch (final SolrServerException|IOException|RuntimeException ex) {
+					if (!SolrErrors.isTransient(ex)) {
+						LOG.warn("Update rejected on lane {}, dropping it {}", id, ex);
+						rejections.add(ex);
+						failure = null;
+						return;
+					}
+					if (failure == null) {
+						LOG.warn("Error sending update on lane {}, will retry {}", id, ex);
+					}
+					failure = ex;
+				}
+				try {
+					Thread.sleep(retryMillis);
+				} catch (final InterruptedException ex) {
+					LOG.warn("Lane {} closed, dropping failed update", id);
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		/** @throws IOException if the lane is failing */
+		public void drain() throws IOException {
+			final Future<?> pending = last;
+			if (pending == null) {
+				return;
+			}
+			while (true) {
+				try {
+					pending.get(retryMillis, TimeUnit.MILLISECONDS);
+					return;
+				} catch (final TimeoutException ex) {
+					final Exception current = failure;
+					if (current != null) {
+						throw new IOException("Update lane "+id+" is failing", current);
+					}
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IOException(ex);
+				} catch (final ExecutionException ex) {
+					throw new IOException(ex.getCause());
+				}
+			}
+		}
+
+		public void close() {
+			try {
+				if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					LOG.warn("Lane {} did not drain in {} seconds, dropping queued updates", id, CLOSE_TIMEOUT_SECONDS);
+					executor.shutdownNow();
+				}
+			} catch (final InterruptedException ex) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
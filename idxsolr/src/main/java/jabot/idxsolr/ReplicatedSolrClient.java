@@ -0,0 +1,282 @@
+package jabot.idxsolr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends updates (and any other requests) to single writer, spreads searches over replicas.
+ *
+ * Each search goes to the replica with the least outstanding searches. Replica that failed is marked down for
+ * {@value #MIN_BACKOFF_MILLIS}ms, doubling on every subsequent failure up to {@value #MAX_BACKOFF_MILLIS}ms, and is
+ * not used while down unless all replicas are. Failed search is retried on the next replica. Searches solr rejected
+ * (4xx, for ex. bad query syntax) would fail the same way everywhere, so they are thrown right away and the replica 
+ * stays up.
+ *
+ * When hedging is enabled, a search that has not been answered within given percentile of recent search latencies
+ * is sent to a second replica as well and whichever answers first wins. Hedging starts after
+ * {@value #MIN_SAMPLES} searches are measured.
+ *
+ * @threadsafe
+ */
+public class ReplicatedSolrClient implements SolrClient, Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(ReplicatedSolrClient.class);
+	public static final long MIN_BACKOFF_MILLIS = 1000;
+	public static final long MAX_BACKOFF_MILLIS = 60000;
+	public static final int MIN_SAMPLES = 32;
+	private static final int SAMPLES = 1024;
+	private static final int RECALC_EVERY = 64;
+
+	private final SolrClient writer;
+	private final Replica [] replicas;
+	private final AtomicInteger roundRobin = new AtomicInteger();
+	private final ExecutorService hedgePool;
+	private final int hedgePercentile;
+
+	/** ring buffer of recent search latencies in millis */
+	private final long [] samples = new long[SAMPLES];
+	private final AtomicInteger sampleCount = new AtomicInteger();
+	private volatile long hedgeDelayMillis = -1;
+
+	/**
+	 * @param @notnull writer client for updates and non-search requests
+	 * @param @notnull replicas clients for searches, can include the writer
+	 * @param hedgePercentile 1..99 to hedge searches slower than that percentile, 0 to never hedge
+	 */
+	public ReplicatedSolrClient(final SolrClient writer, final List<SolrClient> replicas, final int hedgePercentile) {
+		Validate.notNull(writer, "writer cannot be null");
+		Validate.notEmpty(replicas, "replicas cannot be empty");
+		Validate.isTrue(hedgePercentile >= 0 && hedgePercentile < 100, "hedgePercentile must be within 0..99");
+
+		this.writer = writer;
+		this.replicas = new Replica[replicas.size()];
+		for (int i=0; i<this.replicas.length; i++) {
+			this.replicas[i] = new Replica(replicas.get(i));
+		}
+		this.hedgePercentile = hedgePercentile;
+		this.hedgePool = hedgePercentile == 0 || replicas.size() < 2 ? null : Executors.newCachedThreadPool(r -> {
+			final Thread ret = new Thread(r, "ReplicatedSolrClient-hedge");
+			ret.setDaemon(true);
+			return ret;
+		});
+	}
+
+	@Override
+	public QueryResponse search(final SolrQuery query) throws SolrServerException, IOException {
+		Validate.notNull(query, "query cannot be null");
+
+		final long delay = hedgeDelayMillis;
+		if (hedgePool == null || delay < 0) {
+			return searchWithRetry(query, null);
+		}
+		return hedgedSearch(query, delay);
+	}
+
+	@Override
+	public NamedList<Object> update(final UpdateRequest req) throws SolrServerException, IOException {
+		return writer.update(req);
+	}
+
+	@Override
+	public NamedList<Object> request(final SolrRequest<?> req) throws SolrServerException, IOException {
+		return writer.request(req);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (hedgePool != null) {
+			hedgePool.shutdownNow();
+		}
+		final List<SolrClient> all = new ArrayList<>(replicas.length+1);
+		all.add(writer);
+		for (final Replica replica : replicas) {
+			if (!all.contains(replica.client)) {
+				all.add(replica.client);
+			}
+		}
+		IOException error = null;
+		for (final SolrClient client : all) {
+			if (client instanceof Closeable) {
+				try {
+					((Closeable)client).close();
+				} catch (final IOException ex) {
+					LOG.warn("Error closing replica {}", ex);
+					error = ex;
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/** @return current hedging delay, negative if not hedging yet */
+	public long getHedgeDelayMillis() {
+		return hedgeDelayMillis;
+	}
+
+	/** @visiblefortesting */
+	void recordLatency(final long millis) {
+		// racy on purpose, an occasional lost sample does not matter for the estimate
+		final int n = sampleCount.getAndIncrement() + 1;
+		samples[(n-1) % SAMPLES] = millis;
+		if (hedgePercentile > 0 && (n == MIN_SAMPLES || n > MIN_SAMPLES && n % RECALC_EVERY == 0)) {
+			final long [] copy = Arrays.copyOf(samples, Math.min(n, SAMPLES));
+			Arrays.sort(copy);
+			hedgeDelayMillis = copy[Math.min(copy.length-1, copy.length*hedgePercentile/100)];
+		}
+	}
+
+	/** @visiblefortesting @return true if replica is currently considered up */
+	boolean isUp(final int replica) {
+		return replicas[replica].downUntil <= System.currentTimeMillis();
+	}
+
+	private QueryResponse hedgedSearch(final SolrQuery query, final long delay)
+			throws SolrServerException, IOException
+	{
+		final CompletionService<QueryResponse> completion = new ExecutorCompletionService<>(hedgePool);
+		final Replica first = pick(null);
+		final List<Future<QueryResponse>> futures = new ArrayList<>(2);
+		futures.add(completion.submit(() -> searchWithRetry(query, first)));
+		try {
+			Future<QueryResponse> done = completion.poll(delay, TimeUnit.MILLISECONDS);
+			if (done == null) {
+				final Replica second = pick(first);
+				if (second != first) {
+					LOG.trace("Hedging {} to second replica after {}ms", query, delay);
+					futures.add(completion.submit(() -> searchWithRetry(query, second)));
+				}
+				done = completion.take();
+			}
+			try {
+				return done.get();
+			} catch (final ExecutionException ex) {
+				if (futures.size() > 1 && SolrErrors.isTransient(ex.getCause())) {
+					// the other one may still succeed
+					return completion.take().get();
+				}
+				throw ex;
+			}
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		} catch (final ExecutionException ex) {
+			final Throwable cause = ex.getCause();
+			if (cause instanceof SolrServerException) {
+				throw (SolrServerException)cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException)cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for (final Future<QueryResponse> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/** Tries replicas in turn, starting with given one (or best one if null), until one answers */
+	private QueryResponse searchWithRetry(final SolrQuery query, final Replica start)
+			throws SolrServerException, IOException
+	{
+		Replica replica = start == null ? pick(null) : start;
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return replica.search(query);
+			} catch (final SolrServerException|IOException|RuntimeException ex) {
+				if (!SolrErrors.isTransient(ex) || attempt >= replicas.length || Thread.currentThread().isInterrupted()) {
+					throw ex;
+				}
+				LOG.trace("Search failed on replica {}, retrying on next one", replica.client, ex);
+				replica = pick(replica);
+			}
+		}
+	}
+
+	/** @return up replica with least outstanding searches, other than excluded one (unless it is the only one) */
+	private Replica pick(final Replica exclude) {
+		final long now = System.currentTimeMillis();
+		final int start = Math.floorMod(roundRobin.getAndIncrement(), replicas.length);
+		Replica best = null;
+		Replica leastDown = null;
+		for (int i=0; i<replicas.length; i++) {
+			final Replica candidate = replicas[(start+i) % replicas.length];
+			if (candidate == exclude) {
+				continue;
+			}
+			if (candidate.downUntil > now) {
+				if (leastDown == null || candidate.downUntil < leastDown.downUntil) {
+					leastDown = candidate;
+				}
+			} else if (best == null || candidate.outstanding.get() < best.outstanding.get()) {
+				best = candidate;
+			}
+		}
+		if (best != null) {
+			return best;
+		}
+		return leastDown != null ? leastDown : exclude;
+	}
+
+	private final class Replica {
+		private final SolrClient client;
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private volatile long downUntil;
+		private volatile long backoff;
+
+		public Replica(final SolrClient client) {
+			Validate.notNull(client, "replica cannot be null");
+
+			this.client = client;
+		}
+
+		public QueryResponse search(final SolrQuery query) throws SolrServerException, IOException {
+			outstanding.incrementAndGet();
+			final long start = System.currentTimeMillis();
+			try {
+				final QueryResponse ret = client.search(query);
+				backoff = 0;
+				downUntil = 0;
+				recordLatency(System.currentTimeMillis() - start);
+				return ret;
+			} catch (final SolrServerException|IOException|RuntimeException ex) {
+				if (!Thread.currentThread().isInterrupted() && SolrErrors.isTransient(ex)) {
+					markDown(ex);
+				}
+				throw ex;
+			} finally {
+				outstanding.decrementAndGet();
+			}
+		}
+
+		private void markDown(final Exception ex) {
+			final long next = backoff == 0 ? MIN_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, backoff*2);
+			backoff = next;
+			downUntil = System.currentTimeMillis() + next;
+			LOG.warn("Replica {} failed, marked down for {}ms {}", client, next, ex);
+		}
+	}
+}
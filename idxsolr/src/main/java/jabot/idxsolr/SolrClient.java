@@ -3,6 +3,7 @@ package jabot.idxsolr;
 import java.io.IOException;
 
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -26,4 +27,11 @@ public interface SolrClient {
 	 * @return @notnull response
 	 */
 	NamedList<Object> update(UpdateRequest req) throws SolrServerException, IOException;
+	
+	/**
+	 * Execute arbitrary request, for ex admin requests
+	 * @param @notnull req
+	 * @return @notnull response
+	 */
+	NamedList<Object> request(SolrRequest<?> req) throws SolrServerException, IOException;
 }
@@ -4,6 +4,10 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang.Validate;
@@ -11,6 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jabot.common.props.PropsConfig;
+import jabot.common.types.Interval;
 
 /**
  * Connects to Solr instance using properties file.
@@ -20,6 +25,8 @@ import jabot.common.props.PropsConfig;
  *   <li>http://server:port/solr/core - connect to http solr endpoint</li>
  * </ul>
  * 
+ * lucene:/var/db/core folders are opened without solr by {@link SolrIndexManager}, not by this connector
+ * 
  * Connector is initialized with keys specified after a prefix (default:solr), see following example:
  * <pre>
  * solr=embedded:/var/db/code
@@ -28,6 +35,14 @@ import jabot.common.props.PropsConfig;
  * solr.pageSize=10
  * </pre>
  * 
+ * http endpoints also accept updateThreads (default: 1) and updateQueue, see {@link HttpSolrClient}. When replicas 
+ * (comma-separated list of http endpoints, may include the main one) is set, searches are spread over them and 
+ * only updates go to the main endpoint, optionally hedged with hedgePercentile, see {@link ReplicatedSolrClient}
+ * 
+ * embedded cores accept replicaInterval (for ex. 5MINUTES): searches are then served by a read-only copy of the core
+ * in replicaHome (default: core folder + .replica) that pulls commits every replicaInterval, see 
+ * {@link EmbeddedReplica}. Listeners added by {@link #addReplicaListener(Runnable)} are told when it pulled a commit
+ * 
  * @threadsafe
  */
 public class SolrConnector implements Closeable {
@@ -35,6 +50,7 @@ public class SolrConnector implements Closeable {
 	private final PropsConfig config;
 	private final String configbase;
 	private final AtomicReference<SolrClient> connection = new AtomicReference<>();
+	private final List<Runnable> replicaListeners = new CopyOnWriteArrayList<>();
 	
 	public SolrConnector(final PropsConfig properties, final String propbase) {
 		this.config = properties;
@@ -64,6 +80,16 @@ public class SolrConnector implements Closeable {
 		return client;
 	}
 
+	/**
+	 * @param @notnull listener called every time searches start seeing a newer commit than before, without the 
+	 *                 commit being made through this connection. Never called unless replicaInterval is set
+	 */
+	public void addReplicaListener(final Runnable listener) {
+		Validate.notNull(listener, "listener cannot be null");
+		
+		replicaListeners.add(listener);
+	}
+	
 	/** Release the connection */
 	public void disconnect() {
 		final SolrClient client = connection.get();
@@ -94,13 +120,46 @@ public class SolrConnector implements Closeable {
 		final File localFile = new File(connectString.getPath());
 		final EmbeddedSolrClient ret = new EmbeddedSolrClient(localFile);
 		ret.start();
-		return ret;
+		
+		final Interval replicaInterval = config.getInterval(configbase+".replicaInterval", null);
+		if (replicaInterval == null) {
+			return ret;
+		}
+		final String replicaHome = config.getString(configbase+".replicaHome", localFile.getPath()+".replica");
+		final EmbeddedReplica replica = new EmbeddedReplica(ret, new File(replicaHome), replicaInterval);
+		replica.addSwitchListener(() -> replicaListeners.forEach(Runnable::run));
+		try {
+			replica.start();
+		} catch (final IOException | RuntimeException ex) {
+			replica.close();
+			ret.close();
+			throw ex;
+		}
+		return new ReplicatedSolrClient(ret, Collections.singletonList(replica), 0);
 	}
 	
 	private SolrClient createHttp(final URI connectString) throws IOException {
 		final HttpSolrClient ret = new HttpSolrClient(connectString);
+		ret.setUpdateThreads(config.getInt(configbase+".updateThreads", 1));
+		ret.setUpdateQueue(config.getInt(configbase+".updateQueue", HttpSolrClient.DEFAULT_UPDATE_QUEUE));
 		ret.start();
-		return ret;
+		
+		final String replicas = config.getString(configbase+".replicas", null);
+		if (replicas == null) {
+			return ret;
+		}
+		final List<SolrClient> readers = new ArrayList<>();
+		for (final String replica : replicas.split(",")) {
+			final URI replicaUri = URI.create(replica.trim());
+			if (replicaUri.equals(connectString)) {
+				readers.add(ret);
+			} else {
+				final HttpSolrClient reader = new HttpSolrClient(replicaUri);
+				reader.start();
+				readers.add(reader);
+			}
+		}
+		return new ReplicatedSolrClient(ret, readers, config.getInt(configbase+".hedgePercentile", 0));
 	}
 
 	@Override
@@ -0,0 +1,27 @@
+package jabot.idxsolr;
+
+import java.io.IOException;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+
+/**
+ * Tells failures worth retrying (solr unreachable or broken) from requests solr rejected (bad query, document that
+ * does not fit the schema), which would fail the same way however many times they are retried
+ */
+final class SolrErrors {
+	private SolrErrors() {}
+
+	/**
+	 * @param @notnull ex
+	 * @return true for connection errors and solr 5xx errors, false for 4xx and any other runtime error
+	 */
+	static boolean isTransient(final Throwable ex) {
+		if (ex instanceof SolrException) {
+			return ((SolrException)ex).code() >= 500;
+		} else if (ex instanceof SolrServerException && ex.getCause() instanceof SolrException) {
+			return isTransient(ex.getCause());
+		}
+		return ex instanceof IOException || ex instanceof SolrServerException;
+	}
+}
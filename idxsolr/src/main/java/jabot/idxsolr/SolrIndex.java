@@ -1,57 +1,131 @@
 package jabot.idxsolr;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrQuery.ORDER;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.request.AbstractUpdateRequest.ACTION;
+import org.apache.solr.client.solrj.request.LukeRequest;
 import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.NamedList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jabot.idxapi.Binary;
 import jabot.idxapi.DelayedIndexingException;
 import jabot.idxapi.Document;
+import jabot.idxapi.Facet;
 import jabot.idxapi.Field;
 import jabot.idxapi.FieldValue;
 import jabot.idxapi.FieldValueInvalidException;
 import jabot.idxapi.Index;
+import jabot.idxapi.IndexStats;
 import jabot.idxapi.IndexingException;
 import jabot.idxapi.SearchException;
 import jabot.idxapi.SearchResults;
 import jabot.idxapi.Untokenized;
 
 /**
+ * Updates are accumulated in a batch. Once the batch is full, it is swapped for an empty one and handed over to 
+ * the dedicated flusher thread, so the callers of {@link #store(Document)} are not blocked by the solr round-trip 
+ * unless there are more than {@link #getMaxPendingFlushes()} batches still waiting to be sent. 
+ * 
+ * Set maxPendingFlushes to 0 in order to send batches synchronously from the calling thread. 
+ * 
+ * Optionally, an {@link UpdateSpool} can be set. Batches that solr failed to accept because it was unavailable are 
+ * then parked on disk instead of the heap and replayed in order, either with the next batch or by the flusher thread 
+ * every {@value #SPOOL_RETRY_SECONDS} seconds. While updates are spooled, {@link #commit()} fails with 
+ * {@link DelayedIndexingException}: updates are safe on disk, but not in solr yet. Only when the spool is full do 
+ * updates pile up on heap and eventually fault the index.
+ * 
+ * Batches solr rejected (4xx, for ex. document that does not fit the schema) are never retried nor spooled: they 
+ * are dropped and the error is thrown to the caller, or by the next {@link #commit()} if batch was sent in background.
+ * 
  * @threadsafe
  */
-public class SolrIndex implements Index {
+public class SolrIndex implements Index, Closeable {
 	private static final Logger LOG = LoggerFactory.getLogger(SolrIndex.class);
 	private static final int DEFAULT_BATCHSIZE=10240;
 	private static final int DEFAULT_BATCHBYTES=10*1024*1024; // 10Mb
 	private static final int DEFAULT_PAGESIZE=50;
+	private static final int DEFAULT_SCANPAGESIZE=1000;
+	private static final int DEFAULT_MAXPENDINGFLUSHES=2;
+	private static final long CLOSE_TIMEOUT_MINUTES=10;
+	private static final int MAX_CACHEDCOUNTS=1000;
+	private static final long SPOOL_RETRY_SECONDS=10;
+	private static final String SCORE="score";
 	
 	/** @visiblefortesting */
 	static final int MAX_PAGESIZE=10000;
 	
 	private static final String BAD_PAGESIZEMSG="pageSize must be in range [1:"+MAX_PAGESIZE+"]";
 	private final SolrClient solr;
-	private final Batch batch = new Batch();
+	private final Object batchLock = new Object();
+	private final Flusher flusher = new Flusher();
+	
+	/** @guardedby batchLock */
+	private Batch batch = new Batch();
+	
+	/** 
+	 * @guardedby batchLock set by updates, cleared by hard commits only: ingest soft commits as it goes and hard 
+	 * commits once done
+	 */
+	private boolean uncommitted;
 	private int batchSize = DEFAULT_BATCHSIZE;
 	private int batchBytes = DEFAULT_BATCHBYTES;
+	private int maxPendingFlushes = DEFAULT_MAXPENDINGFLUSHES;
 	private AtomicInteger pageSize = new AtomicInteger(DEFAULT_PAGESIZE);
+	private int scanPageSize = DEFAULT_SCANPAGESIZE;
+	private ExecutorService prefetchExecutor;
+	private UpdateSpool spool;
 	private final AtomicReference<Exception> lastUpdateError = new AtomicReference<>();
+	private final AtomicBoolean throttleWarned = new AtomicBoolean();
+	
+	/** first batch solr rejected since last commit, reported by the commit */
+	private final AtomicReference<Exception> rejectedUpdate = new AtomicReference<>();
+	
+	/** counts and stats are cached until next commit (or until {@link #invalidateCaches()}) */
+	private final Object cacheLock = new Object();
+	
+	/** @guardedby cacheLock, keyed by search followed by filters */
+	private final Map<List<String>, Long> cachedCounts = new HashMap<>();
+	
+	/** @guardedby cacheLock */
+	private IndexStats cachedStats;
+	
+	/** @guardedby cacheLock, incremented on each commit so that results computed before it are not cached */
+	private long generation;
 	
 	
 	public SolrIndex(final SolrClient solr) {
@@ -86,6 +160,59 @@ public class SolrIndex implements Index {
 		this.pageSize.set(pageSize);
 	}
 
+	public int getScanPageSize() {
+		return scanPageSize;
+	}
+
+	/** @param scanPageSize fixed page size used by {@link #scan(String, Collection)} */
+	public void setScanPageSize(int scanPageSize) {
+		Validate.isTrue(scanPageSize >= 1 && scanPageSize <= MAX_PAGESIZE, BAD_PAGESIZEMSG);
+		
+		this.scanPageSize = scanPageSize;
+	}
+
+	public ExecutorService getPrefetchExecutor() {
+		return prefetchExecutor;
+	}
+
+	/**
+	 * @param @nullable prefetchExecutor when set, next page of search results is requested on this executor while 
+	 *                  current page is being consumed. null disables prefetching
+	 */
+	public void setPrefetchExecutor(ExecutorService prefetchExecutor) {
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
+	public int getMaxPendingFlushes() {
+		return maxPendingFlushes;
+	}
+
+	/**
+	 * @param maxPendingFlushes how many full batches can wait for the flusher thread before {@link #store(Document)} 
+	 *                          blocks. 0 means batches are sent synchronously. Must be set before the index is used.
+	 */
+	public void setMaxPendingFlushes(int maxPendingFlushes) {
+		Validate.isTrue(maxPendingFlushes >= 0, "maxPendingFlushes cannot be negative");
+		
+		this.maxPendingFlushes = maxPendingFlushes;
+	}
+
+	public UpdateSpool getSpool() {
+		return spool;
+	}
+
+	/**
+	 * Must be set before index is used
+	 * @param @notnull spool spool to park updates in while solr is unavailable
+	 */
+	public void setSpool(final UpdateSpool spool) {
+		Validate.notNull(spool, "spool cannot be null");
+		Validate.isTrue(this.spool == null, "spool already set");
+		
+		this.spool = spool;
+		flusher.startDrainer();
+	}
+
 	@Override
 	public void store(final Document document) {
 		Validate.notNull(document, "document cannot be null");
@@ -93,8 +220,9 @@ public class SolrIndex implements Index {
 		
 		final SolrInputDocument doc = toSolrInputDocument(document);
 
-		synchronized(batch) {
+		synchronized(batchLock) {
 			batch.add(doc);
+			uncommitted = true;
 			updateIfNeeded();
 		}
 	}
@@ -104,8 +232,9 @@ public class SolrIndex implements Index {
 		Validate.notNull(pk, "pk cannot be null");
 		ensureNotFaulted();
 		
-		synchronized(batch) {
+		synchronized(batchLock) {
 			batch.deleteById(pk.getText());
+			uncommitted = true;
 			updateIfNeeded();
 		}
 	}
@@ -115,30 +244,101 @@ public class SolrIndex implements Index {
 		Validate.notNull(search, "search cannot be null");
 		ensureNotFaulted();
 
-		synchronized(batch) {
+		synchronized(batchLock) {
 			batch.deleteByQuery(search);
+			uncommitted = true;
 			updateIfNeeded();
 		}
 	}
 
+	/**
+	 * Drains the flush pipeline and commits. If anything fails, all pending updates are discarded.
+	 */
 	@Override
 	public void commit() throws DelayedIndexingException {
-		try {
-			synchronized(batch) {
-				batch.setCommitFlag();
-				try {
-					batch.dump(solr);
-				} finally {
-					batch.clear();
-					lastUpdateError.set(null);
-				}
+		commit(false);
+	}
+	
+	/**
+	 * Same as {@link #commit()}, but issues solr soft commit: new searcher is opened, but nothing is fsync'ed
+	 */
+	@Override
+	public void softCommit() throws DelayedIndexingException {
+		commit(true);
+	}
+	
+	private void commit(final boolean soft) throws DelayedIndexingException {
+		final Future<Void> committed;
+		synchronized(batchLock) {
+			final Batch last = swapBatch();
+			if (soft) {
+				last.setSoftCommitFlag();
+			} else {
+				uncommitted = false;
+				last.setCommitFlag();
 			}
-		} catch (final SolrServerException|IOException|RuntimeException ex) {
-			LOG.warn("Error updating solr {}", ex);
+			committed = flusher.commit(last);
+		}
+		try {
+			flusher.await(committed);
+		} finally {
+			invalidateCaches();
+		}
+	}
+	
+	/**
+	 * Asks solr to expunge deletes and optimize. Does nothing while there are updates not hard-committed yet: 
+	 * optimizing index that is being ingested into would be wasted, and the expunge commit would commit the ingest 
+	 * half-way. Solr merges with its own merge scheduler, so maxMBPerSec is not applied
+	 */
+	@Override
+	public void optimize(final int maxSegments, final double maxMBPerSec) throws DelayedIndexingException {
+		Validate.isTrue(maxSegments > 0, "maxSegments must be positive");
+
+		if (hasPendingUpdates()) {
+			LOG.info("Index has pending updates, not optimizing");
+			return;
+		}
+		if (maxMBPerSec > 0 && throttleWarned.compareAndSet(false, true)) {
+			LOG.warn("Merge throttling is not supported by solr backend, maxMBPerSec={} ignored", maxMBPerSec);
+		}
+		try {
+			final UpdateRequest expunge = new UpdateRequest();
+			expunge.setAction(ACTION.COMMIT, true, true);
+			expunge.setParam(UpdateParams.EXPUNGE_DELETES, "true");
+			solr.update(expunge);
+
+			final UpdateRequest optimize = new UpdateRequest();
+			optimize.setAction(ACTION.OPTIMIZE, true, true, maxSegments);
+			solr.update(optimize);
+		} catch (final SolrServerException | IOException ex) {
+			LOG.warn("Error optimizing solr {}", ex);
 			throw new DelayedIndexingException(ex);
+		} finally {
+			invalidateCaches();
+		}
+	}
+	
+	@Override
+	public boolean hasPendingUpdates() {
+		synchronized(batchLock) {
+			return uncommitted;
 		}
 	}
 	
+	/**
+	 * Sends out any pending updates (without commit) and stops the flusher thread
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(batchLock) {
+			if (batch.currentBatchSize() > 0) {
+				flusher.flush(swapBatch());
+			}
+		}
+		flusher.shutdown();
+	}
+	
 	@Override
 	public SearchResults search(final String search, final Collection<Field> returnFields, final int offset)
 	{
@@ -146,10 +346,231 @@ public class SolrIndex implements Index {
 		Validate.notNull(returnFields, "returnFields cannot be null");
 				
 		final SolrQuery solrQuery = toSolrQuery(search, returnFields);
-		return new SearchResultsImpl(solr, solrQuery, offset, pageSize);
+		solrQuery.addField(SCORE);
+		return new SearchResultsImpl(solr, solrQuery, offset, pageSize, prefetchExecutor);
+	}
+	
+	/**
+	 * Filters are passed as solr fq parameters, so they are cached in solr filterCache and reused by any search with
+	 * the same filter
+	 */
+	@Override
+	public SearchResults search(
+			final String search, 
+			final Collection<String> filters, 
+			final Collection<Field> returnFields, 
+			final int offset
+	) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		
+		final SolrQuery solrQuery = toSolrQuery(search, returnFields);
+		solrQuery.addField(SCORE);
+		addFilters(solrQuery, filters);
+		return new SearchResultsImpl(solr, solrQuery, offset, pageSize, prefetchExecutor);
+	}
+	
+	/**
+	 * Uses solr cursorMark paging sorted on pk, so deep pages cost the same as the first one
+	 */
+	@Override
+	public SearchResults scan(final String search, final Collection<Field> returnFields) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(returnFields, "returnFields cannot be null");
+		
+		final SolrQuery solrQuery = toSolrQuery(search, returnFields);
+		solrQuery.setSort("pk", ORDER.asc);
+		return new SearchResultsImpl(solr, solrQuery, scanPageSize, prefetchExecutor);
 	}
 
 
+	/**
+	 * Issues rows=0 query, result is cached until next {@link #commit()}
+	 */
+	@Override
+	public long count(final String search) {
+		Validate.notNull(search, "search cannot be null");
+		
+		return count(search, Collections.emptyList());
+	}
+	
+	/**
+	 * Issues rows=0 query with filters as fq parameters, result is cached until next {@link #commit()}
+	 */
+	@Override
+	public long count(final String search, final Collection<String> filters) {
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		
+		final List<String> key = new ArrayList<>(1+filters.size());
+		key.add(search);
+		key.addAll(filters);
+		final long gen;
+		synchronized(cacheLock) {
+			final Long cached = cachedCounts.get(key);
+			if (cached != null) {
+				return cached;
+			}
+			gen = generation;
+		}
+		
+		final SolrQuery solrQuery = new SolrQuery(search);
+		addFilters(solrQuery, filters);
+		solrQuery.setRows(0);
+		final long ret;
+		try {
+			ret = solr.search(solrQuery).getResults().getNumFound();
+		} catch (final SolrServerException | IOException ex) {
+			throw new SearchException("error when counting "+search, ex);
+		}
+		
+		synchronized(cacheLock) {
+			if (gen == generation) {
+				if (cachedCounts.size() >= MAX_CACHEDCOUNTS) {
+					cachedCounts.clear();
+				}
+				cachedCounts.put(key, ret);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * All facets are computed by solr json facet module in a single request, no documents are returned
+	 */
+	@Override
+	public List<Map<String, Long>> facets(final String search, final Collection<String> filters, 
+			final List<Facet> facets) 
+	{
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(facets, "facets cannot be null");
+		
+		final SolrQuery solrQuery = new SolrQuery(search);
+		addFilters(solrQuery, filters);
+		solrQuery.setRows(0);
+		solrQuery.add("json.facet", toJsonFacets(facets));
+		final NamedList<?> response;
+		try {
+			response = (NamedList<?>)solr.search(solrQuery).getResponse().get("facets");
+		} catch (final SolrServerException | IOException ex) {
+			throw new SearchException("error when faceting "+search, ex);
+		}
+		
+		final List<Map<String, Long>> ret = new ArrayList<>(facets.size());
+		for (int i=0; i<facets.size(); i++) {
+			final Map<String, Long> counts = new LinkedHashMap<>();
+			final NamedList<?> facet = response == null ? null : (NamedList<?>)response.get("f"+i);
+			final List<?> buckets = facet == null ? null : (List<?>)facet.get("buckets");
+			if (buckets != null) {
+				final boolean ranges = facets.get(i).getKind() == Facet.Kind.RANGE;
+				for (final Object bucket : buckets) {
+					final NamedList<?> b = (NamedList<?>)bucket;
+					counts.put(bucketKey(b.get("val"), ranges), ((Number)b.get("count")).longValue());
+				}
+			}
+			ret.add(counts);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return @notnull range start for range buckets (ranges start at longs, even over float fields), terms as is. 
+	 *         Only integral values may be converted to long, 1.2 and 1.5 would become same key otherwise
+	 * @visiblefortesting
+	 */
+	static String bucketKey(final Object val, final boolean range) {
+		if (val instanceof Number && (range || val instanceof Long || val instanceof Integer 
+				|| val instanceof Short || val instanceof Byte)) 
+		{
+			return String.valueOf(((Number)val).longValue());
+		}
+		return String.valueOf(val);
+	}
+	
+	/**
+	 * @return json.facet parameter, facets are named f0, f1, ... by their position
+	 * @visiblefortesting
+	 */
+	static String toJsonFacets(final List<Facet> facets) {
+		final StringBuilder ret = new StringBuilder("{");
+		for (int i=0; i<facets.size(); i++) {
+			final Facet facet = facets.get(i);
+			if (i > 0) {
+				ret.append(',');
+			}
+			ret.append("\"f").append(i).append("\":{");
+			if (facet.getKind() == Facet.Kind.TERMS) {
+				ret.append("\"type\":\"terms\",\"field\":\"").append(facet.getField())
+					.append("\",\"limit\":").append(facet.getLimit());
+			} else {
+				ret.append("\"type\":\"range\",\"field\":\"").append(facet.getField())
+					.append("\",\"start\":").append(facet.getStart())
+					.append(",\"end\":").append(facet.getEnd())
+					.append(",\"gap\":").append(facet.getGap())
+					.append(",\"hardend\":true");
+			}
+			ret.append('}');
+		}
+		return ret.append('}').toString();
+	}
+	
+	/**
+	 * Uses solr luke handler (no stored fields are read), result is cached until next {@link #commit()}
+	 */
+	@Override
+	public IndexStats stats() {
+		final long gen;
+		synchronized(cacheLock) {
+			if (cachedStats != null) {
+				return cachedStats;
+			}
+			gen = generation;
+		}
+		
+		final LukeRequest req = new LukeRequest();
+		req.setNumTerms(0);
+		req.setShowSchema(false);
+		final IndexStats ret;
+		try {
+			final NamedList<?> index = (NamedList<?>)solr.request(req).get("index");
+			ret = new IndexStats(
+					statsValue(index, "numDocs"), 
+					statsValue(index, "maxDoc"), 
+					statsValue(index, "deletedDocs"), 
+					statsValue(index, "segmentCount")
+			);
+		} catch (final SolrServerException | IOException ex) {
+			throw new SearchException("error when fetching index stats", ex);
+		}
+		
+		synchronized(cacheLock) {
+			if (gen == generation) {
+				cachedStats = ret;
+			}
+		}
+		return ret;
+	}
+	
+	private static long statsValue(final NamedList<?> index, final String name) {
+		final Object value = index == null ? null : index.get(name);
+		return value instanceof Number ? ((Number)value).longValue() : IndexStats.UNKNOWN;
+	}
+	
+	/** 
+	 * Drop cached counts and stats. Commits do it, but searches served by a replica see the commit later and the 
+	 * replica has to call this once it does
+	 */
+	@Override
+	public void invalidateCaches() {
+		synchronized(cacheLock) {
+			generation++;
+			cachedCounts.clear();
+			cachedStats = null;
+		}
+	}
+
 	/**
 	 * In order to prevent batch from growing and growing and growing till the time it simply won't come through the
 	 * network, this method ensures that actual batch size (which can go over limit in case of, say, network problems)
@@ -157,7 +578,7 @@ public class SolrIndex implements Index {
 	 */
 	private void ensureNotFaulted() {
 		final Exception fault = lastUpdateError.get();
-		if (fault != null && (batch.currentBatchBytes()>=2*batchBytes || batch.currentBatchSize()>=2*batchSize)) {
+		if (fault != null && (flusher.pendingBytes()>=2*batchBytes || flusher.pendingSize()>=2*batchSize)) {
 			throw new IndexingException("FAULTED", fault);
 		}
 	}
@@ -174,6 +595,12 @@ public class SolrIndex implements Index {
 		return query;
 	}
 
+	private static void addFilters(final SolrQuery query, final Collection<String> filters) {
+		for (final String filter : filters) {
+			query.addFilterQuery(filter);
+		}
+	}
+
 	private SolrInputDocument toSolrInputDocument(final Document document) {
 		document.freeze();
 		
@@ -265,17 +692,264 @@ public class SolrIndex implements Index {
 		}
 	}
 
+	/** @guardedby batchLock */
 	private void updateIfNeeded() {
 		if (batch.currentBatchBytes() >= batchBytes || batch.currentBatchSize()>=batchSize) {
+			flusher.flush(swapBatch());
+		}
+	}
+	
+	/** @guardedby batchLock */
+	private Batch swapBatch() {
+		final Batch full = batch;
+		batch = new Batch();
+		return full;
+	}
+	
+	/**
+	 * Sends batches to solr in the order they were handed over. Batches that failed because solr is unavailable are 
+	 * moved to the spool (if any) or kept in the backlog and resent before any subsequent batch. Batches solr rejected
+	 * are dropped.
+	 */
+	private final class Flusher {
+		private final Object sendLock = new Object();
+		
+		/** @guardedby sendLock */
+		private final Deque<Batch> backlog = new ArrayDeque<>();
+		private final AtomicInteger backlogBytes = new AtomicInteger();
+		private final AtomicInteger backlogSize = new AtomicInteger();
+		private ScheduledExecutorService executor;
+		private Semaphore permits;
+		
+		public void flush(final Batch full) {
+			if (maxPendingFlushes == 0) {
+				try {
+					dump(full);
+				} catch (final SolrServerException|IOException|RuntimeException ex) {
+					rejectedUpdate.compareAndSet(ex, null);
+					throw new IndexingException(ex);
+				}
+			} else {
+				acquirePermit();
+				try {
+					executor().execute(() -> {
+						try {
+							dump(full);
+						} catch (final SolrServerException|IOException|RuntimeException ex) {
+							// already recorded into lastUpdateError (store() will fault if backlog is too big) or
+							// into rejectedUpdate (next commit will throw)
+						} finally {
+							permits.release();
+						}
+					});
+				} catch (final RuntimeException ex) {
+					permits.release();
+					throw new IndexingException(ex);
+				}
+			}
+		}
+		
+		/** @return future that completes once everything up to and including this batch is committed */
+		public Future<Void> commit(final Batch last) throws DelayedIndexingException {
+			if (maxPendingFlushes == 0) {
+				commitNow(last);
+				return CompletableFuture.completedFuture(null);
+			} else {
+				return executor().submit(() -> {
+					commitNow(last);
+					return null;
+				});
+			}
+		}
+		
+		public void await(final Future<Void> committed) throws DelayedIndexingException {
+			try {
+				committed.get();
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new DelayedIndexingException(ex);
+			} catch (final ExecutionException ex) {
+				if (ex.getCause() instanceof DelayedIndexingException) {
+					throw (DelayedIndexingException)ex.getCause();
+				}
+				throw new DelayedIndexingException(ex.getCause());
+			}
+		}
+		
+		public int pendingBytes() {
+			return backlogBytes.get();
+		}
+		
+		public int pendingSize() {
+			return backlogSize.get();
+		}
+		
+		public synchronized void shutdown() throws IOException {
+			if (executor != null) {
+				executor.shutdown();
+				try {
+					if (!executor.awaitTermination(CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+						throw new IOException("Timed out waiting for pending updates");
+					}
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IOException(ex);
+				}
+			}
+		}
+		
+		public void startDrainer() {
+			executor().scheduleWithFixedDelay(this::drain, SPOOL_RETRY_SECONDS, SPOOL_RETRY_SECONDS, TimeUnit.SECONDS);
+		}
+		
+		private void commitNow(final Batch last) throws DelayedIndexingException {
+			synchronized(sendLock) {
+				try {
+					dump(last);
+				} catch (final SolrServerException|IOException|RuntimeException ex) {
+					LOG.warn("Error updating solr {}", ex);
+					rejectedUpdate.set(null);
+					throw new DelayedIndexingException(ex);
+				} finally {
+					backlog.clear();
+					backlogBytes.set(0);
+					backlogSize.set(0);
+					lastUpdateError.set(null);
+				}
+				
+				final Exception rejected = rejectedUpdate.getAndSet(null);
+				if (rejected != null) {
+					throw new DelayedIndexingException(rejected);
+				}
+				if (spool != null && !spool.isEmpty()) {
+					throw new DelayedIndexingException("Solr unavailable, "+spool.size()+" updates spooled");
+				}
+			}
+		}
+		
+		private void dump(final Batch next) throws SolrServerException, IOException {
+			synchronized(sendLock) {
+				backlog.addLast(next);
+				backlogBytes.addAndGet(next.currentBatchBytes());
+				backlogSize.addAndGet(next.currentBatchSize());
+				
+				send();
+			}
+		}
+		
+		/** Periodically replays spooled updates even if nothing new comes in */
+		private void drain() {
+			synchronized(sendLock) {
+				if (!spool.isEmpty() || !backlog.isEmpty()) {
+					try {
+						send();
+					} catch (final SolrServerException|IOException|RuntimeException ex) {
+						// already recorded into lastUpdateError
+					}
+				}
+			}
+		}
+		
+		/** @guardedby sendLock */
+		private void send() throws SolrServerException, IOException {
 			try {
-				batch.dump(solr);
-				batch.clear();
+				replaySpool();
+				while (!backlog.isEmpty()) {
+					final Batch head = backlog.peekFirst();
+					head.dump(solr);
+					removeBacklogHead();
+				}
 			} catch (final SolrServerException|IOException|RuntimeException ex) {
+				if (!SolrErrors.isTransient(ex)) {
+					dropRejected(ex);
+					throw ex;
+				}
 				lastUpdateError.set(ex);
 				LOG.warn("Error updating solr {}", ex);
+				if (!spoolBacklog()) {
+					throw ex;
+				}
+				return;
+			}
+			lastUpdateError.set(null);
+		}
+		
+		/** @guardedby sendLock */
+		private void replaySpool() throws SolrServerException, IOException {
+			if (spool != null) {
+				while (!spool.isEmpty()) {
+					solr.update(spool.peek());
+					spool.remove();
+				}
+			}
+		}
+		
+		/**
+		 * Solr rejected the request at the head of the spool (or of the backlog if spool is empty), resending it 
+		 * would fail the same way and block everything behind it
+		 * @guardedby sendLock 
+		 */
+		private void dropRejected(final Exception ex) throws IOException {
+			LOG.warn("Update rejected by solr, dropping it {}", ex);
+			rejectedUpdate.compareAndSet(null, ex);
+			if (spool != null && !spool.isEmpty()) {
+				spool.remove();
+			} else if (!backlog.isEmpty()) {
+				removeBacklogHead();
+			}
+		}
+		
+		/** 
+		 * @guardedby sendLock
+		 * @return true if whole backlog was moved to the spool 
+		 */
+		private boolean spoolBacklog() throws IOException {
+			if (spool == null) {
+				return false;
+			}
+			while (!backlog.isEmpty()) {
+				if (!backlog.peekFirst().spool(spool)) {
+					LOG.warn("Update spool is full, {} bytes spooled", spool.getBytes());
+					return false;
+				}
+				removeBacklogHead();
+			}
+			return true;
+		}
+		
+		/** @guardedby sendLock */
+		private void removeBacklogHead() {
+			final Batch head = backlog.removeFirst();
+			backlogBytes.addAndGet(-head.currentBatchBytes());
+			backlogSize.addAndGet(-head.currentBatchSize());
+		}
+		
+		private void acquirePermit() {
+			try {
+				permits().acquire();
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
 				throw new IndexingException(ex);
 			}
 		}
+		
+		private synchronized Semaphore permits() {
+			if (permits == null) {
+				permits = new Semaphore(maxPendingFlushes);
+			}
+			return permits;
+		}
+		
+		private synchronized ScheduledExecutorService executor() {
+			if (executor == null) {
+				executor = Executors.newSingleThreadScheduledExecutor(r -> {
+					final Thread ret = new Thread(r, "SolrIndex-flusher");
+					ret.setDaemon(true);
+					return ret;
+				});
+			}
+			return executor;
+		}
 	}
 	
 	private static final class Batch {
@@ -297,16 +971,19 @@ public class SolrIndex implements Index {
 			}
 		}
 
-		public void clear() {
-			upd.clear();
-			upd.setAction(null, false, false);
-			batchBytes = 0;
-		}
-
 		public void setCommitFlag() {
 			upd.setAction(ACTION.COMMIT, true, true);
 		}
 
+		public void setSoftCommitFlag() {
+			upd.setAction(ACTION.COMMIT, false, true, true);
+		}
+		
+		/** @return false if spool is full */
+		public boolean spool(final UpdateSpool spool) throws IOException {
+			return spool.offer(upd);
+		}
+
 		public void deleteByQuery(final String search) {
 			upd.deleteByQuery(search);
 			batchBytes += search.length();
@@ -342,16 +1019,31 @@ public class SolrIndex implements Index {
 	}
 
 	private static final class SearchResultsImpl implements SearchResults {
-		private static final List<String> SOLR_SPECIAL_FIELDS = Arrays.asList("pk", "_version_");
+		private static final List<String> SOLR_SPECIAL_FIELDS = Arrays.asList("pk", "_version_", SCORE);
 		private final SolrClient solr;
 		private final SolrQuery query;
+		
+		/** null when prefetch is disabled */
+		private final ExecutorService prefetcher;
+		
+		/** next page requested ahead of time, if any */
+		private Future<QueryResponse> prefetched;
+		
+		/** null in scan mode: page size is fixed and not fed back to the index */
 		private final AtomicInteger globalPageSize;
 		private int currentPageSize;
 		private int offset;
+		
+		/** null in offset mode */
+		private String cursorMark;
 		private int totalFetched;
 		private QueryResponse lastResult;
+		
+		/** result of count query issued by {@link #estimateTotalResults()} before first page was fetched */
+		private Long numFound;
 		private boolean hasMore = true;
 		private Iterator<SolrDocument> lastResultIterator;
+		private float lastScore = Float.NaN;
 		private boolean closed;
 
 
@@ -359,26 +1051,65 @@ public class SolrIndex implements Index {
 				final SolrClient solr, 
 				final SolrQuery query, 
 				final int offset,
-				final AtomicInteger pageSize
+				final AtomicInteger pageSize,
+				final ExecutorService prefetcher
 		) {
 			this.solr = solr;
 			this.query = query;
 			this.offset = offset;
 			this.globalPageSize = pageSize;
+			this.prefetcher = prefetcher;
 			
 			setCurrentPageSize(globalPageSize.get());
 			
 		}
 		
+		/** scan mode, query MUST be sorted on uniqueKey */
+		public SearchResultsImpl(
+				final SolrClient solr, 
+				final SolrQuery query, 
+				final int pageSize,
+				final ExecutorService prefetcher
+		) {
+			this.solr = solr;
+			this.query = query;
+			this.prefetcher = prefetcher;
+			this.globalPageSize = null;
+			this.cursorMark = CursorMarkParams.CURSOR_MARK_START;
+			
+			setCurrentPageSize(pageSize);
+		}
+		
 		private void setCurrentPageSize(int size) {
 			currentPageSize = size;
 			query.setRows(size);
 		}
 
+		/** 
+		 * When called before first page is fetched, issues rows=0 query instead of fetching the page 
+		 */
 		@Override
 		public long estimateTotalResults() {
-			init();
-			return lastResult.getResults().getNumFound();
+			if (lastResult != null) {
+				return lastResult.getResults().getNumFound();
+			}
+			if (numFound == null) {
+				final SolrQuery countQuery = query.getCopy();
+				countQuery.setRows(0);
+				countQuery.remove(CursorMarkParams.CURSOR_MARK_PARAM);
+				try {
+					numFound = solr.search(countQuery).getResults().getNumFound();
+				} catch (final SolrServerException | IOException ex) {
+					throw new SearchException("error when counting "+query.getQuery(), ex);
+				}
+			}
+			return numFound;
+		}
+
+		/** Solr score, searches (but not scans) request it along with the documents */
+		@Override
+		public float score() {
+			return lastScore;
 		}
 
 		@Override
@@ -403,6 +1134,8 @@ public class SolrIndex implements Index {
 			Validate.isTrue(lastResultIterator.hasNext());
 			final SolrDocument doc = lastResultIterator.next();
 			totalFetched++;
+			final Object score = doc.getFieldValue(SCORE);
+			lastScore = score instanceof Number ? ((Number)score).floatValue() : Float.NaN;
 			return toApiDocument(doc);
 		}
 
@@ -422,7 +1155,11 @@ public class SolrIndex implements Index {
 		@Override
 		public void close() throws IOException {
 			closed = true;
-			if (totalFetched<currentPageSize) {
+			if (prefetched != null) {
+				prefetched.cancel(true);
+				prefetched = null;
+			}
+			if (globalPageSize != null && totalFetched<currentPageSize) {
 				growCurrentPageSize(totalFetched-currentPageSize);
 			}
 		}
@@ -434,13 +1171,17 @@ public class SolrIndex implements Index {
 		}
 
 		private void nextQuery() {
+			if (cursorMark != null) {
+				nextCursorQuery();
+				return;
+			}
 			if (lastResult != null) {
 				growCurrentPageSize(currentPageSize);
 			}
 			query.setStart(offset);
 			
 			try {
-				lastResult = solr.search(query);
+				lastResult = fetch();
 			} catch (final SolrServerException | IOException ex) {
 				throw new SearchException("error when fetching from offset="+offset+", pageSize="+
 						query.getRows(), ex);
@@ -449,15 +1190,76 @@ public class SolrIndex implements Index {
 			hasMore = documents.size()>=currentPageSize;
 			lastResultIterator = documents.iterator();
 			offset += documents.size();
+			prefetchIfNeeded();
+		}
+		
+		private void nextCursorQuery() {
+			query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+			
+			try {
+				lastResult = fetch();
+			} catch (final SolrServerException | IOException ex) {
+				throw new SearchException("error when fetching from cursorMark="+cursorMark+", pageSize="+
+						query.getRows(), ex);
+			}
+			final String nextCursorMark = lastResult.getNextCursorMark();
+			hasMore = nextCursorMark != null && !nextCursorMark.equals(cursorMark);
+			if (hasMore) {
+				cursorMark = nextCursorMark;
+			}
+			lastResultIterator = lastResult.getResults().iterator();
+			prefetchIfNeeded();
+		}
+		
+		/** 
+		 * Request the page {@link #nextQuery()} will ask for. Page size is not fed back to {@link #globalPageSize} 
+		 * until the page is actually consumed.
+		 */
+		private void prefetchIfNeeded() {
+			if (prefetcher != null && hasMore && !closed) {
+				final SolrQuery next = query.getCopy();
+				if (cursorMark == null) {
+					next.setStart(offset);
+					next.setRows(modifyPageSize_Safe(currentPageSize, currentPageSize));
+				} else {
+					next.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+				}
+				prefetched = prefetcher.submit(() -> solr.search(next));
+			}
+		}
+		
+		private QueryResponse fetch() throws SolrServerException, IOException {
+			if (prefetched == null) {
+				return solr.search(query);
+			}
+			
+			final Future<QueryResponse> pending = prefetched;
+			prefetched = null;
+			try {
+				return pending.get();
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException(ex);
+			} catch (final ExecutionException ex) {
+				final Throwable cause = ex.getCause();
+				if (cause instanceof SolrServerException) {
+					throw (SolrServerException)cause;
+				} else if (cause instanceof IOException) {
+					throw (IOException)cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException)cause;
+				}
+				throw new SolrServerException(cause);
+			}
 		}
 
 		private Document toApiDocument(final SolrDocument doc) {
 			final Untokenized pk = new Untokenized((String)doc.getFieldValue("pk"));
-			final Document ret = new Document(pk);
+			final Document ret = new Document(pk, doc.getFieldNames().size());
 			for (final String name: doc.getFieldNames()) {
 				if (!SOLR_SPECIAL_FIELDS.contains(name)) {
 					Object value = doc.getFieldValue(name);
-					final Field field = new Field(name);
+					final Field field = Field.forName(name);
 					if (field.getType().javaType.isAssignableFrom(Untokenized.class) && value instanceof String) {
 						value = new Untokenized((String) value);
 					}
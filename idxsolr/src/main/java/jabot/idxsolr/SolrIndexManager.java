@@ -1,7 +1,10 @@
 package jabot.idxsolr;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -10,12 +13,26 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jabot.common.props.PropsConfig;
+import jabot.fileapi.std.StdFileApi;
+import jabot.idxapi.CachingIndex;
+import jabot.idxapi.ForwardingIndex;
+import jabot.idxapi.Index;
+import jabot.idxapi.ShardedIndex;
+import jabot.idxlucene.LuceneIndex;
 
 /**
  * Manages multiple index instances. Configuration-driven.
@@ -27,23 +44,96 @@ import jabot.common.props.PropsConfig;
  * solr.core0.batchSize=100
  * solr.core0.batchBytes=1048576
  * solr.core0.pageSize=10
+ * solr.core0.maxPendingFlushes=2
+ * solr.core0.prefetch=1
+ * solr.core0.cacheEntries=1000
+ * solr.core0.cacheBytes=10485760
+ * solr.core0.spool=/var/spool/jabot/core0
+ * solr.core0.spoolBytes=1073741824
+ * solr.core0.replicaInterval=5MINUTES
  * solr.core1=http://localhost:8983/solr/core1
  * solr.core1.batchSize=10
  * solr.core1.batchBytes=2048576
  * solr.core1.pageSize=10
+ * solr.core1.updateThreads=4
+ * solr.core1.updateQueue=4
+ * solr.core1.replicas=http://localhost:8983/solr/core1,http://replica:8983/solr/core1
+ * solr.core1.hedgePercentile=95
  * solr.core1.param1=this parameter is not used by connector, but reported by getParams("core1").get("param1")
  * solr.core1.param2=there can be any number of such additional parameters
+ * solr.core2=lucene:/var/db/core2
+ * solr.core2.ramBufferMB=256
+ * solr.core2.pageSize=50
+ * solr.books=shard:core0,core2
+ * solr.books.lazy=true
+ * solr.prefetchThreads=4
+ * solr.shardThreads=4
+ * solr.initThreads=4
  * </pre>
+ * 
+ * Components with lucene: scheme do not start solr at all, they are served by {@link LuceneIndex} directly from 
+ * the given folder. Of the solr-specific parameters only pageSize, cacheEntries and cacheBytes apply to them. Only 
+ * such components can be rebuilt offline and swapped in (see {@link LuceneIndex#replaceWith(Collection)}), solr 
+ * cores have to be re-ingested in place
+ * 
+ * Components with shard: scheme spread documents over other components listed in the same configuration, see 
+ * {@link ShardedIndex}. Requests are broadcast to shards by shared pool of solr.shardThreads threads (default: 
+ * number of CPUs). Order of shards must never change once documents are stored. Only cacheEntries and cacheBytes 
+ * apply to sharded components, caches of the shards themselves are bypassed. Shards remain components of their own 
+ * (for maintenance, stats and so on), but since their documents are served by the sharded component, 
+ * {@link #listTopLevelComponents()} skips them
+ * 
+ * Components with prefetch enabled share single prefetch pool of solr.prefetchThreads threads (default: number of 
+ * CPUs)
+ * 
+ * Components with http scheme send updates over updateThreads (default: 1) concurrent connections, each queueing up 
+ * to updateQueue (default: 4) requests. Updates of the same document are sent in order, commit waits for all of them.
+ * When replicas are listed, searches are balanced over them and hedged to a second replica once slower than 
+ * hedgePercentile (default: 0, no hedging) of recent searches, see {@link ReplicatedSolrClient}
+ * 
+ * Embedded components with replicaInterval serve searches from an in-process read-only copy of the core that pulls 
+ * commits every replicaInterval by hard-linking segment files, so ingest commits don't reset caches of searches, 
+ * see {@link EmbeddedReplica}. Cached counts and results of such component (and of sharded components it is a shard 
+ * of) are dropped every time the replica pulls a new commit
+ * 
+ * {@link #init()} starts components concurrently by solr.initThreads threads (default: number of CPUs), so startup 
+ * takes as long as the slowest component. Components with lazy=true are skipped and started on first 
+ * {@link #getIndex(String)} instead
+ * 
+ * When cacheEntries is set, component index is wrapped into {@link CachingIndex} bounded by cacheEntries results and 
+ * cacheBytes (default: 10Mb) of documents
+ * 
+ * When spool is set, updates solr fails to accept are parked in given local directory (up to spoolBytes, default: 
+ * 1Gb), see {@link UpdateSpool}
  */
 public class SolrIndexManager implements Closeable {
 	private static final Logger LOG = LoggerFactory.getLogger(SolrIndexManager.class);
 	private final List<ConfiguredConnector> allConnectors;
+	private final int prefetchThreads;
+	private final int shardThreads;
+	private final int initThreads;
+	
+	/** components are initialized concurrently, so pools are guarded by a lock of their own */
+	private final Object poolLock = new Object();
+	
+	/** @lazyinit @guardedby poolLock shared by all components with prefetch enabled */
+	private ExecutorService prefetchPool;
+	
+	/** @lazyinit @guardedby poolLock shared by all sharded components */
+	private ExecutorService shardPool;
 	
 	public SolrIndexManager(final PropsConfig properties) {
 		this(properties, "solr");
 	}
 	
 	public SolrIndexManager(final PropsConfig properties, final String propbase) {
+		this.prefetchThreads = properties.getInt(propbase+".prefetchThreads", 
+				Runtime.getRuntime().availableProcessors());
+		this.shardThreads = properties.getInt(propbase+".shardThreads", 
+				Runtime.getRuntime().availableProcessors());
+		this.initThreads = properties.getInt(propbase+".initThreads", 
+				Runtime.getRuntime().availableProcessors());
+		
 		final String [] components = properties.getString(propbase, "").split(",");
 		this.allConnectors = new ArrayList<>(components.length);
 		
@@ -65,22 +155,71 @@ public class SolrIndexManager implements Closeable {
 		}
 	}
 	
+	/**
+	 * Initializes all components except lazy ones, concurrently by up to initThreads threads. Sharded components are
+	 * initialized after all the others, they need their shards
+	 */
 	public synchronized void init() {
-		boolean faulted = false;
+		final List<ConfiguredConnector> plain = new ArrayList<>(allConnectors.size());
+		final List<ConfiguredConnector> sharded = new ArrayList<>();
 		for (final ConfiguredConnector connector : allConnectors) {
-			try {
-				connector.init();
-			} catch (final Exception ex) {
-				LOG.error(
-					"Exception while initializing connector {}, error is deferred in order to close remaining connectors",
-					connector.getId(),
-					ex
-				);
-				faulted = true;
+			if (!connector.isLazy()) {
+				(connector.isSharded() ? sharded : plain).add(connector);
 			}
 		}
-		if (faulted) {
-			throw new IllegalStateException("Some connectors failed to close, see log");
+		boolean success = initAll(plain);
+		success &= initAll(sharded);
+		if (!success) {
+			throw new IllegalStateException("Some connectors failed to initialize, see log");
+		}
+	}
+	
+	/** @return false if some connectors failed */
+	private boolean initAll(final List<ConfiguredConnector> connectors) {
+		if (connectors.isEmpty()) {
+			return true;
+		}
+		final AtomicInteger count = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.min(initThreads, connectors.size()), r -> {
+			final Thread ret = new Thread(r, "solr-init-"+count.incrementAndGet());
+			ret.setDaemon(true);
+			return ret;
+		});
+		try {
+			final List<Future<?>> futures = new ArrayList<>(connectors.size());
+			for (final ConfiguredConnector connector : connectors) {
+				futures.add(pool.submit(() -> {
+					initConnector(connector);
+					return null;
+				}));
+			}
+			boolean success = true;
+			for (int i=0; i<futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (final ExecutionException ex) {
+					LOG.error(
+						"Exception while initializing connector {}, error is deferred in order to init remaining connectors",
+						connectors.get(i).getId(),
+						ex.getCause()
+					);
+					success = false;
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while initializing connectors", ex);
+				}
+			}
+			return success;
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	private void initConnector(final ConfiguredConnector connector) throws IOException {
+		if (connector.isSharded()) {
+			connector.initSharded(id -> initialized(findConnector(id)), this::getShardPool);
+		} else {
+			connector.init(this::getPrefetchPool);
 		}
 	}
 	
@@ -99,6 +238,16 @@ public class SolrIndexManager implements Closeable {
 				faulted = true;
 			}
 		}
+		synchronized(poolLock) {
+			if (prefetchPool != null) {
+				prefetchPool.shutdownNow();
+				prefetchPool = null;
+			}
+			if (shardPool != null) {
+				shardPool.shutdownNow();
+				shardPool = null;
+			}
+		}
 		if (faulted) {
 			throw new IllegalStateException("Some connectors failed to close, see log");
 		}
@@ -112,12 +261,83 @@ public class SolrIndexManager implements Closeable {
 		return ret;
 	}
 	
+	/** @return components that are not shards of some other component, so each document is in exactly one of them */
+	public Collection<String> listTopLevelComponents() {
+		final Set<String> shards = new HashSet<>();
+		for (final ConfiguredConnector connector : allConnectors) {
+			if (connector.isSharded()) {
+				shards.addAll(connector.getShardIds());
+			}
+		}
+		final List<String> ret = new ArrayList<>(allConnectors.size());
+		for (final ConfiguredConnector connector : allConnectors) {
+			if (!shards.contains(connector.getId())) {
+				ret.add(connector.getId());
+			}
+		}
+		return ret;
+	}
+	
+	/** @return true if component is served by {@link LuceneIndex}, judging by configuration only */
+	public boolean isLucene(final String componentId) {
+		return findConnector(componentId).isLucene();
+	}
+	
 	public Map<String, String> getParams(final String componentId) {
 		return findConnector(componentId).getParams();
 	}
 	
-	public SolrIndex getIndex(final String componentId) {
-		return findConnector(componentId).getIndex();
+	/** Lazy components are returned as is, they are initialized by the first call to the index */
+	public Index getIndex(final String componentId) {
+		final ConfiguredConnector connector = findConnector(componentId);
+		if (connector.isLazy() && !connector.isInitialized()) {
+			return new LazyIndex(connector);
+		}
+		return connector.getIndex();
+	}
+	
+	/** @return index of the component without decorators such as caches, for maintenance tasks */
+	public Index getBackend(final String componentId) {
+		return initialized(findConnector(componentId)).getBackend();
+	}
+	
+	private ConfiguredConnector initialized(final ConfiguredConnector connector) {
+		if (connector.isLazy() && !connector.isInitialized()) {
+			try {
+				initConnector(connector);
+			} catch (final IOException ex) {
+				throw new IllegalStateException("Cannot initialize component "+connector.getId(), ex);
+			}
+		}
+		return connector;
+	}
+
+	private ExecutorService getPrefetchPool() {
+		synchronized(poolLock) {
+			if (prefetchPool == null) {
+				final AtomicInteger count = new AtomicInteger();
+				prefetchPool = Executors.newFixedThreadPool(prefetchThreads, r -> {
+					final Thread ret = new Thread(r, "solr-prefetch-"+count.incrementAndGet());
+					ret.setDaemon(true);
+					return ret;
+				});
+			}
+			return prefetchPool;
+		}
+	}
+
+	private ExecutorService getShardPool() {
+		synchronized(poolLock) {
+			if (shardPool == null) {
+				final AtomicInteger count = new AtomicInteger();
+				shardPool = Executors.newFixedThreadPool(shardThreads, r -> {
+					final Thread ret = new Thread(r, "solr-shard-"+count.incrementAndGet());
+					ret.setDaemon(true);
+					return ret;
+				});
+			}
+			return shardPool;
+		}
 	}
 
 	private ConfiguredConnector findConnector(final String id) {
@@ -132,15 +352,51 @@ public class SolrIndexManager implements Closeable {
 		throw new IllegalArgumentException("No such connector");
 	}
 
+	/** Initializes lazy component on first call */
+	private final class LazyIndex extends ForwardingIndex {
+		private final ConfiguredConnector connector;
+		
+		public LazyIndex(final ConfiguredConnector connector) {
+			this.connector = connector;
+		}
+		
+		@Override
+		public Index getDelegate() {
+			return initialized(connector).getIndex();
+		}
+	}
+
 	private static class ConfiguredConnector implements Closeable {
+		private static final long DEFAULT_CACHEBYTES=10*1024*1024;
+		private static final long DEFAULT_SPOOLBYTES=1024*1024*1024;
+		private static final String LUCENE_SCHEME="lucene";
+		private static final String SHARD_SCHEME="shard";
 		private final SolrConnector connector;
 		private final String id;
+		private final String connectString;
 		private final Map<String, String> params;
-		private SolrIndex index;
 		
-		private ConfiguredConnector(final String id, final SolrConnector connector, final Map<String, String> params) {
+		/** {@link SolrIndex} or {@link LuceneIndex}, null for sharded components which do not own their shards */
+		private Closeable backend;
+		
+		/** backend or sharded index, undecorated */
+		private Index undecorated;
+		
+		/** backend, possibly decorated */
+		private Index index;
+		
+		/** told when searches of the component see new data without it being committed through the component */
+		private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+		
+		private ConfiguredConnector(
+				final String id, 
+				final SolrConnector connector, 
+				final String connectString, 
+				final Map<String, String> params
+		) {
 			this.id = id;
 			this.connector = connector;
+			this.connectString = connectString;
 			this.params = Collections.unmodifiableMap(params);
 		}
 		
@@ -157,7 +413,7 @@ public class SolrIndexManager implements Closeable {
 			}
 			
 			final SolrConnector connector = new SolrConnector(properties, propbase);
-			return new ConfiguredConnector(id, connector, params);
+			return new ConfiguredConnector(id, connector, properties.getString(propbase, null), params);
 		}
 
 		public String getId() {
@@ -168,22 +424,182 @@ public class SolrIndexManager implements Closeable {
 			return params;
 		}
 		
-		public void init() throws IOException {
+		public synchronized void init(final Supplier<ExecutorService> prefetchPool) throws IOException {
 			if (index == null) {
-				index = new SolrIndex(connector.connect());
+				final long started = System.currentTimeMillis();
+				if (isLucene()) {
+					final LuceneIndex created = createLucene();
+					backend = created;
+					undecorated = created;
+					index = decorate(created);
+				} else {
+					final SolrIndex created = new SolrIndex(connector.connect());
+					configure(created, prefetchPool);
+					backend = created;
+					undecorated = created;
+					final Index decorated = decorate(created);
+					connector.addReplicaListener(() -> {
+						created.invalidateCaches();
+						changed(decorated);
+					});
+					index = decorated;
+				}
+				LOG.info("Component {} initialized in {}ms", id, System.currentTimeMillis()-started);
 			}
 		}
 		
-		public SolrIndex getIndex() {
+		public synchronized void initSharded(
+				final Function<String, ConfiguredConnector> shardLookup, 
+				final Supplier<ExecutorService> shardPool
+		) {
+			if (index == null) {
+				final long started = System.currentTimeMillis();
+				final List<String> ids = getShardIds();
+				final List<ConfiguredConnector> shardConnectors = new ArrayList<>(ids.size());
+				final List<Index> shards = new ArrayList<>(ids.size());
+				for (final String shardId : ids) {
+					Validate.isTrue(!shardId.equals(id), "Component cannot be a shard of itself: "+id);
+					final ConfiguredConnector shard = shardLookup.apply(shardId);
+					shardConnectors.add(shard);
+					shards.add(shard.getBackend());
+				}
+				undecorated = new ShardedIndex(shards, shardPool.get());
+				final Index decorated = decorate(undecorated);
+				for (final ConfiguredConnector shard : shardConnectors) {
+					shard.addChangeListener(() -> changed(decorated));
+				}
+				index = decorated;
+				LOG.info("Component {} initialized in {}ms", id, System.currentTimeMillis()-started);
+			}
+		}
+		
+		public void addChangeListener(final Runnable listener) {
+			changeListeners.add(listener);
+		}
+		
+		/** 
+		 * Searches see data that was not committed through the component (pulled by replica), cached results are
+		 * stale. Called by the puller thread, so works with given index rather than the fields guarded by this
+		 */
+		private void changed(final Index decorated) {
+			if (decorated instanceof CachingIndex) {
+				((CachingIndex)decorated).invalidate();
+			}
+			for (final Runnable listener : changeListeners) {
+				listener.run();
+			}
+		}
+		
+		public boolean isLazy() {
+			return Boolean.parseBoolean(params.get("lazy"));
+		}
+		
+		public synchronized boolean isInitialized() {
+			return index != null;
+		}
+		
+		public boolean isSharded() {
+			return connectString != null && connectString.startsWith(SHARD_SCHEME+":");
+		}
+		
+		/** @return ids of the shards in order, for sharded components only */
+		public List<String> getShardIds() {
+			final String [] ids = connectString.substring(SHARD_SCHEME.length()+1).split(",");
+			final List<String> ret = new ArrayList<>(ids.length);
+			for (final String shardId : ids) {
+				ret.add(shardId.trim());
+			}
+			return ret;
+		}
+		
+		public boolean isLucene() {
+			return connectString != null && connectString.startsWith(LUCENE_SCHEME+":");
+		}
+		
+		private LuceneIndex createLucene() throws IOException {
+			final URI uri = URI.create(connectString);
+			final String ramBufferMB = params.get("ramBufferMB");
+			final LuceneIndex ret = ramBufferMB == null 
+					? new LuceneIndex(Paths.get(uri.getPath()))
+					: new LuceneIndex(Paths.get(uri.getPath()), Double.parseDouble(ramBufferMB.trim()));
+			final String pageSize = params.get("pageSize");
+			if (pageSize != null) {
+				ret.setPageSize(Integer.parseInt(pageSize.trim()));
+			}
+			return ret;
+		}
+		
+		private void configure(final SolrIndex created, final Supplier<ExecutorService> prefetchPool) 
+				throws IOException 
+		{
+			final String batchSize = params.get("batchSize");
+			if (batchSize != null) {
+				created.setBatchSize(Integer.parseInt(batchSize.trim()));
+			}
+			final String batchBytes = params.get("batchBytes");
+			if (batchBytes != null) {
+				created.setBatchBytes(Integer.parseInt(batchBytes.trim()));
+			}
+			final String pageSize = params.get("pageSize");
+			if (pageSize != null) {
+				created.setPageSize(Integer.parseInt(pageSize.trim()));
+			}
+			final String maxPendingFlushes = params.get("maxPendingFlushes");
+			if (maxPendingFlushes != null) {
+				created.setMaxPendingFlushes(Integer.parseInt(maxPendingFlushes.trim()));
+			}
+			final String prefetch = params.get("prefetch");
+			if (prefetch != null && Integer.parseInt(prefetch.trim()) > 0) {
+				created.setPrefetchExecutor(prefetchPool.get());
+			}
+			final String spool = params.get("spool");
+			if (spool != null) {
+				final String spoolBytes = params.get("spoolBytes");
+				created.setSpool(new UpdateSpool(
+						new StdFileApi(), 
+						new File(spool.trim()).toURI(), 
+						spoolBytes == null ? DEFAULT_SPOOLBYTES : Long.parseLong(spoolBytes.trim())
+				));
+			}
+		}
+		
+		private Index decorate(final Index created) {
+			final String cacheEntries = params.get("cacheEntries");
+			if (cacheEntries == null) {
+				return created;
+			}
+			final String cacheBytes = params.get("cacheBytes");
+			return new CachingIndex(
+					created, 
+					Integer.parseInt(cacheEntries.trim()), 
+					cacheBytes == null ? DEFAULT_CACHEBYTES : Long.parseLong(cacheBytes.trim())
+			);
+		}
+		
+		public synchronized Index getIndex() {
 			if (index == null) {
 				throw new IllegalStateException("Not initialized");
 			}
 			return index;
 		}
+		
+		/** @return index without caches, as shards of sharded components need it */
+		public synchronized Index getBackend() {
+			if (undecorated == null) {
+				throw new IllegalStateException("Not initialized: "+id);
+			}
+			return undecorated;
+		}
 
 		@Override
-		public void close() throws IOException {
-			connector.close();
+		public synchronized void close() throws IOException {
+			try {
+				if (backend != null) {
+					backend.close();
+				}
+			} finally {
+				connector.close();
+			}
 		}
 	}
 
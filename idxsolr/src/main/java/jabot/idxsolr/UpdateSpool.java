@@ -0,0 +1,172 @@
+package jabot.idxsolr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.solr.client.solrj.request.JavaBinUpdateRequestCodec;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jabot.fileapi.FileApi;
+
+/**
+ * On-disk FIFO queue of solr update requests, used by {@link SolrIndex} to park updates while solr is unavailable.
+ * Each request is stored in it's own file named <code>sequence.bytes.upd</code> inside the spool directory, so spool
+ * survives restarts and is replayed in the same order. Total size of the spool is bounded.
+ * 
+ * Not threadsafe, {@link SolrIndex} serializes access
+ */
+public class UpdateSpool {
+	private static final Logger LOG = LoggerFactory.getLogger(UpdateSpool.class);
+	private static final String SUFFIX = ".upd";
+	private static final String TEMP_SUFFIX = ".new";
+	private final FileApi fileApi;
+	private final URI directory;
+	private final long maxBytes;
+	private final Deque<Entry> entries = new ArrayDeque<>();
+	private long bytes;
+	private long nextSequence;
+
+	/**
+	 * @param @notnull fileApi
+	 * @param @notnull directory spool directory, will be created if needed. Requests left over from previous run are
+	 *                 picked up
+	 * @param maxBytes max total size of spooled requests
+	 */
+	public UpdateSpool(final FileApi fileApi, final URI directory, final long maxBytes) throws IOException {
+		Validate.notNull(fileApi, "fileApi cannot be null");
+		Validate.notNull(directory, "directory cannot be null");
+		Validate.isTrue(maxBytes > 0, "maxBytes must be positive");
+		
+		this.fileApi = fileApi;
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		
+		load();
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+	
+	/** @return number of spooled requests */
+	public int size() {
+		return entries.size();
+	}
+	
+	/** @return total size of spooled requests */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Append request to the tail of the spool
+	 * @param @notnull req
+	 * @return false if spool is full and request was not spooled
+	 */
+	public boolean offer(final UpdateRequest req) throws IOException {
+		final ByteArrayOutputStream marshalled = new ByteArrayOutputStream();
+		new JavaBinUpdateRequestCodec().marshal(req, marshalled);
+		
+		final long size = marshalled.size();
+		if (bytes + size > maxBytes) {
+			return false;
+		}
+		
+		final URI file = child(String.format("%020d.%d%s", nextSequence, size, SUFFIX));
+		final URI temp = URI.create(file+TEMP_SUFFIX);
+		fileApi.remove(temp);
+		try(final OutputStream out = fileApi.createFile(temp)) {
+			marshalled.writeTo(out);
+		}
+		fileApi.move(temp, file, false);
+		
+		nextSequence++;
+		entries.addLast(new Entry(file, size));
+		bytes += size;
+		return true;
+	}
+	
+	/**
+	 * @return head of the spool (without removing it) or null if spool is empty
+	 */
+	public UpdateRequest peek() throws IOException {
+		final Entry head = entries.peekFirst();
+		if (head == null) {
+			return null;
+		}
+		try(final InputStream in = fileApi.readFile(head.file)) {
+			return new JavaBinUpdateRequestCodec().unmarshal(in, (doc, req, commitWithin, overwrite) -> req.add(doc));
+		}
+	}
+	
+	/**
+	 * Remove head of the spool
+	 */
+	public void remove() throws IOException {
+		final Entry head = entries.peekFirst();
+		if (head != null) {
+			fileApi.remove(head.file);
+			entries.removeFirst();
+			bytes -= head.bytes;
+		}
+	}
+	
+	private void load() throws IOException {
+		fileApi.mkdirs(directory);
+		
+		final List<URI> files;
+		try(final Stream<URI> listing = fileApi.listDirectory(directory)) {
+			files = listing.collect(Collectors.toCollection(ArrayList::new));
+		}
+		Collections.sort(files, (a, b) -> name(a).compareTo(name(b)));
+		for (final URI file : files) {
+			final String name = name(file);
+			if (name.endsWith(TEMP_SUFFIX)) {
+				fileApi.remove(file);
+			} else if (name.endsWith(SUFFIX)) {
+				final String [] parts = name.substring(0, name.length()-SUFFIX.length()).split("\\.");
+				final long sequence = Long.parseLong(parts[0]);
+				final long size = Long.parseLong(parts[1]);
+				entries.addLast(new Entry(file, size));
+				bytes += size;
+				nextSequence = Math.max(nextSequence, sequence+1);
+			}
+		}
+		if (!entries.isEmpty()) {
+			LOG.info("Found {} spooled updates ({} bytes) in {}", entries.size(), bytes, directory);
+		}
+	}
+	
+	private URI child(final String name) {
+		final String dir = directory.toString();
+		return URI.create(dir.endsWith("/") ? dir+name : dir+"/"+name);
+	}
+	
+	private static String name(final URI file) {
+		final String path = file.getPath();
+		return path.substring(path.lastIndexOf('/')+1);
+	}
+	
+	private static final class Entry {
+		private final URI file;
+		private final long bytes;
+		
+		public Entry(final URI file, final long bytes) {
+			this.file = file;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package jabot.idxsolr;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest.ACTION;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import jabot.common.types.Interval;
+
+//TODO: Don't run during normal build
+public class EmbeddedReplicaIntegrationTest {
+	private File tmp;
+	private EmbeddedSolrClient primary;
+	private EmbeddedReplica fixture;
+
+	@Before
+	public void setUp() throws IOException {
+		tmp = Files.createTempDir();
+		primary = new EmbeddedSolrClient(new File(tmp, "primary"));
+		primary.start();
+		fixture = new EmbeddedReplica(primary, new File(tmp, "replica"), Interval.HOUR);
+		fixture.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try {
+			fixture.close();
+			primary.close();
+		} finally {
+			FileUtils.forceDelete(tmp);
+		}
+	}
+
+	@Test
+	public void test_replica_sees_commits_after_pull() throws IOException, SolrServerException {
+		store("pk1");
+		Assert.assertEquals(1, count(primary));
+		Assert.assertEquals(0, count(fixture));
+
+		Assert.assertTrue(fixture.pull());
+		Assert.assertEquals(1, count(fixture));
+		Assert.assertFalse(fixture.pull());
+
+		store("pk2");
+		Assert.assertTrue(fixture.pull());
+		Assert.assertEquals(2, count(fixture));
+	}
+
+	@Test
+	public void test_listeners_told_about_switch() throws IOException, SolrServerException {
+		final AtomicInteger switches = new AtomicInteger();
+		fixture.addSwitchListener(switches::incrementAndGet);
+
+		Assert.assertFalse(fixture.pull());
+		Assert.assertEquals(0, switches.get());
+
+		store("pk1");
+		Assert.assertTrue(fixture.pull());
+		Assert.assertEquals(1, switches.get());
+	}
+
+	private void store(final String pk) throws IOException, SolrServerException {
+		final SolrInputDocument doc = new SolrInputDocument();
+		doc.setField("pk", pk);
+		final UpdateRequest req = new UpdateRequest();
+		req.add(doc);
+		req.setAction(ACTION.COMMIT, true, true);
+		primary.update(req);
+	}
+
+	private static long count(final SolrClient client) throws IOException, SolrServerException {
+		final SolrQuery query = new SolrQuery("*:*");
+		query.setRows(0);
+		return client.search(query).getResults().getNumFound();
+	}
+}
@@ -0,0 +1,156 @@
+package jabot.idxsolr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest.ACTION;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PipelinedUpdaterTest {
+	private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+	private PipelinedUpdater fixture;
+
+	@After
+	public void tearDown() {
+		if (fixture != null) {
+			fixture.close();
+		}
+	}
+
+	@Test
+	public void test_same_pk_sent_in_order() throws Exception {
+		fixture = new PipelinedUpdater(this::record, 4, 2, 10);
+
+		for (int i=0; i<20; i++) {
+			fixture.update(add("pk"+(i%3), "v"+i));
+		}
+		fixture.drain();
+
+		Assert.assertEquals(20, sent.size());
+		for (int pk=0; pk<3; pk++) {
+			int lastVersion = -1;
+			for (final String entry : sent) {
+				if (entry.startsWith("pk"+pk+"=")) {
+					final int version = Integer.parseInt(entry.substring(entry.indexOf("=v")+2));
+					Assert.assertTrue(entry, version > lastVersion);
+					lastVersion = version;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test_commit_waits_for_queued_updates() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		fixture = new PipelinedUpdater(req -> {
+			if (req.getParams() == null || req.getParams().getParameterNames().isEmpty()) {
+				try {
+					release.await(1, TimeUnit.MINUTES);
+				} catch (final InterruptedException ex) {
+					throw new IOException(ex);
+				}
+			}
+			return record(req);
+		}, 2, 2, 10);
+
+		fixture.update(add("pk1", "v1"));
+		fixture.update(add("pk2", "v2"));
+		new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			release.countDown();
+		}).start();
+
+		final UpdateRequest commit = new UpdateRequest();
+		commit.setAction(ACTION.COMMIT, true, true);
+		fixture.update(commit);
+
+		Assert.assertEquals(3, sent.size());
+		Assert.assertEquals("commit", sent.get(2));
+	}
+
+	@Test
+	public void test_failed_update_retried_and_reported() throws Exception {
+		final AtomicInteger failures = new AtomicInteger(3);
+		fixture = new PipelinedUpdater(req -> {
+			if (failures.getAndDecrement() > 0) {
+				throw new IOException("solr is down");
+			}
+			return record(req);
+		}, 1, 2, 10);
+
+		fixture.update(add("pk1", "v1"));
+		try {
+			fixture.drain();
+			Assert.fail("drain should report failing lane");
+		} catch (final IOException ex) {
+			Assert.assertEquals("solr is down", ex.getCause().getMessage());
+		}
+
+		while (failures.get() >= 0) {
+			Thread.sleep(10);
+		}
+		fixture.drain();
+		Assert.assertEquals(Collections.singletonList("pk1=v1"), sent);
+	}
+
+	@Test
+	public void test_rejected_update_dropped_and_reported() throws Exception {
+		fixture = new PipelinedUpdater(req -> {
+			if ("bad".equals(req.getDocuments().get(0).getFieldValue("v"))) {
+				throw new SolrException(ErrorCode.BAD_REQUEST, "unknown field");
+			}
+			return record(req);
+		}, 1, 2, 10);
+
+		fixture.update(add("pk1", "bad"));
+		fixture.update(add("pk2", "v2"));
+		try {
+			fixture.drain();
+			Assert.fail("drain should report rejected update");
+		} catch (final SolrException ex) {
+			Assert.assertEquals(400, ex.code());
+		}
+
+		fixture.update(add("pk3", "v3"));
+		fixture.drain();
+		Assert.assertEquals(Arrays.asList("pk2=v2", "pk3=v3"), sent);
+	}
+
+	private NamedList<Object> record(final UpdateRequest req) {
+		if (req.getDocuments() != null) {
+			for (final SolrInputDocument doc : req.getDocuments()) {
+				sent.add(doc.getFieldValue("pk")+"="+doc.getFieldValue("v"));
+			}
+		}
+		if (req.getParams() != null && !req.getParams().getParameterNames().isEmpty()) {
+			sent.add("commit");
+		}
+		return new NamedList<>();
+	}
+
+	private static UpdateRequest add(final String pk, final String value) {
+		final SolrInputDocument doc = new SolrInputDocument();
+		doc.setField("pk", pk);
+		doc.setField("v", value);
+		final UpdateRequest ret = new UpdateRequest();
+		ret.add(doc);
+		return ret;
+	}
+}
@@ -0,0 +1,117 @@
+package jabot.idxsolr;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class ReplicatedSolrClientTest {
+	@Mock SolrClient writer;
+	@Mock SolrClient replica1;
+	@Mock SolrClient replica2;
+	private final QueryResponse response1 = new QueryResponse();
+	private final QueryResponse response2 = new QueryResponse();
+	private ReplicatedSolrClient fixture;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (fixture != null) {
+			fixture.close();
+		}
+	}
+
+	@Test
+	public void test_updates_go_to_writer() throws Exception {
+		fixture = new ReplicatedSolrClient(writer, Arrays.asList(replica1, replica2), 0);
+		final UpdateRequest req = new UpdateRequest();
+
+		fixture.update(req);
+
+		verify(writer).update(req);
+		verify(replica1, never()).update(any());
+		verify(replica2, never()).update(any());
+	}
+
+	@Test
+	public void test_failed_replica_marked_down() throws Exception {
+		fixture = new ReplicatedSolrClient(writer, Arrays.asList(replica1, replica2), 0);
+		when(replica1.search(any())).thenThrow(new IOException("down"));
+		when(replica2.search(any())).thenReturn(response2);
+
+		for (int i=0; i<4; i++) {
+			Assert.assertSame(response2, fixture.search(new SolrQuery("*:*")));
+		}
+
+		Assert.assertFalse(fixture.isUp(0));
+		Assert.assertTrue(fixture.isUp(1));
+		verify(replica1, times(1)).search(any());
+		verify(replica2, times(4)).search(any());
+	}
+
+	@Test
+	public void test_rejected_search_not_retried() throws Exception {
+		fixture = new ReplicatedSolrClient(writer, Arrays.asList(replica1, replica2), 0);
+		final SolrException rejected = new SolrException(ErrorCode.BAD_REQUEST, "undefined field");
+		when(replica1.search(any())).thenThrow(rejected);
+		when(replica2.search(any())).thenThrow(rejected);
+
+		try {
+			fixture.search(new SolrQuery("bad:query"));
+			Assert.fail("rejected search must be thrown");
+		} catch (final SolrException ex) {
+			Assert.assertSame(rejected, ex);
+		}
+
+		Assert.assertTrue(fixture.isUp(0));
+		Assert.assertTrue(fixture.isUp(1));
+		verify(replica1).search(any());
+		verify(replica2, never()).search(any());
+	}
+
+	@Test
+	public void test_slow_search_hedged() throws Exception {
+		fixture = new ReplicatedSolrClient(writer, Arrays.asList(replica1, replica2), 50);
+		final CountDownLatch slow = new CountDownLatch(1);
+		when(replica1.search(any())).then(inv -> {
+			slow.await(1, TimeUnit.MINUTES);
+			return response1;
+		});
+		when(replica2.search(any())).thenReturn(response2);
+		for (int i=0; i<ReplicatedSolrClient.MIN_SAMPLES; i++) {
+			fixture.recordLatency(10);
+		}
+		Assert.assertEquals(10, fixture.getHedgeDelayMillis());
+
+		try {
+			// whichever replica is picked first, the fast one answers
+			Assert.assertSame(response2, fixture.search(new SolrQuery("*:*")));
+			Assert.assertSame(response2, fixture.search(new SolrQuery("*:*")));
+		} finally {
+			slow.countDown();
+		}
+		Assert.assertTrue(fixture.isUp(0));
+	}
+}
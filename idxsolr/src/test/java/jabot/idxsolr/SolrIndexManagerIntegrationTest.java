@@ -12,6 +12,7 @@ import org.junit.Test;
 import com.google.common.io.Files;
 
 import jabot.common.props.PropsConfig;
+import jabot.idxapi.Index;
 
 //TODO: Don't run during normal build
 public class SolrIndexManagerIntegrationTest {
@@ -38,4 +39,39 @@ public class SolrIndexManagerIntegrationTest {
 			FileUtils.forceDelete(tmp2);
 		}
 	}
+
+	@Test
+	public void test_shards_not_listed_top_level() throws IOException {
+		final Properties props = new Properties();
+		props.setProperty("solr", "core0,core1,books,core2");
+		props.setProperty("solr.core0", "lucene:/tmp/core0");
+		props.setProperty("solr.core1", "lucene:/tmp/core1");
+		props.setProperty("solr.core2", "lucene:/tmp/core2");
+		props.setProperty("solr.books", "shard:core0, core2");
+		try (final SolrIndexManager fixture = new SolrIndexManager(new PropsConfig(props))) {
+			Assert.assertEquals(Arrays.asList("core0", "core1", "books", "core2"), fixture.listComponents());
+			Assert.assertEquals(Arrays.asList("core1", "books"), fixture.listTopLevelComponents());
+		}
+	}
+
+	@Test
+	public void test_lazy() throws IOException {
+		final File tmp = Files.createTempDir();
+		try {
+			final Properties props = new Properties();
+			props.setProperty("solr", "tmp");
+			props.setProperty("solr.tmp", "embedded:" + tmp.getAbsolutePath());
+			props.setProperty("solr.tmp.lazy", "true");
+			try (final SolrIndexManager fixture = new SolrIndexManager(new PropsConfig(props))) {
+				fixture.init();
+				Assert.assertEquals(0, tmp.list().length);
+				final Index index = fixture.getIndex("tmp");
+				Assert.assertEquals(0, tmp.list().length);
+				Assert.assertEquals(0, index.count("*:*"));
+				Assert.assertNotEquals(0, tmp.list().length);
+			}
+		} finally {
+			FileUtils.forceDelete(tmp);
+		}
+	}
 }
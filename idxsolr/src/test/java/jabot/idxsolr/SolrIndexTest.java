@@ -4,22 +4,33 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest.ACTION;
 import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.util.NamedList;
 import org.junit.Assert;
@@ -30,11 +41,14 @@ import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import jabot.fileapi.std.RamFileApi;
 import jabot.idxapi.Binary;
 import jabot.idxapi.DelayedIndexingException;
 import jabot.idxapi.Document;
+import jabot.idxapi.Facet;
 import jabot.idxapi.Field;
 import jabot.idxapi.FieldValue;
+import jabot.idxapi.IndexStats;
 import jabot.idxapi.IndexingException;
 import jabot.idxapi.SearchResults;
 import jabot.idxapi.Untokenized;
@@ -83,6 +97,18 @@ public class SolrIndexTest {
 		verify(client).update(notNull(UpdateRequest.class));
 	}
 	
+	@Test
+	public void test_softCommit() throws SolrServerException, IOException, DelayedIndexingException {
+		fixture.setBatchSize(100);
+		fixture.store(sample1);
+		fixture.softCommit();
+		final ArgumentCaptor<UpdateRequest> req = ArgumentCaptor.forClass(UpdateRequest.class);
+		verify(client).update(req.capture());
+		Assert.assertEquals(ACTION.COMMIT, req.getValue().getAction());
+		Assert.assertEquals("true", req.getValue().getParams().get("softCommit"));
+		Assert.assertEquals(1, req.getValue().getDocuments().size());
+	}
+	
 	@Test
 	public void test_store_immediate() throws SolrServerException, IOException {
 		fixture.store(sample1);
@@ -192,25 +218,284 @@ public class SolrIndexTest {
 		fixture.commit();
 	}
 	
+	@Test
+	public void test_store_does_not_wait_for_solr() 
+			throws SolrServerException, IOException, DelayedIndexingException, InterruptedException 
+	{
+		final CountDownLatch solrResponds = new CountDownLatch(1);
+		final TestSolrClient client = withTestClient(solrResponds);
+		fixture.setMaxPendingFlushes(2);
+		
+		fixture.store(sample1); // in flight
+		fixture.store(sample2); // pending
+		Assert.assertEquals(0, client.documents.size());
+		
+		solrResponds.countDown();
+		fixture.commit();
+		Assert.assertEquals(2, client.documents.size());
+		Assert.assertEquals(1, client.commits);
+		fixture.close();
+	}
+	
+	@Test
+	public void test_spool_when_solr_is_down() throws SolrServerException, IOException, DelayedIndexingException {
+		final UpdateSpool spool = new UpdateSpool(new RamFileApi(), URI.create("testfs:/spool"), 1024*1024);
+		fixture.setSpool(spool);
+		when(client.update(any())).thenThrow(new IOException()).thenReturn(null);
+		
+		fixture.store(sample1);
+		Assert.assertEquals(1, spool.size());
+		
+		fixture.store(sample1);
+		Assert.assertTrue(spool.isEmpty());
+		verify(client, times(3)).update(any());
+		fixture.close();
+	}
+	
+	@Test
+	public void test_commit_fails_while_updates_spooled() 
+			throws SolrServerException, IOException, DelayedIndexingException 
+	{
+		final UpdateSpool spool = new UpdateSpool(new RamFileApi(), URI.create("testfs:/spool"), 1024*1024);
+		fixture.setSpool(spool);
+		fixture.setBatchSize(100);
+		when(client.update(any())).thenThrow(new IOException());
+		
+		fixture.store(sample1);
+		try {
+			fixture.commit();
+			Assert.fail("commit must not succeed until updates are in solr");
+		} catch (final DelayedIndexingException ex) {
+			// expected
+		}
+		Assert.assertEquals(1, spool.size());
+		fixture.close();
+	}
+	
+	@Test
+	public void test_rejected_update_not_spooled() throws SolrServerException, IOException, DelayedIndexingException {
+		final UpdateSpool spool = new UpdateSpool(new RamFileApi(), URI.create("testfs:/spool"), 1024*1024);
+		fixture.setSpool(spool);
+		when(client.update(any())).thenThrow(new SolrException(ErrorCode.BAD_REQUEST, "unknown field")).thenReturn(null);
+		
+		try {
+			fixture.store(sample1);
+			Assert.fail("rejected update must be reported");
+		} catch (final IndexingException ex) {
+			Assert.assertTrue(ex.getCause() instanceof SolrException);
+		}
+		Assert.assertTrue(spool.isEmpty());
+		
+		fixture.store(sample2);
+		fixture.commit();
+		verify(client, times(3)).update(any());
+		fixture.close();
+	}
+	
+	@Test(expected=DelayedIndexingException.class)
+	public void test_async_rejection_reported_on_commit() 
+			throws SolrServerException, IOException, DelayedIndexingException 
+	{
+		when(client.update(any())).thenThrow(new SolrException(ErrorCode.BAD_REQUEST, "unknown field"))
+			.thenReturn(null);
+		fixture.setMaxPendingFlushes(1);
+		
+		fixture.store(sample1);
+		fixture.commit();
+	}
+	
+	@Test
+	public void test_commit_drains_pipeline() throws SolrServerException, IOException, DelayedIndexingException {
+		final TestSolrClient client = withTestClient();
+		fixture.setMaxPendingFlushes(1);
+		
+		fixture.store(sample1);
+		fixture.removeByKey(new Untokenized("key1"));
+		fixture.removeByQuery("query1");
+		fixture.commit();
+		
+		Assert.assertEquals(1, client.documents.size());
+		Assert.assertEquals(Arrays.asList("key1"), client.removeByKey);
+		Assert.assertEquals(Arrays.asList("query1"), client.removeByQuery);
+		Assert.assertEquals(1, client.commits);
+		fixture.close();
+	}
+	
+	@Test(expected=DelayedIndexingException.class)
+	public void test_async_exception_reported_on_commit() 
+			throws SolrServerException, IOException, DelayedIndexingException 
+	{
+		when(client.update(any())).thenThrow(new IOException());
+		fixture.setMaxPendingFlushes(1);
+		
+		fixture.store(sample1);
+		fixture.commit();
+	}
+	
+	@Test
+	public void test_pending_updates_until_hard_commit() throws DelayedIndexingException {
+		withTestClient();
+		Assert.assertFalse(fixture.hasPendingUpdates());
+		
+		fixture.store(sample1);
+		Assert.assertTrue(fixture.hasPendingUpdates());
+		
+		fixture.softCommit();
+		Assert.assertTrue(fixture.hasPendingUpdates());
+		
+		fixture.commit();
+		Assert.assertFalse(fixture.hasPendingUpdates());
+	}
+	
+	@Test
+	public void test_optimize_skipped_while_pending() throws SolrServerException, IOException, DelayedIndexingException {
+		fixture.store(sample1);
+		verify(client, times(1)).update(any());
+		
+		fixture.optimize(1, 0);
+		verify(client, times(1)).update(any());
+		
+		fixture.commit();
+		fixture.optimize(1, 0);
+		verify(client, times(4)).update(any());
+	}
+	
 	@Test
 	public void test_search() throws SolrServerException, IOException {
 		final SolrDocument solrDoc = new SolrDocument();
 		solrDoc.setField("pk", "pk1");
+		solrDoc.setField("score", 1.5f);
 
 		final QueryResponse resp1 = buildResponse(solrDoc);
 		resp1.getResults().setNumFound(2);
 		
-		when(client.search(solrQuery("q=search&fl=pk&rows=1&start=10"))).thenReturn(resp1);
-		when(client.search(solrQuery("q=search&fl=pk&rows=2&start=11"))).thenReturn(buildResponse());
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=1&start=10"))).thenReturn(resp1);
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=2&start=11"))).thenReturn(buildResponse());
 		
 		SearchResults results = fixture.search("search", 10);
+		Assert.assertTrue(Float.isNaN(results.score()));
 		final Document doc = results.next();
 		
 		Assert.assertEquals(2, results.estimateTotalResults());
 		Assert.assertEquals(new Untokenized("pk1"), doc.getPk());
+		Assert.assertEquals(1.5f, results.score(), 0.0f);
+		Assert.assertEquals(0, doc.getFields().size());
 		Assert.assertNull(results.next());
 	}
 	
+	@Test
+	public void test_estimateTotalResults_before_fetching_does_not_fetch_documents() 
+			throws SolrServerException, IOException 
+	{
+		final QueryResponse count = buildResponse();
+		count.getResults().setNumFound(42);
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=0"))).thenReturn(count);
+		
+		SearchResults results = fixture.search("search", 0);
+		Assert.assertEquals(42, results.estimateTotalResults());
+		Assert.assertEquals(42, results.estimateTotalResults());
+		
+		verify(client, times(1)).search(any());
+	}
+	
+	@Test
+	public void test_count_cached_until_commit() throws SolrServerException, IOException, DelayedIndexingException {
+		final QueryResponse count1 = buildResponse();
+		count1.getResults().setNumFound(42);
+		final QueryResponse count2 = buildResponse();
+		count2.getResults().setNumFound(43);
+		when(client.search(solrQuery("q=search&rows=0"))).thenReturn(count1, count2);
+		
+		Assert.assertEquals(42, fixture.count("search"));
+		Assert.assertEquals(42, fixture.count("search"));
+		verify(client, times(1)).search(any());
+		
+		fixture.commit();
+		Assert.assertEquals(43, fixture.count("search"));
+		verify(client, times(2)).search(any());
+	}
+	
+	@Test
+	public void test_stats() throws SolrServerException, IOException, DelayedIndexingException {
+		final NamedList<Object> index = new NamedList<>();
+		index.add("numDocs", 10);
+		index.add("maxDoc", 12);
+		index.add("deletedDocs", 2);
+		final NamedList<Object> response = new NamedList<>();
+		response.add("index", index);
+		when(client.request(any())).thenReturn(response);
+		
+		final IndexStats stats = fixture.stats();
+		Assert.assertEquals(10, stats.getNumDocs());
+		Assert.assertEquals(12, stats.getMaxDoc());
+		Assert.assertEquals(2, stats.getDeletedDocs());
+		Assert.assertEquals(IndexStats.UNKNOWN, stats.getSegmentCount());
+		
+		Assert.assertSame(stats, fixture.stats());
+		verify(client, times(1)).request(any());
+		
+		fixture.commit();
+		fixture.stats();
+		verify(client, times(2)).request(any());
+	}
+	
+	@Test
+	public void test_facets() throws SolrServerException, IOException {
+		final NamedList<Object> facets = new NamedList<>();
+		facets.add("count", 3);
+		facets.add("f0", facet(bucket("often", 2), bucket("rare", 1)));
+		facets.add("f1", facet(bucket(0L, 1), bucket(10L, 0)));
+		final QueryResponse response = buildResponse();
+		response.getResponse().add("facets", facets);
+		when(client.search(queryCaptor.capture())).thenReturn(response);
+		
+		final List<Facet> request = Arrays.asList(Facet.terms("tag_str_f", 5), Facet.range("size_long", 0, 20, 10));
+		final List<Map<String, Long>> ret = fixture.facets("search", Collections.singletonList("filter"), request);
+		
+		Assert.assertEquals(2, ret.size());
+		Assert.assertEquals(Arrays.asList("often", "rare"), new LinkedList<>(ret.get(0).keySet()));
+		Assert.assertEquals(Long.valueOf(2), ret.get(0).get("often"));
+		Assert.assertEquals(Arrays.asList("0", "10"), new LinkedList<>(ret.get(1).keySet()));
+		Assert.assertEquals(Long.valueOf(1), ret.get(1).get("0"));
+		
+		Assert.assertEquals(Integer.valueOf(0), queryCaptor.getValue().getRows());
+		Assert.assertEquals(Arrays.asList("filter"), Arrays.asList(queryCaptor.getValue().getFilterQueries()));
+		Assert.assertEquals(SolrIndex.toJsonFacets(request), queryCaptor.getValue().get("json.facet"));
+	}
+	
+	@Test
+	public void test_bucketKey() {
+		Assert.assertEquals("1", SolrIndex.bucketKey(1L, false));
+		Assert.assertEquals("1", SolrIndex.bucketKey(1, false));
+		Assert.assertEquals("1.2", SolrIndex.bucketKey(1.2, false));
+		Assert.assertEquals("1.5", SolrIndex.bucketKey(1.5f, false));
+		Assert.assertEquals("10", SolrIndex.bucketKey(10.0, true));
+		Assert.assertEquals("abc", SolrIndex.bucketKey("abc", false));
+	}
+	
+	@Test
+	public void test_toJsonFacets() {
+		Assert.assertEquals(
+				"{\"f0\":{\"type\":\"terms\",\"field\":\"tag_str_f\",\"limit\":5},"
+				+ "\"f1\":{\"type\":\"range\",\"field\":\"size_long\",\"start\":0,\"end\":20,\"gap\":10,"
+				+ "\"hardend\":true}}",
+				SolrIndex.toJsonFacets(Arrays.asList(Facet.terms("tag_str_f", 5), Facet.range("size_long", 0, 20, 10)))
+		);
+	}
+	
+	private static NamedList<Object> facet(final NamedList<?> ... buckets) {
+		final NamedList<Object> ret = new NamedList<>();
+		ret.add("buckets", Arrays.asList(buckets));
+		return ret;
+	}
+	
+	private static NamedList<Object> bucket(final Object val, final int count) {
+		final NamedList<Object> ret = new NamedList<>();
+		ret.add("val", val);
+		ret.add("count", count);
+		return ret;
+	}
+	
 	@Test
 	public void test_search_paging() throws SolrServerException, IOException {
 		final SolrDocument solrDoc1 = new SolrDocument();
@@ -224,8 +509,8 @@ public class SolrIndexTest {
 		
 		fixture.setPageSize(2);
 
-		when(client.search(solrQuery("q=search&fl=pk&rows=2&start=0"))).thenReturn(buildResponse(solrDoc1, solrDoc2));
-		when(client.search(solrQuery("q=search&fl=pk&rows=4&start=2"))).thenReturn(buildResponse(solrDoc3));
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=2&start=0"))).thenReturn(buildResponse(solrDoc1, solrDoc2));
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=4&start=2"))).thenReturn(buildResponse(solrDoc3));
 		
 		SearchResults results = fixture.search("search", 0);
 		Assert.assertEquals(new Untokenized("pk1"), results.next().getPk());
@@ -236,6 +521,42 @@ public class SolrIndexTest {
 		verify(client, times(2)).search(any());
 	}
 	
+	@Test
+	public void test_search_paging_with_prefetch() throws SolrServerException, IOException {
+		final SolrDocument solrDoc1 = new SolrDocument();
+		solrDoc1.setField("pk", "pk1");
+
+		final SolrDocument solrDoc2 = new SolrDocument();
+		solrDoc2.setField("pk", "pk2");
+		
+		final SolrDocument solrDoc3 = new SolrDocument();
+		solrDoc3.setField("pk", "pk3");
+		
+		final ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+		try {
+			fixture.setPageSize(2);
+			fixture.setPrefetchExecutor(prefetcher);
+	
+			when(client.search(solrQuery("q=search&fl=pk,score&rows=2&start=0"))).thenReturn(buildResponse(solrDoc1, solrDoc2));
+			when(client.search(solrQuery("q=search&fl=pk,score&rows=4&start=2"))).thenReturn(buildResponse(solrDoc3));
+			
+			SearchResults results = fixture.search("search", 0);
+			Assert.assertEquals(new Untokenized("pk1"), results.next().getPk());
+			
+			// second page is requested before first one is consumed
+			verify(client, timeout(1000).times(2)).search(any());
+			
+			Assert.assertEquals(new Untokenized("pk2"), results.next().getPk());
+			Assert.assertEquals(new Untokenized("pk3"), results.next().getPk());
+			Assert.assertNull(results.next());
+			results.close();
+	
+			verify(client, times(2)).search(any());
+		} finally {
+			prefetcher.shutdownNow();
+		}
+	}
+	
 	@Test
 	public void test_increases_pageSize_when_moreDataAvailable_fetched() 
 			throws SolrServerException, IOException 
@@ -254,14 +575,14 @@ public class SolrIndexTest {
 
 		fixture.setPageSize(1);
 
-		when(client.search(solrQuery("q=search&fl=pk&rows=1&start=0"))).thenReturn(
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=1&start=0"))).thenReturn(
 				buildResponse(solrDoc1)
 		);
-		when(client.search(solrQuery("q=search&fl=pk&rows=2&start=1"))).thenReturn(
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=2&start=1"))).thenReturn(
 				buildResponse(solrDoc2, solrDoc3)
 		);
 
-		when(client.search(solrQuery("q=search&fl=pk&rows=4&start=3"))).thenReturn(
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=4&start=3"))).thenReturn(
 				buildResponse(solrDoc4)
 		);
 		
@@ -295,7 +616,7 @@ public class SolrIndexTest {
 
 		fixture.setPageSize(4);
 
-		when(client.search(solrQuery("q=search&fl=pk&rows=4&start=0"))).thenReturn(
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=4&start=0"))).thenReturn(
 				buildResponse(solrDoc1, solrDoc2, solrDoc3, solrDoc4)
 		);
 		try (SearchResults results = fixture.search("search", 0)) {
@@ -319,8 +640,8 @@ public class SolrIndexTest {
 		
 		fixture.setPageSize(2);
 
-		when(client.search(solrQuery("q=search&fl=pk&rows=2&start=0"))).thenReturn(buildResponse(solrDoc1, solrDoc2));
-		when(client.search(solrQuery("q=search&fl=pk&rows=2&start=2"))).thenReturn(buildResponse(solrDoc3));
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=2&start=0"))).thenReturn(buildResponse(solrDoc1, solrDoc2));
+		when(client.search(solrQuery("q=search&fl=pk,score&rows=2&start=2"))).thenReturn(buildResponse(solrDoc3));
 		
 		SearchResults results = fixture.search("search", 0);
 		Assert.assertEquals(new Untokenized("pk1"), results.next().getPk());
@@ -330,6 +651,37 @@ public class SolrIndexTest {
 		verify(client, times(1)).search(any());
 	}
 	
+	@Test
+	public void test_scan() throws SolrServerException, IOException {
+		final SolrDocument solrDoc1 = new SolrDocument();
+		solrDoc1.setField("pk", "pk1");
+
+		final SolrDocument solrDoc2 = new SolrDocument();
+		solrDoc2.setField("pk", "pk2");
+		
+		final SolrDocument solrDoc3 = new SolrDocument();
+		solrDoc3.setField("pk", "pk3");
+		
+		fixture.setScanPageSize(2);
+		
+		when(client.search(solrQuery("q=search&fl=pk&sort=pk+asc&rows=2&cursorMark=*")))
+			.thenReturn(buildCursorResponse("mark1", solrDoc1, solrDoc2));
+		when(client.search(solrQuery("q=search&fl=pk&sort=pk+asc&rows=2&cursorMark=mark1")))
+			.thenReturn(buildCursorResponse("mark2", solrDoc3));
+		when(client.search(solrQuery("q=search&fl=pk&sort=pk+asc&rows=2&cursorMark=mark2")))
+			.thenReturn(buildCursorResponse("mark2"));
+		
+		try (SearchResults results = fixture.scan("search")) {
+			Assert.assertEquals(new Untokenized("pk1"), results.next().getPk());
+			Assert.assertEquals(new Untokenized("pk2"), results.next().getPk());
+			Assert.assertEquals(new Untokenized("pk3"), results.next().getPk());
+			Assert.assertNull(results.next());
+		}
+		
+		verify(client, times(3)).search(any());
+		Assert.assertEquals("scan must not affect adaptive page size", 1, fixture.getPageSize());
+	}
+	
 	@Test
 	public void test_search_with_fields() throws SolrServerException, IOException {
 		final SolrDocument solrDoc = new SolrDocument();
@@ -337,10 +689,10 @@ public class SolrIndexTest {
 		solrDoc.setField("str_f_unt", new Untokenized("str1"));
 		solrDoc.setField("list_f_int_mv", Arrays.asList(1, 2));
 
-		when(client.search(solrQuery("q=search&fl=pk,str_f_unt,list_f_int_mv&rows=1&start=0")))
+		when(client.search(solrQuery("q=search&fl=pk,str_f_unt,list_f_int_mv,score&rows=1&start=0")))
 			.thenReturn(buildResponse(solrDoc));
 		
-		when(client.search(solrQuery("q=search&fl=pk,str_f_unt,list_f_int_mv&rows=2&start=1")))
+		when(client.search(solrQuery("q=search&fl=pk,str_f_unt,list_f_int_mv,score&rows=2&start=1")))
 			.thenReturn(buildResponse());
 		
 		List<Field> fields = Arrays.asList(new Field("str_f_unt"), new Field("list_f_int_mv"));
@@ -379,12 +731,24 @@ public class SolrIndexTest {
 		return ret;
 	}
 	
+	private QueryResponse buildCursorResponse(final String nextCursorMark, final SolrDocument ... docs) {
+		final QueryResponse ret = buildResponse(docs);
+		final NamedList<Object> response = ret.getResponse();
+		response.add("nextCursorMark", nextCursorMark);
+		ret.setResponse(response);
+		return ret;
+	}
+	
 	private static SolrQuery solrQuery(final String query) {
 		return (SolrQuery)argThat(new SolrQueryMatcher(query));
 	}
 
 	private TestSolrClient withTestClient() {
-		final TestSolrClient client = new TestSolrClient();
+		return withTestClient(new CountDownLatch(0));
+	}
+	
+	private TestSolrClient withTestClient(final CountDownLatch responds) {
+		final TestSolrClient client = new TestSolrClient(responds);
 		initFixture(client);
 		return client;
 	}
@@ -396,13 +760,22 @@ public class SolrIndexTest {
 
 		fixture.setPageSize(1);
 		Assert.assertEquals(1,  fixture.getPageSize());
+		
+		fixture.setMaxPendingFlushes(0);
+		Assert.assertEquals(0,  fixture.getMaxPendingFlushes());
 	}
 	
 	private static final class TestSolrClient implements SolrClient {
+		private final CountDownLatch responds;
 		private final List<String> queries = new LinkedList<>();
 		private final List<SolrInputDocument> documents = new LinkedList<>();
 		private final List<String> removeByKey = new LinkedList<>();
 		private final List<String> removeByQuery = new LinkedList<>();
+		private volatile int commits;
+		
+		public TestSolrClient(final CountDownLatch responds) {
+			this.responds = responds;
+		}
 		
 		@Override
 		public QueryResponse search(final SolrQuery query) throws SolrServerException, IOException {
@@ -410,11 +783,26 @@ public class SolrIndexTest {
 			return null;
 		}
 
+		@Override
+		public NamedList<Object> request(final SolrRequest<?> req) throws SolrServerException, IOException {
+			return null;
+		}
+
 		@Override
 		public NamedList<Object> update(final UpdateRequest req) throws SolrServerException, IOException {
-			add(req.getDocuments(), documents);
-			add(req.getDeleteById(), removeByKey);
-			add(req.getDeleteQuery(), removeByQuery);
+			try {
+				responds.await();
+			} catch (final InterruptedException ex) {
+				throw new IOException(ex);
+			}
+			synchronized(this) {
+				add(req.getDocuments(), documents);
+				add(req.getDeleteById(), removeByKey);
+				add(req.getDeleteQuery(), removeByQuery);
+				if (req.getAction() == ACTION.COMMIT) {
+					commits++;
+				}
+			}
 			return null;
 		}
 		
@@ -0,0 +1,82 @@
+package jabot.idxsolr;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import jabot.fileapi.FileApi;
+import jabot.fileapi.std.RamFileApi;
+
+public class UpdateSpoolTest {
+	private static final URI SPOOL = URI.create("testfs:/spool");
+	private FileApi fileApi;
+	private UpdateSpool fixture;
+	
+	@Before
+	public void setUp() throws IOException {
+		fileApi = new RamFileApi();
+		fixture = new UpdateSpool(fileApi, SPOOL, 1024*1024);
+	}
+	
+	@Test
+	public void test_fifo() throws IOException {
+		Assert.assertTrue(fixture.isEmpty());
+		Assert.assertNull(fixture.peek());
+		
+		Assert.assertTrue(fixture.offer(request("pk1")));
+		Assert.assertTrue(fixture.offer(request("pk2")));
+		Assert.assertEquals(2, fixture.size());
+		Assert.assertTrue(fixture.getBytes() > 0);
+		
+		Assert.assertEquals("pk1", pk(fixture.peek()));
+		fixture.remove();
+		Assert.assertEquals("pk2", pk(fixture.peek()));
+		fixture.remove();
+		Assert.assertTrue(fixture.isEmpty());
+		Assert.assertEquals(0, fixture.getBytes());
+	}
+	
+	@Test
+	public void test_survives_restart() throws IOException {
+		fixture.offer(request("pk1"));
+		fixture.offer(request("pk2"));
+		fixture.remove();
+		fixture.offer(request("pk3"));
+		
+		final UpdateSpool reopened = new UpdateSpool(fileApi, SPOOL, 1024*1024);
+		Assert.assertEquals(2, reopened.size());
+		Assert.assertEquals(fixture.getBytes(), reopened.getBytes());
+		Assert.assertEquals("pk2", pk(reopened.peek()));
+		reopened.remove();
+		reopened.offer(request("pk4"));
+		Assert.assertEquals("pk3", pk(reopened.peek()));
+		reopened.remove();
+		Assert.assertEquals("pk4", pk(reopened.peek()));
+	}
+	
+	@Test
+	public void test_bounded() throws IOException {
+		fixture.offer(request("pk1"));
+		final UpdateSpool small = new UpdateSpool(fileApi, URI.create("testfs:/small"), fixture.getBytes());
+		Assert.assertTrue(small.offer(request("pk1")));
+		Assert.assertFalse(small.offer(request("pk2")));
+		Assert.assertEquals(1, small.size());
+	}
+	
+	private static UpdateRequest request(final String pk) {
+		final SolrInputDocument doc = new SolrInputDocument();
+		doc.setField("pk", pk);
+		final UpdateRequest ret = new UpdateRequest();
+		ret.add(doc);
+		return ret;
+	}
+	
+	private static String pk(final UpdateRequest req) {
+		return (String)req.getDocuments().get(0).getFieldValue("pk");
+	}
+}
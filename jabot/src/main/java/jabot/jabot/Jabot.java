@@ -7,6 +7,10 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.cli.ParseException;
 import org.apache.log4j.PropertyConfigurator;
@@ -15,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import jabot.comcon.CmdExecutor;
 import jabot.comcon.ServiceCore;
+import jabot.common.props.PropsConfig;
 import jabot.common.types.Interval;
 import jabot.fileapi.std.StdFileApi;
 import jabot.idxsolr.SolrIndexManager;
@@ -25,6 +30,7 @@ import jabot.jabot.commands.HelpCmd;
 import jabot.jabot.commands.IndexstatsCmd;
 import jabot.jabot.commands.IngestCmd;
 import jabot.jabot.commands.KillCmd;
+import jabot.jabot.commands.RebuildCmd;
 import jabot.jabot.commands.StopCmd;
 import jabot.jabot.commands.TasksCmd;
 import jabot.jabot.commands.VersionCmd;
@@ -32,7 +38,6 @@ import jabot.jabotmodel.Metafiler;
 import jabot.jabotmodel.MetafilerImpl;
 import jabot.jindex.DefaultCompositeJindex;
 import jabot.jindex.DefaultJindex;
-import jabot.jindex.Jindex;
 import jabot.metika.TikaExtractor;
 import jabot.pools.PoolsConfig;
 import jabot.rsapi.Lobby;
@@ -46,6 +51,8 @@ import jabot.taskri.exec.ThreadPoolAdapter;
 import jabot.taskri.stdhandlers.CleanupTaskHandler;
 import jabot.taskri.store.DumbFileStore;
 import jabot.tasks.IngestTaskHandler;
+import jabot.tasks.OptimizeTaskHandler;
+import jabot.tasks.RebuildTaskHandler;
 
 public class Jabot {
 	private static final Logger LOG = LoggerFactory.getLogger(Jabot.class);
@@ -56,6 +63,9 @@ public class Jabot {
 	private StreamLobby console;
 	private List<Lobby> allLobbies = new ArrayList<>();
 	
+	/** searches of composite jindex over several components, null with single component */
+	private ExecutorService searchExecutor;
+	
 	public Jabot(String[] args) throws IOException, ParseException {
 		options = new JabotCommandLineOptions();
 		options.parse(args);
@@ -82,6 +92,10 @@ public class Jabot {
 			if (tasker != null) {
 				tasker.shutdown();
 			}
+			
+			if (searchExecutor != null) {
+				searchExecutor.shutdownNow();
+			}
 
 			final SolrIndexManager manager = services.getSolrManager();
 			if (manager != null) {
@@ -115,11 +129,26 @@ public class Jabot {
 		services.setSolrManager(manager);
 		manager.init();
 		
-		final Collection<String> components = manager.listComponents();
+		final Collection<String> components = manager.listTopLevelComponents();
 		final DefaultCompositeJindex composite = new DefaultCompositeJindex(components.size());
 		for (final String component : components) {
-			final Jindex jindex = new DefaultJindex(manager.getIndex(component));
-			composite.addComponent(component, jindex, manager.getParams(component));
+			final Map<String, String> params = manager.getParams(component);
+			final DefaultJindex jindex = new DefaultJindex(manager.getIndex(component));
+			// set once the component was rebuilt or reindexed after catch-all fields were introduced
+			jindex.setCatchAllOnly(Boolean.parseBoolean(params.get("catchAllOnly")));
+			composite.addComponent(component, jindex, params);
+		}
+		if (components.size() > 1) {
+			final PropsConfig config = options.allConfig();
+			final int threads = config.getInt("jindex.searchThreads", components.size());
+			final Interval timeout = config.getInterval("jindex.searchTimeout", Interval.TEN_SECONDS);
+			final AtomicInteger count = new AtomicInteger();
+			searchExecutor = Executors.newFixedThreadPool(threads, r -> {
+				final Thread ret = new Thread(r, "jindex-search-"+count.incrementAndGet());
+				ret.setDaemon(true);
+				return ret;
+			});
+			composite.setSearchExecutor(searchExecutor, timeout);
 		}
 		services.setJindex(composite);
 	}
@@ -156,6 +185,24 @@ public class Jabot {
 		ingester.setJindex(services.getJindex());
 		ingester.setMetafiler(services.getMetafiler());
 		tasker.registerHandler(ingester);
+		
+		final RebuildTaskHandler rebuilder = new RebuildTaskHandler(options.allConfig());
+		rebuilder.setFileApi(services.getFileApi());
+		rebuilder.setIndexManager(services.getSolrManager());
+		rebuilder.setMetafiler(services.getMetafiler());
+		tasker.registerHandler(rebuilder);
+		
+		final OptimizeTaskHandler optimizer = new OptimizeTaskHandler();
+		optimizer.setIndexManager(services.getSolrManager());
+		final TaskHandlerId optimizeHandler = tasker.registerHandler(optimizer);
+		if (tasker.findTask("OptimizeTaskHandler") == null) {
+			tasker.createTask(
+					"OptimizeTaskHandler", 
+					optimizeHandler, 
+					Schedule.delay(Interval.DAY), 
+					new OptimizeTaskHandler.Params()
+			);
+		}
 	}
 
 	private void attachConsole() {
@@ -250,6 +297,7 @@ public class Jabot {
 		executor.addCmd(0, new BookCmd());
 		executor.addCmd(0, new IndexstatsCmd());
 		executor.addCmd(100, new IngestCmd());
+		executor.addCmd(100, new RebuildCmd());
 		executor.addCmd(100, new KillCmd());
 		executor.addCmd(100, new StopCmd());
 	}
@@ -2,6 +2,7 @@ package jabot.jabot.commands;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -17,10 +18,13 @@ import org.apache.commons.lang.Validate;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,17 +49,18 @@ public class BookCmd implements Cmd {
 		);
 	private static final Map<String, String> FIELDTYPE_BACKWARDCONVERSION = reverseMap(FIELDTYPE_CONVERSION);
 	
+	/** required clauses on these fields are passed as filters: they don't need scoring and repeat often */
+	private static final Set<String> FILTER_FIELDS = new HashSet<>(Arrays.asList("contentType", "years"));
+	
 	private static final String[][] NORMALIZATIONS = new String[][] {
 		new String[] {"\\+\\+", "\\\\+\\\\+"},
 	};
 	
 	private static final Logger LOG = LoggerFactory.getLogger(BookCmd.class);
 	private static final int TOP_RESULTS = 10;
-	private static final int MAX_FETCH = 100;
+	/** results come best first from all components, so only duplicates of the top results need to be skipped */
+	private static final int MAX_FETCH = 3*TOP_RESULTS;
 	private static final Random NAMEGEN = new Random();
-	static {
-		new Book(); // make sure all marshalling is initialized
-	}
 	private final Texter texter = new Texter();
 	
 	@Override
@@ -98,7 +103,7 @@ public class BookCmd implements Cmd {
 				b.append("EMPTY QUERY");
 			} else {
 				try(final JIndexResults<Book> results = 
-						core.getJindex().search(Book.class, rewritten, rewriter.getOffset())
+						core.getJindex().search(Book.class, rewritten, rewriter.getFilters(), rewriter.getOffset())
 				) {
 					final Collection<ResultWithVariants> output;
 					if (rewriter.variants) {
@@ -114,8 +119,9 @@ public class BookCmd implements Cmd {
 						for (final ResultWithVariants var : output) {
 							formatResult(b, var);
 						}
-						if (results.next() != null) {
-							b.append(results.estimateTotalResults() -TOP_RESULTS -rewriter.getOffset());
+						final long more = results.estimateTotalResults() -TOP_RESULTS -rewriter.getOffset();
+						if (more > 0) {
+							b.append(more);
 							b.append(" MORE");
 						}
 					}
@@ -414,11 +420,13 @@ public class BookCmd implements Cmd {
 	/**
 	 * Rewrites query and extracts special parameters
 	 *
+	 * @visiblefortesting
 	 */
-	private static final class QueryRewriter {
+	static final class QueryRewriter {
 		private final Query original;
 		private boolean variants;
 		private int offset;
+		private final List<Query> filters = new ArrayList<>();
 
 		public QueryRewriter(final Query original) {
 			this.original = original;
@@ -427,6 +435,11 @@ public class BookCmd implements Cmd {
 		public int getOffset() {
 			return offset;
 		}
+		
+		/** @return required structural constraints extracted from the query */
+		public List<Query> getFilters() {
+			return filters;
+		}
 
 		public Query rewrite() {
 			if (original instanceof BooleanQuery) {
@@ -435,24 +448,62 @@ public class BookCmd implements Cmd {
 				return original;
 			}
 
-		private BooleanQuery translateBooleanQuery(final BooleanQuery q) {
+		/**
+		 * Required clauses moved to filters leave the other clauses optional, as they were. Model class restriction 
+		 * is a filter too, so query with no required and no optional clauses left has to match everything itself
+		 */
+		private Query translateBooleanQuery(final BooleanQuery q) {
 			final BooleanQuery.Builder b = new BooleanQuery.Builder();
+			boolean moved = false;
+			boolean must = false;
+			boolean should = false;
+			boolean mustNot = false;
 			for (final BooleanClause clause : q.clauses()) {
-				if (clause.getQuery() instanceof TermQuery) {
-					final TermQuery tq = (TermQuery)clause.getQuery();
-					final String fieldName = tq.getTerm().field();
-					switch(fieldName) {
-					case "variants": variants = Boolean.parseBoolean(tq.getTerm().text()); break;
-					case "fileType": b.add(convertFileType(clause)); break;
-					case "offset": offset = parseOffset(tq.getTerm().text()); break;
-					default: b.add(clause); break;
+				final BooleanClause translated = translateClause(clause);
+				if (translated != null) {
+					if (translated.getOccur() == Occur.MUST && FILTER_FIELDS.contains(fieldOf(translated.getQuery()))) {
+						filters.add(translated.getQuery());
+						moved = true;
+					} else {
+						b.add(translated);
+						must |= translated.isRequired();
+						should |= translated.getOccur() == Occur.SHOULD;
+						mustNot |= translated.isProhibited();
 					}
-				} else {
-					b.add(clause);
 				}
 			}
+			if (!must && (moved || (mustNot && !should))) {
+				b.add(new MatchAllDocsQuery(), Occur.MUST);
+			}
 			return b.build();
 		}
+		
+		/** @return null if clause is an option rather than a search */
+		private BooleanClause translateClause(final BooleanClause clause) {
+			if (clause.getQuery() instanceof TermQuery) {
+				final TermQuery tq = (TermQuery)clause.getQuery();
+				final String fieldName = tq.getTerm().field();
+				switch(fieldName) {
+				case "variants": variants = Boolean.parseBoolean(tq.getTerm().text()); return null;
+				case "fileType": return convertFileType(clause);
+				case "offset": offset = parseOffset(tq.getTerm().text()); return null;
+				default: return clause;
+				}
+			}
+			return clause;
+		}
+		
+		private String fieldOf(final Query query) {
+			if (query instanceof TermQuery) {
+				return ((TermQuery)query).getTerm().field();
+			} else if (query instanceof TermRangeQuery) {
+				return ((TermRangeQuery)query).getField();
+			} else if (query instanceof PhraseQuery) {
+				final Term[] terms = ((PhraseQuery)query).getTerms();
+				return terms.length == 0 ? null : terms[0].field();
+			}
+			return null;
+		}
 
 		private int parseOffset(String offset) {
 			if (offset == null) {
@@ -18,9 +18,6 @@ import jabot.rsapi.ReceivedMessage;
 
 public class FileCmd implements Cmd {
 	private final int TOP_RESULTS = 10;
-	static {
-		new File(); // make sure all marshalling is initialized
-	}
 	private final Texter texter = new Texter();
 	
 	@Override
@@ -62,8 +59,9 @@ public class FileCmd implements Cmd {
 					formatResult(b, file);
 					file = results.next();
 				}
-				if (results.next() != null) {
-					b.append(results.estimateTotalResults() - TOP_RESULTS);
+				final long more = results.estimateTotalResults() - TOP_RESULTS;
+				if (more > 0) {
+					b.append(more);
 					b.append(" MORE");
 				}
 			}
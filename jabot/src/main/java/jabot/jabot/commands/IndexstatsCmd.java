@@ -5,9 +5,11 @@ import java.util.List;
 import jabot.comcon.Cmd;
 import jabot.comcon.ServiceCore;
 import jabot.common.Texter;
-import jabot.idxapi.SearchResults;
-import jabot.idxsolr.SolrIndex;
+import jabot.idxapi.CachingIndex;
+import jabot.idxapi.Index;
 import jabot.idxsolr.SolrIndexManager;
+import jabot.jindex.DefaultJindex;
+import jabot.jindex.TranslationCache;
 import jabot.rsapi.Lobby;
 import jabot.rsapi.ReceivedMessage;
 
@@ -37,14 +39,23 @@ public class IndexstatsCmd implements Cmd {
 		for (final String component: mgr.listComponents()) {
 			b.append(component).append(": ").append(countRecords(mgr.getIndex(component))).append("\n");
 		}
+		for (final TranslationCache<?> translations : DefaultJindex.getTranslationCaches()) {
+			b.append(translations.getMapper().getModel().getSimpleName()).append(" query translations: ")
+				.append(translations.getSize()).append(" entries, hits=").append(translations.getHits())
+				.append(", misses=").append(translations.getMisses()).append("\n");
+		}
 		lobby.post(b.toString());
 	}
 
-	private String countRecords(final SolrIndex index) {
+	private String countRecords(final Index index) {
 		try {
-			try(final SearchResults results = index.search("*:*", 0)) {
-				return String.valueOf(results.estimateTotalResults());
+			final StringBuilder b = new StringBuilder(index.stats().toString());
+			if (index instanceof CachingIndex) {
+				final CachingIndex cache = (CachingIndex) index;
+				b.append(", cache: ").append(cache.getSize()).append(" entries/").append(cache.getBytes())
+					.append(" bytes, hits=").append(cache.getHits()).append(", misses=").append(cache.getMisses());
 			}
+			return b.toString();
 		} catch (final Exception ex) {
 			return ex.toString();
 		}
@@ -0,0 +1,78 @@
+package jabot.jabot.commands;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+
+import jabot.comcon.Cmd;
+import jabot.comcon.ServiceCore;
+import jabot.common.Texter;
+import jabot.fileapi.FileApiUtils;
+import jabot.rsapi.Lobby;
+import jabot.rsapi.ReceivedMessage;
+import jabot.taskapi.Schedule;
+import jabot.taskapi.TaskHandlerId;
+import jabot.taskapi.TaskId;
+import jabot.taskapi.Tasker;
+import jabot.tasks.RebuildTaskHandler;
+
+public class RebuildCmd implements Cmd {
+	private final Texter texter = new Texter();
+
+	@Override
+	public String getName() {
+		return "REBUILD";
+	}
+
+	@Override
+	public String getHelp() {
+		return "backend uri [languages] : rebuild lucene: backend from scratch with files listed at uri "
+				+ "(solr cores can't be rebuilt, use INGEST)";
+	}
+
+	@Override
+	public void execute(
+			final ServiceCore core, 
+			final Lobby lobby, 
+			final ReceivedMessage message, 
+			final List<String> args
+	) throws IOException {
+		Validate.isTrue(2 <= args.size() && args.size() <= 3, "Expected 2-3 arguments, got: {}", args);
+		final String backend = args.get(0);
+		Validate.isTrue(core.getSolrManager().isLucene(backend), "Only lucene: backends can be rebuilt: "+backend);
+		final URI list = FileApiUtils.createURI(core.getFileApi().getScheme(), args.get(1));
+		final RebuildTaskHandler.Params params = new RebuildTaskHandler.Params();
+		params.setBackend(backend);
+		params.setList(list);
+		params.setLanguages(parseLanguages(args.size()>=3 ? args.get(2) : ""));
+		
+		final TaskHandlerId handler = core.getTasker().findHandler(RebuildTaskHandler.class.getName());
+		Validate.notNull(handler, "handler not registered");
+		
+		final Tasker tasker = core.getTasker();
+		final String taskName = "rebuild-"+backend;
+		Validate.isTrue(tasker.findTask(taskName) == null, "Rebuild of "+backend+" already exists");
+		final TaskId id = tasker.createTask(taskName, handler, Schedule.once(), params);
+		
+		final Texter.Builder b = texter.build();
+		b.append(id.toString());
+		b.append(" created");
+		
+		lobby.post(b.toString());
+	}
+	
+	private List<String> parseLanguages(final String languages) {
+		final String [] parts = languages.split(",");
+		final List<String> ret = new ArrayList<>(parts.length);
+		for (String part : parts) {
+			part = part.trim();
+			if (!part.isEmpty()) {
+				ret.add(part);
+			}
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,80 @@
+package jabot.tasks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jabot.fileapi.FileApi;
+import jabot.jabotmodel.Book;
+import jabot.jabotmodel.File;
+import jabot.jabotmodel.Metafiler;
+import jabot.metapi.ExtractionException;
+import jabot.metapi.Metadata;
+import jabot.metapi.NotableKeys;
+import jabot.metapi.tools.MetadataSerializer;
+
+/**
+ * Turns a file listed for ingestion into the model object to store, honoring .meta.txt sidecar files and 
+ * requested languages. Shared by the ingest task handlers.
+ * 
+ * @threadsafe if metafiler is
+ */
+class FileSampler {
+	private static final Logger LOG = LoggerFactory.getLogger(FileSampler.class);
+	private final Metafiler metafiler;
+	private final FileApi fileApi;
+	private final List<String> languages;
+	private final boolean russianSupport;
+	
+	public FileSampler(final Metafiler metafiler, final FileApi fileApi, final List<String> languages) {
+		this.metafiler = metafiler;
+		this.fileApi = fileApi;
+		this.languages = languages;
+		this.russianSupport = languages != null && languages.contains("rus");
+	}
+
+	public File sample(final URI uri) throws IOException, ExtractionException {
+		Metadata meta = tryReadMetadata(URI.create(uri+".meta.txt"));
+		if (meta == null) {
+			meta = new Metadata();
+		}
+		
+		if (languages != null) {
+			meta.set(NotableKeys.LANGUAGES, languages);
+		}
+		final File sample = metafiler.sample(uri, meta);
+		if (russianSupport && sample instanceof Book) {
+			sample.setFilenameRu(sample.getFilename());
+			if (sample instanceof Book) {
+				final Book asBook = (Book) sample;
+				asBook.setTitleRu(asBook.getTitle());
+				asBook.setAuthorsRu(asBook.getAuthors());
+				
+				
+				asBook.setRawTextRu(asBook.getRawText());
+				asBook.setRawText(null); // conserve index space
+				
+				asBook.setAnnotationRu(asBook.getAnnotation());
+				asBook.setAnnotation(null); // conserve index space
+			}
+		}
+		return sample;
+	}
+	
+	private Metadata tryReadMetadata(final URI metadataFile) {
+		try {
+			if (fileApi.isFile(metadataFile)) {
+				try(final InputStream in = fileApi.readFile(metadataFile)) {
+					return MetadataSerializer.read(in);
+				}
+			}
+		} catch (final IOException ex) {
+			LOG.warn("Can't read metadata from {}", metadataFile);
+		}
+		return null;
+	}
+}
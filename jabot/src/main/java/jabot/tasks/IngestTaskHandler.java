@@ -17,16 +17,12 @@ import jabot.common.types.Interval;
 import jabot.fileapi.FileApi;
 import jabot.fileapi.FileApiUtils;
 import jabot.idxapi.DelayedIndexingException;
-import jabot.jabotmodel.Book;
 import jabot.jabotmodel.File;
 import jabot.jabotmodel.Metafiler;
 import jabot.jindex.CompositeJindex;
 import jabot.jindex.Jindex;
 import jabot.marshall.Marshall;
 import jabot.metapi.ExtractionException;
-import jabot.metapi.Metadata;
-import jabot.metapi.NotableKeys;
-import jabot.metapi.tools.MetadataSerializer;
 import jabot.taskapi.Progress;
 import jabot.taskapi.TaskContext;
 import jabot.taskapi.TaskHandler;
@@ -34,8 +30,11 @@ import jabot.taskapi.TaskMemento;
 import jabot.taskapi.TaskParams;
 
 public class IngestTaskHandler implements TaskHandler<IngestTaskHandler.Params, IngestTaskHandler.Memento> {
-	/** @visiblefortesting */
+	/** @visiblefortesting how often ingested documents are made durable and memento is saved */
 	static final String CONF_COMMITINTERVAL = IngestTaskHandler.class.getName()+".commitInterval";
+	
+	/** @visiblefortesting how often ingested documents are made visible to the search */
+	static final String CONF_SOFTCOMMITINTERVAL = IngestTaskHandler.class.getName()+".softCommitInterval";
 
 	private static final Logger LOG = LoggerFactory.getLogger(IngestTaskHandler.class);
 	private final PropsConfig config;
@@ -138,7 +137,8 @@ public class IngestTaskHandler implements TaskHandler<IngestTaskHandler.Params,
 		private final TaskContext<Params, Memento> ctx;
 		private final Params params;
 		private final ExpiringCache<Object> commitInterval;
-		private final boolean russianSupport;
+		private final ExpiringCache<Object> softCommitInterval;
+		private final FileSampler sampler;
 		private Memento memento;
 		private Progress progress;
 		private Jindex backend;
@@ -147,14 +147,16 @@ public class IngestTaskHandler implements TaskHandler<IngestTaskHandler.Params,
 			this.ctx = ctx;
 			this.params = ctx.getParams();
 			this.memento = ctx.getMemento();
-			this.russianSupport = params.getLanguages() != null && params.getLanguages().contains("rus");
+			this.sampler = new FileSampler(metafiler, fileApi, params.getLanguages());
 			if (this.memento == null) {
 				this.memento = new Memento();
 			}
 			this.progress = ctx.getProgress();
 			
-			final String configCommitInterval = config.getString(CONF_COMMITINTERVAL, "1MINUTE");
+			final String configCommitInterval = config.getString(CONF_COMMITINTERVAL, "10MINUTES");
 			this.commitInterval = new ExpiringCache<Object>(Interval.unmarshall(configCommitInterval));
+			final String configSoftCommitInterval = config.getString(CONF_SOFTCOMMITINTERVAL, "1MINUTE");
+			this.softCommitInterval = new ExpiringCache<Object>(Interval.unmarshall(configSoftCommitInterval));
 			this.backend = resolveBackend(params.getBackend());
 		}
 		
@@ -173,6 +175,7 @@ public class IngestTaskHandler implements TaskHandler<IngestTaskHandler.Params,
 			progress = new Progress(0, progress.getTotal(), 0, 0);
 			reportProgress();
 			commitInterval.set(getClass());
+			softCommitInterval.set(getClass());
 			
 			try(
 				final InputStream in = fileApi.readFile(params.getList());
@@ -215,59 +218,26 @@ public class IngestTaskHandler implements TaskHandler<IngestTaskHandler.Params,
 		}
 
 		private void ingest(final URI uri) throws IOException, ExtractionException {
-			Metadata meta = tryReadMetadata(URI.create(uri+".meta.txt"));
-			if (meta == null) {
-				meta = new Metadata();
-			}
-			
-			if (params.getLanguages() != null) {
-				meta.set(NotableKeys.LANGUAGES, params.getLanguages());
-			}
-			final File sample = metafiler.sample(uri, meta);
-			if (russianSupport && sample instanceof Book) {
-				sample.setFilenameRu(sample.getFilename());
-				if (sample instanceof Book) {
-					final Book asBook = (Book) sample;
-					asBook.setTitleRu(asBook.getTitle());
-					asBook.setAuthorsRu(asBook.getAuthors());
-					
-					
-					asBook.setRawTextRu(asBook.getRawText());
-					asBook.setRawText(null); // conserve index space
-					
-					asBook.setAnnotationRu(asBook.getAnnotation());
-					asBook.setAnnotation(null); // conserve index space
-				}
-			}
-			
+			final File sample = sampler.sample(uri);
 			backend.store(sample.getSha1(), sample);
 		}
-		
-		private Metadata tryReadMetadata(final URI metadataFile) {
-			try {
-				if (fileApi.isFile(metadataFile)) {
-					try(final InputStream in = fileApi.readFile(metadataFile)) {
-						return MetadataSerializer.read(in);
-					}
-				}
-			} catch (final IOException ex) {
-				LOG.warn("Can't read metadata from {}", metadataFile);
-			}
-			return null;
-		}
 
 		private void commitIfNeeded(long linesDone) throws DelayedIndexingException {
 			if (commitInterval.isExpired()) {
 				commit(linesDone);
+			} else if (softCommitInterval.isExpired()) {
+				backend.softCommit();
+				softCommitInterval.set(getClass());
 			}
 		}
 		
+		/** Memento is only saved after durable commit, so restarted task never skips lost documents */
 		private void commit(long linesDone) throws DelayedIndexingException {
 			backend.commit();
 			memento.setIngestedCount(linesDone);
 			ctx.setMemento(memento);
 			commitInterval.set(getClass());
-			
+			softCommitInterval.set(getClass());
 		}
 
 		public void setTotalLineCountFrom(final URI file) throws IOException {
@@ -0,0 +1,152 @@
+package jabot.tasks;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jabot.idxapi.DelayedIndexingException;
+import jabot.idxapi.Index;
+import jabot.idxapi.IndexStats;
+import jabot.idxapi.ShardedIndex;
+import jabot.idxsolr.SolrIndexManager;
+import jabot.marshall.Marshall;
+import jabot.taskapi.Progress;
+import jabot.taskapi.TaskContext;
+import jabot.taskapi.TaskHandler;
+import jabot.taskapi.TaskMemento;
+import jabot.taskapi.TaskParams;
+
+/**
+ * Merges segments of {@link SolrIndexManager} components one after another, see {@link Index#optimize(int, double)}.
+ * Components with uncommitted updates are being ingested into and are skipped until the next run. Components that
+ * already have few enough segments and no deleted documents are left alone. Sharded components are skipped too,
+ * their shards are components of their own.
+ *
+ * Progress counts components: done, skipped as busy (waiting) and failed. Segment counts before and after are logged.
+ */
+public class OptimizeTaskHandler implements TaskHandler<OptimizeTaskHandler.Params, TaskMemento> {
+	private static final Logger LOG = LoggerFactory.getLogger(OptimizeTaskHandler.class);
+	public static final int DEFAULT_MAX_SEGMENTS = 8;
+	public static final double DEFAULT_MAX_MB_PER_SEC = 20;
+	private SolrIndexManager indexManager;
+
+	public void setIndexManager(SolrIndexManager indexManager) {
+		this.indexManager = indexManager;
+	}
+
+	@Override
+	public void handle(final TaskContext<Params, TaskMemento> ctx) throws Exception {
+		final Params params = ctx.getParams();
+		final int maxSegments = params.getMaxSegments() > 0 ? params.getMaxSegments() : DEFAULT_MAX_SEGMENTS;
+		final double maxMBPerSec = params.getMaxMBPerSec() > 0 ? params.getMaxMBPerSec() : DEFAULT_MAX_MB_PER_SEC;
+		final Collection<String> components = params.getComponents() == null || params.getComponents().isEmpty()
+				? indexManager.listComponents()
+				: params.getComponents();
+
+		Progress progress = new Progress(0, components.size(), 0, 0);
+		ctx.setProgress(progress);
+		for (final String component : components) {
+			if (ctx.isAborted()) {
+				return;
+			}
+			final Index backend = indexManager.getBackend(component);
+			if (backend instanceof ShardedIndex) {
+				progress = progress.addCurrent(1);
+			} else if (backend.hasPendingUpdates()) {
+				LOG.info("Component {} is being updated, not optimizing it this time", component);
+				progress = progress.addWaiting(1);
+			} else {
+				try {
+					optimize(component, backend, maxSegments, maxMBPerSec);
+					progress = progress.addCurrent(1);
+				} catch (final DelayedIndexingException | RuntimeException ex) {
+					LOG.warn("Error optimizing component {}", component, ex);
+					progress = progress.addFailed(1);
+				}
+			}
+			ctx.setProgress(progress);
+		}
+	}
+
+	private void optimize(final String component, final Index backend, final int maxSegments, final double maxMBPerSec)
+			throws DelayedIndexingException
+	{
+		final IndexStats before = backend.stats();
+		if (before.getSegmentCount() != IndexStats.UNKNOWN && before.getSegmentCount() <= maxSegments
+				&& before.getDeletedDocs() == 0)
+		{
+			LOG.debug("Component {} needs no optimization: {}", component, before);
+			return;
+		}
+
+		final long started = System.currentTimeMillis();
+		backend.optimize(maxSegments, maxMBPerSec);
+		// let decorators (caches) know contents changed
+		indexManager.getIndex(component).invalidateCaches();
+
+		LOG.info(
+				"Optimized component {} in {}ms, before: {}, after: {}",
+				component,
+				System.currentTimeMillis()-started,
+				before,
+				backend.stats()
+		);
+	}
+
+	@Override
+	public String marshallParams(final Params params) {
+		return Marshall.get().toJson(params);
+	}
+
+	@Override
+	public Params unmarshallParams(final String marshalled) {
+		return Marshall.get().fromJson(marshalled, Params.class);
+	}
+
+	@Override
+	public String marshallMemento(final TaskMemento memento) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public TaskMemento unmarshallMemento(final String marshalled) {
+		throw new UnsupportedOperationException();
+	}
+
+	public static class Params implements TaskParams {
+		/** Component ids to optimize (optional, default: all) */
+		private List<String> components;
+
+		/** Maximum number of segments to leave (optional, default: {@value OptimizeTaskHandler#DEFAULT_MAX_SEGMENTS}) */
+		private int maxSegments;
+
+		/** Merge write rate limit (optional, default: {@value OptimizeTaskHandler#DEFAULT_MAX_MB_PER_SEC}) */
+		private double maxMBPerSec;
+
+		public List<String> getComponents() {
+			return components;
+		}
+
+		public void setComponents(List<String> components) {
+			this.components = components;
+		}
+
+		public int getMaxSegments() {
+			return maxSegments;
+		}
+
+		public void setMaxSegments(int maxSegments) {
+			this.maxSegments = maxSegments;
+		}
+
+		public double getMaxMBPerSec() {
+			return maxMBPerSec;
+		}
+
+		public void setMaxMBPerSec(double maxMBPerSec) {
+			this.maxMBPerSec = maxMBPerSec;
+		}
+	}
+}
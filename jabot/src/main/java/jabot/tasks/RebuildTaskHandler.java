@@ -0,0 +1,333 @@
+package jabot.tasks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jabot.common.props.PropsConfig;
+import jabot.fileapi.FileApi;
+import jabot.fileapi.FileApiUtils;
+import jabot.idxapi.Index;
+import jabot.idxlucene.LuceneIndex;
+import jabot.idxlucene.LuceneIndexBuilder;
+import jabot.idxsolr.SolrIndexManager;
+import jabot.jabotmodel.File;
+import jabot.jabotmodel.Metafiler;
+import jabot.jindex.DefaultJindex;
+import jabot.jindex.Jindex;
+import jabot.marshall.Marshall;
+import jabot.metapi.ExtractionException;
+import jabot.taskapi.Progress;
+import jabot.taskapi.TaskContext;
+import jabot.taskapi.TaskHandler;
+import jabot.taskapi.TaskMemento;
+import jabot.taskapi.TaskParams;
+
+/**
+ * Rebuilds a lucene: component from scratch without touching it until the very end. Files of the list are extracted
+ * and indexed by several threads into separate offline partitions, which then atomically replace all documents of
+ * the component, see {@link LuceneIndexBuilder}. The component stays searchable (with old documents) all the time.
+ *
+ * Not resumable: aborted or failed rebuild leaves the component intact and has to be started over.
+ *
+ * Solr cores are not supported: their segments are written by solr with its own schema and can't be built offline 
+ * by {@link LuceneIndexBuilder}, they are re-ingested in place by {@link IngestTaskHandler} instead.
+ */
+public class RebuildTaskHandler implements TaskHandler<RebuildTaskHandler.Params, TaskMemento> {
+	/** @visiblefortesting folder to build partitions in, must be on the same filesystem as the components */
+	static final String CONF_WORKDIR = RebuildTaskHandler.class.getName()+".workDir";
+
+	private static final Logger LOG = LoggerFactory.getLogger(RebuildTaskHandler.class);
+	/** compared by identity, so it can never clash with a line of the list */
+	private static final String POISON = new String("<end of list>");
+	private static final int QUEUE_PER_THREAD = 100;
+	private final PropsConfig config;
+	private Metafiler metafiler;
+	private SolrIndexManager indexManager;
+	private FileApi fileApi;
+
+	public RebuildTaskHandler(final PropsConfig config) {
+		this.config = config;
+	}
+
+	public void setMetafiler(Metafiler metafiler) {
+		this.metafiler = metafiler;
+	}
+
+	public void setIndexManager(SolrIndexManager indexManager) {
+		this.indexManager = indexManager;
+	}
+
+	public void setFileApi(FileApi fileApi) {
+		this.fileApi = fileApi;
+	}
+
+	@Override
+	public void handle(final TaskContext<Params, TaskMemento> ctx) throws Exception {
+		final Params params = ctx.getParams();
+		Validate.notNull(params.getList(), "list cannot be null");
+		Validate.notNull(params.getBackend(), "backend cannot be null");
+
+		Validate.isTrue(
+				indexManager.isLucene(params.getBackend()),
+				"Only lucene: components can be rebuilt, %s is not",
+				params.getBackend()
+		);
+		final Index backend = indexManager.getBackend(params.getBackend());
+
+		final int threads = params.getThreads() > 0 ? params.getThreads() : Runtime.getRuntime().availableProcessors();
+		final Path workDir = Paths.get(
+				config.getString(CONF_WORKDIR, System.getProperty("java.io.tmpdir")),
+				"rebuild-"+params.getBackend()
+		);
+
+		try (final LuceneIndexBuilder builder = new LuceneIndexBuilder(workDir, threads)) {
+			if (new Runner(ctx, builder).run()) {
+				builder.swapInto((LuceneIndex)backend);
+				// let decorators (caches) know contents changed
+				indexManager.getIndex(params.getBackend()).invalidateCaches();
+			}
+		}
+	}
+
+	@Override
+	public String marshallParams(final Params params) {
+		return Marshall.get().toJson(params);
+	}
+
+	@Override
+	public Params unmarshallParams(final String marshalled) {
+		return Marshall.get().fromJson(marshalled, Params.class);
+	}
+
+	@Override
+	public String marshallMemento(final TaskMemento memento) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public TaskMemento unmarshallMemento(final String marshalled) {
+		throw new UnsupportedOperationException();
+	}
+
+	public static class Params implements TaskParams {
+		/** Source to read filenames from, must be a file with list of files to ingest. File MUST be UTF-8 **/
+		private URI list;
+
+		/** List of languages the files are written in (optional)*/
+		private List<String> languages;
+
+		/** lucene: component id to rebuild */
+		private String backend;
+
+		/** Number of extracting threads and index partitions (optional, default: number of CPUs) */
+		private int threads;
+
+		public URI getList() {
+			return list;
+		}
+
+		public void setList(URI list) {
+			this.list = list;
+		}
+
+		public List<String> getLanguages() {
+			return languages;
+		}
+
+		public void setLanguages(List<String> languages) {
+			this.languages = languages;
+		}
+
+		public String getBackend() {
+			return backend;
+		}
+
+		public void setBackend(String backend) {
+			this.backend = backend;
+		}
+
+		public int getThreads() {
+			return threads;
+		}
+
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+	}
+
+	private class Runner {
+		private final TaskContext<Params, TaskMemento> ctx;
+		private final Params params;
+		private final LuceneIndexBuilder builder;
+		private final FileSampler sampler;
+		private final BlockingQueue<String> queue;
+		private final AtomicLong done = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private long total;
+
+		public Runner(final TaskContext<Params, TaskMemento> ctx, final LuceneIndexBuilder builder) {
+			this.ctx = ctx;
+			this.params = ctx.getParams();
+			this.builder = builder;
+			this.sampler = new FileSampler(metafiler, fileApi, params.getLanguages());
+			this.queue = new ArrayBlockingQueue<>(QUEUE_PER_THREAD*builder.getPartitionCount());
+		}
+
+		/** @return true if the whole list was processed and the build can be swapped in */
+		public boolean run() throws IOException, InterruptedException, ExecutionException {
+			total = countLines(params.getList());
+			reportProgress();
+
+			final int threads = builder.getPartitionCount();
+			final ExecutorService workers = Executors.newFixedThreadPool(threads);
+			try {
+				final List<Future<?>> futures = new ArrayList<>(threads);
+				for (int i=0; i<threads; i++) {
+					final Jindex partition = new DefaultJindex(builder.getPartition(i));
+					futures.add(workers.submit(() -> {
+						work(partition);
+						return null;
+					}));
+				}
+
+				boolean completed = false;
+				try {
+					completed = feed(futures);
+				} finally {
+					for (int i=0; i<threads; i++) {
+						if (!offer(POISON, futures)) {
+							break;
+						}
+					}
+				}
+				for (final Future<?> future : futures) {
+					future.get();
+				}
+				reportProgress();
+				return completed && !ctx.isAborted();
+			} finally {
+				workers.shutdownNow();
+				workers.awaitTermination(1, TimeUnit.MINUTES);
+			}
+		}
+
+		private boolean feed(final List<Future<?>> workers) 
+				throws IOException, InterruptedException, ExecutionException 
+		{
+			try(
+				final InputStream in = fileApi.readFile(params.getList());
+				final InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+				final BufferedReader lineReader = new BufferedReader(reader);
+			) {
+				String line = lineReader.readLine();
+				while (line != null) {
+					if (ctx.isAborted()) {
+						return false;
+					}
+					if (!offer(line, workers)) {
+						throw new IllegalStateException("All workers quit before the list was processed");
+					}
+					reportProgress();
+					line = lineReader.readLine();
+				}
+			}
+			return true;
+		}
+
+		/** 
+		 * Waits for the queue to accept the line, as long as some worker is alive to take it
+		 * 
+		 * @return false if all workers quit
+		 * @throws ExecutionException if some worker failed
+		 */
+		private boolean offer(final String line, final List<Future<?>> workers) 
+				throws InterruptedException, ExecutionException 
+		{
+			while (!queue.offer(line, 1, TimeUnit.SECONDS)) {
+				boolean alive = false;
+				for (final Future<?> worker : workers) {
+					if (worker.isDone()) {
+						worker.get();
+					} else {
+						alive = true;
+					}
+				}
+				if (!alive) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Always takes lines until POISON, even after partition failed, so that the feeder never blocks on a full 
+		 * queue. Failure is rethrown once the list is over
+		 */
+		private void work(final Jindex partition) throws Exception {
+			Throwable error = null;
+			String line = queue.take();
+			while (line != POISON) {
+				if (error == null && !ctx.isAborted()) {
+					try {
+						final URI uri = FileApiUtils.createURI(fileApi.getScheme(), line);
+						final File sample = sampler.sample(uri);
+						partition.store(sample.getSha1(), sample);
+					} catch (final RuntimeException | IOException | ExtractionException ex) {
+						LOG.warn("Error ingesting file {}", line, ex);
+						failed.incrementAndGet();
+					} catch (final Throwable ex) {
+						LOG.error("Partition failed on file {}, rebuild will fail", line, ex);
+						error = ex;
+					}
+					done.incrementAndGet();
+				}
+				line = queue.take();
+			}
+			if (error instanceof Error) {
+				throw (Error)error;
+			} else if (error != null) {
+				throw (Exception)error;
+			}
+		}
+
+		private long countLines(final URI file) throws IOException {
+			long count = 0;
+			try(
+				final InputStream in = fileApi.readFile(file);
+				final InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+				final BufferedReader lineReader = new BufferedReader(reader);
+			) {
+				String line = lineReader.readLine();
+				while (line != null) {
+					count++;
+					line = lineReader.readLine();
+				}
+			}
+			return count;
+		}
+
+		private void reportProgress() {
+			ctx.setProgress(new Progress(done.get(), total, 0, failed.get()));
+		}
+	}
+}
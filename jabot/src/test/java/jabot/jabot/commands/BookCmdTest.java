@@ -3,9 +3,15 @@ package jabot.jabot.commands;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
 import org.junit.Assert;
 import org.junit.Test;
 
+import jabot.jindex.Parser;
+
 public class BookCmdTest {
 	@Test
 	public void testNormalizeString() {
@@ -36,6 +42,38 @@ public class BookCmdTest {
 		Assert.assertEquals("c\\+\\+", BookCmd.normalizeQueryTerm("c++"));
 	}
 
+	@Test
+	public void test_rewrite_keeps_optional_clauses_optional() throws Exception {
+		final BookCmd.QueryRewriter rewriter = new BookCmd.QueryRewriter(Parser.DEFAULT.parse("+fileType:fb2 tolstoy"));
+		final BooleanQuery rewritten = (BooleanQuery)rewriter.rewrite();
+		
+		Assert.assertEquals(1, rewriter.getFilters().size());
+		Assert.assertEquals(2, rewritten.clauses().size());
+		Assert.assertEquals(Occur.SHOULD, rewritten.clauses().get(0).getOccur());
+		assertMatchAllRequired(rewritten.clauses().get(1).getQuery(), rewritten.clauses().get(1).getOccur());
+	}
+	
+	@Test
+	public void test_rewrite_negative_query_matches_all_first() throws Exception {
+		assertNegativeMatchesAll(new BookCmd.QueryRewriter(Parser.DEFAULT.parse("-x")));
+		
+		final BookCmd.QueryRewriter withFilter = new BookCmd.QueryRewriter(Parser.DEFAULT.parse("+fileType:fb2 -x"));
+		assertNegativeMatchesAll(withFilter);
+		Assert.assertEquals(1, withFilter.getFilters().size());
+	}
+	
+	private static void assertNegativeMatchesAll(final BookCmd.QueryRewriter rewriter) {
+		final BooleanQuery rewritten = (BooleanQuery)rewriter.rewrite();
+		Assert.assertEquals(2, rewritten.clauses().size());
+		Assert.assertEquals(Occur.MUST_NOT, rewritten.clauses().get(0).getOccur());
+		assertMatchAllRequired(rewritten.clauses().get(1).getQuery(), rewritten.clauses().get(1).getOccur());
+	}
+	
+	private static void assertMatchAllRequired(final Query query, final Occur occur) {
+		Assert.assertTrue(query instanceof MatchAllDocsQuery);
+		Assert.assertEquals(Occur.MUST, occur);
+	}
+	
 	private Set<String> set(final String ... strings) {
 		final Set<String> ret = new HashSet<>();
 		for (final String s : strings) {
@@ -165,6 +165,17 @@ public class IngestTaskHandlerTest {
 		verify(jindex, times(2)).commit();
 	}
 	
+	@Test
+	public void testSoftCommitDoesNotSaveMemento() throws Exception {
+		th.getProps().setProperty(IngestTaskHandler.CONF_SOFTCOMMITINTERVAL, "0HOURS");
+
+		writeLinesToFile(sampleParams.getList(), "missing_file1", "missing_file2");
+		
+		th.runOnce(handler, sampleParams, memento);
+		verify(jindex, times(2)).softCommit();
+		verify(jindex, times(1)).commit();
+	}
+	
 	private void writeLinesToFile(final URI file, final String ... lines) throws IOException {
 		try(
 				Writer writer = new OutputStreamWriter(fileApi.createFile(file), StandardCharsets.UTF_8);
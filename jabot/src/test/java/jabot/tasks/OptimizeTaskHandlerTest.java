@@ -0,0 +1,91 @@
+package jabot.tasks;
+
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import jabot.idxapi.Index;
+import jabot.idxapi.IndexStats;
+import jabot.idxsolr.SolrIndexManager;
+import jabot.taskapi.TaskHandlerId;
+import jabot.taskri.testsupport.TaskerTestHarness;
+import jabot.tasks.OptimizeTaskHandler.Params;
+
+public class OptimizeTaskHandlerTest {
+	@Mock SolrIndexManager indexManager;
+	@Mock Index fragmented;
+	@Mock Index compact;
+	@Mock Index busy;
+
+	private TaskerTestHarness th;
+	private OptimizeTaskHandler fixture;
+	private TaskHandlerId handler;
+	private Params sampleParams;
+
+	@Before
+	public synchronized void setUp() {
+		MockitoAnnotations.initMocks(this);
+
+		when(indexManager.listComponents()).thenReturn(Arrays.asList("fragmented", "compact", "busy"));
+		for (final String id : Arrays.asList("fragmented", "compact", "busy")) {
+			final Index index = id.equals("fragmented") ? fragmented : id.equals("compact") ? compact : busy;
+			when(indexManager.getBackend(id)).thenReturn(index);
+			when(indexManager.getIndex(id)).thenReturn(index);
+		}
+		when(fragmented.stats()).thenReturn(new IndexStats(100, 110, 10, 50));
+		when(compact.stats()).thenReturn(new IndexStats(100, 100, 0, 2));
+		when(busy.stats()).thenReturn(new IndexStats(100, 110, 10, 50));
+		when(busy.hasPendingUpdates()).thenReturn(true);
+
+		th = new TaskerTestHarness();
+		fixture = new OptimizeTaskHandler();
+		fixture.setIndexManager(indexManager);
+		handler = th.getTasker().registerHandler(fixture);
+
+		sampleParams = new Params();
+		sampleParams.setMaxSegments(4);
+		sampleParams.setMaxMBPerSec(5);
+		th.startup();
+	}
+
+	@After
+	public synchronized void tearDown() throws Exception {
+		th.shutdown();
+	}
+
+	@Test
+	public void test_params() {
+		sampleParams.setComponents(Arrays.asList("compact"));
+		th.assertParamsMarshallingSupported(fixture, sampleParams);
+	}
+
+	@Test
+	public void test_optimizes_idle_fragmented_components() throws Exception {
+		th.runOnce(handler, sampleParams);
+
+		verify(fragmented).optimize(4, 5);
+		verify(fragmented).invalidateCaches();
+		verify(fragmented, never()).softCommit();
+		verify(compact, never()).optimize(anyInt(), anyDouble());
+		verify(busy, never()).optimize(anyInt(), anyDouble());
+	}
+
+	@Test
+	public void test_only_listed_components() throws Exception {
+		sampleParams.setComponents(Arrays.asList("compact"));
+
+		th.runOnce(handler, sampleParams);
+
+		verify(fragmented, never()).optimize(anyInt(), anyDouble());
+	}
+}
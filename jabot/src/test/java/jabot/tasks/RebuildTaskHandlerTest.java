@@ -0,0 +1,147 @@
+package jabot.tasks;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import jabot.fileapi.FileApi;
+import jabot.fileapi.std.RamFileApi;
+import jabot.idxapi.Untokenized;
+import jabot.idxlucene.LuceneIndex;
+import jabot.idxsolr.SolrIndexManager;
+import jabot.jabotmodel.File;
+import jabot.jabotmodel.Metafiler;
+import jabot.jindex.DefaultJindex;
+import jabot.taskapi.TaskHandlerId;
+import jabot.taskri.testsupport.TaskerTestHarness;
+import jabot.tasks.RebuildTaskHandler.Params;
+
+public class RebuildTaskHandlerTest {
+	@Mock Metafiler metafiler;
+	@Mock SolrIndexManager indexManager;
+
+	private TaskerTestHarness th;
+	private RebuildTaskHandler fixture;
+	private TaskHandlerId handler;
+	private Params sampleParams;
+	private FileApi fileApi;
+	private Path tmp;
+	private LuceneIndex live;
+
+	@Before
+	public synchronized void setUp() throws IOException {
+		MockitoAnnotations.initMocks(this);
+
+		tmp = Files.createTempDirectory("rebuild");
+		live = new LuceneIndex(tmp.resolve("live"));
+		when(indexManager.isLucene("books")).thenReturn(true);
+		when(indexManager.getBackend("books")).thenReturn(live);
+		when(indexManager.getIndex("books")).thenReturn(live);
+
+		th = new TaskerTestHarness();
+		th.getProps().setProperty(RebuildTaskHandler.CONF_WORKDIR, tmp.toString());
+		fileApi = new RamFileApi();
+
+		fixture = new RebuildTaskHandler(th.getPropsConfig());
+		fixture.setFileApi(fileApi);
+		fixture.setMetafiler(metafiler);
+		fixture.setIndexManager(indexManager);
+
+		handler = th.getTasker().registerHandler(fixture);
+
+		sampleParams = new Params();
+		sampleParams.setList(URI.create("testfs:/list.txt"));
+		sampleParams.setBackend("books");
+		sampleParams.setThreads(2);
+		th.startup();
+	}
+
+	@After
+	public synchronized void tearDown() throws Exception {
+		th.shutdown();
+		live.close();
+		try (final Stream<Path> files = Files.walk(tmp)) {
+			files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+		}
+	}
+
+	@Test
+	public void test_params() {
+		th.assertParamsMarshallingSupported(fixture, sampleParams);
+	}
+
+	@Test
+	public void test_rebuild_replaces_documents() throws Exception {
+		new DefaultJindex(live).store(new Untokenized("old"), sample("old"));
+		live.commit();
+
+		final URI file1 = URI.create("testfs:/file1.txt");
+		final URI file2 = URI.create("testfs:/file2.txt");
+		final URI file3 = URI.create("testfs:/file3.txt");
+		writeLinesToFile(sampleParams.getList(), file1.toString(), file2.toString(), file3.toString(), "missing");
+		when(metafiler.sample(eq(file1), any())).thenReturn(sample("aa01"));
+		when(metafiler.sample(eq(file2), any())).thenReturn(sample("aa02"));
+		when(metafiler.sample(eq(file3), any())).thenReturn(sample("aa03"));
+
+		th.runOnce(handler, sampleParams);
+
+		Assert.assertEquals(3, live.count("*:*"));
+		Assert.assertEquals(0, live.count("pk:old"));
+		Assert.assertFalse(Files.exists(tmp.resolve("rebuild-books")));
+	}
+
+	@Test(timeout=60000)
+	public void test_worker_errors_fail_rebuild_without_hanging() throws Exception {
+		new DefaultJindex(live).store(new Untokenized("old"), sample("old"));
+		live.commit();
+
+		// more lines than the queue holds, so the feeder would block if workers stopped taking them
+		final String [] lines = new String[1000];
+		for (int i=0; i<lines.length; i++) {
+			lines[i] = "testfs:/file"+i+".txt";
+		}
+		writeLinesToFile(sampleParams.getList(), lines);
+		when(metafiler.sample(any(), any())).thenThrow(new AssertionError("extractor crashed"));
+
+		th.runOnce(handler, sampleParams);
+
+		Assert.assertEquals(1, live.count("pk:old"));
+		Assert.assertFalse(Files.exists(tmp.resolve("rebuild-books")));
+	}
+
+	private static File sample(final String sha1) {
+		final File ret = new File();
+		ret.setSha1(new Untokenized(sha1));
+		ret.setFilename(sha1+".txt");
+		return ret;
+	}
+
+	private void writeLinesToFile(final URI file, final String ... lines) throws IOException {
+		try(
+				Writer writer = new OutputStreamWriter(fileApi.createFile(file), StandardCharsets.UTF_8);
+				PrintWriter pw = new PrintWriter(writer)
+		) {
+			for (final String line : lines) {
+				pw.println(line);
+			}
+		}
+	}
+}
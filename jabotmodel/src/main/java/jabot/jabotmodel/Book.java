@@ -4,46 +4,34 @@ import java.util.List;
 
 import jabot.idxapi.Field.Storage;
 import jabot.idxapi.Field.Type;
-import jabot.jindex.ModelIntrospector;
-import jabot.jindex.ModelIntrospector.Mapper;
-import jabot.jindex.ModelMappersInventory;
+import jabot.jindex.Indexed;
+import jabot.jindex.IndexedModel;
 
+/** Inherits mappings of {@link File} fields */
+@IndexedModel(catchAllField="metadata", catchAllType=Type.STRING_RU)
 public class Book extends File {
-	static {
-		final ModelIntrospector<Book> introspector = new ModelIntrospector<>(Book.class);
-		introspector.getMapping("filename").setStorage(Storage.STORED_INDEXED);
-		introspector.getMapping("filenameRu").setStorage(Storage.INDEXED);
-		introspector.getMapping("length").setStorage(Storage.STORED_INDEXED);
-		introspector.getMapping("sha1").setStorage(Storage.STORED);
-		introspector.getMapping("contentType").setStorage(Storage.STORED_INDEXED);
-		introspector.getMapping("contentEncoding").setStorage(Storage.STORED);
-		introspector.getMapping("isbn").setStorage(Storage.STORED_INDEXED);
-		introspector.getMapping("years").setType(Type.INT).setStorage(Storage.STORED_INDEXED);
-		introspector.getMapping("title").setStorage(Storage.STORED_INDEXED);
-		introspector.getMapping("titleRu").setType(Type.STRING_RU);
-		introspector.getMapping("annotation").setStorage(Storage.INDEXED);
-		introspector.getMapping("annotationRu").setType(Type.STRING_RU);
-		introspector.getMapping("authors").setStorage(Storage.STORED_INDEXED).setType(Type.STRING);
-		introspector.getMapping("authorsRu").setType(Type.STRING_RU);
-		
-		// Storing location is insecure: reveals host paths
-		introspector.getMapping("location").setStorage(Storage.INDEXED);
-		
-		// Turn off searching in rawText by default (for now)
-		introspector.getMapping("rawText").setDefaultField(false);
-		introspector.getMapping("rawTextRu").setType(Type.STRING_RU).setDefaultField(false);
-		
-		final Mapper<Book> mapper = introspector.buildMapper();
-		ModelMappersInventory.registerMapper(mapper);
-	}
-
+	@Indexed(storage=Storage.STORED_INDEXED)
 	private String title;
+	
+	@Indexed(type=Type.STRING_RU)
 	private String titleRu;
+	
+	@Indexed(storage=Storage.STORED_INDEXED, type=Type.STRING)
 	private List<String> authors;
+	
+	@Indexed(type=Type.STRING_RU)
 	private List<String> authorsRu;
+	
+	@Indexed(storage=Storage.INDEXED)
 	private String annotation;
+	
+	@Indexed(type=Type.STRING_RU)
 	private String annotationRu;
+	
+	@Indexed(storage=Storage.STORED_INDEXED)
 	private String isbn;
+	
+	@Indexed(storage=Storage.STORED_INDEXED, type=Type.INT)
 	private List<Integer> years;
 	
 	public String getTitle() {
@@ -5,39 +5,39 @@ import java.net.URI;
 import jabot.idxapi.Field.Storage;
 import jabot.idxapi.Field.Type;
 import jabot.idxapi.Untokenized;
-import jabot.jindex.ModelIntrospector;
-import jabot.jindex.ModelIntrospector.Mapper;
-import jabot.jindex.ModelMappersInventory;
+import jabot.jindex.Indexed;
+import jabot.jindex.IndexedModel;
 
+// Bare terms are searched in this single field instead of every default field
+@IndexedModel(catchAllField="metadata", catchAllType=Type.STRING_RU)
 public class File {
-	static {
-		final ModelIntrospector<File> introspector = new ModelIntrospector<>(File.class);
-		introspector.getMapping("filename").setStorage(Storage.STORED_INDEXED);
-		introspector.getMapping("filenameRu").setStorage(Storage.INDEXED);
-		introspector.getMapping("length").setStorage(Storage.STORED_INDEXED);
-		introspector.getMapping("sha1").setStorage(Storage.STORED);
-		introspector.getMapping("contentType").setStorage(Storage.STORED_INDEXED);
-		introspector.getMapping("contentEncoding").setStorage(Storage.STORED);
-
-		// Storing location is insecure: reveals host paths
-		introspector.getMapping("location").setStorage(Storage.INDEXED);
-		
-		// Turn off searching in rawText by default (for now)
-		introspector.getMapping("rawText").setDefaultField(false);
-		introspector.getMapping("rawTextRu").setType(Type.STRING_RU).setDefaultField(false);
-		
-		final Mapper<File> mapper = introspector.buildMapper();
-		ModelMappersInventory.registerMapper(mapper);
-	}
-	
+	@Indexed(storage=Storage.STORED_INDEXED)
 	private String filename;
+	
+	@Indexed(storage=Storage.INDEXED)
 	private String filenameRu;
+	
+	@Indexed(storage=Storage.STORED_INDEXED)
 	private long length;
+	
+	// Storing location is insecure: reveals host paths
+	@Indexed(storage=Storage.INDEXED)
 	private URI location;
+	
+	@Indexed(storage=Storage.STORED)
 	private Untokenized sha1;
+	
+	@Indexed(storage=Storage.STORED_INDEXED)
 	private String contentType;
+	
+	@Indexed(storage=Storage.STORED)
 	private String contentEncoding;
+	
+	// Turn off searching in rawText by default (for now)
+	@Indexed(defaultField=false)
 	private String rawText;
+	
+	@Indexed(type=Type.STRING_RU, defaultField=false)
 	private String rawTextRu;
 	
 	public String getFilename() {
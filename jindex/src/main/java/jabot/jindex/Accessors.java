@@ -0,0 +1,181 @@
+package jabot.jindex;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binds bean getters, setters and constructors to functional interfaces once, so that reading and writing beans
+ * costs a direct call instead of reflective {@link Method#invoke(Object, Object...)}. Accessors are generated with
+ * {@link LambdaMetafactory}, same as java compiles method references. Generated classes call the members directly,
+ * so members that are not public, or belong to classes this class can't see (non-public classes, other class
+ * loaders) are called through plain {@link MethodHandle}s instead.
+ *
+ * @threadsafe
+ */
+final class Accessors {
+	private static final Logger LOG = LoggerFactory.getLogger(Accessors.class);
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private Accessors() {}
+
+	/**
+	 * @param @notnull getter no-arg instance method
+	 * @return @notnull function of bean returning (boxed) property value
+	 */
+	@SuppressWarnings("unchecked")
+	public static Function<Object, Object> getter(final Method getter) {
+		Validate.notNull(getter, "getter cannot be null");
+
+		final MethodHandle handle = unreflect(getter);
+		if (linkable(getter)) {
+			try {
+				final CallSite site = LambdaMetafactory.metafactory(
+						LOOKUP,
+						"apply",
+						MethodType.methodType(Function.class),
+						MethodType.methodType(Object.class, Object.class),
+						handle,
+						handle.type().wrap()
+				);
+				return (Function<Object, Object>)site.getTarget().invokeExact();
+			} catch (final Throwable ex) {
+				LOG.warn("Can't generate accessor for {}, using method handle {}", getter, ex);
+			}
+		}
+
+		final MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+		return bean -> {
+			try {
+				return generic.invokeExact(bean);
+			} catch (final RuntimeException | Error ex) {
+				throw ex;
+			} catch (final Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		};
+	}
+
+	/**
+	 * @param @notnull setter one-arg instance method, its return value (fluent setters) is ignored
+	 * @return @notnull consumer of bean and (boxed) property value
+	 */
+	@SuppressWarnings("unchecked")
+	public static BiConsumer<Object, Object> setter(final Method setter) {
+		Validate.notNull(setter, "setter cannot be null");
+
+		final MethodHandle handle = unreflect(setter);
+		if (linkable(setter)) {
+			try {
+				final CallSite site = LambdaMetafactory.metafactory(
+						LOOKUP,
+						"accept",
+						MethodType.methodType(BiConsumer.class),
+						MethodType.methodType(void.class, Object.class, Object.class),
+						handle,
+						handle.type().wrap().changeReturnType(void.class)
+				);
+				return (BiConsumer<Object, Object>)site.getTarget().invokeExact();
+			} catch (final Throwable ex) {
+				LOG.warn("Can't generate accessor for {}, using method handle {}", setter, ex);
+			}
+		}
+
+		final MethodHandle generic = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+		return (bean, value) -> {
+			try {
+				generic.invokeExact(bean, value);
+			} catch (final RuntimeException | Error ex) {
+				throw ex;
+			} catch (final Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		};
+	}
+
+	/**
+	 * @param @notnull klass class with no-arg constructor
+	 * @return @notnull supplier of new instances
+	 * @throws IllegalArgumentException if class has no no-arg constructor
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Supplier<T> constructor(final Class<T> klass) {
+		Validate.notNull(klass, "klass cannot be null");
+
+		final Constructor<T> constructor;
+		final MethodHandle handle;
+		try {
+			constructor = klass.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			handle = LOOKUP.unreflectConstructor(constructor);
+		} catch (final NoSuchMethodException | IllegalAccessException | SecurityException ex) {
+			throw new IllegalArgumentException("No accessible no-arg constructor in "+klass, ex);
+		}
+		if (linkable(constructor)) {
+			try {
+				final CallSite site = LambdaMetafactory.metafactory(
+						LOOKUP,
+						"get",
+						MethodType.methodType(Supplier.class),
+						MethodType.methodType(Object.class),
+						handle,
+						handle.type()
+				);
+				return (Supplier<T>)site.getTarget().invokeExact();
+			} catch (final Throwable ex) {
+				LOG.warn("Can't generate constructor for {}, using method handle {}", klass, ex);
+			}
+		}
+
+		final MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+		return () -> {
+			try {
+				return (T)generic.invokeExact();
+			} catch (final RuntimeException | Error ex) {
+				throw ex;
+			} catch (final Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		};
+	}
+
+	/** @return true if class generated by metafactory next to this class would be able to call the member */
+	private static boolean linkable(final Member member) {
+		if (!Modifier.isPublic(member.getModifiers())) {
+			return false;
+		}
+		for (Class<?> klass = member.getDeclaringClass(); klass != null; klass = klass.getEnclosingClass()) {
+			if (!Modifier.isPublic(klass.getModifiers())) {
+				return false;
+			}
+		}
+		try {
+			final Class<?> declaring = member.getDeclaringClass();
+			return Class.forName(declaring.getName(), false, Accessors.class.getClassLoader()) == declaring;
+		} catch (final ClassNotFoundException ex) {
+			return false;
+		}
+	}
+
+	private static MethodHandle unreflect(final Method method) {
+		try {
+			method.setAccessible(true);
+			return LOOKUP.unreflect(method);
+		} catch (final IllegalAccessException | SecurityException ex) {
+			throw new IllegalArgumentException("Method is not accessible: "+method, ex);
+		}
+	}
+}
@@ -4,34 +4,54 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.lucene.search.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jabot.common.types.Interval;
 import jabot.idxapi.DelayedIndexingException;
+import jabot.idxapi.Facet;
 import jabot.idxapi.Untokenized;
 
 /**
  * Simple implementation of the CompositeJindex. It is @threadsafe only after all {@link #addComponent(String, Jindex, Map)} 
- * calls are made. It is unsafe to share the instance of this class with other threads before that.
+ * and {@link #setSearchExecutor(ExecutorService, Interval)} calls are made. It is unsafe to share the instance of this 
+ * class with other threads before that.
+ * 
+ * Search results of the components are merged by score, see {@link JIndexResults#score()}.
+ * 
+ * By default, searches query components one after another. With search executor set, searches are sent to all 
+ * components at once and first results of each are prefetched concurrently, so search takes as long as the slowest 
+ * component rather than all of them together. Components that do not respond within the timeout are left out.
  *
  */
 public class DefaultCompositeJindex implements CompositeJindex {
 	private static final Logger LOG = LoggerFactory.getLogger(DefaultCompositeJindex.class);
+	private static final int DEFAULT_PREFETCH = 10;
 	private final List<String> allIds, allIdsRO;
 	private final Map<String, ConfiguredJindex> id2configured;
 	private final Map<Class<?>, List<Jindex>> klass2jindex;
 	private String defaultComponentName;
 	private Jindex defaultComponent;
 	private List<Jindex> defaultComponentAsList;
+	private ExecutorService searchExecutor;
+	private Interval searchTimeout;
+	private int prefetch = DEFAULT_PREFETCH;
 	
 	public DefaultCompositeJindex(final int size) {
 		this.id2configured = new HashMap<>(size);
@@ -68,6 +88,31 @@ public class DefaultCompositeJindex implements CompositeJindex {
 		}
 	}
 
+	/**
+	 * Search components concurrently
+	 * 
+	 * @param @notnull executor to send searches with, not owned by the index
+	 * @param @notnull timeout for all components to return first results, slower ones are left out of the results
+	 */
+	public void setSearchExecutor(final ExecutorService executor, final Interval timeout) {
+		Validate.notNull(executor, "executor cannot be null");
+		Validate.notNull(timeout, "timeout cannot be null");
+		
+		this.searchExecutor = executor;
+		this.searchTimeout = timeout;
+	}
+
+	public int getPrefetch() {
+		return prefetch;
+	}
+
+	/** @param prefetch how many first results of each component to fetch concurrently, see {@link #setSearchExecutor} */
+	public void setPrefetch(final int prefetch) {
+		Validate.isTrue(prefetch > 0, "prefetch must be positive");
+		
+		this.prefetch = prefetch;
+	}
+
 	@Override
 	public List<String> getAllComponents() {
 		return allIdsRO;
@@ -113,10 +158,23 @@ public class DefaultCompositeJindex implements CompositeJindex {
 
 	@Override
 	public void commit() throws DelayedIndexingException {
+		commit(false);
+	}
+
+	@Override
+	public void softCommit() throws DelayedIndexingException {
+		commit(true);
+	}
+	
+	private void commit(final boolean soft) throws DelayedIndexingException {
 		final StringBuilder errors = new StringBuilder();
 		for (final ConfiguredJindex configured : id2configured.values()) {
 			try {
-				configured.jindex.commit();
+				if (soft) {
+					configured.jindex.softCommit();
+				} else {
+					configured.jindex.commit();
+				}
 			} catch (final DelayedIndexingException ex) {
 				errors.append("component ").append(configured.id).append(": ").append(ex).append("\n");
 			}
@@ -128,23 +186,116 @@ public class DefaultCompositeJindex implements CompositeJindex {
 
 	@Override
 	public <T> JIndexResults<T> search(final Class<T> objectType, final Query search, final int offset) {
+		return search(objectType, jindex -> jindex.search(objectType, search, offset));
+	}
+
+	@Override
+	public <T> JIndexResults<T> search(
+			final Class<T> objectType, 
+			final Query search, 
+			final Collection<Query> filters, 
+			final int offset
+	) {
+		return search(objectType, jindex -> jindex.search(objectType, search, filters, offset));
+	}
+
+	/** Facets of the components handling the class are summed up, see {@link Facet#merge(List, List)} */
+	@Override
+	public <T> List<Map<String, Long>> facets(
+			final Class<T> objectType, 
+			final Query search, 
+			final Collection<Query> filters, 
+			final List<Facet> facets
+	) {
+		final List<Jindex> jindexes = allFor(objectType);
+		if (jindexes.size() == 1) {
+			return jindexes.get(0).facets(objectType, search, filters, facets);
+		}
+		final List<List<Map<String, Long>>> parts = new ArrayList<>(jindexes.size());
+		for (final Jindex jindex : jindexes) {
+			parts.add(jindex.facets(objectType, search, filters, facets));
+		}
+		return Facet.merge(facets, parts);
+	}
+
+	private <T> JIndexResults<T> search(
+			final Class<T> objectType, 
+			final Function<Jindex, JIndexResults<T>> searcher
+	) {
+		final List<Jindex> jindexes = allFor(objectType);
+		if (searchExecutor != null && jindexes.size() > 1) {
+			return parallelSearch(jindexes, searcher);
+		}
 		final JIndexResultsMixer<T> ret = new JIndexResultsMixer<>();
 		try {
-			for (final Jindex jindex : allFor(objectType)) {
-				ret.addBackend(jindex.search(objectType, search, offset));
+			for (final Jindex jindex : jindexes) {
+				ret.addBackend(searcher.apply(jindex));
 			}
 		} catch (final RuntimeException ex) {
-			LOG.error("Error performing search, closing all results");
+			throw closeAfterError(ret, ex);
+		}
+		return ret;
+	}
+	
+	private <T> JIndexResults<T> parallelSearch(
+			final List<Jindex> jindexes, 
+			final Function<Jindex, JIndexResults<T>> searcher
+	) {
+		final long deadline = System.nanoTime() + searchTimeout.as(TimeUnit.NANOSECONDS);
+		final List<CompletableFuture<JIndexResults<T>>> futures = new ArrayList<>(jindexes.size());
+		for (final Jindex jindex : jindexes) {
+			futures.add(CompletableFuture.supplyAsync(
+					() -> new PrefetchedResults<>(searcher.apply(jindex), prefetch), searchExecutor));
+		}
+		
+		final JIndexResultsMixer<T> ret = new JIndexResultsMixer<>();
+		RuntimeException error = null;
+		for (int i=0; i<futures.size(); i++) {
+			final CompletableFuture<JIndexResults<T>> future = futures.get(i);
+			if (error != null) {
+				future.thenAccept(DefaultCompositeJindex::closeLate);
+				continue;
+			}
 			try {
-				ret.close();
-			} catch (final IOException ioEx) {
-				throw new UncheckedIOException(ioEx);
+				ret.addBackend(future.get(Math.max(0, deadline-System.nanoTime()), TimeUnit.NANOSECONDS));
+			} catch (final TimeoutException ex) {
+				LOG.warn("Component {} did not respond in {}, search results are partial", jindexes.get(i), 
+						searchTimeout);
+				future.thenAccept(DefaultCompositeJindex::closeLate);
+			} catch (final ExecutionException ex) {
+				final Throwable cause = ex.getCause();
+				error = cause instanceof RuntimeException ? (RuntimeException)cause : new RuntimeException(cause);
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				error = new RuntimeException(ex);
+				future.thenAccept(DefaultCompositeJindex::closeLate);
 			}
-			throw new RuntimeException(ex);
+		}
+		if (error != null) {
+			throw closeAfterError(ret, error);
 		}
 		return ret;
 	}
 	
+	private static RuntimeException closeAfterError(final JIndexResultsMixer<?> results, final RuntimeException ex) {
+		LOG.error("Error performing search, closing all results");
+		try {
+			results.close();
+		} catch (final IOException ioEx) {
+			throw new UncheckedIOException(ioEx);
+		}
+		return new RuntimeException(ex);
+	}
+	
+	/** Close results of the component that was left out of the search */
+	private static void closeLate(final JIndexResults<?> results) {
+		try {
+			results.close();
+		} catch (final IOException | RuntimeException ex) {
+			LOG.warn("Error closing results {}", ex);
+		}
+	}
+	
 	private List<Jindex> allFor(final Class<?> objectType) {
 		final List<Jindex> jindexes = klass2jindex.get(objectType);
 		if (jindexes == null) {
@@ -170,13 +321,22 @@ public class DefaultCompositeJindex implements CompositeJindex {
 		return ret;
 	}
 	
+	/**
+	 * Merges results of the components by score: every {@link #next()} returns the best of the components' current 
+	 * results, so whatever number of results is read, they are the best ones overall. Components return results best 
+	 * first, so the merge never reads more than one result past those returned from each component, and nothing at 
+	 * all from components whose results were not needed. Results with equal (or unknown) scores are taken from the 
+	 * components in turn, results with unknown scores go after scored ones.
+	 */
 	private static final class JIndexResultsMixer<T> implements JIndexResults<T> {
-		private final List<JIndexResults<T>> backends = new LinkedList<>();
+		private final List<JIndexResults<T>> backends = new ArrayList<>();
 		
-		/** Backends that may still have results */
-		private List<JIndexResults<T>> active;
+		/** @lazyinit current results of the backends that may have more, best first */
+		private PriorityQueue<Head<T>> heads;
 		
-		private Iterator<JIndexResults<T>> current;
+		/** head returned last, it is advanced on the next call only, should there be one */
+		private Head<T> returned;
+		private float lastScore = Float.NaN;
 		
 		public void addBackend(final JIndexResults<T> backend) {
 			backends.add(backend);
@@ -184,27 +344,35 @@ public class DefaultCompositeJindex implements CompositeJindex {
 
 		@Override
 		public T next() {
-			if (active == null) {
-				active = new LinkedList<>(backends);
-				current = active.iterator();
-			}
-			T ret = null;
-			while (ret == null) {
-				if (active.isEmpty()) {
-					return null;
-				}
-				if (!current.hasNext()) {
-					// restart
-					current = active.iterator();
-				}
-				final JIndexResults<T> backend = current.next();
-				ret = backend.next();
-				if (ret == null) {
-					current.remove(); // remove from active
+			if (heads == null) {
+				heads = new PriorityQueue<>(Math.max(1, backends.size()));
+				for (int i=0; i<backends.size(); i++) {
+					advance(new Head<>(backends.get(i), i));
 				}
+			} else if (returned != null) {
+				advance(returned);
+			}
+			returned = heads.poll();
+			if (returned == null) {
+				lastScore = Float.NaN;
+				return null;
+			}
+			lastScore = returned.score;
+			return returned.value;
+		}
+		
+		private void advance(final Head<T> head) {
+			head.value = head.backend.next();
+			if (head.value != null) {
+				head.score = head.backend.score();
+				head.round++;
+				heads.add(head);
 			}
+		}
 
-			return ret;
+		@Override
+		public float score() {
+			return lastScore;
 		}
 
 		@Override
@@ -225,8 +393,8 @@ public class DefaultCompositeJindex implements CompositeJindex {
 			if (faulted) {
 				throw new IllegalStateException("Some connectors failed to close, see log");
 			}
-			active.clear();
-			current = active.iterator();
+			heads = new PriorityQueue<>(1);
+			returned = null;
 		}
 
 		@Override
@@ -238,7 +406,99 @@ public class DefaultCompositeJindex implements CompositeJindex {
 			return ret;
 		}
 	}
+	
+	/** Current result of one of the merged backends */
+	private static final class Head<T> implements Comparable<Head<T>> {
+		private final JIndexResults<T> backend;
+		private final int backendNo;
+		
+		/** number of results taken from the backend so far */
+		private int round;
+		private T value;
+		private float score;
+		
+		public Head(final JIndexResults<T> backend, final int backendNo) {
+			this.backend = backend;
+			this.backendNo = backendNo;
+		}
+
+		@Override
+		public int compareTo(final Head<T> other) {
+			int ret = Float.compare(other.comparableScore(), comparableScore());
+			if (ret == 0) {
+				ret = Integer.compare(round, other.round);
+			}
+			if (ret == 0) {
+				ret = Integer.compare(backendNo, other.backendNo);
+			}
+			return ret;
+		}
+		
+		private float comparableScore() {
+			return Float.isNaN(score) ? Float.NEGATIVE_INFINITY : score;
+		}
+	}
+	
+	/** Results with first few entries fetched in advance, by the thread that made the search */
+	private static final class PrefetchedResults<T> implements JIndexResults<T> {
+		private final JIndexResults<T> results;
+		private final List<T> prefetched;
+		private final float [] scores;
+		private int position;
+		private boolean exhausted;
+		private float lastScore = Float.NaN;
+		
+		public PrefetchedResults(final JIndexResults<T> results, final int prefetch) {
+			this.results = results;
+			this.prefetched = new ArrayList<>(prefetch);
+			this.scores = new float[prefetch];
+			try {
+				while (!exhausted && prefetched.size() < prefetch) {
+					final T next = results.next();
+					if (next == null) {
+						exhausted = true;
+					} else {
+						scores[prefetched.size()] = results.score();
+						prefetched.add(next);
+					}
+				}
+			} catch (final RuntimeException ex) {
+				closeLate(results);
+				throw ex;
+			}
+		}
+
+		@Override
+		public T next() {
+			if (position < prefetched.size()) {
+				lastScore = scores[position];
+				return prefetched.set(position++, null);
+			} else if (exhausted) {
+				lastScore = Float.NaN;
+				return null;
+			}
+			final T ret = results.next();
+			lastScore = results.score();
+			return ret;
+		}
 
+		@Override
+		public float score() {
+			return lastScore;
+		}
+
+		@Override
+		public void close() throws IOException {
+			exhausted = true;
+			position = prefetched.size();
+			results.close();
+		}
+
+		@Override
+		public long estimateTotalResults() {
+			return results.estimateTotalResults();
+		}
+	}
 
 	private static final class ConfiguredJindex {
 		private final String id;
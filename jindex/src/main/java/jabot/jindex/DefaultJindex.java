@@ -1,22 +1,47 @@
 package jabot.jindex;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.lucene.search.Query;
 
 import jabot.idxapi.DelayedIndexingException;
 import jabot.idxapi.Document;
+import jabot.idxapi.Facet;
+import jabot.idxapi.Field;
 import jabot.idxapi.Index;
 import jabot.idxapi.SearchResults;
 import jabot.idxapi.Untokenized;
+import jabot.jindex.ModelIntrospector.FieldMapping;
 import jabot.jindex.ModelIntrospector.Mapper;
 
+/**
+ * Translations of model searches are cached per mapper and shared by all instances, since they only depend on the
+ * mapper, see {@link #getTranslationCaches()}
+ * 
+ * Bare terms of models with a catch-all field are searched in the catch-all field and in metadataRu, since documents
+ * indexed before the catch-all field was introduced only have the copy fields, and metadataRu gets everything 
+ * metadata does. Once everything is reindexed, {@link #setCatchAllOnly(boolean)} drops metadataRu from such 
+ * searches.
+ */
 public class DefaultJindex implements Jindex {
 	private static final List<String> METAFIELDS = Arrays.asList("metadata", "metadataRu");
+	
+	/** copy field that has all the values of the default fields of documents without catch-all field */
+	private static final String TRANSITION_METAFIELD = "metadataRu";
+	private static final ConcurrentMap<Mapper<?>, TranslationCache<?>> TRANSLATIONS = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<Mapper<?>, TranslationCache<?>> CATCHALL_TRANSLATIONS = 
+			new ConcurrentHashMap<>();
 	private final Index index;
+	private volatile boolean catchAllOnly;
 
 	public DefaultJindex(final Index index) {
 		Validate.notNull(index, "index cannot be null");
@@ -24,6 +49,15 @@ public class DefaultJindex implements Jindex {
 		this.index = index;
 	}
 
+	public boolean isCatchAllOnly() {
+		return catchAllOnly;
+	}
+
+	/** @param catchAllOnly true if all documents of the index have catch-all fields (were indexed or rebuilt since) */
+	public void setCatchAllOnly(final boolean catchAllOnly) {
+		this.catchAllOnly = catchAllOnly;
+	}
+
 	@Override
 	public void store(final Untokenized pk, final Object bean) {
 		Validate.notNull(pk, "pk cannot be null");
@@ -58,28 +92,101 @@ public class DefaultJindex implements Jindex {
 		index.commit();
 	}
 
+	@Override
+	public void softCommit() throws DelayedIndexingException {
+		index.softCommit();
+	}
+
 	@Override
 	public <T> JIndexResults<T> search(final Class<T> objectType, final Query search, final int offset) {
+		return search(objectType, search, Collections.emptyList(), offset);
+	}
+
+	/** Model class restriction is passed to the index as a filter too */
+	@Override
+	public <T> JIndexResults<T> search(
+			final Class<T> objectType, 
+			final Query search, 
+			final Collection<Query> filters, 
+			final int offset
+	) {
+		Validate.notNull(objectType, "objectType cannot be null");
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		
 		final Mapper<T> mapper = ModelMappersInventory.getMapper(objectType);
-		final String translatedQuery = toSearchQuery(mapper, search);
+		final TranslationCache<T> translator = getTranslationCache(mapper, catchAllOnly);
+		final Query translatedQuery = translator.translateQuery(search);
+		final List<Query> translatedFilters = translator.translateFilters(filters);
 		
 		// SearchResults MUST be closed in JIndexResultsImpl
-		final SearchResults results = index.search(translatedQuery, mapper.getStoredFields(), offset);
+		final SearchResults results = index.search(
+				translatedQuery, translatedFilters, mapper.getStoredFields(), offset);
 		return new JIndexResultsImpl<>(mapper, results);
 	}
 	
-	private<T> String toSearchQuery(final Class<T> objectType, final Query search) {
+	/** Facet fields are translated to index field names same way query fields are */
+	@Override
+	public <T> List<Map<String, Long>> facets(
+			final Class<T> objectType, 
+			final Query search, 
+			final Collection<Query> filters, 
+			final List<Facet> facets
+	) {
+		Validate.notNull(objectType, "objectType cannot be null");
+		Validate.notNull(search, "search cannot be null");
+		Validate.notNull(filters, "filters cannot be null");
+		Validate.notNull(facets, "facets cannot be null");
+		
+		final Mapper<T> mapper = ModelMappersInventory.getMapper(objectType);
+		final List<Facet> translatedFacets = new ArrayList<>(facets.size());
+		for (final Facet facet : facets) {
+			final FieldMapping mapping = mapper.getMapping(facet.getField());
+			if (mapping == null) {
+				throw new IllegalArgumentException("No field "+facet.getField()+" in "+objectType);
+			}
+			translatedFacets.add(facet.withField(mapping.getField().getName()));
+		}
+		final TranslationCache<T> translator = getTranslationCache(mapper, catchAllOnly);
+		return index.facets(translator.translateQuery(search), translator.translateFilters(filters), translatedFacets);
+	}
+	
+	private<T> Query toSearchQuery(final Class<T> objectType, final Query search) {
 		final Mapper<T> mapper = ModelMappersInventory.getMapper(objectType);
 		return toSearchQuery(mapper, search);
 	}
 
 
-	private<T> String toSearchQuery(final Mapper<T> mapper, final Query search) {
+	private<T> Query toSearchQuery(final Mapper<T> mapper, final Query search) {
+		return getTranslationCache(mapper, catchAllOnly).translate(search);
+	}
+	
+	/** @return @notnull translation caches of all models searched so far, for statistics */
+	public static Collection<TranslationCache<?>> getTranslationCaches() {
+		final List<TranslationCache<?>> ret = new ArrayList<>(TRANSLATIONS.values());
+		ret.addAll(CATCHALL_TRANSLATIONS.values());
+		return Collections.unmodifiableCollection(ret);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static<T> TranslationCache<T> getTranslationCache(final Mapper<T> mapper, final boolean catchAllOnly) {
+		final ConcurrentMap<Mapper<?>, TranslationCache<?>> caches = catchAllOnly ? CATCHALL_TRANSLATIONS : TRANSLATIONS;
+		return (TranslationCache<T>)caches.computeIfAbsent(mapper, 
+				m -> new TranslationCache<>(mapper, createTranslator(mapper, catchAllOnly)));
+	}
+
+	private static<T> ModelBasedTranslator<T> createTranslator(final Mapper<T> mapper, final boolean catchAllOnly) {
 		final ModelBasedTranslator<T> translator = new ModelBasedTranslator<>(mapper);
 		translator.setExpandDefaultField(true);
-		translator.setExpandDefaultFieldTo(METAFIELDS);
-		final Query translated = translator.translate(search);
-		return translated.toString();
+		final Field catchAll = mapper.getCatchAllField();
+		if (catchAll == null) {
+			translator.setExpandDefaultFieldTo(METAFIELDS);
+		} else if (catchAllOnly) {
+			translator.setExpandDefaultFieldTo(Collections.singletonList(catchAll.getName()));
+		} else {
+			translator.setExpandDefaultFieldTo(Arrays.asList(catchAll.getName(), TRANSITION_METAFIELD));
+		}
+		return translator;
 	}
 	
 	private static final class JIndexResultsImpl<T> implements JIndexResults<T> {
@@ -110,6 +217,10 @@ public class DefaultJindex implements Jindex {
 		public long estimateTotalResults() {
 			return results.estimateTotalResults();
 		}
-		
+
+		@Override
+		public float score() {
+			return results.score();
+		}
 	}
 }
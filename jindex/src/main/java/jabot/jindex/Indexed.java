@@ -0,0 +1,30 @@
+package jabot.jindex;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import jabot.idxapi.Field.Storage;
+import jabot.idxapi.Field.Type;
+
+/**
+ * Overrides default mapping of a property of an {@link IndexedModel}. Put on the field backing the property, same
+ * settings as {@link ModelIntrospector.MutableMapping} ones.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface Indexed {
+	Storage storage() default Storage.INDEXED;
+
+	/** Index type, detected from java type of the property if not specified */
+	Type [] type() default {};
+
+	/** Search this field when no field specified in query */
+	boolean defaultField() default true;
+
+	/** Do not index this property anyhow */
+	boolean ignore() default false;
+}
@@ -0,0 +1,29 @@
+package jabot.jindex;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import jabot.idxapi.Field.Type;
+
+/**
+ * Marks a model class whose {@link ModelIntrospector.Mapper} is generated at compile time by 
+ * {@link IndexedProcessor}, instead of introspecting the class at runtime. 
+ * 
+ * Every non-static non-transient field of the class and its superclasses that has a getter is mapped as a property 
+ * of the same name, {@link Indexed} overrides the defaults. Generated mappers are registered into 
+ * {@link ModelMappersInventory} automatically, see {@link MapperProvider}. Annotation is kept at runtime, so that 
+ * the inventory can tell a model that was compiled without the processor from a plain class.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface IndexedModel {
+	/** Basic name of the catch-all field, see {@link ModelIntrospector#setCatchAllField(jabot.idxapi.Field)} */
+	String catchAllField() default "";
+
+	/** Type of the catch-all field */
+	Type catchAllType() default Type.STRING;
+}
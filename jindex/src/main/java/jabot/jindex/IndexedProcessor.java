@@ -0,0 +1,290 @@
+package jabot.jindex;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import jabot.idxapi.Field.Type;
+
+/**
+ * Generates a {@link MapperProvider} for every {@link IndexedModel} class and lists them in
+ * META-INF/services, so that {@link ModelMappersInventory} finds them. Generated mappers read and write properties
+ * through plain method references and know property types from the source (including element types of collections,
+ * which are erased at runtime), so nothing is introspected when they are loaded.
+ *
+ * Picked up by javac automatically from the classpath of any module that depends on jindex.
+ */
+public class IndexedProcessor extends AbstractProcessor {
+	static final String PROVIDER_SUFFIX = "MapperProvider";
+	private static final String SERVICES = "META-INF/services/"+MapperProvider.class.getName();
+	private static final String URI = "java.net.URI";
+	private final List<String> providers = new ArrayList<>();
+	private Elements elements;
+	private Types types;
+	private Filer filer;
+	private Messager messager;
+
+	@Override
+	public synchronized void init(final ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+		elements = processingEnv.getElementUtils();
+		types = processingEnv.getTypeUtils();
+		filer = processingEnv.getFiler();
+		messager = processingEnv.getMessager();
+	}
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(IndexedModel.class.getName());
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		for (final Element element : roundEnv.getElementsAnnotatedWith(IndexedModel.class)) {
+			if (element.getKind() == ElementKind.CLASS) {
+				generate((TypeElement)element);
+			}
+		}
+		if (roundEnv.processingOver() && !providers.isEmpty()) {
+			writeServices();
+		}
+		return true;
+	}
+
+	private void generate(final TypeElement model) {
+		if (model.getModifiers().contains(Modifier.PRIVATE) || model.getModifiers().contains(Modifier.ABSTRACT)) {
+			messager.printMessage(Diagnostic.Kind.ERROR, "Indexed model can't be private or abstract", model);
+			return;
+		}
+		if (!hasDefaultConstructor(model)) {
+			messager.printMessage(Diagnostic.Kind.ERROR, "Indexed model must have no-arg constructor", model);
+			return;
+		}
+
+		final String pkg = elements.getPackageOf(model).getQualifiedName().toString();
+		final String binaryName = elements.getBinaryName(model).toString();
+		final String simpleName = (pkg.isEmpty() ? binaryName : binaryName.substring(pkg.length()+1)).replace('$', '_');
+		final String providerName = simpleName+PROVIDER_SUFFIX;
+		final String providerFullName = pkg.isEmpty() ? providerName : pkg+"."+providerName;
+		final String modelName = model.getQualifiedName().toString();
+		final IndexedModel indexedModel = model.getAnnotation(IndexedModel.class);
+
+		try (final PrintWriter out = new PrintWriter(filer.createSourceFile(providerFullName, model).openWriter())) {
+			if (!pkg.isEmpty()) {
+				out.println("package "+pkg+";");
+				out.println();
+			}
+			out.println("/** Generated by {@link "+IndexedProcessor.class.getName()+"} from {@link "+modelName+"} */");
+			out.println("public final class "+providerName+" implements "+MapperProvider.class.getName()+" {");
+			out.println("\t@Override");
+			out.println("\t@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+			out.println("\tpublic "+mapperClass()+"<"+modelName+"> get() {");
+			out.println("\t\tfinal java.util.List<"+fieldMappingClass()+"> mappings = new java.util.ArrayList<>();");
+			for (final Map.Entry<String, VariableElement> property : properties(model).entrySet()) {
+				writeMapping(out, model, property.getKey(), property.getValue());
+			}
+			final String catchAll = indexedModel.catchAllField().isEmpty() ? "null" : "new jabot.idxapi.Field(\""
+					+indexedModel.catchAllField()+"\", "+typeConstant(indexedModel.catchAllType())
+					+", jabot.idxapi.Field.Storage.INDEXED, true)";
+			out.println("\t\treturn new "+mapperClass()+"<>("+modelName+".class, "+modelName+"::new, mappings, "
+					+catchAll+");");
+			out.println("\t}");
+			out.println("}");
+		} catch (final IOException ex) {
+			messager.printMessage(Diagnostic.Kind.ERROR, "Can't generate mapper: "+ex, model);
+			return;
+		}
+		providers.add(providerFullName);
+	}
+
+	private void writeMapping(
+			final PrintWriter out,
+			final TypeElement model,
+			final String name,
+			final VariableElement field
+	) {
+		final Indexed indexed = field.getAnnotation(Indexed.class);
+		final TypeMirror type = field.asType();
+		final TypeMirror erasure = types.erasure(type);
+		final boolean multivalued = isCollection(type);
+		final String modelName = model.getQualifiedName().toString();
+		final String getter = findAccessor(model, getterNames(name, type), 0);
+		final String setter = findAccessor(model, Collections.singletonList("set"+capitalize(name)), 1);
+
+		String typeExpr = "null";
+		String adaptorExpr = "null";
+		if (URI.equals(erasure.toString())) {
+			adaptorExpr = UriCustomTypeAdaptor.class.getName()+".INSTANCE";
+		} else if (multivalued) {
+			final TypeMirror elementType = elementType(type);
+			if (elementType != null) {
+				typeExpr = "jabot.idxapi.Field.Type.fromJavaType("+elementType+".class)";
+			}
+		} else {
+			typeExpr = "jabot.idxapi.Field.Type.fromJavaType("+erasure+".class)";
+		}
+		if (indexed != null && indexed.type().length > 0) {
+			typeExpr = typeConstant(indexed.type()[0]);
+		}
+
+		final String boxed = type.getKind().isPrimitive()
+				? types.boxedClass(types.getPrimitiveType(type.getKind())).getQualifiedName().toString()
+				: type.toString();
+		out.println("\t\tmappings.add(new "+fieldMappingClass()+"(");
+		out.println("\t\t\t\t"+erasure+".class,");
+		out.println("\t\t\t\t"+(getter == null ? "null" : "bean -> (("+modelName+")bean)."+getter+"()")+",");
+		out.println("\t\t\t\t"+(setter == null ? "null"
+				: "(bean, value) -> (("+modelName+")bean)."+setter+"(("+boxed+")value)")+",");
+		out.println("\t\t\t\t\""+name+"\",");
+		out.println("\t\t\t\t"+typeExpr+",");
+		out.println("\t\t\t\tjabot.idxapi.Field.Storage."+(indexed == null ? "INDEXED" : indexed.storage().name())+",");
+		out.println("\t\t\t\t"+multivalued+",");
+		out.println("\t\t\t\t"+adaptorExpr+",");
+		out.println("\t\t\t\t"+(indexed == null || indexed.defaultField()));
+		out.println("\t\t));");
+	}
+
+	/** @return mapped properties of the model and its superclasses, by name */
+	private Map<String, VariableElement> properties(final TypeElement model) {
+		final List<TypeElement> hierarchy = new ArrayList<>();
+		for (TypeElement klass = model; klass != null; klass = superclassOf(klass)) {
+			hierarchy.add(0, klass);
+		}
+		final Map<String, VariableElement> ret = new LinkedHashMap<>();
+		for (final TypeElement klass : hierarchy) {
+			for (final VariableElement field : ElementFilter.fieldsIn(klass.getEnclosedElements())) {
+				final Set<Modifier> modifiers = field.getModifiers();
+				final String name = field.getSimpleName().toString();
+				final Indexed indexed = field.getAnnotation(Indexed.class);
+				if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+					continue;
+				}
+				if (indexed != null && indexed.ignore()) {
+					ret.remove(name);
+				} else if (findAccessor(model, getterNames(name, field.asType()), 0) != null) {
+					ret.put(name, field);
+				}
+			}
+		}
+		return ret;
+	}
+
+	private TypeElement superclassOf(final TypeElement klass) {
+		final TypeMirror superclass = klass.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		final TypeElement ret = (TypeElement)((DeclaredType)superclass).asElement();
+		return Object.class.getName().equals(ret.getQualifiedName().toString()) ? null : ret;
+	}
+
+	/** @return name of the first public method with one of the names and given number of parameters, null if none */
+	private String findAccessor(final TypeElement model, final List<String> names, final int params) {
+		for (final ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(model))) {
+			if (method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC)
+					&& method.getParameters().size() == params
+					&& names.contains(method.getSimpleName().toString()))
+			{
+				return method.getSimpleName().toString();
+			}
+		}
+		return null;
+	}
+
+	private static List<String> getterNames(final String name, final TypeMirror type) {
+		final List<String> ret = new ArrayList<>(2);
+		ret.add("get"+capitalize(name));
+		if (type.getKind() == TypeKind.BOOLEAN) {
+			ret.add("is"+capitalize(name));
+		}
+		return ret;
+	}
+
+	private boolean isCollection(final TypeMirror type) {
+		final TypeElement collection = elements.getTypeElement(Collection.class.getName());
+		return type.getKind() == TypeKind.DECLARED
+				&& types.isAssignable(types.erasure(type), types.erasure(collection.asType()));
+	}
+
+	/** @return element type of List&lt;X&gt; and alike, null if unknown */
+	private TypeMirror elementType(final TypeMirror type) {
+		final List<? extends TypeMirror> args = ((DeclaredType)type).getTypeArguments();
+		if (args.size() == 1 && args.get(0).getKind() == TypeKind.DECLARED) {
+			return types.erasure(args.get(0));
+		}
+		return null;
+	}
+
+	private static boolean hasDefaultConstructor(final TypeElement model) {
+		for (final ExecutableElement constructor : ElementFilter.constructorsIn(model.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void writeServices() {
+		try {
+			final FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+			try (final Writer out = file.openWriter()) {
+				for (final String provider : providers) {
+					out.write(provider);
+					out.write('\n');
+				}
+			}
+		} catch (final IOException ex) {
+			messager.printMessage(Diagnostic.Kind.ERROR, "Can't write "+SERVICES+": "+ex);
+		}
+	}
+
+	private static String typeConstant(final Type type) {
+		return "jabot.idxapi.Field.Type."+type.name();
+	}
+
+	private static String mapperClass() {
+		return ModelIntrospector.class.getName()+".Mapper";
+	}
+
+	private static String fieldMappingClass() {
+		return ModelIntrospector.class.getName()+".FieldMapping";
+	}
+
+	private static String capitalize(final String name) {
+		return Character.toUpperCase(name.charAt(0))+name.substring(1);
+	}
+}
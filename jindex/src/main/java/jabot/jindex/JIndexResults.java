@@ -7,4 +7,12 @@ public interface JIndexResults<T> extends Surge<T> {
 	 * Estimate total number of documents in the result. Typically, more results = less precise count
 	 */
 	long estimateTotalResults();
+	
+	/**
+	 * @return relevance score of the object last returned by {@link #next()}, NaN if unknown, 
+	 *         see {@link jabot.idxapi.SearchResults#score()}
+	 */
+	default float score() {
+		return Float.NaN;
+	}
 }
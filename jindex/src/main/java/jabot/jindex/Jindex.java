@@ -1,8 +1,13 @@
 package jabot.jindex;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.lucene.search.Query;
 
 import jabot.idxapi.DelayedIndexingException;
+import jabot.idxapi.Facet;
 import jabot.idxapi.IndexingException;
 import jabot.idxapi.Untokenized;
 
@@ -52,6 +57,14 @@ public interface Jindex {
 	 */
 	void commit() throws DelayedIndexingException;
 	
+	/**
+	 * Make all stored documents and requested removals visible to the search methods, without guaranteeing they 
+	 * survive a crash. Documents become durable on next {@link #commit()}.
+	 * 
+	 * @throws DelayedIndexingException if documents that supposed to be stored can't really be applied for some reason
+	 */
+	void softCommit() throws DelayedIndexingException;
+	
 	
 	/** 
 	 * Perform a search
@@ -61,4 +74,29 @@ public interface Jindex {
 	 * @throws throws SearchException when query is incorrect or IOException happened (user should analyse getCause())
 	 */
 	<T> JIndexResults<T> search(Class<T> objectType, Query search, int offset);
+	
+	/** 
+	 * Perform a search restricted by filters. Filters don't take part in scoring and are cached by the index 
+	 * independently of the search, see {@link jabot.idxapi.Index#search(Query, Collection, Collection, int)}.
+	 * Structural constraints (content type, year ranges, ...) belong to filters, free text to search.
+	 * 
+	 * @param @notnull search lucene-compliant search
+	 * @param @notnull filters lucene-compliant searches, ALL of them must match
+	 * @param @offset return results at given offset (for paging)
+	 * @throws throws SearchException when query is incorrect or IOException happened (user should analyse getCause())
+	 */
+	<T> JIndexResults<T> search(Class<T> objectType, Query search, Collection<Query> filters, int offset);
+	
+	/** 
+	 * Aggregate objects matching the search and the filters without fetching any of them, see 
+	 * {@link jabot.idxapi.Index#facets(Query, Collection, List)}
+	 * 
+	 * @param @notnull search lucene-compliant search
+	 * @param @notnull filters lucene-compliant searches, ALL of them must match
+	 * @param @notnull facets over model field names (MUST be indexed fields)
+	 * @return @notnull counts for each facet, in order of facets
+	 * @throws IllegalArgumentException if facet field is not a field of the model
+	 * @throws throws SearchException when query is incorrect or IOException happened (user should analyse getCause())
+	 */
+	<T> List<Map<String, Long>> facets(Class<T> objectType, Query search, Collection<Query> filters, List<Facet> facets);
 }
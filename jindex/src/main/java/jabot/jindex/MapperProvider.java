@@ -0,0 +1,12 @@
+package jabot.jindex;
+
+import jabot.jindex.ModelIntrospector.Mapper;
+
+/**
+ * Service interface of the mappers generated by {@link IndexedProcessor}, all providers found by 
+ * {@link java.util.ServiceLoader} are registered into {@link ModelMappersInventory} when it is first used
+ */
+public interface MapperProvider {
+	/** @return @notnull */
+	Mapper<?> get();
+}
@@ -2,6 +2,7 @@
 package jabot.jindex;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -13,6 +14,7 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.util.BytesRef;
 
 import jabot.idxapi.FieldValue;
@@ -45,6 +47,9 @@ import jabot.jindex.ModelIntrospector.Mapper;
  * </ul>
  * Having such assumptions allows user to specify a simple query, say, "+name:Paul Adamson age:32" that will get 
  * converted to something like "+class_unting:my.class.Person +name_str:(Paul Adamson) age_int:32"
+ * 
+ * For searches that support filters, {@link #translateQuery(Query)} and {@link #translateFilters(Collection)} 
+ * translate the same without mixing the model class restriction into the scored query: it becomes a filter instead.
  *
  */
 public class ModelBasedTranslator<T> implements SearchTranslator {
@@ -80,14 +85,9 @@ public class ModelBasedTranslator<T> implements SearchTranslator {
 		final List<String> ret = new ArrayList<>(allMappings.size());
 		
 		for (final FieldMapping mapping : allMappings.values()) {
-			if (mapping.isDefaultField()) {
-				switch(mapping.getField().getType()) {
-				case STRING: case STRING_RU: case UNTOKENIZED:
-					final String fullname = mapping.getField().getName();
-					ret.add(fullname);
-					break;
-				default: /* TODO: maybe search in numeric fields if value looks like number */ break;
-				}
+			// TODO: maybe search in numeric fields if value looks like number
+			if (mapping.isDefaultField() && ModelIntrospector.isText(mapping.getField().getType())) {
+				ret.add(mapping.getField().getName());
 			}
 		}
 		
@@ -130,6 +130,32 @@ public class ModelBasedTranslator<T> implements SearchTranslator {
 		return translated;
 	}
 	
+	/**
+	 * Translate the scored part of the search, model class restriction is NOT added, see 
+	 * {@link #translateFilters(Collection)}
+	 * 
+	 * @param @notnull search
+	 * @return @notnull
+	 */
+	public Query translateQuery(final Query search) {
+		return translateAny(search);
+	}
+	
+	/**
+	 * Translate filters (structural constraints that do not take part in scoring)
+	 * 
+	 * @param @notnull filters searches in simplified language, may be empty
+	 * @return @notnull model class restriction followed by translated filters
+	 */
+	public List<Query> translateFilters(final Collection<Query> filters) {
+		final List<Query> ret = new ArrayList<>(1+filters.size());
+		ret.add(classQuery.getQuery());
+		for (final Query filter : filters) {
+			ret.add(translateAny(filter));
+		}
+		return ret;
+	}
+	
 	private Query translateAny(final Query search) {
 		if (search instanceof TermQuery) {
 			return translateTermQuery((TermQuery)search);
@@ -137,6 +163,8 @@ public class ModelBasedTranslator<T> implements SearchTranslator {
 			return translateBooleanQuery((BooleanQuery)search);
 		} else if (search instanceof PhraseQuery) {
 			return translatePhraseQuery((PhraseQuery)search);
+		} else if (search instanceof TermRangeQuery) {
+			return translateTermRangeQuery((TermRangeQuery)search);
 		} else {
 			return search;
 		}
@@ -169,6 +197,15 @@ public class ModelBasedTranslator<T> implements SearchTranslator {
 		}
 	}
 	
+	private Query translateTermRangeQuery(final TermRangeQuery rq) {
+		final String translated = translateField(rq.getField());
+		if (translated == null) {
+			return rq;
+		}
+		return new TermRangeQuery(
+				translated, rq.getLowerTerm(), rq.getUpperTerm(), rq.includesLower(), rq.includesUpper());
+	}
+	
 	private Query translatePhraseQuery(final PhraseQuery pq) {
 		final Term[] terms = pq.getTerms();
 		if (terms == null || terms.length==0) {
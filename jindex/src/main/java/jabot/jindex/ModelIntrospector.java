@@ -1,16 +1,19 @@
 package jabot.jindex;
 
 import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.commons.beanutils.FluentPropertyBeanIntrospector;
 import org.apache.commons.beanutils.PropertyUtilsBean;
@@ -57,6 +60,14 @@ import jabot.idxapi.Untokenized;
  *   <li>Any unsupported type (including maps) will still be coerced to {@value Type#TEXT}. That means that the
  *       field will be searcheable, but, most likely, won't be retrievable</li>
  *       
+ *   <li>Values of all default fields (see {@link MutableMapping#setDefaultField(boolean)}) can additionally be 
+ *       written into single catch-all field, see {@link #setCatchAllField(Field)}. Searching that one field is 
+ *       much cheaper than searching all the default fields one by one.</li>
+ *       
+ *   <li>Preferred alternative to the static initializer is to annotate the class with {@link IndexedModel} and its
+ *       fields with {@link Indexed}: the mapper is then generated at compile time by {@link IndexedProcessor} and 
+ *       nothing is introspected at runtime.</li>
+ *       
  *   <li>If you don't specify an explicit static mapper initialization in your class, then default rules will apply:
  *       the {@link ModelMappersInventory} will create a default mapper with all collections/unsupposted types 
  *       coerced to {@value Type#TEXT}</li>
@@ -74,6 +85,7 @@ public class ModelIntrospector<T> {
 	}
 	private final Class<T> model;
 	private final Map<String, MutableMapping> mappings;
+	private Field catchAllField;
 
 	public ModelIntrospector(final Class<T> model) {
 		this.model = model;
@@ -91,8 +103,37 @@ public class ModelIntrospector<T> {
 		return mappings.get(fieldName);
 	}
 	
+	public Field getCatchAllField() {
+		return catchAllField;
+	}
+
+	/**
+	 * @param catchAllField multivalued indexed-only string field to write values of all default string fields to,
+	 *                      null if none. Document stores contents of the default fields twice then, but searches
+	 *                      need to look in this field only.
+	 */
+	public void setCatchAllField(final Field catchAllField) {
+		if (catchAllField != null) {
+			Validate.isTrue(catchAllField.isMultivalued(), "catchAllField must be multivalued");
+			Validate.isTrue(catchAllField.getStorage() == Storage.INDEXED, "catchAllField must be indexed only");
+			Validate.isTrue(isText(catchAllField.getType()), "catchAllField must be string field");
+		}
+		this.catchAllField = catchAllField;
+	}
+	
 	public Mapper<T> buildMapper() {
-		return new Mapper<T>(model, mappings.values());
+		return new Mapper<T>(model, mappings.values(), catchAllField);
+	}
+	
+	/** @return true if the type holds text that can be searched as a default field */
+	static boolean isText(final Type type) {
+		if (type == null) {
+			return false;
+		}
+		switch(type) {
+		case STRING: case STRING_RU: case UNTOKENIZED: return true;
+		default: return false;
+		}
 	}
 	
 	/** @immutable */
@@ -102,26 +143,51 @@ public class ModelIntrospector<T> {
 		private final Map<String, FieldMapping> reverseMappings;
 		private final AtomicReference<List<Field>> storedFields = new AtomicReference<>();
 		private final FieldValue classFieldValue;
+		private final Field catchAllField;
+		
+		/** null if model has no no-arg constructor */
+		private final Supplier<T> constructor;
 		
 		public Mapper(final Class<T> model, final Collection<MutableMapping> mappings) {
+			this(model, mappings, null);
+		}
+		
+		/** @param catchAllField see {@link ModelIntrospector#setCatchAllField(Field)}, null if none */
+		public Mapper(final Class<T> model, final Collection<MutableMapping> mappings, final Field catchAllField) {
+			this(model, bindConstructor(model), buildMappings(mappings), catchAllField);
+		}
+		
+		/**
+		 * For mappers that are built without introspection, see {@link IndexedProcessor}
+		 * 
+		 * @param @notnull model
+		 * @param constructor creates empty beans, null if model can't be created
+		 * @param @notnull mappings
+		 * @param catchAllField see {@link ModelIntrospector#setCatchAllField(Field)}, null if none
+		 */
+		public Mapper(
+				final Class<T> model, 
+				final Supplier<T> constructor, 
+				final Collection<FieldMapping> mappings, 
+				final Field catchAllField
+		) {
 			Validate.notNull(model, "model cannot be null");
 			Validate.notNull(mappings, "mappings cannot be null");
 			
 			this.model = model;
+			this.catchAllField = catchAllField;
+			this.constructor = constructor;
 			
 			// All mappings are FORWARD (from bean to doc) 
 			// but only some of them are REVERSE (doc to bean)
 			Map<String, FieldMapping> unmutable = new HashMap<>(mappings.size());
 			int reverseCount = 0;
-			for (final MutableMapping mutable : mappings) {
-				if (!mutable.ignore) {
-					final FieldMapping mapping = mutable.buildMapping();
-					unmutable.put(mapping.getBasicName(), mapping);
-					
-					final Storage storage = mapping.storage;
-					if (storage != Storage.INDEXED) {
-						reverseCount++;
-					}
+			for (final FieldMapping mapping : mappings) {
+				unmutable.put(mapping.getBasicName(), mapping);
+				
+				final Storage storage = mapping.storage;
+				if (storage != Storage.INDEXED) {
+					reverseCount++;
 				}
 			}
 			forwardMappings = Collections.unmodifiableMap(unmutable);
@@ -130,7 +196,6 @@ public class ModelIntrospector<T> {
 			for (final FieldMapping mapping : forwardMappings.values()) {
 				final Storage storage = mapping.storage;
 				if (storage != Storage.INDEXED) {
-					reverseCount++;
 					unmutable.put(mapping.getBasicName(), mapping);
 				}
 			}
@@ -140,6 +205,27 @@ public class ModelIntrospector<T> {
 					new Untokenized(model.getName()));
 		}
 		
+		private static List<FieldMapping> buildMappings(final Collection<MutableMapping> mappings) {
+			Validate.notNull(mappings, "mappings cannot be null");
+			
+			final List<FieldMapping> ret = new ArrayList<>(mappings.size());
+			for (final MutableMapping mutable : mappings) {
+				if (!mutable.ignore) {
+					ret.add(mutable.buildMapping());
+				}
+			}
+			return ret;
+		}
+		
+		private static <T> Supplier<T> bindConstructor(final Class<T> model) {
+			try {
+				return Accessors.constructor(model);
+			} catch (final IllegalArgumentException ex) {
+				LOG.debug("{}: can't bind constructor, beans can't be read from documents {}", model, ex);
+				return null;
+			}
+		}
+		
 		public Class<T> getModel() {
 			return model;
 		}
@@ -147,6 +233,11 @@ public class ModelIntrospector<T> {
 		public FieldValue getClassFieldValue() {
 			return classFieldValue;
 		}
+		
+		/** @return field containing values of all default fields, null if the model has none */
+		public Field getCatchAllField() {
+			return catchAllField;
+		}
 
 		/**
 		 * instead of manually specifying each field type, you can create a dummy
@@ -188,40 +279,57 @@ public class ModelIntrospector<T> {
 			Validate.notNull(pk, "pk cannot be null");
 			Validate.notNull(bean, "bean cannot be null");
 			
-			final Document ret = new Document(pk);
+			final Document ret = new Document(pk, forwardMappings.size()+2);
 			ret.add(classFieldValue);
+			final Collection<String> catchAll = catchAllField == null ? null : new LinkedHashSet<>();
 			for (final FieldMapping mapping : forwardMappings.values()) {
 				final FieldValue fv = mapping.fromBean(bean);
 				if (fv != null) {
 					ret.add(fv);
+					if (catchAll != null && mapping.isDefaultField() && isText(fv.getField().getType())) {
+						addText(catchAll, fv.getValue());
+					}
 				}
 			}
+			if (catchAll != null && !catchAll.isEmpty()) {
+				ret.add(new FieldValue(catchAllField, catchAll));
+			}
 			
 			return ret;
 		}
 		
+		private static void addText(final Collection<String> catchAll, final Object value) {
+			if (value instanceof Collection) {
+				for (final Object item : (Collection<?>)value) {
+					addText(catchAll, item);
+				}
+			} else if (value instanceof Untokenized) {
+				catchAll.add(((Untokenized)value).getText());
+			} else if (value != null) {
+				catchAll.add(value.toString());
+			}
+		}
+		
 		public T doc2bean(final Document doc) {
 			Validate.notNull(doc, "doc cannot be null");
 			
-			try {
-				final T bean = model.newInstance();
-				for (final FieldValue fv : doc.getFields()) {
-					if (!classFieldValue.getField().equals(fv.getField())) {
-						final String fieldName = fv.getField().getBasicName();
-						final FieldMapping mapping = reverseMappings.get(fieldName);
-						if (mapping == null) {
-							LOG.warn("{}: Field mapping for {} not found, field is ignored", model, fieldName);
-						} else {
-							mapping.toBean(bean, fv);
-						}
+			if (constructor == null) {
+				throw new AssertionError("Can't create "+ model +
+						" value, this is not supposed to happen since I have reflected on this class");
+			}
+			final T bean = constructor.get();
+			for (final FieldValue fv : doc.getFields()) {
+				if (!classFieldValue.getField().equals(fv.getField())) {
+					final String fieldName = fv.getField().getBasicName();
+					final FieldMapping mapping = reverseMappings.get(fieldName);
+					if (mapping == null) {
+						LOG.warn("{}: Field mapping for {} not found, field is ignored", model, fieldName);
+					} else {
+						mapping.toBean(bean, fv);
 					}
 				}
-				return bean;
-			} catch (final InstantiationException | IllegalAccessException ex) 
-			{
-				throw new AssertionError("Can't create "+ model +
-						" value, this is not supposed to happen since I have reflected on this class", ex);
 			}
+			return bean;
 		}
 	}
 	
@@ -351,13 +459,19 @@ public class ModelIntrospector<T> {
 	
 	/** @threadsafe **/
 	public static final class FieldMapping {
-		private final PropertyDescriptor objectField;
+		private final Class<?> propertyType;
 		private final boolean multivalued;
 		private final String basicName;
 		private final Storage storage;
 		private final CustomTypeAdaptor customAdaptor;
 		private final boolean defaultField;
 		
+		/** bound once, see {@link Accessors}. Null if property can't be read */
+		private final Function<Object, Object> getter;
+		
+		/** bound once, see {@link Accessors}. Null if property can't be written */
+		private final BiConsumer<Object, Object> setter;
+		
 		// Lazilly-initialized when type is deduced
 		private final AtomicReference<TypeInfo> typeInfo = new AtomicReference<>();
 		
@@ -370,7 +484,42 @@ public class ModelIntrospector<T> {
 				final CustomTypeAdaptor customAdaptor,
 				final boolean defaultField
 		) {
-			this.objectField = objectField;
+			this(
+					objectField.getPropertyType(),
+					objectField.getReadMethod() == null ? null : Accessors.getter(objectField.getReadMethod()),
+					objectField.getWriteMethod() == null ? null : Accessors.setter(objectField.getWriteMethod()),
+					basicName,
+					type,
+					storage,
+					multivalued,
+					customAdaptor,
+					defaultField
+			);
+		}
+		
+		/**
+		 * @param @notnull propertyType
+		 * @param getter reads property of the bean, null if property can't be read
+		 * @param setter writes property of the bean, null if property can't be written
+		 */
+		public FieldMapping(
+				final Class<?> propertyType,
+				final Function<Object, Object> getter,
+				final BiConsumer<Object, Object> setter,
+				final String basicName,
+				final Type type, 
+				final Storage storage,
+				final boolean multivalued,
+				final CustomTypeAdaptor customAdaptor,
+				final boolean defaultField
+		) {
+			Validate.notNull(propertyType, "propertyType cannot be null");
+			Validate.notNull(basicName, "basicName cannot be null");
+			Validate.notNull(storage, "storage cannot be null");
+			
+			this.propertyType = propertyType;
+			this.getter = getter;
+			this.setter = setter;
 			this.multivalued = multivalued;
 			this.basicName = basicName;
 			this.storage = storage;
@@ -410,13 +559,10 @@ public class ModelIntrospector<T> {
 		}
 
 		public FieldValue fromBean(final Object bean) {
-			try{
-				final Object beanFieldValue = objectField.getReadMethod().invoke(bean);
-				return fromBeanFieldValue(beanFieldValue);
-			} catch (final IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-				throw new AssertionError("Can't read field "+ basicName +
-						" value, this is not supposed to happen since I have reflected on this class", ex);
+			if (getter == null) {
+				return null;
 			}
+			return fromBeanFieldValue(getter.apply(bean));
 		}
 
 		public FieldValue fromBeanFieldValue(final Object beanFieldValue) {
@@ -452,9 +598,13 @@ public class ModelIntrospector<T> {
 				docValue = info.coerce(docValue);
 			}
 			
+			if (setter == null) {
+				LOG.warn("Can't assign {}={}, property is read-only", basicName, docValue);
+				return;
+			}
 			try {
-				objectField.getWriteMethod().invoke(bean, docValue);
-			} catch (final IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
+				setter.accept(bean, docValue);
+			} catch (final ClassCastException | NullPointerException ex) {
 				LOG.warn("Can't assign {}={}, field not set", basicName, docValue, ex);
 			}
 		}
@@ -517,7 +667,7 @@ public class ModelIntrospector<T> {
 				// Attempt to detect type
 				info = new TypeInfo(actualJavaType);
 				if (typeInfo.compareAndSet(null, info)) {
-					LOG.warn("Detected field {} {} type as {}", objectField.getPropertyType(), basicName, info.type);
+					LOG.warn("Detected field {} {} type as {}", propertyType, basicName, info.type);
 				} else {
 					info = typeInfo.get();
 				}
@@ -530,34 +680,33 @@ public class ModelIntrospector<T> {
 			private final boolean coercedToText;
 			private final Field field;
 			
+			/** resolved once, so that coercing is a single call */
+			private final Function<Object, Object> coercion;
+			
 			public TypeInfo(final Class<?> klass) {
 				Type detected = Type.fromJavaType(klass);
 				this.coercedToText = detected == null;
 				if (coercedToText) {
 					detected = Type.STRING;
-					LOG.debug("Detected field {} {} type as {}", objectField.getPropertyType(), basicName, detected);
+					LOG.debug("Detected field {} {} type as {}", propertyType, basicName, detected);
 				}
 				this.type = detected;
 				this.field = new Field(basicName, type, storage, multivalued);
+				this.coercion = coercedToText ? Object::toString : Function.identity();
 			}
 			
 			private TypeInfo(final Type type, final boolean coercedToText) {
 				this.type = type;
 				this.coercedToText = coercedToText;
 				this.field = new Field(basicName, type, storage, multivalued);
+				this.coercion = coercedToText ? Object::toString : Function.identity();
 				if (coercedToText) {
-					LOG.debug("Detected field {} {} type as {}", objectField.getPropertyType(), basicName, type);
+					LOG.debug("Detected field {} {} type as {}", propertyType, basicName, type);
 				}			
 			}
 			
 			public Object coerce(final Object value) {
-				if (value == null) {
-					return null;
-				} else if (coercedToText) {
-					return value.toString();
-				} else {
-					return value;
-				}
+				return value == null ? null : coercion.apply(value);
 			}
 		}
 	}
@@ -1,5 +1,9 @@
 package jabot.jindex;
 
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,7 +13,9 @@ import javolution.util.FastMap;
 
 /**
  * Global static mappers inventory.
- * Rationale: each class should provide hints on how to map itself in a static init section
+ * Rationale: each class should provide hints on how to map itself, either with {@link IndexedModel} annotations 
+ * (mappers generated at compile time are loaded as {@link MapperProvider} services when the inventory is first used)
+ * or in a static init section
  * 
  * @threadsafe
  *
@@ -17,6 +23,9 @@ import javolution.util.FastMap;
 public class ModelMappersInventory {
 	private static final Logger LOG = LoggerFactory.getLogger(ModelMappersInventory.class);
 	private static final FastMap<Class<?>, Mapper<?>> MAPPERS = new FastMap<Class<?>, Mapper<?>>().shared();
+	static {
+		loadProviders();
+	}
 	
 	public static void registerMapper(final Mapper<?> mapper) {
 		Validate.notNull(mapper, "mapper cannot be null");
@@ -24,9 +33,20 @@ public class ModelMappersInventory {
 		MAPPERS.put(mapper.getModel(), mapper);
 	}
 	
+	/**
+	 * @param @notnull forClass
+	 * @return @notnull registered mapper, classes that have none get introspected one
+	 * @throws IllegalStateException if forClass is an {@link IndexedModel}, but it's generated mapper is not 
+	 *         registered (failed to load or was never generated): introspected mapper would silently map it 
+	 *         differently
+	 */
 	@SuppressWarnings("unchecked")
 	public static<T> Mapper<T> getMapper(final Class<T> forClass) {
 		MAPPERS.computeIfAbsent(forClass, k -> {
+			if (forClass.isAnnotationPresent(IndexedModel.class)) {
+				throw new IllegalStateException("No generated mapper registered for "+forClass.getName()
+						+", was it compiled with "+IndexedProcessor.class.getSimpleName()+"?");
+			}
 			LOG.info("Creating default mapper for class {}", forClass);
 			final ModelIntrospector<T> introspector = new ModelIntrospector<>(forClass);
 			return introspector.buildMapper();
@@ -37,4 +57,27 @@ public class ModelMappersInventory {
 		assert actualModel == forClass : "Existing mapper model is not the same as we expected!";
 		return (Mapper<T>)mapper;
 	}
+	
+	/** Each provider is loaded on it's own, so that one broken provider does not keep the others from loading */
+	private static void loadProviders() {
+		final Iterator<MapperProvider> providers = ServiceLoader.load(
+				MapperProvider.class, ModelMappersInventory.class.getClassLoader()).iterator();
+		while (true) {
+			try {
+				if (!providers.hasNext()) {
+					return;
+				}
+			} catch (final ServiceConfigurationError ex) {
+				LOG.error("Error looking up generated mappers, remaining ones are not loaded {}", ex);
+				return;
+			}
+			try {
+				final Mapper<?> mapper = providers.next().get();
+				LOG.debug("Loaded generated mapper for class {}", mapper.getModel());
+				MAPPERS.put(mapper.getModel(), mapper);
+			} catch (final ServiceConfigurationError | RuntimeException ex) {
+				LOG.error("Error loading generated mapper {}", ex);
+			}
+		}
+	}
 }
@@ -0,0 +1,125 @@
+package jabot.jindex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+
+import jabot.jindex.ModelIntrospector.Mapper;
+
+/**
+ * Remembers translations made by one {@link ModelBasedTranslator}, so that repeated searches against the same model
+ * are not translated again. The translator (and its default field expansion list) is built once per cache.
+ *
+ * Cache is keyed by the source query itself: lucene queries are immutable and compare structurally, so identical
+ * searches parsed separately share an entry. Cache is LRU, bounded by number of entries. Translation only depends on
+ * the mapper, so entries never go stale.
+ *
+ * @threadsafe
+ */
+public class TranslationCache<T> {
+	private static final int DEFAULT_MAXENTRIES = 1024;
+	private final Mapper<T> mapper;
+	private final ModelBasedTranslator<T> translator;
+	private final Query classQuery;
+	private final int maxEntries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** @guardedby entries, access-ordered for LRU */
+	private final LinkedHashMap<Query, Query> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * @param @notnull mapper
+	 * @param @notnull translator fully configured translator of the mapper, must not be changed afterwards
+	 */
+	public TranslationCache(final Mapper<T> mapper, final ModelBasedTranslator<T> translator) {
+		this(mapper, translator, DEFAULT_MAXENTRIES);
+	}
+
+	/**
+	 * @param @notnull mapper
+	 * @param @notnull translator fully configured translator of the mapper, must not be changed afterwards
+	 * @param maxEntries max number of cached translations
+	 */
+	public TranslationCache(final Mapper<T> mapper, final ModelBasedTranslator<T> translator, final int maxEntries) {
+		Validate.notNull(mapper, "mapper cannot be null");
+		Validate.notNull(translator, "translator cannot be null");
+		Validate.isTrue(maxEntries > 0, "maxEntries must be positive");
+
+		this.mapper = mapper;
+		this.translator = translator;
+		this.classQuery = translator.translateFilters(Collections.emptyList()).get(0);
+		this.maxEntries = maxEntries;
+	}
+
+	public Mapper<T> getMapper() {
+		return mapper;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** @return number of cached translations */
+	public int getSize() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	/** Same as {@link ModelBasedTranslator#translate(Query)} */
+	public Query translate(final Query search) {
+		return new BooleanQuery.Builder()
+				.add(classQuery, Occur.MUST)
+				.add(translateQuery(search), Occur.MUST)
+				.build();
+	}
+
+	/** Same as {@link ModelBasedTranslator#translateQuery(Query)} */
+	public Query translateQuery(final Query search) {
+		Validate.notNull(search, "search cannot be null");
+
+		synchronized(entries) {
+			final Query cached = entries.get(search);
+			if (cached != null) {
+				hits.incrementAndGet();
+				return cached;
+			}
+		}
+
+		misses.incrementAndGet();
+		final Query translated = translator.translateQuery(search);
+		synchronized(entries) {
+			entries.put(search, translated);
+			if (entries.size() > maxEntries) {
+				final Iterator<Query> eldest = entries.keySet().iterator();
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		return translated;
+	}
+
+	/** Same as {@link ModelBasedTranslator#translateFilters(Collection)} */
+	public List<Query> translateFilters(final Collection<Query> filters) {
+		final List<Query> ret = new ArrayList<>(1+filters.size());
+		ret.add(classQuery);
+		for (final Query filter : filters) {
+			ret.add(translateQuery(filter));
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,136 @@
+package jabot.jindex;
+
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rough comparison of {@link Method#invoke(Object, Object...)} against {@link Accessors} on a model like the ones
+ * jindex maps. Timings are only logged: tests run in parallel, so they are too noisy to assert on. Raise ROUNDS and
+ * ITERATIONS locally for meaningful numbers
+ */
+public class AccessorsBenchmarkTest {
+	private static final Logger LOG = LoggerFactory.getLogger(AccessorsBenchmarkTest.class);
+	private static final int ROUNDS = 5;
+	private static final int ITERATIONS = 100000;
+	private static final String [] PROPERTIES = {"Title", "Author", "Year", "Pages"};
+
+	@Test
+	public void test_reflection_vs_accessors() throws ReflectiveOperationException {
+		final Method [] getters = new Method[PROPERTIES.length];
+		final Method [] setters = new Method[PROPERTIES.length];
+		final Object [] values = {"Title", "Author", 1984, 328L};
+		final Function<Object, Object> [] boundGetters = newGetters(PROPERTIES.length);
+		final BiConsumer<Object, Object> [] boundSetters = newSetters(PROPERTIES.length);
+		for (int i=0; i<PROPERTIES.length; i++) {
+			getters[i] = Book.class.getMethod("get"+PROPERTIES[i]);
+			setters[i] = Book.class.getMethod("set"+PROPERTIES[i], getters[i].getReturnType());
+			boundGetters[i] = Accessors.getter(getters[i]);
+			boundSetters[i] = Accessors.setter(setters[i]);
+		}
+
+		long reflectionNanos = 0;
+		long accessorsNanos = 0;
+		for (int round=0; round<ROUNDS; round++) {
+			long started = System.nanoTime();
+			final int reflected = reflective(getters, setters, values);
+			reflectionNanos = System.nanoTime()-started;
+
+			started = System.nanoTime();
+			final int bound = bound(boundGetters, boundSetters, values);
+			accessorsNanos = System.nanoTime()-started;
+
+			Assert.assertEquals(reflected, bound);
+		}
+		// last round only, earlier ones warm up the JIT
+		final long ops = (long)ITERATIONS*PROPERTIES.length*2;
+		LOG.info("Method.invoke: {}ns/op, Accessors: {}ns/op",
+				reflectionNanos/(double)ops, accessorsNanos/(double)ops);
+	}
+
+	private static int reflective(final Method [] getters, final Method [] setters, final Object [] values)
+			throws ReflectiveOperationException
+	{
+		int ret = 0;
+		for (int i=0; i<ITERATIONS; i++) {
+			final Book book = new Book();
+			for (int p=0; p<setters.length; p++) {
+				setters[p].invoke(book, values[p]);
+			}
+			for (int p=0; p<getters.length; p++) {
+				ret += getters[p].invoke(book).hashCode();
+			}
+		}
+		return ret;
+	}
+
+	private static int bound(final Function<Object, Object> [] getters, final BiConsumer<Object, Object> [] setters,
+			final Object [] values)
+	{
+		int ret = 0;
+		for (int i=0; i<ITERATIONS; i++) {
+			final Book book = new Book();
+			for (int p=0; p<setters.length; p++) {
+				setters[p].accept(book, values[p]);
+			}
+			for (int p=0; p<getters.length; p++) {
+				ret += getters[p].apply(book).hashCode();
+			}
+		}
+		return ret;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Function<Object, Object> [] newGetters(final int size) {
+		return new Function[size];
+	}
+
+	@SuppressWarnings("unchecked")
+	private static BiConsumer<Object, Object> [] newSetters(final int size) {
+		return new BiConsumer[size];
+	}
+
+	public static final class Book {
+		private String title;
+		private String author;
+		private int year;
+		private long pages;
+
+		public String getTitle() {
+			return title;
+		}
+
+		public void setTitle(String title) {
+			this.title = title;
+		}
+
+		public String getAuthor() {
+			return author;
+		}
+
+		public void setAuthor(String author) {
+			this.author = author;
+		}
+
+		public int getYear() {
+			return year;
+		}
+
+		public void setYear(int year) {
+			this.year = year;
+		}
+
+		public long getPages() {
+			return pages;
+		}
+
+		public void setPages(long pages) {
+			this.pages = pages;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package jabot.jindex;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AccessorsTest {
+	@Test
+	public void test_generated_accessors() throws NoSuchMethodException {
+		final PublicBean bean = Accessors.constructor(PublicBean.class).get();
+		final BiConsumer<Object, Object> setter = Accessors.setter(PublicBean.class.getMethod("setIntVal", int.class));
+		final Function<Object, Object> getter = Accessors.getter(PublicBean.class.getMethod("getIntVal"));
+
+		setter.accept(bean, 42);
+		Assert.assertEquals(42, getter.apply(bean));
+	}
+
+	@Test
+	public void test_fluent_setter() throws NoSuchMethodException {
+		final PublicBean bean = new PublicBean();
+		Accessors.setter(PublicBean.class.getMethod("setStringVal", String.class)).accept(bean, "abc");
+		Assert.assertEquals("abc", bean.getStringVal());
+	}
+
+	@Test
+	public void test_non_public_class() throws NoSuchMethodException {
+		final PrivateBean bean = Accessors.constructor(PrivateBean.class).get();
+		Accessors.setter(PrivateBean.class.getMethod("setLongVal", long.class)).accept(bean, 7L);
+		Assert.assertEquals(7L, Accessors.getter(PrivateBean.class.getMethod("getLongVal")).apply(bean));
+	}
+
+	@Test(expected=ClassCastException.class)
+	public void test_wrong_type() throws NoSuchMethodException {
+		Accessors.setter(PublicBean.class.getMethod("setIntVal", int.class)).accept(new PublicBean(), "abc");
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_no_default_constructor() {
+		Accessors.constructor(Integer.class);
+	}
+
+	public static final class PublicBean {
+		private int intVal;
+		private String stringVal;
+
+		public int getIntVal() {
+			return intVal;
+		}
+
+		public void setIntVal(int intVal) {
+			this.intVal = intVal;
+		}
+
+		public String getStringVal() {
+			return stringVal;
+		}
+
+		public PublicBean setStringVal(String stringVal) {
+			this.stringVal = stringVal;
+			return this;
+		}
+	}
+
+	private static final class PrivateBean {
+		private long longVal;
+
+		public long getLongVal() {
+			return longVal;
+		}
+
+		public void setLongVal(long longVal) {
+			this.longVal = longVal;
+		}
+	}
+}
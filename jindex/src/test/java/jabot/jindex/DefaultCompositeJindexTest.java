@@ -8,6 +8,10 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.search.Query;
 import org.junit.Assert;
@@ -17,6 +21,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import jabot.common.types.Interval;
 import jabot.idxapi.DelayedIndexingException;
 import jabot.idxapi.Untokenized;
 
@@ -192,4 +197,105 @@ public class DefaultCompositeJindexTest {
 		verify(results1).close();
 		verify(results2).close();
 	}
+	
+	@Test
+	public void test_search_results_merged_by_score() throws IOException {
+		when(component2.search(Integer.class, query1, 10)).thenReturn(results1);
+		when(component3.search(Integer.class, query1, 10)).thenReturn(results2);
+		
+		when(results1.next()).thenReturn(1).thenReturn(2).thenReturn(null);
+		when(results1.score()).thenReturn(5f).thenReturn(1f);
+		when(results2.next()).thenReturn(10).thenReturn(20).thenReturn(30).thenReturn(null);
+		when(results2.score()).thenReturn(3f).thenReturn(2f).thenReturn(0.5f);
+		
+		final JIndexResults<Integer> res = fixture.search(Integer.class, query1, 10);
+		Assert.assertEquals(1, (int)res.next());
+		Assert.assertEquals(5f, res.score(), 0f);
+		Assert.assertEquals(10, (int)res.next());
+		Assert.assertEquals(3f, res.score(), 0f);
+		Assert.assertEquals(20, (int)res.next());
+		Assert.assertEquals(2, (int)res.next());
+		Assert.assertEquals(30, (int)res.next());
+		Assert.assertEquals(0.5f, res.score(), 0f);
+		Assert.assertNull(res.next());
+		res.close();
+	}
+	
+	@Test
+	public void test_search_reads_no_more_than_needed() throws IOException {
+		when(component2.search(Integer.class, query1, 10)).thenReturn(results1);
+		when(component3.search(Integer.class, query1, 10)).thenReturn(results2);
+		
+		when(results1.next()).thenReturn(1).thenReturn(2).thenReturn(null);
+		when(results1.score()).thenReturn(5f).thenReturn(4f);
+		when(results2.next()).thenReturn(10).thenReturn(null);
+		when(results2.score()).thenReturn(3f);
+		
+		final JIndexResults<Integer> res = fixture.search(Integer.class, query1, 10);
+		Assert.assertEquals(1, (int)res.next());
+		Assert.assertEquals(2, (int)res.next());
+		res.close();
+		
+		verify(results1, times(2)).next();
+		verify(results2, times(1)).next();
+	}
+	
+	@Test
+	public void test_parallel_search_result_mixing() throws IOException {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			fixture.setSearchExecutor(executor, Interval.MINUTE);
+			fixture.setPrefetch(1);
+			test_search_result_mixing();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void test_parallel_search_drops_slow_components() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		final CountDownLatch slow = new CountDownLatch(1);
+		try {
+			fixture.setSearchExecutor(executor, new Interval(100, TimeUnit.MILLISECONDS));
+			when(component2.search(Integer.class, query1, 10)).thenReturn(results1);
+			when(component3.search(Integer.class, query1, 10)).thenAnswer(invocation -> {
+				slow.await();
+				return results2;
+			});
+			when(results1.next()).thenReturn(1).thenReturn(null);
+			
+			final JIndexResults<Integer> res = fixture.search(Integer.class, query1, 10);
+			Assert.assertEquals(1, (int)res.next());
+			Assert.assertNull(res.next());
+			res.close();
+			verify(results1).close();
+			
+			slow.countDown();
+			verify(results2, timeout(10000)).close();
+		} finally {
+			slow.countDown();
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void test_parallel_search_error_closes_results() throws IOException {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			fixture.setSearchExecutor(executor, Interval.MINUTE);
+			when(component2.search(Integer.class, query1, 10)).thenReturn(results1);
+			when(component3.search(Integer.class, query1, 10)).thenThrow(new IllegalStateException());
+			
+			try {
+				fixture.search(Integer.class, query1, 10);
+				Assert.fail("Did not throw exception");
+			} catch (final RuntimeException ex) {
+				Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+			}
+			verify(results1).close();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 }
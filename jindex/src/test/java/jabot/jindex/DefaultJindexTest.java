@@ -7,7 +7,11 @@ import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.Query;
@@ -20,9 +24,12 @@ import org.mockito.MockitoAnnotations;
 
 import jabot.idxapi.DelayedIndexingException;
 import jabot.idxapi.Document;
+import jabot.idxapi.Facet;
+import jabot.idxapi.Field;
 import jabot.idxapi.Field.Storage;
 import jabot.idxapi.Field.Type;
 import jabot.idxapi.Index;
+import jabot.idxapi.QuerySerializer;
 import jabot.idxapi.SearchResults;
 import jabot.idxapi.Untokenized;
 
@@ -36,9 +43,11 @@ public class DefaultJindexTest {
 	private DefaultJindex fixture;
 	private TestBean bean;
 	private ArgumentCaptor<Document> documentCaptor;
-	private ArgumentCaptor<String> queryCaptor;
+	private ArgumentCaptor<Query> queryCaptor;
+	private ArgumentCaptor<Collection<Query>> filtersCaptor;
 	private Query query;
 	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Before
 	public void setUp() throws ParseException {
 		MockitoAnnotations.initMocks(this);
@@ -46,7 +55,8 @@ public class DefaultJindexTest {
 		
 		bean = new TestBean();
 		documentCaptor = ArgumentCaptor.forClass(Document.class);
-		queryCaptor = ArgumentCaptor.forClass(String.class);
+		queryCaptor = ArgumentCaptor.forClass(Query.class);
+		filtersCaptor = ArgumentCaptor.forClass((Class)Collection.class);
 		query = Parser.DEFAULT.parse("search");
 	}
 	
@@ -60,7 +70,8 @@ public class DefaultJindexTest {
 		
 		final Document doc = documentCaptor.getValue();
 		
-		when(index.search(queryCaptor.capture(), notNull(Collection.class), eq(10))).thenReturn(results);
+		when(index.search(queryCaptor.capture(), filtersCaptor.capture(), notNull(Collection.class), eq(10)))
+			.thenReturn(results);
 		when(results.next()).thenReturn(doc).thenReturn(null);
 		
 		final JIndexResults<TestBean> searchResults = fixture.search(TestBean.class, query, 10);
@@ -69,14 +80,46 @@ public class DefaultJindexTest {
 		Assert.assertEquals(bean.getUri(), restored.getUri());
 		Assert.assertNull(searchResults.next());
 		
-		Assert.assertEquals("+class_unt_f:jabot.jindex.DefaultJindexTest$TestBean "
-				          + "+(metadata:search metadataRu:search)", 
-				queryCaptor.getValue());
+		Assert.assertEquals("(metadata:search metadataRu:search)", QuerySerializer.serialize(queryCaptor.getValue()));
+		Assert.assertEquals(
+				Arrays.asList("class_unt_f:jabot.jindex.DefaultJindexTest$TestBean"), 
+				QuerySerializer.serializeAll(filtersCaptor.getValue()));
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void test_search_filters() throws ParseException {
+		when(index.search(queryCaptor.capture(), filtersCaptor.capture(), notNull(Collection.class), eq(0)))
+			.thenReturn(results);
+		
+		final List<Query> filters = Arrays.asList(Parser.DEFAULT.parse("stringVal:abc"));
+		fixture.search(TestBean.class, query, filters, 0);
+		
+		Assert.assertEquals("(metadata:search metadataRu:search)", QuerySerializer.serialize(queryCaptor.getValue()));
+		Assert.assertEquals(
+				Arrays.asList("class_unt_f:jabot.jindex.DefaultJindexTest$TestBean", "stringVal_str_f:abc"), 
+				QuerySerializer.serializeAll(filtersCaptor.getValue()));
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void test_catchAll_searched_along_with_metadata() {
+		when(index.search(queryCaptor.capture(), filtersCaptor.capture(), notNull(Collection.class), eq(0)))
+			.thenReturn(results);
+		
+		fixture.search(CatchAllBean.class, query, 0);
+		Assert.assertEquals("(all_str_mv:search metadataRu:search)", 
+				QuerySerializer.serialize(queryCaptor.getValue()));
+		
+		fixture.setCatchAllOnly(true);
+		fixture.search(CatchAllBean.class, query, 0);
+		Assert.assertEquals("all_str_mv:search", QuerySerializer.serialize(queryCaptor.getValue()));
 	}
 	
 	@Test
 	public void test_JIndexResults() throws IOException {
-		when(index.search(queryCaptor.capture(), notNull(Collection.class), eq(0))).thenReturn(results);
+		when(index.search(queryCaptor.capture(), filtersCaptor.capture(), notNull(Collection.class), eq(0)))
+			.thenReturn(results);
 		when(results.estimateTotalResults()).thenReturn(100L);
 		
 		final JIndexResults<TestBean> searchResults = fixture.search(TestBean.class, query, 0);
@@ -97,9 +140,31 @@ public class DefaultJindexTest {
 		fixture.removeByQuery(TestBean.class, query);
 		verify(index).removeByQuery(queryCaptor.capture());
 		
-		Assert.assertEquals("+class_unt_f:jabot.jindex.DefaultJindexTest$TestBean "
-				          + "+(metadata:search metadataRu:search)", 
-				queryCaptor.getValue());
+		Assert.assertEquals("(+class_unt_f:jabot.jindex.DefaultJindexTest$TestBean "
+				          + "+(metadata:search metadataRu:search))", 
+				QuerySerializer.serialize(queryCaptor.getValue()));
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void test_facets() throws ParseException {
+		final ArgumentCaptor<List<Facet>> facetsCaptor = ArgumentCaptor.forClass((Class)List.class);
+		final List<Map<String, Long>> counts = Arrays.asList(Collections.singletonMap("abc", 3L));
+		when(index.facets(queryCaptor.capture(), filtersCaptor.capture(), facetsCaptor.capture())).thenReturn(counts);
+		
+		Assert.assertSame(counts, fixture.facets(
+				TestBean.class, query, Collections.emptyList(), Arrays.asList(Facet.terms("stringVal", 10))));
+		
+		Assert.assertEquals("(metadata:search metadataRu:search)", QuerySerializer.serialize(queryCaptor.getValue()));
+		Assert.assertEquals(
+				Arrays.asList("class_unt_f:jabot.jindex.DefaultJindexTest$TestBean"), 
+				QuerySerializer.serializeAll(filtersCaptor.getValue()));
+		Assert.assertEquals(Arrays.asList(Facet.terms("stringVal_str_f", 10)), facetsCaptor.getValue());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void test_facets_unknown_field() {
+		fixture.facets(TestBean.class, query, Collections.emptyList(), Arrays.asList(Facet.terms("noSuchField", 10)));
 	}
 	
 	@Test
@@ -108,6 +173,23 @@ public class DefaultJindexTest {
 		verify(index).commit();
 	}
 	
+	static final class CatchAllBean {
+		static {
+			final ModelIntrospector<CatchAllBean> introspector = new ModelIntrospector<>(CatchAllBean.class);
+			introspector.setCatchAllField(new Field("all", Type.STRING, Storage.INDEXED, true));
+			ModelMappersInventory.registerMapper(introspector.buildMapper());
+		}
+		private String stringVal;
+
+		public String getStringVal() {
+			return stringVal;
+		}
+
+		public void setStringVal(String stringVal) {
+			this.stringVal = stringVal;
+		}
+	}
+	
 	static final class TestBean {
 		static {
 			final ModelIntrospector<TestBean> introspector = new ModelIntrospector<>(TestBean.class);
@@ -0,0 +1,111 @@
+package jabot.jindex;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexedProcessorTest {
+	private static final String MODEL = String.join("\n",
+			"package sample;",
+			"import java.util.List;",
+			"import jabot.idxapi.Field.Storage;",
+			"import jabot.idxapi.Field.Type;",
+			"import jabot.jindex.Indexed;",
+			"import jabot.jindex.IndexedModel;",
+			"@IndexedModel(catchAllField=\"metadata\")",
+			"public class Sample {",
+			"  @Indexed(storage=Storage.STORED_INDEXED, defaultField=false) private String title;",
+			"  @Indexed(type=Type.STRING_RU) private List<String> authors;",
+			"  private long length;",
+			"  @Indexed(ignore=true) private String ignored;",
+			"  private String noGetter;",
+			"  public String getTitle() { return title; }",
+			"  public void setTitle(String title) { this.title = title; }",
+			"  public List<String> getAuthors() { return authors; }",
+			"  public void setAuthors(List<String> authors) { this.authors = authors; }",
+			"  public long getLength() { return length; }",
+			"  public void setLength(long length) { this.length = length; }",
+			"  public String getIgnored() { return ignored; }",
+			"}"
+	);
+	private File tmp;
+
+	@Before
+	public void setUp() throws IOException {
+		tmp = Files.createTempDirectory("IndexedProcessorTest").toFile();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (final Stream<Path> files = Files.walk(tmp.toPath())) {
+			files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+		}
+	}
+
+	@Test
+	public void test_generates_provider() throws IOException {
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		final List<String> options = Arrays.asList(
+				"-proc:only", 
+				"-classpath", System.getProperty("java.class.path"),
+				"-s", tmp.getPath(),
+				"-d", tmp.getPath()
+		);
+		final CompilationTask task = compiler.getTask(
+				null, null, null, options, null, Collections.singletonList(new Source("sample.Sample", MODEL)));
+		task.setProcessors(Collections.singletonList(new IndexedProcessor()));
+		Assert.assertTrue(task.call());
+
+		final String generated = read("sample/SampleMapperProvider.java");
+		Assert.assertTrue(generated.contains("public final class SampleMapperProvider"));
+		Assert.assertTrue(generated.contains("((sample.Sample)bean).setTitle((java.lang.String)value)"));
+		Assert.assertTrue(generated.contains("jabot.idxapi.Field.Storage.STORED_INDEXED"));
+		Assert.assertTrue(generated.contains("jabot.idxapi.Field.Type.STRING_RU"));
+		Assert.assertTrue(generated.contains("((sample.Sample)bean).setLength((java.lang.Long)value)"));
+		Assert.assertTrue(generated.contains("new jabot.idxapi.Field(\"metadata\""));
+		Assert.assertFalse(generated.contains("\"ignored\""));
+		Assert.assertFalse(generated.contains("\"noGetter\""));
+
+		Assert.assertEquals(
+				"sample.SampleMapperProvider", 
+				read("META-INF/services/"+MapperProvider.class.getName()).trim()
+		);
+	}
+
+	private String read(final String path) throws IOException {
+		return new String(Files.readAllBytes(new File(tmp, path).toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static final class Source extends SimpleJavaFileObject {
+		private final String code;
+
+		public Source(final String className, final String code) {
+			super(URI.create("string:///"+className.replace('.', '/')+Kind.SOURCE.extension), Kind.SOURCE);
+			this.code = code;
+		}
+
+		@Override
+		public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+			return code;
+		}
+	}
+}
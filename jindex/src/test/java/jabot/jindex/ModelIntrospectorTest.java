@@ -246,6 +246,39 @@ public class ModelIntrospectorTest {
 		Assert.assertEquals("intList_int_mv", mapper.getMapping("intList").getField().getName());
 	}
 	
+	@Test
+	public void test_catchAllField() {
+		final ModelIntrospector<ComplexBean> intr = new ModelIntrospector<>(ComplexBean.class);
+		intr.getMapping("l").setDefaultField(false);
+		final Field catchAll = new Field("all", Type.STRING, Storage.INDEXED, true);
+		intr.setCatchAllField(catchAll);
+
+		final Mapper<ComplexBean> mapper = intr.buildMapper();
+		Assert.assertEquals(catchAll, mapper.getCatchAllField());
+
+		final ComplexBean bean = new ComplexBean();
+		bean.setI(1);
+		bean.setS("s1");
+		bean.setStringList(Arrays.asList("l1", "s1"));
+
+		final Document doc = mapper.bean2doc(new Untokenized("pk"), bean);
+		FieldValue all = null;
+		for (final FieldValue fv : doc.getFields()) {
+			if (fv.getField().equals(catchAll)) {
+				all = fv;
+			}
+		}
+		Assert.assertNotNull(all);
+		Assert.assertEquals(new HashSet<>(Arrays.asList("s1", "l1")), new HashSet<>((List<?>)all.getValue()));
+		Assert.assertEquals(2, ((List<?>)all.getValue()).size());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_catchAllField_must_be_multivalued() {
+		new ModelIntrospector<>(ComplexBean.class).setCatchAllField(
+				new Field("all", Type.STRING, Storage.INDEXED, false));
+	}
+
 	@Test
 	public void test_DateBean() {
 		final ModelIntrospector<DateBean> intr = new ModelIntrospector<>(DateBean.class);
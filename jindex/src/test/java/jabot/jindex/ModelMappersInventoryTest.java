@@ -0,0 +1,43 @@
+package jabot.jindex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ModelMappersInventoryTest {
+
+	@Test
+	public void test_plain_class_introspected() {
+		Assert.assertEquals(Plain.class, ModelMappersInventory.getMapper(Plain.class).getModel());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void test_annotated_model_without_generated_mapper() {
+		// jindex tests are compiled without the annotation processor
+		ModelMappersInventory.getMapper(Annotated.class);
+	}
+
+	public static class Plain {
+		private String name;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	@IndexedModel
+	public static class Annotated {
+		private String name;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+}
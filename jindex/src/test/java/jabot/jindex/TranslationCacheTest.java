@@ -0,0 +1,78 @@
+package jabot.jindex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import jabot.jindex.ModelBasedTranslatorTest.Person;
+import jabot.jindex.ModelIntrospector.Mapper;
+
+public class TranslationCacheTest {
+	private ModelBasedTranslator<Person> translator;
+	private TranslationCache<Person> fixture;
+
+	@Before
+	public void setUp() {
+		final Mapper<Person> mapper = new ModelIntrospector<>(Person.class).buildMapper();
+		final Person inflated = new Person();
+		inflated.setAliases(Arrays.asList("alias1"));
+		mapper.taste(inflated);
+
+		translator = new ModelBasedTranslator<>(mapper);
+		translator.setExpandDefaultField(true);
+		fixture = new TranslationCache<>(mapper, translator, 2);
+	}
+
+	@Test
+	public void test_same_as_translator() throws ParseException {
+		final Query search = Parser.DEFAULT.parse("name:john Smith");
+		final Query filter = Parser.DEFAULT.parse("age:22");
+
+		Assert.assertEquals(translator.translate(search), fixture.translate(search));
+		Assert.assertEquals(translator.translateQuery(search), fixture.translateQuery(search));
+		Assert.assertEquals(translator.translateFilters(Collections.singletonList(filter)),
+				fixture.translateFilters(Collections.singletonList(filter)));
+	}
+
+	@Test
+	public void test_hits_on_equal_queries() throws ParseException {
+		final Query first = fixture.translateQuery(Parser.DEFAULT.parse("name:john"));
+		final Query second = fixture.translateQuery(Parser.DEFAULT.parse("name:john"));
+
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, fixture.getHits());
+		Assert.assertEquals(1, fixture.getMisses());
+		Assert.assertEquals(1, fixture.getSize());
+	}
+
+	@Test
+	public void test_filters_share_entries() throws ParseException {
+		final Query search = Parser.DEFAULT.parse("name:john");
+		fixture.translateQuery(search);
+		final List<Query> filters = fixture.translateFilters(Collections.singletonList(search));
+
+		Assert.assertEquals(2, filters.size());
+		Assert.assertEquals(1, fixture.getHits());
+	}
+
+	@Test
+	public void test_evicts_least_recently_used() throws ParseException {
+		final Query john = Parser.DEFAULT.parse("name:john");
+		fixture.translateQuery(john);
+		fixture.translateQuery(Parser.DEFAULT.parse("name:paul"));
+		fixture.translateQuery(john);
+		fixture.translateQuery(Parser.DEFAULT.parse("name:george"));
+		Assert.assertEquals(2, fixture.getSize());
+
+		fixture.translateQuery(john);
+		Assert.assertEquals(2, fixture.getHits());
+		fixture.translateQuery(Parser.DEFAULT.parse("name:paul"));
+		Assert.assertEquals(4, fixture.getMisses());
+	}
+}